@@ -136,7 +136,7 @@ public class AccountsActivityTest {
         mSplitsDbAdapter        = SplitsDbAdapter.getInstance();
         mTransactionsDbAdapter  = TransactionsDbAdapter.getInstance();
         mAccountsDbAdapter      = AccountsDbAdapter.getInstance();
-        CommoditiesDbAdapter commoditiesDbAdapter = new CommoditiesDbAdapter(mDb); //initialize commodity constants
+        new CommoditiesDbAdapter(mDb).initCommonCommodities(); //initialize commodity constants
     }
 
     @Before
@@ -119,8 +119,7 @@ public class ExportTransactionsTest extends
 		mAccountsDbAdapter      = AccountsDbAdapter.getInstance();
 
 		//this call initializes the static variables like DEFAULT_COMMODITY which are used implicitly by accounts/transactions
-		@SuppressWarnings("unused")
-		CommoditiesDbAdapter commoditiesDbAdapter = new CommoditiesDbAdapter(mDb);
+		new CommoditiesDbAdapter(mDb).initCommonCommodities();
 		String currencyCode = GnuCashApplication.getDefaultCurrencyCode();
 		Commodity.DEFAULT_COMMODITY = CommoditiesDbAdapter.getInstance().getCommodity(currencyCode);
 
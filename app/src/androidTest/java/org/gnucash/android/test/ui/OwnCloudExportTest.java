@@ -118,8 +118,7 @@ public class OwnCloudExportTest {
             mDb = mDbHelper.getReadableDatabase();
         }
 
-        @SuppressWarnings("unused") //this call initializes constants in Commodity
-        CommoditiesDbAdapter commoditiesDbAdapter = new CommoditiesDbAdapter(mDb);
+        new CommoditiesDbAdapter(mDb).initCommonCommodities(); //this call initializes constants in Commodity
         AccountsDbAdapter mAccountsDbAdapter = AccountsDbAdapter.getInstance();
         mAccountsDbAdapter.deleteAllRecords();
 
@@ -21,12 +21,12 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Color;
 import android.os.Build;
 import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.preference.PreferenceManager;
 import android.util.Log;
 
@@ -39,7 +39,10 @@ import com.uservoice.uservoicesdk.UserVoice;
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.db.BookDbHelper;
-import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.BookSession;
+import org.gnucash.android.db.BookSessionManager;
+import org.gnucash.android.db.DatabaseMigrator;
+import org.gnucash.android.db.DatabaseTemplate;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.adapter.BudgetAmountsDbAdapter;
@@ -54,6 +57,9 @@ import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.service.ScheduledActionService;
 import org.gnucash.android.ui.account.AccountsActivity;
+import org.gnucash.android.ui.common.DatabaseUpgradeActivity;
+import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
+import org.gnucash.android.ui.homescreen.WidgetUpdater;
 import org.gnucash.android.ui.settings.PreferenceActivity;
 
 import java.util.Currency;
@@ -80,26 +86,17 @@ public class GnuCashApplication extends Application{
 
     private static Context context;
 
-    private static AccountsDbAdapter mAccountsDbAdapter;
+    private static volatile BooksDbAdapter mBooksDbAdapter;
 
-    private static TransactionsDbAdapter mTransactionsDbAdapter;
-
-    private static SplitsDbAdapter mSplitsDbAdapter;
-
-    private static ScheduledActionDbAdapter mScheduledActionDbAdapter;
-
-    private static CommoditiesDbAdapter mCommoditiesDbAdapter;
-
-    private static PricesDbAdapter mPricesDbAdapter;
-
-    private static BudgetsDbAdapter mBudgetsDbAdapter;
-
-    private static BudgetAmountsDbAdapter mBudgetAmountsDbAdapter;
-
-    private static RecurrenceDbAdapter mRecurrenceDbAdapter;
+    /**
+     * Session of the active book, which holds its database and adapters
+     */
+    private static volatile BookSession sActiveSession;
 
-    private static BooksDbAdapter mBooksDbAdapter;
-    private static DatabaseHelper mDbHelper;
+    /**
+     * Flag indicating that the database of the active book has to be upgraded before it can be opened
+     */
+    private static volatile boolean sDatabaseUpgradePending = false;
 
     /**
      * Returns darker version of specified <code>color</code>.
@@ -123,11 +120,30 @@ public class GnuCashApplication extends Application{
 
         setUpUserVoice();
 
+        BookSessionManager.getInstance().closeAll();
         BookDbHelper bookDbHelper = new BookDbHelper(getApplicationContext());
         mBooksDbAdapter = new BooksDbAdapter(bookDbHelper.getWritableDatabase());
 
-        initDatabaseAdapters();
-        setDefaultCurrencyCode(getDefaultCurrencyCode());
+        if (DatabaseMigrator.isMigrationRequired(this, mBooksDbAdapter.getActiveBookUID())) {
+            //the upgrade is run in the background by the DatabaseUpgradeActivity
+            sDatabaseUpgradePending = true;
+        } else {
+            initDatabaseAdapters();
+            setDefaultCurrencyCode(getDefaultCurrencyCode());
+        }
+
+        //widgets are redrawn whenever the accounts they display change
+        WidgetUpdater.getInstance(this).startListeningIfWidgetsExist();
+
+        //new books are created from templates, which are built once per database version
+        if (!isRoboUnitTest()) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    DatabaseTemplate.prepare(getAppContext());
+                }
+            }).start();
+        }
 
         if (BuildConfig.DEBUG && !isRoboUnitTest())
             setUpRemoteDebuggingFromChrome();
@@ -135,69 +151,57 @@ public class GnuCashApplication extends Application{
 
     /**
      * Initialize database adapter singletons for use in the application
-     * This method should be called every time a new book is opened
+     * This method should be called every time a new book is opened.
+     * <p>The database of a recently used book is still open in the {@link BookSessionManager},
+     * in which case its adapters are reused</p>
      */
     private static void initDatabaseAdapters() {
-        if (mDbHelper != null){ //close if open
-            mDbHelper.getReadableDatabase().close();
-        }
-
-        mDbHelper = new DatabaseHelper(getAppContext(),
-                mBooksDbAdapter.getActiveBookUID());
-        SQLiteDatabase mainDb;
-        try {
-            mainDb = mDbHelper.getWritableDatabase();
-        } catch (SQLException e) {
-            Crashlytics.logException(e);
-            Log.e("GnuCashApplication", "Error getting database: " + e.getMessage());
-            mainDb = mDbHelper.getReadableDatabase();
-        }
-
-        mSplitsDbAdapter            = new SplitsDbAdapter(mainDb);
-        mTransactionsDbAdapter      = new TransactionsDbAdapter(mainDb, mSplitsDbAdapter);
-        mAccountsDbAdapter          = new AccountsDbAdapter(mainDb, mTransactionsDbAdapter);
-        mRecurrenceDbAdapter        = new RecurrenceDbAdapter(mainDb);
-        mScheduledActionDbAdapter   = new ScheduledActionDbAdapter(mainDb, mRecurrenceDbAdapter);
-        mPricesDbAdapter            = new PricesDbAdapter(mainDb);
-        mCommoditiesDbAdapter       = new CommoditiesDbAdapter(mainDb);
-        mBudgetAmountsDbAdapter     = new BudgetAmountsDbAdapter(mainDb);
-        mBudgetsDbAdapter           = new BudgetsDbAdapter(mainDb, mBudgetAmountsDbAdapter, mRecurrenceDbAdapter);
+        sActiveSession = BookSessionManager.getInstance().activate(mBooksDbAdapter.getActiveBookUID());
     }
 
     public static AccountsDbAdapter getAccountsDbAdapter() {
-        return mAccountsDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getAccountsDbAdapter();
     }
 
     public static TransactionsDbAdapter getTransactionDbAdapter() {
-        return mTransactionsDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getTransactionsDbAdapter();
     }
 
     public static SplitsDbAdapter getSplitsDbAdapter() {
-        return mSplitsDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getSplitsDbAdapter();
     }
 
     public static ScheduledActionDbAdapter getScheduledEventDbAdapter(){
-        return mScheduledActionDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getScheduledActionDbAdapter();
     }
 
     public static CommoditiesDbAdapter getCommoditiesDbAdapter(){
-        return mCommoditiesDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getCommoditiesDbAdapter();
     }
 
     public static PricesDbAdapter getPricesDbAdapter(){
-        return mPricesDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getPricesDbAdapter();
     }
 
     public static BudgetsDbAdapter getBudgetDbAdapter() {
-        return mBudgetsDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getBudgetsDbAdapter();
     }
 
     public static RecurrenceDbAdapter getRecurrenceDbAdapter() {
-        return mRecurrenceDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getRecurrenceDbAdapter();
     }
 
     public static BudgetAmountsDbAdapter getBudgetAmountsDbAdapter(){
-        return mBudgetAmountsDbAdapter;
+        ensureDatabaseUpgraded();
+        return sActiveSession.getBudgetAmountsDbAdapter();
     }
 
     public static BooksDbAdapter getBooksDbAdapter(){
@@ -210,16 +214,60 @@ public class GnuCashApplication extends Application{
      */
     public static void loadBook(@NonNull String bookUID){
         mBooksDbAdapter.setActive(bookUID);
+        if (DatabaseMigrator.isMigrationRequired(getAppContext(), bookUID)) {
+            sDatabaseUpgradePending = true;
+            DatabaseUpgradeActivity.start(getAppContext());
+            return;
+        }
         initDatabaseAdapters();
+        WidgetConfigurationActivity.updateAllWidgets(getAppContext());
         AccountsActivity.start(getAppContext());
     }
 
+    /**
+     * Returns {@code true} if the database of the active book has to be upgraded before it can be used
+     * @see DatabaseUpgradeActivity
+     */
+    public static boolean isDatabaseUpgradePending(){
+        return sDatabaseUpgradePending;
+    }
+
+    /**
+     * Upgrades the database of the active book, if necessary, and then opens it.
+     * <p>This method blocks until the upgrade is complete and should not be called from the main thread</p>
+     * @param listener Listener for the progress of the upgrade, may be {@code null}
+     */
+    public static synchronized void upgradeDatabase(@Nullable DatabaseMigrator.ProgressListener listener){
+        if (!sDatabaseUpgradePending)
+            return;
+
+        String bookUID = mBooksDbAdapter.getActiveBookUID();
+        BookSessionManager.getInstance().close(bookUID); //the migration opens the database itself
+        DatabaseMigrator.migrate(getAppContext(), bookUID, listener);
+        initDatabaseAdapters();
+        setDefaultCurrencyCode(getDefaultCurrencyCode());
+        sDatabaseUpgradePending = false;
+    }
+
+    /**
+     * Makes sure the database adapters are available before they are used.
+     * <p>The upgrade is never run here, since this may be called on the main thread. Components which can be
+     * started while the upgrade is pending check {@link #isDatabaseUpgradePending()} first and redirect to the
+     * {@link DatabaseUpgradeActivity} or skip their work</p>
+     * @throws IllegalStateException if the upgrade of the database is still pending
+     */
+    private static void ensureDatabaseUpgraded(){
+        if (sDatabaseUpgradePending)
+            throw new IllegalStateException("The database of the active book must be upgraded before it is used");
+    }
+
     /**
      * Returns the currently active database in the application
      * @return Currently active {@link SQLiteDatabase}
      */
     public static SQLiteDatabase getActiveDb(){
-        return mDbHelper.getWritableDatabase();
+        ensureDatabaseUpgraded();
+        return sActiveSession.getDatabase();
     }
 
     /**
@@ -308,7 +356,7 @@ public class GnuCashApplication extends Application{
                 .putString(getAppContext().getString(R.string.key_default_currency), currencyCode)
                 .apply();
         Money.DEFAULT_CURRENCY_CODE = currencyCode;
-        Commodity.DEFAULT_COMMODITY = mCommoditiesDbAdapter.getCommodity(currencyCode);
+        Commodity.DEFAULT_COMMODITY = getCommoditiesDbAdapter().getCommodity(currencyCode);
     }
 
     /**
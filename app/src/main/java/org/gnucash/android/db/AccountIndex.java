@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.model.AccountType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of the accounts of a book, sorted by fully qualified account name.
+ * <p>The index holds just the attributes needed by account pickers and is shared by all of them,
+ * so opening a picker does not require a database query. Accounts can be looked up by GUID or database ID
+ * in constant time, and by position in a sorted list in logarithmic time (see {@link #FULL_NAME_ORDER}).</p>
+ * <p>The index is built and invalidated by
+ * {@link org.gnucash.android.db.adapter.AccountsDbAdapter#getAccountIndex()}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class AccountIndex {
+
+    /**
+     * Columns of the accounts table which are read into the index
+     */
+    public static final String[] COLUMNS = {
+            AccountEntry._ID,
+            AccountEntry.COLUMN_UID,
+            AccountEntry.COLUMN_NAME,
+            AccountEntry.COLUMN_FULL_NAME,
+            AccountEntry.COLUMN_CURRENCY,
+            AccountEntry.COLUMN_TYPE,
+            AccountEntry.COLUMN_HIDDEN,
+            AccountEntry.COLUMN_PLACEHOLDER
+    };
+
+    /**
+     * Orders accounts by full name, using the GUID to break ties so that the order is total
+     */
+    public static final Comparator<Entry> FULL_NAME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            int result = lhs.mFullName.compareTo(rhs.mFullName);
+            return result != 0 ? result : lhs.mUID.compareTo(rhs.mUID);
+        }
+    };
+
+    private final List<Entry> mEntries;
+
+    private final Map<String, Entry> mEntriesByUID;
+
+    private final Map<Long, Entry> mEntriesById;
+
+    private final long mVersion;
+
+    /**
+     * Builds the index from the accounts in {@code cursor}
+     * @param cursor Cursor containing at least the {@link #COLUMNS}
+     * @param version Version of the account records the index was built from
+     */
+    public AccountIndex(@NonNull Cursor cursor, long version) {
+        int idColumn          = cursor.getColumnIndexOrThrow(AccountEntry._ID);
+        int uidColumn         = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_UID);
+        int nameColumn        = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_NAME);
+        int fullNameColumn    = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_FULL_NAME);
+        int currencyColumn    = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_CURRENCY);
+        int typeColumn        = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_TYPE);
+        int hiddenColumn      = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_HIDDEN);
+        int placeholderColumn = cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_PLACEHOLDER);
+
+        List<Entry> entries = new ArrayList<>(cursor.getCount());
+        mEntriesByUID = new HashMap<>(cursor.getCount() * 2);
+        mEntriesById = new HashMap<>(cursor.getCount() * 2);
+        while (cursor.moveToNext()) {
+            String name = cursor.getString(nameColumn);
+            String fullName = cursor.getString(fullNameColumn);
+            Entry entry = new Entry(cursor.getLong(idColumn),
+                    cursor.getString(uidColumn),
+                    fullName == null ? name : fullName,
+                    cursor.getString(currencyColumn),
+                    AccountType.valueOf(cursor.getString(typeColumn)),
+                    cursor.getInt(hiddenColumn) == 1,
+                    cursor.getInt(placeholderColumn) == 1);
+            entries.add(entry);
+            mEntriesByUID.put(entry.mUID, entry);
+            mEntriesById.put(entry.mId, entry);
+        }
+        //SQLite and Java may collate some characters differently, the input is already (almost) sorted
+        Collections.sort(entries, FULL_NAME_ORDER);
+        mEntries = Collections.unmodifiableList(entries);
+        mVersion = version;
+    }
+
+    /**
+     * Returns the version of the account records from which the index was built
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns the number of accounts in the index
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the account with GUID {@code accountUID}, or {@code null} if there is no such account
+     */
+    @Nullable
+    public Entry get(@NonNull String accountUID) {
+        return mEntriesByUID.get(accountUID);
+    }
+
+    /**
+     * Returns the account with database ID {@code accountId}, or {@code null} if there is no such account
+     */
+    @Nullable
+    public Entry get(long accountId) {
+        return mEntriesById.get(accountId);
+    }
+
+    /**
+     * Returns all accounts sorted by full name
+     * @return Unmodifiable list of accounts
+     */
+    public List<Entry> getAccounts() {
+        return mEntries;
+    }
+
+    /**
+     * Returns the accounts which satisfy {@code condition}, sorted by full name
+     * @param condition Condition which the accounts should meet
+     * @return List of accounts
+     */
+    public List<Entry> getAccounts(@NonNull Condition condition) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : mEntries) {
+            if (condition.accept(entry))
+                result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the account in a list sorted by {@link #FULL_NAME_ORDER}
+     * @param sortedEntries List of accounts sorted by full name
+     * @param accountUID GUID of the account
+     * @return Position of the account, or -1 if the account is not in the list
+     */
+    public int indexOf(@NonNull List<Entry> sortedEntries, @NonNull String accountUID) {
+        Entry entry = mEntriesByUID.get(accountUID);
+        if (entry == null)
+            return -1;
+        int position = Collections.binarySearch(sortedEntries, entry, FULL_NAME_ORDER);
+        return position < 0 ? -1 : position;
+    }
+
+    /**
+     * Filters the accounts by the search {@code query}.
+     * <p>The query is split into whitespace separated terms, and every term has to occur in the full name
+     * of an account, ignoring case. Accounts in which all terms occur as substrings are returned first,
+     * followed by those in which some term only occurs as a subsequence, e.g. "exp:fd" for "Expenses:Food".
+     * Each group is sorted by full name.</p>
+     * <p>Adding characters to a query can only reduce the matches, so when the user types,
+     * the previous result can be passed as {@code candidates} instead of all accounts</p>
+     * @param candidates Accounts to be filtered
+     * @param query Search query
+     * @return Matching accounts
+     */
+    public static List<Entry> search(@NonNull List<Entry> candidates, @NonNull String query) {
+        String[] terms = normalize(query).trim().split("\\s+");
+        if (terms.length == 1 && terms[0].isEmpty())
+            return new ArrayList<>(candidates);
+
+        List<Entry> substringMatches = new ArrayList<>();
+        List<Entry> fuzzyMatches = new ArrayList<>();
+        for (Entry entry : candidates) {
+            boolean fuzzy = false;
+            boolean matches = true;
+            for (String term : terms) {
+                if (entry.mSearchKey.contains(term))
+                    continue;
+                if (isSubsequence(term, entry.mSearchKey)) {
+                    fuzzy = true;
+                } else {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches)
+                (fuzzy ? fuzzyMatches : substringMatches).add(entry);
+        }
+        Collections.sort(substringMatches, FULL_NAME_ORDER);
+        Collections.sort(fuzzyMatches, FULL_NAME_ORDER);
+        substringMatches.addAll(fuzzyMatches);
+        return substringMatches;
+    }
+
+    /**
+     * Returns {@code true} if all characters of {@code term} occur in {@code text} in the same order
+     */
+    private static boolean isSubsequence(String term, String text) {
+        int position = 0;
+        for (int i = 0; i < term.length(); i++) {
+            position = text.indexOf(term.charAt(i), position) + 1;
+            if (position == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Condition used for selecting accounts from the index
+     */
+    public interface Condition {
+        /**
+         * Returns {@code true} if the account should be selected
+         */
+        boolean accept(@NonNull Entry entry);
+    }
+
+    /**
+     * Indexed attributes of an account
+     */
+    public static final class Entry {
+        private final long mId;
+        private final String mUID;
+        private final String mFullName;
+        private final String mCurrencyCode;
+        private final AccountType mAccountType;
+        private final boolean mHidden;
+        private final boolean mPlaceholder;
+        private final String mSearchKey;
+
+        Entry(long id, @NonNull String uid, @NonNull String fullName, String currencyCode,
+              AccountType accountType, boolean hidden, boolean placeholder) {
+            mId = id;
+            mUID = uid;
+            mFullName = fullName;
+            mCurrencyCode = currencyCode;
+            mAccountType = accountType;
+            mHidden = hidden;
+            mPlaceholder = placeholder;
+            mSearchKey = normalize(fullName);
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public String getUID() {
+            return mUID;
+        }
+
+        public String getFullName() {
+            return mFullName;
+        }
+
+        public String getCurrencyCode() {
+            return mCurrencyCode;
+        }
+
+        public AccountType getAccountType() {
+            return mAccountType;
+        }
+
+        public boolean isHidden() {
+            return mHidden;
+        }
+
+        public boolean isPlaceholder() {
+            return mPlaceholder;
+        }
+
+        @Override
+        public String toString() {
+            return mFullName;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Balance of an account over time, with one point at the end of every day on which the balance changed.
+ * <p>The balance at any other time is the balance of the last point before it, so balances as of
+ * arbitrary dates are found with a binary search, and a series of balances at ascending times, e.g. the ends
+ * of periods or one time per pixel of a chart, is sampled in one pass over the points.</p>
+ * <p>Balance histories are computed by
+ * {@link org.gnucash.android.db.adapter.AccountsDbAdapter#getBalanceHistory(String)}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class BalanceHistory {
+
+    private final Commodity mCommodity;
+
+    /**
+     * End of each day on which the balance changed, in ascending order
+     */
+    private final long[] mTimes;
+
+    /**
+     * Balance at the end of each day in {@link #mTimes}
+     */
+    private final BigDecimal[] mBalances;
+
+    /**
+     * Creates a balance history
+     * @param commodity Commodity of the balances
+     * @param times Times of the points in milliseconds since the epoch, in ascending order
+     * @param balances Balances at the times of the points
+     */
+    public BalanceHistory(@NonNull Commodity commodity, @NonNull long[] times, @NonNull BigDecimal[] balances) {
+        if (times.length != balances.length)
+            throw new IllegalArgumentException("Every point needs a time and a balance");
+        mCommodity = commodity;
+        mTimes = times;
+        mBalances = balances;
+    }
+
+    /**
+     * Returns the commodity of the balances
+     */
+    public Commodity getCommodity() {
+        return mCommodity;
+    }
+
+    /**
+     * Returns the number of points, i.e. the number of days on which the balance changed
+     */
+    public int size() {
+        return mTimes.length;
+    }
+
+    /**
+     * Returns the time of a point, which is the last millisecond of its day
+     * @param index Index of the point
+     */
+    public long getTime(int index) {
+        return mTimes[index];
+    }
+
+    /**
+     * Returns the balance at the time of a point
+     * @param index Index of the point
+     */
+    public Money getBalance(int index) {
+        return new Money(mBalances[index], mCommodity);
+    }
+
+    /**
+     * Returns the balance as of a time, i.e. the balance at the end of the last day which ended at or before it.
+     * Use the end of a day to include the transactions of that day
+     * @param timeMillis Time in milliseconds since the epoch
+     * @return Balance as of the time, zero before the end of the day of the first transaction
+     */
+    public Money getBalanceAt(long timeMillis) {
+        int index = Arrays.binarySearch(mTimes, timeMillis);
+        if (index < 0)
+            index = -index - 2; //the point before the insertion point
+        return new Money(index < 0 ? BigDecimal.ZERO : mBalances[index], mCommodity);
+    }
+
+    /**
+     * Returns the balances at several times, e.g. at the ends of periods
+     * @param sampleTimes Times in milliseconds since the epoch, in ascending order
+     * @return Balances at the sample times, as floating point values for charting
+     */
+    public float[] sample(@NonNull long[] sampleTimes) {
+        float[] series = new float[sampleTimes.length];
+        int index = -1;
+        float balance = 0;
+        for (int sample = 0; sample < sampleTimes.length; sample++) {
+            while (index + 1 < mTimes.length && mTimes[index + 1] <= sampleTimes[sample]) {
+                index++;
+                balance = mBalances[index].floatValue();
+            }
+            series[sample] = balance;
+        }
+        return series;
+    }
+
+    /**
+     * Returns evenly spaced times for sampling the balances of a time range, e.g. one per pixel of a chart.
+     * Points between two sample times are not shown on their own, but the last sample is always the end of the range
+     * @param startTime Start of the range in milliseconds since the epoch
+     * @param endTime End of the range in milliseconds since the epoch
+     * @param maxSamples Maximum number of samples
+     * @return Sample times in ascending order. The number of samples is at most one per day of the range
+     */
+    public static long[] getSampleTimes(long startTime, long endTime, int maxSamples) {
+        if (endTime <= startTime || maxSamples <= 1)
+            return new long[]{endTime};
+        long days = (endTime - startTime) / (24 * 60 * 60 * 1000L) + 1;
+        int count = (int) Math.min(maxSamples, days);
+        long[] sampleTimes = new long[count];
+        double step = (double) (endTime - startTime) / (count - 1);
+        for (int sample = 0; sample < count - 1; sample++) {
+            sampleTimes[sample] = startTime + (long) (step * sample);
+        }
+        sampleTimes[count - 1] = endTime;
+        return sampleTimes;
+    }
+}
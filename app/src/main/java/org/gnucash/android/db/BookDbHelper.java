@@ -111,7 +111,7 @@ public class BookDbHelper extends SQLiteOpenHelper {
         if (count == 0) { //no book in the database, create a default one
             Log.i(LOG_TAG, "No books found in database, creating default book");
             Book book = new Book();
-            DatabaseHelper helper = new DatabaseHelper(GnuCashApplication.getAppContext(), book.getUID());
+            DatabaseHelper helper = DatabaseHelper.create(GnuCashApplication.getAppContext(), book.getUID());
             SQLiteDatabase mainDb = helper.getWritableDatabase(); //actually create the db
             AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(mainDb,
                     new TransactionsDbAdapter(mainDb, new SplitsDbAdapter(mainDb)));
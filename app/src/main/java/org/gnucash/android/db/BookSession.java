@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.BudgetAmountsDbAdapter;
+import org.gnucash.android.db.adapter.BudgetsDbAdapter;
+import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.PricesDbAdapter;
+import org.gnucash.android.db.adapter.RecurrenceDbAdapter;
+import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+
+/**
+ * Open database of a book together with its set of database adapters.
+ * <p>The adapters keep their caches (e.g. the account and price indexes) for as long as the session is open,
+ * so switching back to a book whose session is still open does not have to rebuild them.
+ * Sessions are opened and closed by the {@link BookSessionManager}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class BookSession {
+
+    private static final String LOG_TAG = "BookSession";
+
+    private final String mBookUID;
+    private final DatabaseHelper mDbHelper;
+    private final SQLiteDatabase mDb;
+
+    private final SplitsDbAdapter mSplitsDbAdapter;
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final AccountsDbAdapter mAccountsDbAdapter;
+    private final RecurrenceDbAdapter mRecurrenceDbAdapter;
+    private final ScheduledActionDbAdapter mScheduledActionDbAdapter;
+    private final PricesDbAdapter mPricesDbAdapter;
+    private final CommoditiesDbAdapter mCommoditiesDbAdapter;
+    private final BudgetAmountsDbAdapter mBudgetAmountsDbAdapter;
+    private final BudgetsDbAdapter mBudgetsDbAdapter;
+
+    /**
+     * Number of users of the session which have acquired it from the {@link BookSessionManager}
+     * and not released it yet. Guarded by the manager
+     */
+    int mReferences;
+
+    /**
+     * Opens the database of a book and creates its adapters
+     * @param context Application context
+     * @param bookUID GUID of the book
+     */
+    BookSession(@NonNull Context context, @NonNull String bookUID) {
+        mBookUID = bookUID;
+        mDbHelper = new DatabaseHelper(context, bookUID);
+        SQLiteDatabase db;
+        try {
+            db = mDbHelper.getWritableDatabase();
+        } catch (SQLException e) {
+            Crashlytics.logException(e);
+            Log.e(LOG_TAG, "Error getting database: " + e.getMessage());
+            db = mDbHelper.getReadableDatabase();
+        }
+        mDb = db;
+
+        mSplitsDbAdapter            = new SplitsDbAdapter(db);
+        mTransactionsDbAdapter      = new TransactionsDbAdapter(db, mSplitsDbAdapter);
+        mAccountsDbAdapter          = new AccountsDbAdapter(db, mTransactionsDbAdapter);
+        mRecurrenceDbAdapter        = new RecurrenceDbAdapter(db);
+        mScheduledActionDbAdapter   = new ScheduledActionDbAdapter(db, mRecurrenceDbAdapter);
+        mPricesDbAdapter            = new PricesDbAdapter(db);
+        mCommoditiesDbAdapter       = new CommoditiesDbAdapter(db);
+        mBudgetAmountsDbAdapter     = new BudgetAmountsDbAdapter(db);
+        mBudgetsDbAdapter           = new BudgetsDbAdapter(db, mBudgetAmountsDbAdapter, mRecurrenceDbAdapter);
+    }
+
+    /**
+     * Returns the GUID of the book of this session
+     */
+    public String getBookUID() {
+        return mBookUID;
+    }
+
+    /**
+     * Returns the database of the book
+     */
+    public SQLiteDatabase getDatabase() {
+        return mDb;
+    }
+
+    /**
+     * Returns {@code true} if the database of the session is still open
+     */
+    boolean isOpen() {
+        return mDb.isOpen();
+    }
+
+    /**
+     * Closes the database of the book. The adapters of the session cannot be used afterwards
+     */
+    void close() {
+        Log.d(LOG_TAG, "Closing database of book " + mBookUID);
+        for (DatabaseAdapter<?> adapter : new DatabaseAdapter<?>[]{mSplitsDbAdapter, mTransactionsDbAdapter,
+                mAccountsDbAdapter, mRecurrenceDbAdapter, mScheduledActionDbAdapter, mPricesDbAdapter,
+                mCommoditiesDbAdapter, mBudgetAmountsDbAdapter, mBudgetsDbAdapter}) {
+            adapter.closeStatements();
+        }
+        mDbHelper.close();
+    }
+
+    public SplitsDbAdapter getSplitsDbAdapter() {
+        return mSplitsDbAdapter;
+    }
+
+    public TransactionsDbAdapter getTransactionsDbAdapter() {
+        return mTransactionsDbAdapter;
+    }
+
+    public AccountsDbAdapter getAccountsDbAdapter() {
+        return mAccountsDbAdapter;
+    }
+
+    public RecurrenceDbAdapter getRecurrenceDbAdapter() {
+        return mRecurrenceDbAdapter;
+    }
+
+    public ScheduledActionDbAdapter getScheduledActionDbAdapter() {
+        return mScheduledActionDbAdapter;
+    }
+
+    public PricesDbAdapter getPricesDbAdapter() {
+        return mPricesDbAdapter;
+    }
+
+    public CommoditiesDbAdapter getCommoditiesDbAdapter() {
+        return mCommoditiesDbAdapter;
+    }
+
+    public BudgetAmountsDbAdapter getBudgetAmountsDbAdapter() {
+        return mBudgetAmountsDbAdapter;
+    }
+
+    public BudgetsDbAdapter getBudgetsDbAdapter() {
+        return mBudgetsDbAdapter;
+    }
+}
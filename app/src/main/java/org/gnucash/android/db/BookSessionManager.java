@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used books open, so that switching between books does not have to reopen
+ * their databases and rebuild the caches of their adapters.
+ * <p>One session is the active book of the application (see {@link GnuCashApplication#loadBook(String)}).
+ * Background components which work on other books, like the scheduled actions service, {@link #acquire(String)}
+ * the session of the book and {@link #release(BookSession)} it when they are done. They share the database
+ * handle and adapters with the rest of the application, which is safe because SQLite connections
+ * serialize their access.</p>
+ * <p>At most {@link #MAX_OPEN_BOOKS} sessions are kept open. The least recently used session is closed when
+ * the limit is exceeded, unless it is the active session or it is still acquired. Acquired sessions
+ * are closed when they are released.</p>
+ * <p>Only activating a book counts as using it. Acquiring a book which is not open opens a transient session,
+ * which is closed when it is released, so background work on many books does not evict the books
+ * the user switches between.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class BookSessionManager {
+
+    private static final String LOG_TAG = "BookSessionManager";
+
+    /**
+     * Maximum number of book databases which are kept open
+     */
+    public static final int MAX_OPEN_BOOKS = 3;
+
+    private static final BookSessionManager sInstance = new BookSessionManager();
+
+    /**
+     * Open sessions by book GUID, from the least to the most recently used
+     */
+    private final LinkedHashMap<String, BookSession> mSessions = new LinkedHashMap<>(MAX_OPEN_BOOKS * 2, 0.75f, true);
+
+    /**
+     * Sessions opened by {@link #acquire(String)} for books which were not open, by book GUID.
+     * They are not part of the least recently used sessions and are closed when released
+     */
+    private final Map<String, BookSession> mTransientSessions = new HashMap<>();
+
+    private String mActiveBookUID;
+
+    private BookSessionManager() {
+        //singleton
+    }
+
+    /**
+     * Returns the application-wide book session manager
+     */
+    public static BookSessionManager getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Makes the session of a book the active session, opening it if necessary
+     * @param bookUID GUID of the book
+     * @return Session of the book
+     */
+    public synchronized BookSession activate(@NonNull String bookUID) {
+        long start = MetricsRegistry.start();
+        mActiveBookUID = bookUID;
+        BookSession session = open(bookUID);
+        //the commonly used commodities are cached statically and differ between books
+        session.getCommoditiesDbAdapter().initCommonCommodities();
+        trim();
+        MetricsRegistry.stop(LOG_TAG, "activate", start);
+        return session;
+    }
+
+    /**
+     * Acquires the session of a book for use by a background component, opening it if necessary.
+     * <p>The session is not closed until it has been released with {@link #release(BookSession)}.
+     * Acquiring a session does not change which sessions are evicted first</p>
+     * @param bookUID GUID of the book
+     * @return Session of the book
+     */
+    public synchronized BookSession acquire(@NonNull String bookUID) {
+        BookSession session = peek(bookUID);
+        if (session == null) {
+            session = mTransientSessions.get(bookUID);
+            if (session == null || !session.isOpen()) {
+                long start = MetricsRegistry.start();
+                session = new BookSession(GnuCashApplication.getAppContext(), bookUID);
+                mTransientSessions.put(bookUID, session);
+                MetricsRegistry.stop(LOG_TAG, "open", start);
+            }
+        }
+        session.mReferences++;
+        return session;
+    }
+
+    /**
+     * Releases a session acquired with {@link #acquire(String)}
+     * @param session Session to be released
+     */
+    public synchronized void release(@NonNull BookSession session) {
+        session.mReferences--;
+        if (peek(session.getBookUID()) != session) { //transient or closed while in use
+            if (session.mReferences == 0) {
+                if (mTransientSessions.get(session.getBookUID()) == session)
+                    mTransientSessions.remove(session.getBookUID());
+                session.close();
+            }
+        } else {
+            trim();
+        }
+    }
+
+    /**
+     * Closes the session of a book, e.g. before its database is deleted.
+     * <p>If the session is still acquired by a background component, it is closed when it is released</p>
+     * @param bookUID GUID of the book
+     */
+    public synchronized void close(@NonNull String bookUID) {
+        BookSession session = mSessions.remove(bookUID);
+        if (session == null)
+            session = mTransientSessions.remove(bookUID);
+        if (session != null && session.mReferences == 0)
+            session.close();
+        if (bookUID.equals(mActiveBookUID))
+            mActiveBookUID = null;
+    }
+
+    /**
+     * Counts the records of tables in the database of a book, without opening a session for it.
+     * <p>The database handle of the session is used if the book is open, otherwise the database is opened
+     * read-only just for the query. Use it for statistics about many books, e.g. in the book manager</p>
+     * @param bookUID GUID of the book
+     * @param tableNames Names of the tables
+     * @return Number of records in each table, in the order of {@code tableNames}.
+     * The counts are 0 if the database could not be read
+     */
+    public long[] countRecords(@NonNull String bookUID, @NonNull String... tableNames) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < tableNames.length; i++) {
+            if (i > 0)
+                sql.append(" , ");
+            sql.append("( SELECT COUNT(*) FROM ").append(tableNames[i]).append(" )");
+        }
+
+        BookSession session;
+        synchronized (this) {
+            session = peek(bookUID);
+            if (session == null)
+                session = mTransientSessions.get(bookUID);
+            if (session != null)
+                session.mReferences++;
+        }
+        SQLiteDatabase db = null;
+        long[] counts = new long[tableNames.length];
+        try {
+            if (session != null) {
+                db = session.getDatabase();
+            } else {
+                String path = GnuCashApplication.getAppContext().getDatabasePath(bookUID).getPath();
+                db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+            }
+            Cursor cursor = db.rawQuery(sql.toString(), null);
+            try {
+                if (cursor.moveToFirst()) {
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = cursor.getLong(i);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Error counting records of book " + bookUID, e);
+        } finally {
+            if (session != null)
+                release(session);
+            else if (db != null)
+                db.close();
+        }
+        return counts;
+    }
+
+    /**
+     * Closes all sessions which are not acquired by background components
+     */
+    public synchronized void closeAll() {
+        for (String bookUID : new ArrayList<>(mSessions.keySet())) {
+            close(bookUID);
+        }
+    }
+
+    /**
+     * Returns the GUIDs of the books which are currently open, from the least to the most recently used
+     */
+    public synchronized List<String> getOpenBookUIDs() {
+        return new ArrayList<>(mSessions.keySet());
+    }
+
+    /**
+     * Returns the open session of a book, or opens a new one
+     */
+    private BookSession open(@NonNull String bookUID) {
+        BookSession session = mSessions.get(bookUID);
+        if (session != null && !session.isOpen()) { //the database was closed by someone else
+            mSessions.remove(bookUID);
+            session = null;
+        }
+        if (session == null) {
+            session = mTransientSessions.remove(bookUID);
+            if (session != null && session.isOpen()) { //acquired in the background, keep it open from now on
+                mSessions.put(bookUID, session);
+                return session;
+            }
+        }
+        if (session == null) {
+            long start = MetricsRegistry.start();
+            session = new BookSession(GnuCashApplication.getAppContext(), bookUID);
+            mSessions.put(bookUID, session);
+            MetricsRegistry.stop(LOG_TAG, "open", start);
+            Log.i(LOG_TAG, "Opened book " + bookUID + ", " + mSessions.size() + " books open");
+        }
+        return session;
+    }
+
+    /**
+     * Returns the open session of a book kept by the manager, without changing the access order
+     * @param bookUID GUID of the book
+     * @return Session of the book, or {@code null} if the book is not open or only has a transient session
+     */
+    @Nullable
+    private BookSession peek(@NonNull String bookUID) {
+        //iterating does not change the access order, unlike get()
+        for (Map.Entry<String, BookSession> entry : mSessions.entrySet()) {
+            if (entry.getKey().equals(bookUID))
+                return entry.getValue().isOpen() ? entry.getValue() : null;
+        }
+        return null;
+    }
+
+    /**
+     * Closes the least recently used sessions which are neither active nor acquired,
+     * until at most {@link #MAX_OPEN_BOOKS} sessions are open
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, BookSession>> iterator = mSessions.entrySet().iterator();
+        while (mSessions.size() > MAX_OPEN_BOOKS && iterator.hasNext()) {
+            Map.Entry<String, BookSession> entry = iterator.next();
+            BookSession session = entry.getValue();
+            if (entry.getKey().equals(mActiveBookUID) || session.mReferences > 0)
+                continue;
+            iterator.remove();
+            session.close();
+        }
+    }
+}
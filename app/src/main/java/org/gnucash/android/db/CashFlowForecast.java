@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.PricesDbAdapter;
+import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.RecurrenceIterator;
+import org.gnucash.android.model.ScheduledAction;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Projects the balances of accounts into the future from the scheduled transactions of the active book.
+ * <p>The projection starts from the current balances of the accounts. The transactions of the book which are
+ * dated in the future and the occurrences of the enabled scheduled transactions which have not been executed yet
+ * are merged in chronological order, and the running balances are sampled at the requested times.
+ * Nothing is written to the database.</p>
+ * <p>The occurrences of each schedule are enumerated lazily by a {@link RecurrenceIterator}, and the schedules
+ * are merged with a priority queue, so the memory used does not depend on the number of occurrences.
+ * The splits of each template transaction are reduced to amounts per forecast account once,
+ * so each occurrence only costs one addition per affected account.</p>
+ * <p>Balances include sub-accounts and are in the currency of each account, like
+ * {@link AccountsDbAdapter#getAccountBalances(java.util.Collection, long, long)}.
+ * Amounts in other commodities are converted at the current prices.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class CashFlowForecast {
+
+    private static final String LOG_TAG = "CashFlowForecast";
+
+    private final long[] mSampleTimes;
+    private final Map<String, Integer> mRows;
+    private final String[] mCurrencyCodes;
+
+    /**
+     * Forecast balances indexed by row of the account and then by sample
+     */
+    private final BigDecimal[][] mBalances;
+
+    private CashFlowForecast(long[] sampleTimes, Map<String, Integer> rows, String[] currencyCodes,
+                             BigDecimal[][] balances) {
+        mSampleTimes = sampleTimes;
+        mRows = rows;
+        mCurrencyCodes = currencyCodes;
+        mBalances = balances;
+    }
+
+    /**
+     * Computes the forecast balances of accounts in the active book
+     * @param accountUIDs GUIDs of the accounts to forecast
+     * @param sampleTimes Times at which to sample the balances in milliseconds since the epoch, in ascending order.
+     *                    Samples before the current time have the current balance
+     * @return Forecast balances
+     */
+    public static CashFlowForecast compute(@NonNull List<String> accountUIDs, @NonNull long[] sampleTimes) {
+        long start = MetricsRegistry.start();
+        long now = System.currentTimeMillis();
+        long horizon = sampleTimes.length == 0 ? now : sampleTimes[sampleTimes.length - 1];
+        SQLiteDatabase db = GnuCashApplication.getActiveDb();
+
+        Accounts accounts = new Accounts(db, accountUIDs, now);
+        Map<String, Money> currentBalances = AccountsDbAdapter.getInstance().getAccountBalances(accountUIDs, -1, now);
+        BigDecimal[] running = new BigDecimal[accountUIDs.size()];
+        for (int row = 0; row < running.length; row++) {
+            Money balance = currentBalances.get(accountUIDs.get(row));
+            running[row] = balance == null ? BigDecimal.ZERO : balance.asBigDecimal();
+        }
+
+        PriorityQueue<Source> queue = new PriorityQueue<>(16, Source.TIME_ORDER);
+        Map<String, Transaction> templates = TransactionsDbAdapter.getInstance().getAllScheduledTransactions();
+        for (ScheduledAction scheduledAction : ScheduledActionDbAdapter.getInstance().getAllEnabledScheduledActions()) {
+            if (scheduledAction.getActionType() != ScheduledAction.ActionType.TRANSACTION)
+                continue;
+            Transaction template = templates.get(scheduledAction.getActionUID());
+            if (template == null)
+                continue;
+            ScheduleSource source = new ScheduleSource(scheduledAction, accounts.getAmounts(template.getSplits()), horizon);
+            if (!source.mRows.isEmpty() && source.advance())
+                queue.add(source);
+        }
+
+        Cursor cursor = db.query("trans_split_acct",
+                new String[]{AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID,
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE,
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM,
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM,
+                        TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP},
+                TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0 AND "
+                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " > ? AND "
+                        + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " <= ?",
+                new String[]{String.valueOf(now), String.valueOf(horizon)},
+                null, null, TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " ASC");
+        BigDecimal[][] balances = new BigDecimal[running.length][sampleTimes.length];
+        try {
+            CursorSource transactions = new CursorSource(cursor, accounts);
+            if (transactions.advance())
+                queue.add(transactions);
+
+            int sample = 0;
+            while (sample < sampleTimes.length) {
+                Source next = queue.peek();
+                if (next == null || next.mTime > sampleTimes[sample]) {
+                    for (int row = 0; row < running.length; row++) {
+                        balances[row][sample] = running[row];
+                    }
+                    sample++;
+                    continue;
+                }
+                queue.poll();
+                next.apply(running);
+                if (next.advance())
+                    queue.add(next);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Map<String, Integer> rows = new HashMap<>(accountUIDs.size() * 2);
+        for (int row = 0; row < accountUIDs.size(); row++) {
+            rows.put(accountUIDs.get(row), row);
+        }
+        MetricsRegistry.stop(LOG_TAG, "compute", start);
+        return new CashFlowForecast(Arrays.copyOf(sampleTimes, sampleTimes.length), rows,
+                accounts.mCurrencyCodes, balances);
+    }
+
+    /**
+     * Returns the times at which the balances were sampled
+     */
+    public long[] getSampleTimes() {
+        return Arrays.copyOf(mSampleTimes, mSampleTimes.length);
+    }
+
+    /**
+     * Returns the forecast balance of an account
+     * @param accountUID GUID of one of the forecast accounts
+     * @param sample Index of the sample time
+     * @return Balance of the account at the sample time, including sub-accounts
+     */
+    public Money getBalance(@NonNull String accountUID, int sample) {
+        int row = getRow(accountUID);
+        return new Money(mBalances[row][sample], Commodity.getInstance(mCurrencyCodes[row]));
+    }
+
+    /**
+     * Returns the forecast balances of an account at all sample times
+     * @param accountUID GUID of one of the forecast accounts
+     * @return Balances in the currency of the account, as floating point values for charting
+     */
+    public float[] getBalanceSeries(@NonNull String accountUID) {
+        BigDecimal[] balances = mBalances[getRow(accountUID)];
+        float[] series = new float[balances.length];
+        for (int sample = 0; sample < balances.length; sample++) {
+            series[sample] = balances[sample].floatValue();
+        }
+        return series;
+    }
+
+    private int getRow(String accountUID) {
+        Integer row = mRows.get(accountUID);
+        if (row == null)
+            throw new IllegalArgumentException("Account " + accountUID + " is not part of the forecast");
+        return row;
+    }
+
+    /**
+     * Maps amounts of splits to the forecast accounts which they affect
+     */
+    private static final class Accounts {
+        private final Map<String, String> mParents = new HashMap<>();
+        private final Map<String, String> mCommodityUIDs = new HashMap<>();
+        private final Map<String, Integer> mRows = new HashMap<>();
+        private final Map<String, int[]> mTargets = new HashMap<>();
+        private final String[] mCurrencyCodes;
+        private final String[] mTargetCommodityUIDs;
+        private final int[] mScales;
+        private final boolean[] mNegate;
+        private final PriceIndex mPriceIndex;
+        private final long mTimeMillis;
+
+        Accounts(SQLiteDatabase db, List<String> accountUIDs, long timeMillis) {
+            mTimeMillis = timeMillis;
+            mPriceIndex = PricesDbAdapter.getInstance().getPriceIndex();
+            for (int row = 0; row < accountUIDs.size(); row++) {
+                mRows.put(accountUIDs.get(row), row);
+            }
+            mCurrencyCodes = new String[accountUIDs.size()];
+            mTargetCommodityUIDs = new String[accountUIDs.size()];
+            mScales = new int[accountUIDs.size()];
+            mNegate = new boolean[accountUIDs.size()];
+
+            Cursor cursor = db.query(AccountEntry.TABLE_NAME,
+                    new String[]{AccountEntry.COLUMN_UID, AccountEntry.COLUMN_PARENT_ACCOUNT_UID,
+                            AccountEntry.COLUMN_COMMODITY_UID, AccountEntry.COLUMN_CURRENCY, AccountEntry.COLUMN_TYPE},
+                    null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    String accountUID = cursor.getString(0);
+                    mParents.put(accountUID, cursor.getString(1));
+                    mCommodityUIDs.put(accountUID, cursor.getString(2));
+                    Integer row = mRows.get(accountUID);
+                    if (row == null)
+                        continue;
+                    mCurrencyCodes[row] = cursor.getString(3);
+                    mTargetCommodityUIDs[row] = cursor.getString(2);
+                    mScales[row] = Commodity.getInstance(cursor.getString(3)).getSmallestFractionDigits();
+                    mNegate[row] = !AccountType.valueOf(cursor.getString(4)).hasDebitNormalBalance();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * Returns the rows of the forecast accounts which are {@code accountUID} or one of its ancestors
+         */
+        int[] getTargets(String accountUID) {
+            int[] targets = mTargets.get(accountUID);
+            if (targets == null) {
+                List<Integer> rows = new ArrayList<>();
+                for (String uid = accountUID; uid != null; uid = mParents.get(uid)) {
+                    Integer row = mRows.get(uid);
+                    if (row != null)
+                        rows.add(row);
+                }
+                targets = new int[rows.size()];
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i] = rows.get(i);
+                }
+                mTargets.put(accountUID, targets);
+            }
+            return targets;
+        }
+
+        /**
+         * Adds the amount of a split to the balances of the forecast accounts which it affects
+         * @param accountUID GUID of the account of the split
+         * @param debitAmount Quantity of the split, positive for debits and negative for credits
+         * @param balances Balances indexed by row of the forecast account
+         */
+        void add(String accountUID, BigDecimal debitAmount, BigDecimal[] balances) {
+            if (debitAmount.signum() == 0)
+                return;
+            String commodityUID = mCommodityUIDs.get(accountUID);
+            for (int row : getTargets(accountUID)) {
+                BigDecimal amount = commodityUID.equals(mTargetCommodityUIDs[row]) ? debitAmount
+                        : mPriceIndex.convert(debitAmount, commodityUID, mTargetCommodityUIDs[row], mTimeMillis, mScales[row]);
+                if (amount == null) //no price, ignored like in the current balances
+                    continue;
+                BigDecimal balance = balances[row] == null ? BigDecimal.ZERO : balances[row];
+                balances[row] = mNegate[row] ? balance.subtract(amount) : balance.add(amount);
+            }
+        }
+
+        /**
+         * Returns the total amounts of {@code splits} for each forecast account
+         * @return Amounts indexed by row of the forecast account, {@code null} for accounts which are not affected
+         */
+        BigDecimal[] getAmounts(List<Split> splits) {
+            BigDecimal[] amounts = new BigDecimal[mCurrencyCodes.length];
+            for (Split split : splits) {
+                if (!mParents.containsKey(split.getAccountUID()))
+                    continue;
+                BigDecimal quantity = split.getQuantity().asBigDecimal().abs();
+                add(split.getAccountUID(), split.getType() == TransactionType.DEBIT ? quantity : quantity.negate(), amounts);
+            }
+            return amounts;
+        }
+    }
+
+    /**
+     * Time-ordered source of changes to the balances
+     */
+    private static abstract class Source {
+        static final Comparator<Source> TIME_ORDER = new Comparator<Source>() {
+            @Override
+            public int compare(Source lhs, Source rhs) {
+                return lhs.mTime < rhs.mTime ? -1 : (lhs.mTime == rhs.mTime ? 0 : 1);
+            }
+        };
+
+        /**
+         * Time of the current change
+         */
+        long mTime;
+
+        /**
+         * Applies the current change to the balances
+         */
+        abstract void apply(BigDecimal[] balances);
+
+        /**
+         * Moves to the next change and updates {@link #mTime}
+         * @return {@code false} if there are no more changes
+         */
+        abstract boolean advance();
+    }
+
+    /**
+     * Occurrences of a scheduled transaction which have not been executed yet
+     */
+    private static final class ScheduleSource extends Source {
+        private final RecurrenceIterator mOccurrences;
+        private final int mTotalPlannedExecutions;
+        private final List<Integer> mRows = new ArrayList<>();
+        private final List<BigDecimal> mAmounts = new ArrayList<>();
+
+        ScheduleSource(ScheduledAction scheduledAction, BigDecimal[] amounts, long horizon) {
+            mOccurrences = scheduledAction.getRecurrence().iterator(scheduledAction.getExecutionCount(), horizon);
+            mTotalPlannedExecutions = scheduledAction.getTotalPlannedExecutionCount();
+            for (int row = 0; row < amounts.length; row++) {
+                if (amounts[row] != null && amounts[row].signum() != 0) {
+                    mRows.add(row);
+                    mAmounts.add(amounts[row]);
+                }
+            }
+        }
+
+        @Override
+        void apply(BigDecimal[] balances) {
+            for (int i = 0; i < mRows.size(); i++) {
+                int row = mRows.get(i);
+                balances[row] = balances[row].add(mAmounts.get(i));
+            }
+        }
+
+        @Override
+        boolean advance() {
+            if (!mOccurrences.hasNext())
+                return false;
+            if (mTotalPlannedExecutions > 0 && mOccurrences.nextIndex() >= mTotalPlannedExecutions)
+                return false;
+            mTime = mOccurrences.next();
+            return true;
+        }
+    }
+
+    /**
+     * Splits of future transactions in the book, read from a cursor ordered by time
+     */
+    private static final class CursorSource extends Source {
+        private final Cursor mCursor;
+        private final Accounts mAccounts;
+
+        CursorSource(Cursor cursor, Accounts accounts) {
+            mCursor = cursor;
+            mAccounts = accounts;
+        }
+
+        @Override
+        void apply(BigDecimal[] balances) {
+            BigDecimal quantity = Money.getBigDecimal(mCursor.getLong(2), mCursor.getLong(3)).abs();
+            boolean isDebit = TransactionType.DEBIT.name().equals(mCursor.getString(1));
+            mAccounts.add(mCursor.getString(0), isDebit ? quantity : quantity.negate(), balances);
+        }
+
+        @Override
+        boolean advance() {
+            if (!mCursor.moveToNext())
+                return false;
+            mTime = mCursor.getLong(4);
+            return true;
+        }
+    }
+}
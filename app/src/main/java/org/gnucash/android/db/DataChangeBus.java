@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Distributes {@link DataChangeEvent}s about changes made through the database adapters.
+ * <p>Writes are collected per thread. A write made outside a database transaction is published immediately,
+ * while writes made inside a transaction are coalesced and published as one event when the outermost
+ * transaction ends (see {@link DatabaseAdapter#endTransaction()}).
+ * Transactions opened directly on a database must be ended with {@link #endTransaction(SQLiteDatabase)},
+ * or followed by {@link #discard()} if the database is not observed.
+ * An event is also published for transactions which were rolled back, so listeners may occasionally
+ * reload data which did not change.</p>
+ * <p>Listeners are called on the thread which made the changes, after the changes are visible to other
+ * connections. They should return quickly and move any work to another thread</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class DataChangeBus {
+
+    private static final String LOG_TAG = "DataChangeBus";
+
+    private static final DataChangeBus sInstance = new DataChangeBus();
+
+    /**
+     * Listener for changes to the database
+     */
+    public interface Listener {
+        /**
+         * Called after changes were written to the database
+         * @param event Description of the changes
+         */
+        void onDataChanged(@NonNull DataChangeEvent event);
+    }
+
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Changes of the current thread which have not been published yet
+     */
+    private final ThreadLocal<DataChangeEvent> mPendingChanges = new ThreadLocal<>();
+
+    private DataChangeBus() {
+        //singleton
+    }
+
+    /**
+     * Returns the application-wide change bus
+     */
+    public static DataChangeBus getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Registers a listener for change events. Registering a listener twice has no effect
+     */
+    public void register(@NonNull Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Unregisters a listener so that it receives no further events
+     */
+    public void unregister(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns {@code true} if at least one listener is registered
+     */
+    public boolean hasListeners() {
+        return !mListeners.isEmpty();
+    }
+
+    /**
+     * Records a change to the database.
+     * <p>The change is published immediately if {@code db} has no transaction open on the current thread,
+     * otherwise it is published with the other changes of the transaction by {@link #flush(SQLiteDatabase)}</p>
+     * @param db Database which was modified
+     * @param table Name of the modified table
+     * @param uids GUIDs of the modified records, or {@code null} if unknown
+     * @param accountUIDs GUIDs of the accounts whose transactions or balances may have changed,
+     *                    or {@code null} if any account may be affected
+     */
+    public void publish(@NonNull SQLiteDatabase db, @NonNull String table,
+                        @Nullable Collection<String> uids, @Nullable Collection<String> accountUIDs) {
+        DataChangeEvent pending = mPendingChanges.get();
+        if (pending == null) {
+            pending = new DataChangeEvent();
+            mPendingChanges.set(pending);
+        }
+        pending.add(table, uids, accountUIDs);
+        flush(db);
+    }
+
+    /**
+     * Publishes the pending changes of the current thread, unless a transaction is still open on {@code db}
+     * @param db Database which was modified
+     */
+    public void flush(@NonNull SQLiteDatabase db) {
+        if (db.inTransaction())
+            return;
+
+        DataChangeEvent event = mPendingChanges.get();
+        if (event == null || event.isEmpty())
+            return;
+        mPendingChanges.remove();
+
+        Log.d(LOG_TAG, "Publishing " + event);
+        for (Listener listener : mListeners) {
+            try {
+                listener.onDataChanged(event);
+            } catch (RuntimeException e) {
+                //the changes are already committed, a failing listener must not fail the write
+                Log.e(LOG_TAG, "Error notifying listener of data change", e);
+                Crashlytics.logException(e);
+            }
+        }
+    }
+
+    /**
+     * Ends a transaction which was opened directly on {@code db} and publishes the pending changes
+     * once the outermost transaction has ended, like {@link DatabaseAdapter#endTransaction()}
+     * @param db Database of the transaction
+     */
+    public void endTransaction(@NonNull SQLiteDatabase db) {
+        db.endTransaction();
+        flush(db);
+    }
+
+    /**
+     * Drops the pending changes of the current thread without publishing them.
+     * <p>Used after writing to a database which is not open in the application,
+     * e.g. while it is being created or migrated, whose changes must not reach the listeners.
+     * Must not be called while a transaction of an observed database is open on the current thread</p>
+     */
+    public void discard() {
+        mPendingChanges.remove();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Describes the changes made to the database by one database transaction, or by one statement outside a transaction.
+ * <p>An event lists the tables which were modified, the GUIDs of the modified records and the GUIDs of the
+ * accounts whose transactions or balances may have changed. When a write cannot be attributed to specific
+ * records or accounts (e.g. deleting all records of a table), the event is marked as affecting all of them.</p>
+ * <p>Events are published by the database adapters through the {@link DataChangeBus}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class DataChangeEvent {
+
+    private final Set<String> mTables = new HashSet<>();
+    private final Set<String> mUIDs = new HashSet<>();
+    private final Set<String> mAccountUIDs = new HashSet<>();
+    private boolean mAllRecords;
+    private boolean mAllAccounts;
+
+    DataChangeEvent() {
+        //events are created by the DataChangeBus
+    }
+
+    /**
+     * Adds a change to this event
+     * @param table Name of the modified table
+     * @param uids GUIDs of the modified records, or {@code null} if unknown
+     * @param accountUIDs GUIDs of the affected accounts, or {@code null} if any account may be affected
+     */
+    void add(@NonNull String table, @Nullable Collection<String> uids, @Nullable Collection<String> accountUIDs) {
+        mTables.add(table);
+        if (uids == null)
+            mAllRecords = true;
+        else
+            mUIDs.addAll(uids);
+
+        if (accountUIDs == null)
+            mAllAccounts = true;
+        else
+            mAccountUIDs.addAll(accountUIDs);
+    }
+
+    /**
+     * Returns {@code true} if the event contains no changes
+     */
+    boolean isEmpty() {
+        return mTables.isEmpty();
+    }
+
+    /**
+     * Returns the names of the modified tables. See {@link DatabaseSchema}
+     */
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(mTables);
+    }
+
+    /**
+     * Returns {@code true} if the table {@code tableName} was modified
+     */
+    public boolean affectsTable(@NonNull String tableName) {
+        return mTables.contains(tableName);
+    }
+
+    /**
+     * Returns {@code true} if any of the tables was modified
+     */
+    public boolean affectsAnyTable(@NonNull String... tableNames) {
+        for (String tableName : tableNames) {
+            if (mTables.contains(tableName))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the record with GUID {@code uid} may have been modified
+     */
+    public boolean affectsRecord(@NonNull String uid) {
+        return mAllRecords || mUIDs.contains(uid);
+    }
+
+    /**
+     * Returns {@code true} if the transactions or the balance of the account may have changed.
+     * <p>Changes of sub-accounts are not propagated to their parent accounts</p>
+     */
+    public boolean affectsAccount(@NonNull String accountUID) {
+        return mAllAccounts || mAccountUIDs.contains(accountUID);
+    }
+
+    /**
+     * Returns the GUIDs of the modified records.
+     * Only complete if {@link #isAllRecords()} returns {@code false}
+     */
+    public Set<String> getUIDs() {
+        return Collections.unmodifiableSet(mUIDs);
+    }
+
+    /**
+     * Returns the GUIDs of the accounts whose transactions or balances may have changed.
+     * Only complete if {@link #isAllAccounts()} returns {@code false}
+     */
+    public Set<String> getAccountUIDs() {
+        return Collections.unmodifiableSet(mAccountUIDs);
+    }
+
+    /**
+     * Returns {@code true} if some changes could not be attributed to specific records
+     */
+    public boolean isAllRecords() {
+        return mAllRecords;
+    }
+
+    /**
+     * Returns {@code true} if some changes could not be attributed to specific accounts
+     */
+    public boolean isAllAccounts() {
+        return mAllAccounts;
+    }
+
+    @Override
+    public String toString() {
+        return "DataChangeEvent{tables=" + mTables
+                + ", uids=" + (mAllRecords ? "all" : mUIDs.size())
+                + ", accounts=" + (mAllAccounts ? "all" : mAccountUIDs.size()) + "}";
+    }
+}
@@ -18,6 +18,7 @@ package org.gnucash.android.db;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.support.annotation.NonNull;
 import android.support.v4.content.AsyncTaskLoader;
 import android.support.v4.content.Loader;
 
@@ -28,7 +29,9 @@ import org.gnucash.android.db.adapter.DatabaseAdapter;
  * In order to use this class, you must subclass it and implement the
  * {@link #loadInBackground()} method to load the particular records from the database.
  * Ideally, the database has {@link DatabaseAdapter} which is used for managing access to the
- * records from the database
+ * records from the database.
+ * <p>The loader reloads its data when changes which affect it are published to the {@link DataChangeBus},
+ * see {@link #isAffectedBy(DataChangeEvent)}</p>
  * @author Ngewi Fet <ngewif@gmail.com>
  * @see DatabaseAdapter
  */
@@ -50,6 +53,19 @@ public abstract class DatabaseCursorLoader extends AsyncTaskLoader<Cursor> {
 	 * your cursor using {@link #registerContentObserver(Cursor)}
 	 */
 	protected final Loader.ForceLoadContentObserver mObserver;
+
+	/**
+	 * Listener which triggers a reload when the data of the loader changes
+	 */
+	private final DataChangeBus.Listener mDataChangeListener = new DataChangeBus.Listener() {
+		@Override
+		public void onDataChanged(@NonNull DataChangeEvent event) {
+			if (isAffectedBy(event)) {
+				//the observer forwards the change to the main thread
+				mObserver.dispatchChange(false);
+			}
+		}
+	};
 	
 	/**
 	 * Constructor
@@ -73,6 +89,18 @@ public abstract class DatabaseCursorLoader extends AsyncTaskLoader<Cursor> {
 	protected void registerContentObserver(Cursor cursor){
 		cursor.registerContentObserver(mObserver);
 	}
+
+	/**
+	 * Returns {@code true} if the data of this loader has to be reloaded because of the changes in {@code event}.
+	 * <p>By default, the loader is affected by all changes to the table of its {@link #mDatabaseAdapter}.
+	 * Subclasses which load data of several tables or only of some accounts should override this method</p>
+	 * @param event Changes made to the database
+	 * @return {@code true} if the loader should reload, {@code false} otherwise
+	 */
+	protected boolean isAffectedBy(@NonNull DataChangeEvent event) {
+		DatabaseAdapter databaseAdapter = mDatabaseAdapter;
+		return databaseAdapter != null && event.affectsTable(databaseAdapter.getTableName());
+	}
 	
 	@Override
 	public void deliverResult(Cursor data) {
@@ -97,6 +125,7 @@ public abstract class DatabaseCursorLoader extends AsyncTaskLoader<Cursor> {
 
 	@Override
 	protected void onStartLoading() {
+		DataChangeBus.getInstance().register(mDataChangeListener);
 		if (mCursor != null){
 			deliverResult(mCursor);
 		}
@@ -127,6 +156,7 @@ public abstract class DatabaseCursorLoader extends AsyncTaskLoader<Cursor> {
 		super.onReset();
 		
 		onStopLoading();
+		DataChangeBus.getInstance().unregister(mDataChangeListener);
 
         // At this point we can release the resources associated with 'mCursor'
         // if needed.
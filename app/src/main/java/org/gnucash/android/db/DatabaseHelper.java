@@ -22,15 +22,11 @@ import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.crashlytics.android.Crashlytics;
-
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.model.Commodity;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -44,6 +40,8 @@ import static org.gnucash.android.db.DatabaseSchema.RecurrenceEntry;
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionFingerprintEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionSummaryEntry;
 /**
  * Helper class for managing the SQLite database.
  * Creates the database and handles upgrades
@@ -176,7 +174,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + PriceEntry.COLUMN_VALUE_DENOM     + " integer not null, "
             + PriceEntry.COLUMN_CREATED_AT      + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
             + PriceEntry.COLUMN_MODIFIED_AT     + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-            + "UNIQUE (" + PriceEntry.COLUMN_COMMODITY_UID + ", " + PriceEntry.COLUMN_CURRENCY_UID + ") ON CONFLICT REPLACE, "
+            + "UNIQUE (" + PriceEntry.COLUMN_COMMODITY_UID + ", " + PriceEntry.COLUMN_CURRENCY_UID + ", " + PriceEntry.COLUMN_DATE + ") ON CONFLICT REPLACE, "
             + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_COMMODITY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE, "
             + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_CURRENCY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE "
             + ");" + createUpdatedAtTrigger(PriceEntry.TABLE_NAME);
@@ -221,6 +219,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + RecurrenceEntry.COLUMN_MODIFIED_AT    + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP); "
             + createUpdatedAtTrigger(RecurrenceEntry.TABLE_NAME);
 
+    /**
+     * Database opened by this helper, which is at the current schema version
+     */
+    private volatile SQLiteDatabase mOpenDatabase;
 
     /**
 	 * Constructor
@@ -229,9 +231,228 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 	 */
 	public DatabaseHelper(Context context, String databaseName){
 		super(context, databaseName, null, DatabaseSchema.DATABASE_VERSION);
-
 	}
 
+    /**
+     * Creates a helper for the database of a new book.
+     * <p>The database is copied from the {@link DatabaseTemplate} if the template is ready,
+     * which is much faster than creating the database tables</p>
+     * @param context Application context
+     * @param bookUID GUID of the new book, which is the name of its database
+     * @return Database helper
+     */
+    public static DatabaseHelper create(Context context, String bookUID) {
+        DatabaseTemplate.install(context, bookUID);
+        return new DatabaseHelper(context, bookUID);
+    }
+
+    /**
+     * SQL statement to create the table of pre-computed transaction summaries.
+     * <p>There is intentionally no foreign key to the transactions table: summary rows are removed
+     * by the triggers created in {@link #createTransactionSummaryTriggers(SQLiteDatabase)}</p>
+     */
+    static final String TRANSACTION_SUMMARIES_TABLE_CREATE = "CREATE TABLE " + TransactionSummaryEntry.TABLE_NAME + " ("
+            + TransactionSummaryEntry.COLUMN_TRANSACTION_UID    + " varchar(255) primary key, "
+            + TransactionSummaryEntry.COLUMN_ACCOUNT_UID        + " varchar(255) not null, "
+            + TransactionSummaryEntry.COLUMN_BALANCE            + " real not null default 0, "
+            + TransactionSummaryEntry.COLUMN_SPLIT_COUNT        + " integer not null default 0, "
+            + TransactionSummaryEntry.COLUMN_CURRENCY_COUNT     + " integer not null default 0"
+            + ")";
+
+    /**
+     * Returns an SQL statement which computes the summaries of transactions from their splits.
+     * <p>A split without memo is preferred as representative account of the transaction:
+     * an 'a' is prepended to the account UID of splits without memo and a 'b' to the others,
+     * and the prefix is stripped again from the minimum of these values</p>
+     * @param where Condition on the splits to aggregate, or {@code null} for all splits
+     * @return SQL SELECT statement with columns in the order of the transaction summaries table
+     */
+    static String selectTransactionSummaries(String where){
+        return "SELECT " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " , "
+                + "SUBSTR ( MIN ( ( CASE WHEN IFNULL ( " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_MEMO
+                + " , '' ) == '' THEN 'a' ELSE 'b' END ) || " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " ) , 2 ) , "
+                + "TOTAL ( ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_NUM + " ELSE - "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_NUM + " END ) * 1.0 / "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_VALUE_DENOM + " ) , "
+                + "COUNT (*) , "
+                + "COUNT ( DISTINCT " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " ) "
+                + "FROM " + SplitEntry.TABLE_NAME + " , " + AccountEntry.TABLE_NAME + " ON "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID
+                + (where == null ? "" : " WHERE " + where)
+                + " GROUP BY " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID;
+    }
+
+    /**
+     * Returns the trigger body which recomputes the summaries of the transactions with GUIDs in {@code transactionUIDs}.
+     * Summaries of transactions which no longer exist or have no splits are removed
+     * @param transactionUIDs SQL list or sub-query of transaction GUIDs, including the parentheses
+     * @return SQL statements for the trigger body
+     */
+    private static String refreshTransactionSummaries(String transactionUIDs){
+        return "DELETE FROM " + TransactionSummaryEntry.TABLE_NAME
+                + " WHERE " + TransactionSummaryEntry.COLUMN_TRANSACTION_UID + " IN " + transactionUIDs + "; "
+                + "INSERT INTO " + TransactionSummaryEntry.TABLE_NAME + " ( "
+                + TransactionSummaryEntry.COLUMN_TRANSACTION_UID + " , " + TransactionSummaryEntry.COLUMN_ACCOUNT_UID + " , "
+                + TransactionSummaryEntry.COLUMN_BALANCE + " , " + TransactionSummaryEntry.COLUMN_SPLIT_COUNT + " , "
+                + TransactionSummaryEntry.COLUMN_CURRENCY_COUNT + " ) "
+                + selectTransactionSummaries(SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " IN " + transactionUIDs
+                    + " AND " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " IN ( SELECT "
+                    + TransactionEntry.COLUMN_UID + " FROM " + TransactionEntry.TABLE_NAME + " )") + "; ";
+    }
+
+    /**
+     * Creates the transaction summaries table, its triggers and the index they rely on,
+     * and computes the summaries of all existing transactions
+     * @param db Database
+     */
+    static void createTransactionSummaryTable(SQLiteDatabase db){
+        db.execSQL("CREATE INDEX IF NOT EXISTS '" + SplitEntry.INDEX_TRANSACTION_UID + "' ON "
+                + SplitEntry.TABLE_NAME + "(" + SplitEntry.COLUMN_TRANSACTION_UID + ")");
+        db.execSQL(TRANSACTION_SUMMARIES_TABLE_CREATE);
+        db.execSQL("INSERT INTO " + TransactionSummaryEntry.TABLE_NAME + " " + selectTransactionSummaries(null));
+        createTransactionSummaryTriggers(db);
+    }
+
+    /**
+     * SQL statement to create the table of transaction fingerprints.
+     * <p>Like the transaction summaries, the table has no foreign keys: the rows are maintained
+     * by the triggers created in {@link #createTransactionFingerprintTriggers(SQLiteDatabase)}</p>
+     */
+    static final String TRANSACTION_FINGERPRINTS_TABLE_CREATE = "CREATE TABLE IF NOT EXISTS " + TransactionFingerprintEntry.TABLE_NAME + " ("
+            + TransactionFingerprintEntry.COLUMN_SPLIT_UID          + " varchar(255) primary key, "
+            + TransactionFingerprintEntry.COLUMN_TRANSACTION_UID    + " varchar(255) not null, "
+            + TransactionFingerprintEntry.COLUMN_ACCOUNT_UID        + " varchar(255) not null, "
+            + TransactionFingerprintEntry.COLUMN_DAY                + " integer not null, "
+            + TransactionFingerprintEntry.COLUMN_AMOUNT_NUM         + " integer not null, "
+            + TransactionFingerprintEntry.COLUMN_AMOUNT_DENOM       + " integer not null, "
+            + TransactionFingerprintEntry.COLUMN_PAYEE              + " text not null"
+            + ")";
+
+    /**
+     * Returns an SQL statement which computes the fingerprints of the splits of non-template transactions
+     * @param where Condition on the splits, or {@code null} for all splits
+     * @return SQL SELECT statement with columns in the order of the transaction fingerprints table
+     */
+    static String selectTransactionFingerprints(String where){
+        return "SELECT " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_UID + " , "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " , "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " / 86400000 , "
+                + "( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END ) , "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM + " , "
+                + "LOWER ( TRIM ( IFNULL ( " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION + " , '' ) ) ) "
+                + "FROM " + SplitEntry.TABLE_NAME + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0"
+                + (where == null ? "" : " AND " + where);
+    }
+
+    /**
+     * Returns the trigger statement which recomputes the fingerprints of the splits matching {@code where}
+     */
+    private static String refreshTransactionFingerprints(String where){
+        return "INSERT OR REPLACE INTO " + TransactionFingerprintEntry.TABLE_NAME + " "
+                + selectTransactionFingerprints(where) + "; ";
+    }
+
+    /**
+     * Creates the transaction fingerprints table, its triggers and index,
+     * and computes the fingerprints of all existing splits
+     * @param db Database
+     */
+    static void createTransactionFingerprintTable(SQLiteDatabase db){
+        db.execSQL(TRANSACTION_FINGERPRINTS_TABLE_CREATE);
+        db.execSQL("CREATE INDEX IF NOT EXISTS '" + TransactionFingerprintEntry.INDEX_FINGERPRINT + "' ON "
+                + TransactionFingerprintEntry.TABLE_NAME + "(" + TransactionFingerprintEntry.COLUMN_ACCOUNT_UID + ", "
+                + TransactionFingerprintEntry.COLUMN_AMOUNT_NUM + ", " + TransactionFingerprintEntry.COLUMN_DAY + ")");
+        db.execSQL(refreshTransactionFingerprints(null));
+        createTransactionFingerprintTriggers(db);
+    }
+
+    /**
+     * Creates the triggers which keep the transaction fingerprints up to date
+     * whenever splits or the dates and descriptions of transactions change.
+     * <p>Splits replaced with INSERT OR REPLACE do not fire the delete trigger,
+     * so the insert trigger replaces their fingerprints as well</p>
+     * @param db Database
+     */
+    static void createTransactionFingerprintTriggers(SQLiteDatabase db){
+        String splitUID = SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_UID;
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_fingerprint_split_insert_trigger"
+                + " AFTER INSERT ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + refreshTransactionFingerprints(splitUID + " = NEW." + SplitEntry.COLUMN_UID)
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_fingerprint_split_update_trigger"
+                + " AFTER UPDATE OF " + SplitEntry.COLUMN_TYPE + " , " + SplitEntry.COLUMN_QUANTITY_NUM + " , "
+                + SplitEntry.COLUMN_QUANTITY_DENOM + " , " + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " , " + SplitEntry.COLUMN_UID
+                + " ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + "DELETE FROM " + TransactionFingerprintEntry.TABLE_NAME + " WHERE "
+                + TransactionFingerprintEntry.COLUMN_SPLIT_UID + " = OLD." + SplitEntry.COLUMN_UID + "; "
+                + refreshTransactionFingerprints(splitUID + " = NEW." + SplitEntry.COLUMN_UID)
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_fingerprint_split_delete_trigger"
+                + " AFTER DELETE ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + "DELETE FROM " + TransactionFingerprintEntry.TABLE_NAME + " WHERE "
+                + TransactionFingerprintEntry.COLUMN_SPLIT_UID + " = OLD." + SplitEntry.COLUMN_UID + "; "
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_fingerprint_transaction_update_trigger"
+                + " AFTER UPDATE OF " + TransactionEntry.COLUMN_TIMESTAMP + " , " + TransactionEntry.COLUMN_DESCRIPTION
+                + " ON " + TransactionEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + refreshTransactionFingerprints(SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                    + " = NEW." + TransactionEntry.COLUMN_UID)
+                + "END");
+    }
+
+    /**
+     * Creates the index of splits on (account, reconcile state) used for the reconciliation of accounts
+     * @param db Database
+     */
+    static void createSplitReconcileStateIndex(SQLiteDatabase db){
+        db.execSQL("CREATE INDEX IF NOT EXISTS '" + SplitEntry.INDEX_ACCOUNT_RECONCILE_STATE + "' ON "
+                + SplitEntry.TABLE_NAME + "(" + SplitEntry.COLUMN_ACCOUNT_UID + ", " + SplitEntry.COLUMN_RECONCILE_STATE + ")");
+    }
+
+    /**
+     * Creates the triggers which keep the transaction summaries table up to date
+     * whenever splits, transactions or account currencies change
+     * @param db Database
+     */
+    static void createTransactionSummaryTriggers(SQLiteDatabase db){
+        String transactionUID = SplitEntry.COLUMN_TRANSACTION_UID;
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_summary_split_insert_trigger"
+                + " AFTER INSERT ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + refreshTransactionSummaries("( NEW." + transactionUID + " )")
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_summary_split_update_trigger"
+                + " AFTER UPDATE OF " + SplitEntry.COLUMN_TYPE + " , " + SplitEntry.COLUMN_VALUE_NUM + " , "
+                + SplitEntry.COLUMN_VALUE_DENOM + " , " + SplitEntry.COLUMN_MEMO + " , "
+                + SplitEntry.COLUMN_ACCOUNT_UID + " , " + transactionUID
+                + " ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + refreshTransactionSummaries("( OLD." + transactionUID + " , NEW." + transactionUID + " )")
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_summary_split_delete_trigger"
+                + " AFTER DELETE ON " + SplitEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + refreshTransactionSummaries("( OLD." + transactionUID + " )")
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_summary_transaction_delete_trigger"
+                + " AFTER DELETE ON " + TransactionEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + "DELETE FROM " + TransactionSummaryEntry.TABLE_NAME + " WHERE "
+                + TransactionSummaryEntry.COLUMN_TRANSACTION_UID + " = OLD." + TransactionEntry.COLUMN_UID + "; "
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS transaction_summary_account_currency_trigger"
+                + " AFTER UPDATE OF " + AccountEntry.COLUMN_CURRENCY + " ON " + AccountEntry.TABLE_NAME + " FOR EACH ROW BEGIN "
+                + refreshTransactionSummaries("( SELECT " + transactionUID + " FROM " + SplitEntry.TABLE_NAME
+                    + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " = NEW." + AccountEntry.COLUMN_UID + " )")
+                + "END");
+    }
+
     /**
      * Creates an update trigger to update the updated_at column for all records in the database.
      * This has to be run per table, and is currently appended to the create table statement.
@@ -250,9 +471,44 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		createDatabaseTables(db);
+        DataChangeBus.getInstance().discard(); //nothing observes the new database yet
 
 	}
 
+    /**
+     * {@inheritDoc}
+     * <p>When the database is opened, waits for any running {@link DatabaseMigrator} migration to complete.
+     * Once open, the database is returned without locking</p>
+     */
+    @Override
+    public SQLiteDatabase getWritableDatabase() {
+        SQLiteDatabase db = mOpenDatabase;
+        if (db != null && db.isOpen() && !db.isReadOnly())
+            return db;
+        synchronized (DatabaseMigrator.LOCK) {
+            db = super.getWritableDatabase();
+            mOpenDatabase = db;
+            return db;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>When the database is opened, waits for any running {@link DatabaseMigrator} migration to complete.
+     * Once open, the database is returned without locking</p>
+     */
+    @Override
+    public SQLiteDatabase getReadableDatabase() {
+        SQLiteDatabase db = mOpenDatabase;
+        if (db != null && db.isOpen())
+            return db;
+        synchronized (DatabaseMigrator.LOCK) {
+            db = super.getReadableDatabase();
+            mOpenDatabase = db;
+            return db;
+        }
+    }
+
     @Override
     public void onOpen(SQLiteDatabase db) {
         super.onOpen(db);
@@ -276,36 +532,18 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
 
         while(oldVersion < newVersion){
-            try {
-                Method method = MigrationHelper.class.getDeclaredMethod("upgradeDbToVersion" + (oldVersion+1), SQLiteDatabase.class);
-                Object result = method.invoke(null, db);
-                oldVersion = Integer.parseInt(result.toString());
-
-            } catch (NoSuchMethodException e) {
-                String msg = String.format("Database upgrade method upgradeToVersion%d(SQLiteDatabase) definition not found ", newVersion);
-                Log.e(LOG_TAG, msg, e);
-                Crashlytics.log(msg);
-                Crashlytics.logException(e);
-                throw new RuntimeException(e);
-            }  catch (IllegalAccessException e) {
-                String msg = String.format("Database upgrade to version %d failed. The upgrade method is inaccessible ", newVersion);
-                Log.e(LOG_TAG, msg, e);
-                Crashlytics.log(msg);
-                Crashlytics.logException(e);
-                throw new RuntimeException(e);
-            } catch (InvocationTargetException e){
-                Crashlytics.logException(e.getTargetException());
-                throw new RuntimeException(e.getTargetException());
-            }
+            oldVersion = DatabaseMigrator.runUpgradeStep(db, oldVersion);
         }
+        DataChangeBus.getInstance().discard(); //the database is not open in the application yet
 	}
 
 
     /**
      * Creates the tables in the database and import default commodities into the database
      * @param db Database instance
+     * @see DatabaseTemplate
      */
-    private void createDatabaseTables(SQLiteDatabase db) {
+    static void createDatabaseTables(SQLiteDatabase db) {
         Log.i(LOG_TAG, "Creating database tables");
         db.execSQL(ACCOUNTS_TABLE_CREATE);
         db.execSQL(TRANSACTIONS_TABLE_CREATE);
@@ -355,6 +593,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(createRecurrenceUidIndex);
         db.execSQL(createBudgetAmountUidIndex);
 
+        createTransactionSummaryTable(db);
+        createSplitReconcileStateIndex(db);
+        createTransactionFingerprintTable(db);
+
         try {
             MigrationHelper.importCommodities(db);
         } catch (SAXException | ParserConfigurationException | IOException e) {
@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Upgrades book databases to the current schema version outside of {@link DatabaseHelper}.
+ * <p>{@link DatabaseHelper#onUpgrade(SQLiteDatabase, int, int)} runs all upgrade steps inside the single transaction
+ * opened by {@link android.database.sqlite.SQLiteOpenHelper}, on the thread which first opens the database.
+ * If the process is killed during a long upgrade, all the work is rolled back and starts over on the next launch.</p>
+ * <p>The migrator instead runs each {@code MigrationHelper.upgradeDbToVersionN} step in its own transaction
+ * and commits the new schema version together with the step. The schema version is the checkpoint:
+ * an interrupted upgrade resumes at the first step which was not committed.</p>
+ * <p>The steps to versions 8 and 9 rewrite all transactions and splits. They are run as
+ * {@link MigrationHelper.ChunkedUpgradeStep}s: the rows are copied in chunks of {@link #CHUNK_SIZE} row IDs,
+ * and each chunk is committed together with a checkpoint row in the table {@link #CHECKPOINT_TABLE}.
+ * An interrupted step resumes after the last committed chunk.</p>
+ * <p>Progress is reported after every step, and each step is timed in the {@link MetricsRegistry}.</p>
+ * <p>While a migration is running, {@link DatabaseHelper} waits before opening any book database,
+ * so that the same step is never run twice</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class DatabaseMigrator {
+
+    private static final String LOG_TAG = "DatabaseMigrator";
+
+    /**
+     * Lock held while a database is being migrated
+     */
+    static final Object LOCK = new Object();
+
+    /**
+     * Table holding the progress of an interrupted chunked upgrade step.
+     * It exists only while a chunked step is running, and contains a single row
+     */
+    static final String CHECKPOINT_TABLE = "migration_checkpoint";
+
+    private static final String COLUMN_TARGET_VERSION   = "target_version";
+    private static final String COLUMN_TABLE_INDEX      = "table_index";
+    private static final String COLUMN_LAST_ROW_ID      = "last_row_id";
+
+    /**
+     * Number of row IDs which are copied in one transaction by chunked upgrade steps
+     */
+    static final int CHUNK_SIZE = 5000;
+
+    /**
+     * Listener for the progress of a migration
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each upgrade step has been committed
+         * @param completedSteps Number of steps completed so far
+         * @param totalSteps Total number of steps of the migration
+         * @param version Database version reached
+         */
+        void onProgress(int completedSteps, int totalSteps, int version);
+    }
+
+    //no instances
+    private DatabaseMigrator(){}
+
+    /**
+     * Checks if the existing database {@code databaseName} has an older schema version than the application
+     * @param context Application context
+     * @param databaseName Name of the book database
+     * @return {@code true} if the database needs to be upgraded, {@code false} otherwise or if it does not exist
+     */
+    public static boolean isMigrationRequired(@NonNull Context context, @NonNull String databaseName) {
+        File databaseFile = context.getDatabasePath(databaseName);
+        if (!databaseFile.exists())
+            return false;
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            return db.getVersion() < DatabaseSchema.DATABASE_VERSION;
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Upgrades the database {@code databaseName} to {@link DatabaseSchema#DATABASE_VERSION}.
+     * <p>This method blocks until the migration is complete and should be called from a background thread</p>
+     * @param context Application context
+     * @param databaseName Name of the book database
+     * @param listener Listener to be notified of the progress, may be {@code null}
+     * @return Number of upgrade steps which were run
+     */
+    public static int migrate(@NonNull Context context, @NonNull String databaseName, @Nullable ProgressListener listener) {
+        synchronized (LOCK) {
+            File databaseFile = context.getDatabasePath(databaseName);
+            if (!databaseFile.exists())
+                return 0;
+
+            long start = MetricsRegistry.start();
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                int version = db.getVersion();
+                int totalSteps = DatabaseSchema.DATABASE_VERSION - version;
+                if (totalSteps > 0)
+                    Log.i(LOG_TAG, "Migrating database " + databaseName + " from version " + version);
+
+                int completedSteps = 0;
+                while (version < DatabaseSchema.DATABASE_VERSION) {
+                    MigrationHelper.ChunkedUpgradeStep chunkedStep = MigrationHelper.getChunkedUpgradeStep(version + 1);
+                    if (chunkedStep != null) {
+                        version = runChunkedUpgradeStep(db, version, chunkedStep);
+                    } else {
+                        db.beginTransaction();
+                        try {
+                            version = runUpgradeStep(db, version);
+                            db.setVersion(version);
+                            db.setTransactionSuccessful();
+                        } finally {
+                            db.endTransaction();
+                            //the database is not open in the application yet, the changes of the step are not published
+                            DataChangeBus.getInstance().discard();
+                        }
+                    }
+                    completedSteps++;
+                    if (listener != null)
+                        listener.onProgress(completedSteps, totalSteps, version);
+                }
+                MetricsRegistry.stop(LOG_TAG, "migrate", start);
+                return completedSteps;
+            } finally {
+                db.close();
+            }
+        }
+    }
+
+    /**
+     * Runs a chunked upgrade step from {@code oldVersion} to the next version, resuming from its checkpoint.
+     * <p>The preparation of the step, each chunk of copied rows and the completion of the step are committed
+     * separately. The checkpoint is updated in the same transaction as the work it records,
+     * and dropped together with committing the new schema version</p>
+     * @param db Database to upgrade
+     * @param oldVersion Current version of the database
+     * @param step Upgrade step to the next version
+     * @return Database version after the step
+     */
+    static int runChunkedUpgradeStep(SQLiteDatabase db, int oldVersion, MigrationHelper.ChunkedUpgradeStep step) {
+        int targetVersion = oldVersion + 1;
+        String stepName = "upgradeDbToVersion" + targetVersion;
+        long start = MetricsRegistry.start();
+
+        long[] checkpoint = readCheckpoint(db, targetVersion);
+        if (checkpoint == null) {
+            Log.i(LOG_TAG, "Preparing chunked upgrade to version " + targetVersion);
+            db.beginTransaction();
+            try {
+                step.prepare(db);
+                db.execSQL("CREATE TABLE " + CHECKPOINT_TABLE + " ("
+                        + COLUMN_TARGET_VERSION + " integer not null, "
+                        + COLUMN_TABLE_INDEX    + " integer not null, "
+                        + COLUMN_LAST_ROW_ID    + " integer not null)");
+                ContentValues contentValues = new ContentValues();
+                contentValues.put(COLUMN_TARGET_VERSION, targetVersion);
+                contentValues.put(COLUMN_TABLE_INDEX, 0);
+                contentValues.put(COLUMN_LAST_ROW_ID, 0);
+                db.insert(CHECKPOINT_TABLE, null, contentValues);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                DataChangeBus.getInstance().discard();
+            }
+            checkpoint = new long[]{0, 0};
+        } else {
+            Log.i(LOG_TAG, "Resuming upgrade to version " + targetVersion + " at table " + checkpoint[0]
+                    + " after row " + checkpoint[1]);
+        }
+
+        String[] tables = step.getCopiedTables();
+        long lastRowId = checkpoint[1];
+        for (int tableIndex = (int) checkpoint[0]; tableIndex < tables.length; tableIndex++) {
+            String tableName = tables[tableIndex];
+            long maxRowId = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(" + DatabaseSchema.CommonColumns._ID + "), 0) FROM " + tableName + "_bak", null);
+            while (lastRowId < maxRowId) {
+                long chunkEnd = Math.min(lastRowId + CHUNK_SIZE, maxRowId);
+                db.beginTransaction();
+                try {
+                    step.copyRows(db, tableName, lastRowId, chunkEnd);
+                    saveCheckpoint(db, tableIndex, chunkEnd);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    DataChangeBus.getInstance().discard();
+                }
+                lastRowId = chunkEnd;
+            }
+            if (tableIndex + 1 < tables.length)
+                saveCheckpoint(db, tableIndex + 1, 0);
+            lastRowId = 0;
+        }
+
+        int newVersion;
+        db.beginTransaction();
+        try {
+            newVersion = step.finish(db);
+            db.execSQL("DROP TABLE " + CHECKPOINT_TABLE);
+            db.setVersion(newVersion);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            DataChangeBus.getInstance().discard();
+        }
+
+        MetricsRegistry.stop(LOG_TAG, stepName, start);
+        return newVersion;
+    }
+
+    /**
+     * Reads the checkpoint of an interrupted chunked upgrade step
+     * @param db Database being upgraded
+     * @param targetVersion Version reached by the step
+     * @return Index of the table being copied and the last copied row ID, or {@code null} if the step was not started
+     * @throws IllegalStateException if the checkpoint belongs to another step
+     */
+    @Nullable
+    private static long[] readCheckpoint(SQLiteDatabase db, int targetVersion) {
+        if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+                new String[]{CHECKPOINT_TABLE}) == 0)
+            return null;
+
+        Cursor cursor = db.query(CHECKPOINT_TABLE,
+                new String[]{COLUMN_TARGET_VERSION, COLUMN_TABLE_INDEX, COLUMN_LAST_ROW_ID},
+                null, null, null, null, null);
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+            if (cursor.getInt(0) != targetVersion)
+                throw new IllegalStateException("Found checkpoint of the upgrade to version " + cursor.getInt(0)
+                        + " while upgrading to version " + targetVersion);
+            return new long[]{cursor.getLong(1), cursor.getLong(2)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records the progress of a chunked upgrade step
+     * @param db Database being upgraded
+     * @param tableIndex Index of the table being copied
+     * @param lastRowId Last row ID of the table which was copied
+     */
+    private static void saveCheckpoint(SQLiteDatabase db, int tableIndex, long lastRowId) {
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(COLUMN_TABLE_INDEX, tableIndex);
+        contentValues.put(COLUMN_LAST_ROW_ID, lastRowId);
+        db.update(CHECKPOINT_TABLE, contentValues, null, null);
+    }
+
+    /**
+     * Runs the upgrade step from {@code oldVersion} to the next version.
+     * <p>The step is the method {@code upgradeDbToVersion<oldVersion+1>} of {@link MigrationHelper}</p>
+     * @param db Database to upgrade
+     * @param oldVersion Current version of the database
+     * @return Database version after the step
+     * @throws RuntimeException if the step does not exist or failed to upgrade the database
+     */
+    static int runUpgradeStep(SQLiteDatabase db, int oldVersion) {
+        int targetVersion = oldVersion + 1;
+        String stepName = "upgradeDbToVersion" + targetVersion;
+        long start = MetricsRegistry.start();
+        int newVersion;
+        try {
+            Method method = MigrationHelper.class.getDeclaredMethod(stepName, SQLiteDatabase.class);
+            Object result = method.invoke(null, db);
+            newVersion = Integer.parseInt(result.toString());
+        } catch (NoSuchMethodException e) {
+            String msg = String.format("Database upgrade method upgradeToVersion%d(SQLiteDatabase) definition not found ", targetVersion);
+            Log.e(LOG_TAG, msg, e);
+            Crashlytics.log(msg);
+            Crashlytics.logException(e);
+            throw new RuntimeException(e);
+        }  catch (IllegalAccessException e) {
+            String msg = String.format("Database upgrade to version %d failed. The upgrade method is inaccessible ", targetVersion);
+            Log.e(LOG_TAG, msg, e);
+            Crashlytics.log(msg);
+            Crashlytics.logException(e);
+            throw new RuntimeException(e);
+        } catch (InvocationTargetException e){
+            Crashlytics.logException(e.getTargetException());
+            throw new RuntimeException(e.getTargetException());
+        }
+
+        if (newVersion <= oldVersion)
+            throw new RuntimeException(String.format("Database upgrade to version %d failed", targetVersion));
+
+        MetricsRegistry.stop(LOG_TAG, stepName, start);
+        return newVersion;
+    }
+}
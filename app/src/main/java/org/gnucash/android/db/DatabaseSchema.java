@@ -39,7 +39,7 @@ public class DatabaseSchema {
      * Version number of database containing accounts and transactions info.
      * With any change to the database schema, this number must increase
      */
-    public static final int DATABASE_VERSION = 13;
+    public static final int DATABASE_VERSION = 18;
 
     /**
      * Name of the database
@@ -147,6 +147,63 @@ public class DatabaseSchema {
         public static final String COLUMN_RECONCILE_DATE        = "reconcile_date";
 
         public static final String INDEX_UID                    = "split_uid_index";
+        public static final String INDEX_TRANSACTION_UID        = "split_transaction_uid_index";
+        public static final String INDEX_ACCOUNT_RECONCILE_STATE = "split_account_reconcile_state_index";
+    }
+
+    /**
+     * Column schema for the table of pre-computed transaction summaries.
+     * <p>The table holds one row per transaction which has splits. The rows are maintained by triggers
+     * on the splits table and must not be modified directly</p>
+     */
+    public static abstract class TransactionSummaryEntry {
+
+        public static final String TABLE_NAME                   = "transaction_summaries";
+
+        public static final String COLUMN_TRANSACTION_UID       = "transaction_uid";
+        /**
+         * Account of one of the splits, preferably of a split without memo.
+         * Used to group the splits of a transaction by account e.g. in QIF export
+         */
+        public static final String COLUMN_ACCOUNT_UID           = "account_uid";
+        /**
+         * Sum of the values of all splits of the transaction, debits are positive
+         */
+        public static final String COLUMN_BALANCE               = "balance";
+        public static final String COLUMN_SPLIT_COUNT           = "split_count";
+        /**
+         * Number of distinct currencies of the accounts of the splits
+         */
+        public static final String COLUMN_CURRENCY_COUNT        = "currency_count";
+    }
+
+    /**
+     * Column schema for the table of transaction fingerprints, used for detecting duplicates when importing statements.
+     * <p>The table holds one row per split of a non-template transaction. The rows are maintained by triggers
+     * on the splits and transactions tables and must not be modified directly</p>
+     */
+    public static abstract class TransactionFingerprintEntry {
+
+        public static final String TABLE_NAME                   = "transaction_fingerprints";
+
+        public static final String COLUMN_SPLIT_UID             = "split_uid";
+        public static final String COLUMN_TRANSACTION_UID       = "transaction_uid";
+        public static final String COLUMN_ACCOUNT_UID           = "account_uid";
+        /**
+         * Day of the transaction, as number of days since the epoch in UTC
+         */
+        public static final String COLUMN_DAY                   = "day";
+        /**
+         * Numerator of the quantity of the split, positive for debits and negative for credits
+         */
+        public static final String COLUMN_AMOUNT_NUM            = "amount_num";
+        public static final String COLUMN_AMOUNT_DENOM          = "amount_denom";
+        /**
+         * Description of the transaction, trimmed and in lower case
+         */
+        public static final String COLUMN_PAYEE                 = "payee";
+
+        public static final String INDEX_FINGERPRINT            = "transaction_fingerprint_index";
     }
 
     public static abstract class ScheduledActionEntry implements CommonColumns {
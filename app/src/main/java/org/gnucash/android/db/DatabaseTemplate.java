@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.R;
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.db.DatabaseSchema.CommodityEntry;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.importer.GncXmlImporter;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.BaseModel;
+import org.gnucash.android.model.Book;
+import org.gnucash.android.util.MetricsRegistry;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Template databases from which new book databases are created.
+ * <p>Creating a book database from scratch means creating the schema and parsing the list of ISO 4217
+ * currencies into the commodities table. Creating a book with the default accounts additionally means
+ * parsing the default account tree from XML. Both are done once per database version by {@link #prepare(Context)},
+ * in the background when the application starts, and stored as template files in the private files
+ * of the application. Afterwards, a new book database is created by copying a template file and assigning
+ * new GUIDs to its records.</p>
+ * <p>Since the templates carry the current database version, {@link DatabaseHelper#onCreate(SQLiteDatabase)}
+ * is not called for databases installed from a template. If a template is not ready yet, book databases
+ * are created by {@link DatabaseHelper} and the XML importer as usual.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class DatabaseTemplate {
+
+    private static final String LOG_TAG = "DatabaseTemplate";
+
+    /**
+     * Name of the folder, in the private files of the application, which holds the templates
+     */
+    private static final String TEMPLATE_FOLDER = "templates";
+
+    /**
+     * Prefix of the template with the schema and commodities
+     */
+    private static final String TEMPLATE_FILE_PREFIX = "book_template_v";
+
+    /**
+     * Prefix of the template which also contains the default account tree
+     */
+    private static final String DEFAULT_ACCOUNTS_TEMPLATE_FILE_PREFIX = "book_template_default_accounts_v";
+
+    //no instances
+    private DatabaseTemplate(){}
+
+    /**
+     * Returns the URI of the GnuCash XML file with the default account tree
+     */
+    public static Uri getDefaultAccountsUri() {
+        return Uri.parse("android.resource://" + BuildConfig.APPLICATION_ID + "/" + R.raw.default_accounts);
+    }
+
+    /**
+     * Builds the templates for the current database version which do not exist yet,
+     * and deletes the templates of older database versions.
+     * <p>This may take a few seconds and should be called on a background thread</p>
+     * @param context Application context
+     */
+    public static synchronized void prepare(@NonNull Context context) {
+        long start = MetricsRegistry.start();
+        try {
+            File folder = new File(context.getFilesDir(), TEMPLATE_FOLDER);
+            if (!folder.exists() && !folder.mkdirs())
+                throw new IOException("Could not create template folder " + folder.getPath());
+
+            File templateFile = getTemplateFile(context, TEMPLATE_FILE_PREFIX);
+            File accountsTemplateFile = getTemplateFile(context, DEFAULT_ACCOUNTS_TEMPLATE_FILE_PREFIX);
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.equals(templateFile) && !file.equals(accountsTemplateFile))
+                        file.delete();
+                }
+            }
+
+            if (!templateFile.exists())
+                buildTemplate(context, templateFile, false);
+            if (!accountsTemplateFile.exists())
+                buildTemplate(context, accountsTemplateFile, true);
+        } catch (IOException | ParserConfigurationException | SAXException | RuntimeException e) {
+            Log.e(LOG_TAG, "Error preparing template databases: " + e.getMessage());
+            Crashlytics.logException(e);
+            return;
+        }
+        MetricsRegistry.stop(LOG_TAG, "prepare", start);
+    }
+
+    /**
+     * Creates the database {@code databaseName} from the template, if it does not yet exist.
+     * <p>If the template is not ready or cannot be used, nothing is installed and the database will be created
+     * by {@link DatabaseHelper} as usual</p>
+     * @param context Application context
+     * @param databaseName Name of the book database
+     * @return {@code true} if the database was installed from the template, {@code false} otherwise
+     */
+    static boolean install(@NonNull Context context, @NonNull String databaseName) {
+        return install(context, databaseName, TEMPLATE_FILE_PREFIX);
+    }
+
+    /**
+     * Creates a new book with the default account tree from the template, and adds it to the books database.
+     * <p>The book is not activated</p>
+     * @param context Application context
+     * @return GUID of the new book, or {@code null} if the template is not ready or cannot be used.
+     * The default accounts then have to be imported from {@link #getDefaultAccountsUri()}
+     */
+    @Nullable
+    public static String createBookWithDefaultAccounts(@NonNull Context context) {
+        String bookUID = BaseModel.generateUID();
+        if (!install(context, bookUID, DEFAULT_ACCOUNTS_TEMPLATE_FILE_PREFIX))
+            return null;
+
+        File databaseFile = context.getDatabasePath(bookUID);
+        try {
+            Book book = new Book(readRootAccountUID(databaseFile));
+            book.setUID(bookUID);
+            BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
+            book.setDisplayName(booksDbAdapter.generateDefaultBookName());
+            booksDbAdapter.addRecord(book, DatabaseAdapter.UpdateMethod.insert);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Error creating book with default accounts: " + e.getMessage());
+            Crashlytics.logException(e);
+            databaseFile.delete();
+            return null;
+        }
+        return bookUID;
+    }
+
+    private static File getTemplateFile(Context context, String prefix) {
+        File folder = new File(context.getFilesDir(), TEMPLATE_FOLDER);
+        return new File(folder, prefix + DatabaseSchema.DATABASE_VERSION + ".db");
+    }
+
+    private static boolean install(Context context, String databaseName, String templatePrefix) {
+        File templateFile = getTemplateFile(context, templatePrefix);
+        File databaseFile = context.getDatabasePath(databaseName);
+        if (databaseFile.exists() || !templateFile.exists())
+            return false;
+
+        long start = MetricsRegistry.start();
+        try {
+            File parent = databaseFile.getParentFile();
+            if (!parent.exists())
+                parent.mkdirs();
+            copyFile(templateFile, databaseFile);
+
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                assignNewUIDs(db);
+            } finally {
+                db.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Error creating database from template: " + e.getMessage());
+            Crashlytics.logException(e);
+            databaseFile.delete();
+            new File(databaseFile.getPath() + "-journal").delete();
+            return false;
+        }
+        MetricsRegistry.stop(LOG_TAG, "install", start);
+        Log.i(LOG_TAG, "Created database " + databaseName + " from template " + templateFile.getName());
+        return true;
+    }
+
+    /**
+     * Assigns new GUIDs to the commodities and accounts of a database copied from a template,
+     * since the same template is shared by all books, but GUIDs must be unique.
+     * References between the records are updated accordingly
+     */
+    private static void assignNewUIDs(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("CREATE TEMP TABLE uid_map (old_uid varchar(255) primary key, new_uid varchar(255))");
+            db.execSQL("INSERT INTO uid_map SELECT " + CommodityEntry.COLUMN_UID + ", lower(hex(randomblob(16)))"
+                    + " FROM " + CommodityEntry.TABLE_NAME);
+            db.execSQL("INSERT INTO uid_map SELECT " + AccountEntry.COLUMN_UID + ", lower(hex(randomblob(16)))"
+                    + " FROM " + AccountEntry.TABLE_NAME);
+
+            db.execSQL("UPDATE " + AccountEntry.TABLE_NAME + " SET "
+                    + AccountEntry.COLUMN_UID + " = " + mappedUID(AccountEntry.COLUMN_UID) + ", "
+                    + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " = "
+                    + mappedUID(AccountEntry.COLUMN_PARENT_ACCOUNT_UID) + ", "
+                    + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " = "
+                    + mappedUID(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID) + ", "
+                    + AccountEntry.COLUMN_COMMODITY_UID + " = " + mappedUID(AccountEntry.COLUMN_COMMODITY_UID));
+            db.execSQL("UPDATE " + CommodityEntry.TABLE_NAME + " SET "
+                    + CommodityEntry.COLUMN_UID + " = " + mappedUID(CommodityEntry.COLUMN_UID));
+            db.execSQL("DROP TABLE uid_map");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the SQL expression for the new GUID of the record referenced by {@code column}.
+     * References which are not mapped, e.g. {@code NULL}, are kept
+     */
+    private static String mappedUID(String column) {
+        return "coalesce((SELECT new_uid FROM uid_map WHERE old_uid = " + column + "), " + column + ")";
+    }
+
+    /**
+     * Builds a template in a temporary file, so that a partially created template is never used
+     * @param templateFile Template file to create
+     * @param withDefaultAccounts {@code true} if the default account tree should be imported into the template
+     */
+    private static void buildTemplate(Context context, File templateFile, boolean withDefaultAccounts)
+            throws IOException, ParserConfigurationException, SAXException {
+        long start = MetricsRegistry.start();
+        File tempFile = new File(templateFile.getPath() + ".tmp");
+        tempFile.delete();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(tempFile, null);
+        try {
+            db.beginTransaction();
+            try {
+                DatabaseHelper.createDatabaseTables(db);
+                db.setVersion(DatabaseSchema.DATABASE_VERSION);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (withDefaultAccounts) {
+                InputStream accountsInputStream = context.getResources().openRawResource(R.raw.default_accounts);
+                try {
+                    GncXmlImporter.parse(accountsInputStream, db);
+                } finally {
+                    accountsInputStream.close();
+                }
+            }
+        } finally {
+            DataChangeBus.getInstance().discard(); //templates are never observed
+            db.close();
+        }
+
+        new File(tempFile.getPath() + "-journal").delete();
+        if (!tempFile.renameTo(templateFile)) {
+            tempFile.delete();
+            throw new IOException("Could not create template database " + templateFile.getPath());
+        }
+        MetricsRegistry.stop(LOG_TAG, "createTemplate", start);
+        Log.i(LOG_TAG, "Created template database " + templateFile.getName());
+    }
+
+    /**
+     * Returns the GUID of the root account of a book database
+     */
+    private static String readRootAccountUID(File databaseFile) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            Cursor cursor = db.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
+                    AccountEntry.COLUMN_TYPE + " = ?", new String[]{AccountType.ROOT.name()},
+                    null, null, null);
+            try {
+                if (!cursor.moveToFirst())
+                    throw new IllegalStateException("Template database has no root account");
+                return cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void copyFile(File src, File dst) throws IOException {
+        FileChannel inChannel = new FileInputStream(src).getChannel();
+        try {
+            FileChannel outChannel = new FileOutputStream(dst).getChannel();
+            try {
+                inChannel.transferTo(0, inChannel.size(), outChannel);
+            } finally {
+                outChannel.close();
+            }
+        } finally {
+            inChannel.close();
+        }
+    }
+}
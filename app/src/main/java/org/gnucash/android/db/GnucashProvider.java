@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.content.UriMatcher;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter.UpdateMethod;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content provider through which other apps add accounts, transactions and splits to the active book.
+ * <p>It is the batch counterpart of the {@link org.gnucash.android.receivers.AccountCreator} and
+ * {@link org.gnucash.android.receivers.TransactionRecorder} broadcast receivers.
+ * All records passed to {@link #bulkInsert(Uri, ContentValues[])} or {@link #applyBatch(ArrayList)} are
+ * written in a single database transaction, and observers are notified once when it is committed.</p>
+ * <p>The records are described with the column names of {@link DatabaseSchema}:
+ * <ul>
+ *     <li>Accounts: {@link AccountEntry#COLUMN_NAME} (required), {@link AccountEntry#COLUMN_UID},
+ *     {@link AccountEntry#COLUMN_CURRENCY}, {@link AccountEntry#COLUMN_PARENT_ACCOUNT_UID},
+ *     {@link AccountEntry#COLUMN_TYPE}, {@link AccountEntry#COLUMN_DESCRIPTION}, {@link AccountEntry#COLUMN_PLACEHOLDER}</li>
+ *     <li>Transactions: {@link TransactionEntry#COLUMN_DESCRIPTION} (required), {@link TransactionEntry#COLUMN_UID},
+ *     {@link TransactionEntry#COLUMN_NOTES}, {@link TransactionEntry#COLUMN_CURRENCY}, {@link TransactionEntry#COLUMN_TIMESTAMP}</li>
+ *     <li>Splits: {@link SplitEntry#COLUMN_TRANSACTION_UID} or {@link #COLUMN_TRANSACTION_ID} (required),
+ *     {@link SplitEntry#COLUMN_ACCOUNT_UID} (required), {@link SplitEntry#COLUMN_VALUE_NUM} and
+ *     {@link SplitEntry#COLUMN_VALUE_DENOM} (required), {@link SplitEntry#COLUMN_QUANTITY_NUM} and
+ *     {@link SplitEntry#COLUMN_QUANTITY_DENOM} (required if the account currency differs from the transaction currency),
+ *     {@link SplitEntry#COLUMN_UID}, {@link SplitEntry#COLUMN_TYPE}, {@link SplitEntry#COLUMN_MEMO}</li>
+ * </ul>
+ * Use {@link ContentProviderOperation.Builder#withValueBackReference(String, int)} with {@link #COLUMN_TRANSACTION_ID}
+ * to add splits to a transaction inserted earlier in the same batch.
+ * Transactions inserted in a batch are balanced with an imbalance split when the batch is committed,
+ * like transactions recorded by the {@link org.gnucash.android.receivers.TransactionRecorder}</p>
+ * <p>Accounts require the permission "org.gnucash.android.permission.CREATE_ACCOUNT", transactions and splits
+ * require "org.gnucash.android.permission.RECORD_TRANSACTION". Records can only be added, not queried or modified</p>
+ * <p>While the database of the active book is awaiting an upgrade, inserts fail with an {@link SQLException}
+ * and batches with an {@link OperationApplicationException}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class GnucashProvider extends ContentProvider {
+
+    private static final String LOG_TAG = "GnucashProvider";
+
+    /**
+     * Authority of the provider
+     */
+    public static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".provider";
+
+    public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
+
+    public static final Uri ACCOUNTS_URI = Uri.withAppendedPath(CONTENT_URI, "accounts");
+
+    public static final Uri TRANSACTIONS_URI = Uri.withAppendedPath(CONTENT_URI, "transactions");
+
+    public static final Uri SPLITS_URI = Uri.withAppendedPath(CONTENT_URI, "splits");
+
+    /**
+     * Column of a split with the ID of its transaction, as found in the URI returned when inserting the transaction
+     */
+    public static final String COLUMN_TRANSACTION_ID = "transaction_id";
+
+    private static final String PERMISSION_CREATE_ACCOUNT = "org.gnucash.android.permission.CREATE_ACCOUNT";
+    private static final String PERMISSION_RECORD_TRANSACTION = "org.gnucash.android.permission.RECORD_TRANSACTION";
+
+    private static final int ACCOUNTS = 1;
+    private static final int TRANSACTIONS = 2;
+    private static final int SPLITS = 3;
+
+    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+    static {
+        sUriMatcher.addURI(AUTHORITY, "accounts", ACCOUNTS);
+        sUriMatcher.addURI(AUTHORITY, "transactions", TRANSACTIONS);
+        sUriMatcher.addURI(AUTHORITY, "splits", SPLITS);
+    }
+
+    /**
+     * State of a batch of inserts, all made in one database transaction
+     */
+    private static class Batch implements SQLiteTransactionListener {
+        final AccountsDbAdapter mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        final TransactionsDbAdapter mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        final SplitsDbAdapter mSplitsDbAdapter = mTransactionsDbAdapter.getSplitDbAdapter();
+        final CommoditiesDbAdapter mCommoditiesDbAdapter = CommoditiesDbAdapter.getInstance();
+
+        /**
+         * Transactions inserted in the batch with their splits, indexed by GUID
+         */
+        final Map<String, Transaction> mTransactions = new LinkedHashMap<>();
+
+        /**
+         * GUIDs of the transactions inserted in the batch, indexed by record ID
+         */
+        final Map<Long, String> mTransactionUIDs = new HashMap<>();
+
+        /**
+         * Currency codes of the accounts referenced by splits, indexed by account GUID
+         */
+        final Map<String, String> mAccountCurrencies = new HashMap<>();
+
+        /**
+         * Flag indicating that the database transaction of the batch was committed.
+         * Set by SQLite when the transaction ends, so it is also correct if a nested transaction failed
+         */
+        boolean mCommitted = false;
+
+        @Override
+        public void onBegin() {
+            mCommitted = false;
+        }
+
+        @Override
+        public void onCommit() {
+            mCommitted = true;
+        }
+
+        @Override
+        public void onRollback() {
+            mCommitted = false;
+        }
+    }
+
+    /**
+     * Batch of the current thread, or {@code null} if no batch is in progress
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    @Override
+    public boolean onCreate() {
+        //the database adapters are only available after the application is created, so they are accessed on demand
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        switch (sUriMatcher.match(uri)) {
+            case ACCOUNTS:
+                return "vnd.android.cursor.dir/vnd." + BuildConfig.APPLICATION_ID + ".account";
+            case TRANSACTIONS:
+                return "vnd.android.cursor.dir/vnd." + BuildConfig.APPLICATION_ID + ".transaction";
+            case SPLITS:
+                return "vnd.android.cursor.dir/vnd." + BuildConfig.APPLICATION_ID + ".split";
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues values) {
+        int match = enforcePermission(uri);
+        Batch batch = mBatch.get();
+        if (batch != null)
+            return insert(batch, match, values);
+
+        checkDatabaseUpgraded(uri);
+        batch = beginBatch();
+        Uri result = null;
+        boolean successful = false;
+        try {
+            result = insert(batch, match, values);
+            commitBatch(batch);
+            successful = true;
+        } finally {
+            successful = endBatch(batch, successful);
+        }
+        if (!successful)
+            throw new SQLException("Inserting into " + uri + " was rolled back");
+        return result;
+    }
+
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        int match = enforcePermission(uri);
+        Batch batch = mBatch.get();
+        boolean nested = batch != null;
+        if (!nested) {
+            checkDatabaseUpgraded(uri);
+            batch = beginBatch();
+        }
+        boolean successful = false;
+        try {
+            for (ContentValues contentValues : values) {
+                insert(batch, match, contentValues);
+            }
+            if (!nested)
+                commitBatch(batch);
+            successful = true;
+        } finally {
+            if (!nested)
+                successful = endBatch(batch, successful);
+        }
+        if (!successful)
+            throw new SQLException("Inserting into " + uri + " was rolled back");
+        return values.length;
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (mBatch.get() != null)
+            return super.applyBatch(operations);
+        if (GnuCashApplication.isDatabaseUpgradePending())
+            throw new OperationApplicationException("The database of the active book is awaiting an upgrade");
+
+        Batch batch = beginBatch();
+        ContentProviderResult[] results = null;
+        boolean successful = false;
+        try {
+            results = super.applyBatch(operations);
+            commitBatch(batch);
+            successful = true;
+        } finally {
+            successful = endBatch(batch, successful);
+        }
+        if (!successful)
+            throw new OperationApplicationException("The batch of " + operations.size()
+                    + " operations was rolled back");
+        return results;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        throw new UnsupportedOperationException("Records cannot be queried through the provider");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Records cannot be updated through the provider");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Records cannot be deleted through the provider");
+    }
+
+    /**
+     * Checks that the caller may insert records into the table of {@code uri}
+     * @return Table matched by {@code uri}
+     * @throws IllegalArgumentException if the URI is unknown
+     * @throws SecurityException if the caller does not hold the permission for the table
+     */
+    private int enforcePermission(@NonNull Uri uri) {
+        int match = sUriMatcher.match(uri);
+        String permission;
+        switch (match) {
+            case ACCOUNTS:
+                permission = PERMISSION_CREATE_ACCOUNT;
+                break;
+            case TRANSACTIONS:
+            case SPLITS:
+                permission = PERMISSION_RECORD_TRANSACTION;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown URI " + uri);
+        }
+        if (getContext().checkCallingOrSelfPermission(permission) != PackageManager.PERMISSION_GRANTED)
+            throw new SecurityException("Inserting into " + uri + " requires " + permission);
+        return match;
+    }
+
+    /**
+     * Checks that the database of the active book can be used.
+     * While its upgrade is pending, the database adapters are not available
+     * @throws SQLException if the database is awaiting an upgrade
+     */
+    private static void checkDatabaseUpgraded(@NonNull Uri uri) {
+        if (GnuCashApplication.isDatabaseUpgradePending())
+            throw new SQLException("Cannot insert into " + uri + ", the database of the active book is awaiting an upgrade");
+    }
+
+    private Batch beginBatch() {
+        Batch batch = new Batch();
+        mBatch.set(batch);
+        batch.mTransactionsDbAdapter.beginTransactionWithListener(batch);
+        return batch;
+    }
+
+    /**
+     * Balances the transactions inserted in the batch and marks the database transaction as successful
+     */
+    private void commitBatch(@NonNull Batch batch) {
+        for (Transaction transaction : batch.mTransactions.values()) {
+            Split imbalanceSplit = transaction.createAutoBalanceSplit();
+            if (imbalanceSplit != null) {
+                imbalanceSplit.setAccountUID(
+                        batch.mAccountsDbAdapter.getOrCreateImbalanceAccountUID(transaction.getCurrency()));
+                batch.mSplitsDbAdapter.addRecord(imbalanceSplit, UpdateMethod.insert);
+            }
+        }
+        batch.mTransactionsDbAdapter.setTransactionSuccessful();
+    }
+
+    /**
+     * Ends the database transaction of the batch and notifies observers if it was committed.
+     * <p>The database transaction is rolled back, even if it was marked as successful, when a nested transaction
+     * of an adapter failed without throwing. The outcome is therefore taken from the transaction listener of the batch</p>
+     * @param batch Batch to end
+     * @param successful {@code true} if all records of the batch were inserted
+     * @return {@code true} if the batch was committed, {@code false} if it was rolled back
+     */
+    private boolean endBatch(@NonNull Batch batch, boolean successful) {
+        mBatch.remove();
+        batch.mTransactionsDbAdapter.endTransaction();
+        if (!successful)
+            return false;
+
+        if (!batch.mCommitted) {
+            Log.e(LOG_TAG, "The batch was rolled back by a failed nested transaction");
+            return false;
+        }
+        Log.i(LOG_TAG, "Inserted " + batch.mTransactions.size() + " transactions");
+        getContext().getContentResolver().notifyChange(CONTENT_URI, null);
+        return true;
+    }
+
+    private Uri insert(@NonNull Batch batch, int match, @NonNull ContentValues values) {
+        switch (match) {
+            case ACCOUNTS:
+                return insertAccount(batch, values);
+            case TRANSACTIONS:
+                return insertTransaction(batch, values);
+            case SPLITS:
+                return insertSplit(batch, values);
+            default:
+                throw new IllegalArgumentException("Unknown table " + match);
+        }
+    }
+
+    private Uri insertAccount(@NonNull Batch batch, @NonNull ContentValues values) {
+        Account account = new Account(getRequiredString(values, AccountEntry.COLUMN_NAME));
+        String uid = values.getAsString(AccountEntry.COLUMN_UID);
+        if (uid != null)
+            account.setUID(uid);
+
+        String currencyCode = values.getAsString(AccountEntry.COLUMN_CURRENCY);
+        if (currencyCode != null) {
+            Commodity commodity = batch.mCommoditiesDbAdapter.getCommodity(currencyCode);
+            if (commodity == null)
+                throw new IllegalArgumentException("Commodity with '" + currencyCode
+                        + "' currency code not found in the database");
+            account.setCommodity(commodity);
+        }
+
+        String parentUID = values.getAsString(AccountEntry.COLUMN_PARENT_ACCOUNT_UID);
+        account.setParentUID(parentUID != null ? parentUID
+                : batch.mAccountsDbAdapter.getOrCreateGnuCashRootAccountUID());
+        String type = values.getAsString(AccountEntry.COLUMN_TYPE);
+        if (type != null)
+            account.setAccountType(AccountType.valueOf(type));
+        String description = values.getAsString(AccountEntry.COLUMN_DESCRIPTION);
+        if (description != null)
+            account.setDescription(description);
+        Boolean placeholder = values.getAsBoolean(AccountEntry.COLUMN_PLACEHOLDER);
+        if (placeholder != null)
+            account.setPlaceHolderFlag(placeholder);
+
+        batch.mAccountsDbAdapter.addRecord(account, UpdateMethod.insert);
+        return ContentUris.withAppendedId(ACCOUNTS_URI, batch.mAccountsDbAdapter.getID(account.getUID()));
+    }
+
+    private Uri insertTransaction(@NonNull Batch batch, @NonNull ContentValues values) {
+        Transaction transaction = new Transaction(getRequiredString(values, TransactionEntry.COLUMN_DESCRIPTION));
+        String uid = values.getAsString(TransactionEntry.COLUMN_UID);
+        if (uid != null)
+            transaction.setUID(uid);
+        transaction.setNote(values.getAsString(TransactionEntry.COLUMN_NOTES));
+
+        String currencyCode = values.getAsString(TransactionEntry.COLUMN_CURRENCY);
+        transaction.setCurrencyCode(currencyCode != null ? currencyCode : Money.DEFAULT_CURRENCY_CODE);
+        Long time = values.getAsLong(TransactionEntry.COLUMN_TIMESTAMP);
+        transaction.setTime(time != null ? time : System.currentTimeMillis());
+
+        //addRecord() only logs errors, bulkAddRecords() throws them so that the batch fails
+        batch.mTransactionsDbAdapter.bulkAddRecords(Collections.singletonList(transaction), UpdateMethod.insert);
+        long id = batch.mTransactionsDbAdapter.getID(transaction.getUID());
+        batch.mTransactions.put(transaction.getUID(), transaction);
+        batch.mTransactionUIDs.put(id, transaction.getUID());
+        return ContentUris.withAppendedId(TRANSACTIONS_URI, id);
+    }
+
+    private Uri insertSplit(@NonNull Batch batch, @NonNull ContentValues values) {
+        String transactionUID = values.getAsString(SplitEntry.COLUMN_TRANSACTION_UID);
+        if (transactionUID == null) {
+            Long transactionId = values.getAsLong(COLUMN_TRANSACTION_ID);
+            if (transactionId == null)
+                throw new IllegalArgumentException("Splits require either " + SplitEntry.COLUMN_TRANSACTION_UID
+                        + " or " + COLUMN_TRANSACTION_ID);
+            transactionUID = batch.mTransactionUIDs.get(transactionId);
+            if (transactionUID == null)
+                transactionUID = batch.mTransactionsDbAdapter.getUID(transactionId);
+        }
+        String accountUID = getRequiredString(values, SplitEntry.COLUMN_ACCOUNT_UID);
+
+        Transaction transaction = batch.mTransactions.get(transactionUID);
+        String transactionCurrency = transaction != null ? transaction.getCurrencyCode()
+                : batch.mTransactionsDbAdapter.getAttribute(transactionUID, TransactionEntry.COLUMN_CURRENCY);
+        String accountCurrency = batch.mAccountCurrencies.get(accountUID);
+        if (accountCurrency == null) {
+            accountCurrency = batch.mAccountsDbAdapter.getAccountCurrencyCode(accountUID);
+            batch.mAccountCurrencies.put(accountUID, accountCurrency);
+        }
+
+        Money value = new Money(getRequiredLong(values, SplitEntry.COLUMN_VALUE_NUM),
+                getRequiredLong(values, SplitEntry.COLUMN_VALUE_DENOM), transactionCurrency);
+        Money quantity;
+        if (values.containsKey(SplitEntry.COLUMN_QUANTITY_NUM)) {
+            quantity = new Money(getRequiredLong(values, SplitEntry.COLUMN_QUANTITY_NUM),
+                    getRequiredLong(values, SplitEntry.COLUMN_QUANTITY_DENOM), accountCurrency);
+        } else if (transactionCurrency.equals(accountCurrency)) {
+            quantity = new Money(value);
+        } else {
+            throw new IllegalArgumentException("The quantity of splits is required when the account currency "
+                    + accountCurrency + " differs from the transaction currency " + transactionCurrency);
+        }
+
+        Split split = new Split(value.abs(), quantity.abs(), accountUID);
+        String type = values.getAsString(SplitEntry.COLUMN_TYPE);
+        split.setType(type != null ? TransactionType.valueOf(type)
+                : (value.isNegative() ? TransactionType.CREDIT : TransactionType.DEBIT));
+        String uid = values.getAsString(SplitEntry.COLUMN_UID);
+        if (uid != null)
+            split.setUID(uid);
+        split.setMemo(values.getAsString(SplitEntry.COLUMN_MEMO));
+        split.setTransactionUID(transactionUID);
+
+        batch.mSplitsDbAdapter.addRecord(split, UpdateMethod.insert);
+        if (transaction != null)
+            transaction.addSplit(split);
+        return ContentUris.withAppendedId(SPLITS_URI, batch.mSplitsDbAdapter.getID(split.getUID()));
+    }
+
+    private static String getRequiredString(@NonNull ContentValues values, @NonNull String column) {
+        String value = values.getAsString(column);
+        if (value == null)
+            throw new IllegalArgumentException("Missing value for " + column);
+        return value;
+    }
+
+    private static long getRequiredLong(@NonNull ContentValues values, @NonNull String column) {
+        Long value = values.getAsLong(column);
+        if (value == null)
+            throw new IllegalArgumentException("Missing value for " + column);
+        return value;
+    }
+}
@@ -92,6 +92,80 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
 public class MigrationHelper {
     public static final String LOG_TAG = "MigrationHelper";
 
+    /**
+     * Upgrade step which rewrites whole tables, split into work units which can be committed separately.
+     * <p>The old tables are renamed to backup tables ({@code <table>_bak}) when the step is prepared.
+     * Their rows are then copied to the new tables in ranges of row IDs, and the step is finished
+     * once all rows have been copied. {@link DatabaseMigrator} commits each range with a checkpoint,
+     * so that an interrupted upgrade resumes at the first range which was not copied yet.</p>
+     */
+    interface ChunkedUpgradeStep {
+        /**
+         * Creates the new tables and renames the tables to be copied to their backup tables
+         */
+        void prepare(SQLiteDatabase db);
+
+        /**
+         * Returns the names of the tables whose rows are copied from their backup tables, in the order of copying
+         */
+        String[] getCopiedTables();
+
+        /**
+         * Copies the rows of the backup table of {@code tableName} with a row ID after {@code afterRowId},
+         * up to {@code lastRowId} (inclusive)
+         */
+        void copyRows(SQLiteDatabase db, String tableName, long afterRowId, long lastRowId);
+
+        /**
+         * Completes the upgrade after all rows have been copied and drops the backup tables
+         * @return New database version
+         */
+        int finish(SQLiteDatabase db);
+    }
+
+    /**
+     * Returns the upgrade step to {@code targetVersion} if it is split into chunks
+     * @param targetVersion Database version reached by the step
+     * @return Chunked upgrade step, or {@code null} if the step runs as a whole
+     */
+    static ChunkedUpgradeStep getChunkedUpgradeStep(int targetVersion) {
+        switch (targetVersion) {
+            case 8:
+                return UPGRADE_TO_VERSION_8;
+            case 9:
+                return UPGRADE_TO_VERSION_9;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Runs all work units of a chunked upgrade step in one transaction
+     * @return New database version
+     */
+    private static int runChunkedUpgradeStep(SQLiteDatabase db, ChunkedUpgradeStep step) {
+        db.beginTransaction();
+        try {
+            step.prepare(db);
+            for (String tableName : step.getCopiedTables()) {
+                step.copyRows(db, tableName, 0, Long.MAX_VALUE);
+            }
+            int newVersion = step.finish(db);
+            db.setTransactionSuccessful();
+            return newVersion;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Builds the selection of the rows of the backup table of {@code tableName} in a range of row IDs
+     */
+    private static String buildRowRange(String tableName, long afterRowId, long lastRowId) {
+        String rowId = tableName + "_bak." + CommonColumns._ID;
+        return rowId + " > " + afterRowId + " AND " + rowId + " <= " + lastRowId;
+    }
+
     /**
      * Performs same function as {@link AccountsDbAdapter#getFullyQualifiedAccountName(String)}
      * <p>This method is only necessary because we cannot open the database again (by instantiating {@link AccountsDbAdapter}
@@ -486,358 +560,395 @@ public class MigrationHelper {
      *      </ul>
      * </p>
      * @param db SQLite Database to be upgraded
-     * @return New database version (8) if upgrade successful, old version (7) if unsuccessful
+     * @return New database version (8)
      */
     static int upgradeDbToVersion8(SQLiteDatabase db) {
         Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 8");
-        int oldVersion = 7;
-        new File(Exporter.BASE_FOLDER_PATH + "/backups/").mkdirs();
-        new File(Exporter.BASE_FOLDER_PATH + "/exports/").mkdirs();
-        //start moving the files in background thread before we do the database stuff
-        new Thread(moveExportedFilesToNewDefaultLocation).start();
-
-        db.beginTransaction();
-        try {
-
-            Log.i(DatabaseHelper.LOG_TAG, "Creating scheduled actions table");
-            db.execSQL("CREATE TABLE " + ScheduledActionEntry.TABLE_NAME + " ("
-                    + ScheduledActionEntry._ID                   + " integer primary key autoincrement, "
-                    + ScheduledActionEntry.COLUMN_UID            + " varchar(255) not null UNIQUE, "
-                    + ScheduledActionEntry.COLUMN_ACTION_UID    + " varchar(255) not null, "
-                    + ScheduledActionEntry.COLUMN_TYPE           + " varchar(255) not null, "
-                    + "period "                                 + " integer not null, "
-                    + ScheduledActionEntry.COLUMN_LAST_RUN       + " integer default 0, "
-                    + ScheduledActionEntry.COLUMN_START_TIME     + " integer not null, "
-                    + ScheduledActionEntry.COLUMN_END_TIME       + " integer default 0, "
-                    + ScheduledActionEntry.COLUMN_TAG            + " text, "
-                    + ScheduledActionEntry.COLUMN_ENABLED        + " tinyint default 1, " //enabled by default
-                    + ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY + " integer default 0, "
-                    + ScheduledActionEntry.COLUMN_EXECUTION_COUNT+ " integer default 0, "
-                    + ScheduledActionEntry.COLUMN_CREATED_AT     + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + ScheduledActionEntry.COLUMN_MODIFIED_AT    + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(ScheduledActionEntry.TABLE_NAME));
-
-
-            //==============================BEGIN TABLE MIGRATIONS ========================================
-            Log.i(DatabaseHelper.LOG_TAG, "Migrating accounts table");
-            // backup transaction table
-            db.execSQL("ALTER TABLE " + AccountEntry.TABLE_NAME + " RENAME TO " + AccountEntry.TABLE_NAME + "_bak");
-            // create new transaction table
-            db.execSQL("CREATE TABLE " + AccountEntry.TABLE_NAME + " ("
-                    + AccountEntry._ID + " integer primary key autoincrement, "
-                    + AccountEntry.COLUMN_UID + " varchar(255) not null UNIQUE, "
-                    + AccountEntry.COLUMN_NAME + " varchar(255) not null, "
-                    + AccountEntry.COLUMN_TYPE + " varchar(255) not null, "
-                    + AccountEntry.COLUMN_CURRENCY + " varchar(255) not null, "
-                    + AccountEntry.COLUMN_DESCRIPTION + " varchar(255), "
-                    + AccountEntry.COLUMN_COLOR_CODE + " varchar(255), "
-                    + AccountEntry.COLUMN_FAVORITE + " tinyint default 0, "
-                    + AccountEntry.COLUMN_HIDDEN + " tinyint default 0, "
-                    + AccountEntry.COLUMN_FULL_NAME + " varchar(255), "
-                    + AccountEntry.COLUMN_PLACEHOLDER + " tinyint default 0, "
-                    + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " varchar(255), "
-                    + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " varchar(255), "
-                    + AccountEntry.COLUMN_CREATED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + AccountEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(AccountEntry.TABLE_NAME));
-
-            // initialize new account table with data from old table
-            db.execSQL("INSERT INTO " + AccountEntry.TABLE_NAME + " ( "
-                            + AccountEntry._ID + ","
-                            + AccountEntry.COLUMN_UID + " , "
-                            + AccountEntry.COLUMN_NAME + " , "
-                            + AccountEntry.COLUMN_TYPE + " , "
-                            + AccountEntry.COLUMN_CURRENCY + " , "
-                            + AccountEntry.COLUMN_COLOR_CODE + " , "
-                            + AccountEntry.COLUMN_FAVORITE + " , "
-                            + AccountEntry.COLUMN_FULL_NAME + " , "
-                            + AccountEntry.COLUMN_PLACEHOLDER + " , "
-                            + AccountEntry.COLUMN_HIDDEN + " , "
-                            + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " , "
-                            + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
-                            + ") SELECT "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry._ID + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_UID + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_NAME + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_TYPE + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_CURRENCY + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_COLOR_CODE + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_FAVORITE + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_FULL_NAME + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_PLACEHOLDER + " , "
-                            + " CASE WHEN " + AccountEntry.TABLE_NAME + "_bak.type = 'ROOT' THEN 1 ELSE 0 END, "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " , "
-                            + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
-                            + " FROM " + AccountEntry.TABLE_NAME + "_bak;"
-            );
-
-            Log.i(DatabaseHelper.LOG_TAG, "Migrating transactions table");
-            // backup transaction table
-            db.execSQL("ALTER TABLE " + TransactionEntry.TABLE_NAME + " RENAME TO " + TransactionEntry.TABLE_NAME + "_bak");
-            // create new transaction table
-            db.execSQL("CREATE TABLE " + TransactionEntry.TABLE_NAME + " ("
-                    + TransactionEntry._ID + " integer primary key autoincrement, "
-                    + TransactionEntry.COLUMN_UID + " varchar(255) not null UNIQUE, "
-                    + TransactionEntry.COLUMN_DESCRIPTION + " varchar(255), "
-                    + TransactionEntry.COLUMN_NOTES + " text, "
-                    + TransactionEntry.COLUMN_TIMESTAMP + " integer not null, "
-                    + TransactionEntry.COLUMN_EXPORTED + " tinyint default 0, "
-                    + TransactionEntry.COLUMN_TEMPLATE + " tinyint default 0, "
-                    + TransactionEntry.COLUMN_CURRENCY + " varchar(255) not null, "
-                    + TransactionEntry.COLUMN_SCHEDX_ACTION_UID + " varchar(255), "
-                    + TransactionEntry.COLUMN_CREATED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + TransactionEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + "FOREIGN KEY (" + TransactionEntry.COLUMN_SCHEDX_ACTION_UID + ") REFERENCES " + ScheduledActionEntry.TABLE_NAME + " (" + ScheduledActionEntry.COLUMN_UID + ") ON DELETE SET NULL "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(TransactionEntry.TABLE_NAME));
+        int newVersion = runChunkedUpgradeStep(db, UPGRADE_TO_VERSION_8);
+        GnuCashApplication.startScheduledActionExecutionService(GnuCashApplication.getAppContext());
+        return newVersion;
+    }
 
-            // initialize new transaction table with data from old table
-            db.execSQL("INSERT INTO " + TransactionEntry.TABLE_NAME + " ( "
-                            + TransactionEntry._ID + " , "
-                            + TransactionEntry.COLUMN_UID + " , "
-                            + TransactionEntry.COLUMN_DESCRIPTION + " , "
-                            + TransactionEntry.COLUMN_NOTES + " , "
-                            + TransactionEntry.COLUMN_TIMESTAMP + " , "
-                            + TransactionEntry.COLUMN_EXPORTED + " , "
-                            + TransactionEntry.COLUMN_CURRENCY + " , "
-                            + TransactionEntry.COLUMN_TEMPLATE
-                            + ")  SELECT "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry._ID + " , "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_UID + " , "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_DESCRIPTION + " , "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_NOTES + " , "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_TIMESTAMP + " , "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_EXPORTED + " , "
-                            + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_CURRENCY + " , "
-                            + " CASE WHEN " + TransactionEntry.TABLE_NAME + "_bak.recurrence_period > 0 THEN 1 ELSE 0 END "
-                            + " FROM " + TransactionEntry.TABLE_NAME + "_bak;"
-            );
+    /**
+     * Upgrade to version 8, see {@link #upgradeDbToVersion8(SQLiteDatabase)}.
+     * The transactions and splits are copied to the new tables in chunks
+     */
+    static final ChunkedUpgradeStep UPGRADE_TO_VERSION_8 = new ChunkedUpgradeStep() {
+        @Override
+        public void prepare(SQLiteDatabase db) {
+            prepareUpgradeToVersion8(db);
+        }
 
-            Log.i(DatabaseHelper.LOG_TAG, "Migrating splits table");
-            // backup split table
-            db.execSQL("ALTER TABLE " + SplitEntry.TABLE_NAME + " RENAME TO " + SplitEntry.TABLE_NAME + "_bak");
-            // create new split table
-            db.execSQL("CREATE TABLE " + SplitEntry.TABLE_NAME + " ("
-                    + SplitEntry._ID + " integer primary key autoincrement, "
-                    + SplitEntry.COLUMN_UID + " varchar(255) not null UNIQUE, "
-                    + SplitEntry.COLUMN_MEMO + " text, "
-                    + SplitEntry.COLUMN_TYPE + " varchar(255) not null, "
-                    + "amount" + " varchar(255) not null, "
-                    + SplitEntry.COLUMN_ACCOUNT_UID + " varchar(255) not null, "
-                    + SplitEntry.COLUMN_TRANSACTION_UID + " varchar(255) not null, "
-                    + SplitEntry.COLUMN_CREATED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + SplitEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + "FOREIGN KEY (" + SplitEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + ") ON DELETE CASCADE, "
-                    + "FOREIGN KEY (" + SplitEntry.COLUMN_TRANSACTION_UID + ") REFERENCES " + TransactionEntry.TABLE_NAME + " (" + TransactionEntry.COLUMN_UID + ") ON DELETE CASCADE "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(SplitEntry.TABLE_NAME));
+        @Override
+        public String[] getCopiedTables() {
+            return new String[]{TransactionEntry.TABLE_NAME, SplitEntry.TABLE_NAME};
+        }
 
-            // initialize new split table with data from old table
-            db.execSQL("INSERT INTO " + SplitEntry.TABLE_NAME + " ( "
-                            + SplitEntry._ID + " , "
-                            + SplitEntry.COLUMN_UID + " , "
-                            + SplitEntry.COLUMN_MEMO + " , "
-                            + SplitEntry.COLUMN_TYPE + " , "
-                            + "amount" + " , "
-                            + SplitEntry.COLUMN_ACCOUNT_UID + " , "
-                            + SplitEntry.COLUMN_TRANSACTION_UID
-                            + ")  SELECT "
-                            + SplitEntry.TABLE_NAME + "_bak." + SplitEntry._ID + " , "
-                            + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_UID + " , "
-                            + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_MEMO + " , "
-                            + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TYPE + " , "
-                            + SplitEntry.TABLE_NAME + "_bak." + "amount" + " , "
-                            + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
-                            + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TRANSACTION_UID
-                            + " FROM " + SplitEntry.TABLE_NAME + "_bak;"
-            );
+        @Override
+        public void copyRows(SQLiteDatabase db, String tableName, long afterRowId, long lastRowId) {
+            if (TransactionEntry.TABLE_NAME.equals(tableName))
+                copyTransactionsToVersion8(db, buildRowRange(tableName, afterRowId, lastRowId));
+            else
+                copySplitsToVersion8(db, buildRowRange(tableName, afterRowId, lastRowId));
+        }
 
+        @Override
+        public int finish(SQLiteDatabase db) {
+            finishUpgradeToVersion8(db);
+            return 8;
+        }
+    };
 
+    /**
+     * Creates the new tables of version 8, migrates the accounts
+     * and renames the transactions and splits tables to their backup tables
+     */
+    private static void prepareUpgradeToVersion8(SQLiteDatabase db) {
+        new File(Exporter.BASE_FOLDER_PATH + "/backups/").mkdirs();
+        new File(Exporter.BASE_FOLDER_PATH + "/exports/").mkdirs();
+        //start moving the files in background thread before we do the database stuff
+        new Thread(moveExportedFilesToNewDefaultLocation).start();
 
-            //================================ END TABLE MIGRATIONS ================================
+        Log.i(DatabaseHelper.LOG_TAG, "Creating scheduled actions table");
+        db.execSQL("CREATE TABLE " + ScheduledActionEntry.TABLE_NAME + " ("
+                + ScheduledActionEntry._ID                   + " integer primary key autoincrement, "
+                + ScheduledActionEntry.COLUMN_UID            + " varchar(255) not null UNIQUE, "
+                + ScheduledActionEntry.COLUMN_ACTION_UID    + " varchar(255) not null, "
+                + ScheduledActionEntry.COLUMN_TYPE           + " varchar(255) not null, "
+                + "period "                                 + " integer not null, "
+                + ScheduledActionEntry.COLUMN_LAST_RUN       + " integer default 0, "
+                + ScheduledActionEntry.COLUMN_START_TIME     + " integer not null, "
+                + ScheduledActionEntry.COLUMN_END_TIME       + " integer default 0, "
+                + ScheduledActionEntry.COLUMN_TAG            + " text, "
+                + ScheduledActionEntry.COLUMN_ENABLED        + " tinyint default 1, " //enabled by default
+                + ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY + " integer default 0, "
+                + ScheduledActionEntry.COLUMN_EXECUTION_COUNT+ " integer default 0, "
+                + ScheduledActionEntry.COLUMN_CREATED_AT     + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + ScheduledActionEntry.COLUMN_MODIFIED_AT    + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(ScheduledActionEntry.TABLE_NAME));
+
+
+        //==============================BEGIN TABLE MIGRATIONS ========================================
+        Log.i(DatabaseHelper.LOG_TAG, "Migrating accounts table");
+        // backup transaction table
+        db.execSQL("ALTER TABLE " + AccountEntry.TABLE_NAME + " RENAME TO " + AccountEntry.TABLE_NAME + "_bak");
+        // create new transaction table
+        db.execSQL("CREATE TABLE " + AccountEntry.TABLE_NAME + " ("
+                + AccountEntry._ID + " integer primary key autoincrement, "
+                + AccountEntry.COLUMN_UID + " varchar(255) not null UNIQUE, "
+                + AccountEntry.COLUMN_NAME + " varchar(255) not null, "
+                + AccountEntry.COLUMN_TYPE + " varchar(255) not null, "
+                + AccountEntry.COLUMN_CURRENCY + " varchar(255) not null, "
+                + AccountEntry.COLUMN_DESCRIPTION + " varchar(255), "
+                + AccountEntry.COLUMN_COLOR_CODE + " varchar(255), "
+                + AccountEntry.COLUMN_FAVORITE + " tinyint default 0, "
+                + AccountEntry.COLUMN_HIDDEN + " tinyint default 0, "
+                + AccountEntry.COLUMN_FULL_NAME + " varchar(255), "
+                + AccountEntry.COLUMN_PLACEHOLDER + " tinyint default 0, "
+                + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " varchar(255), "
+                + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " varchar(255), "
+                + AccountEntry.COLUMN_CREATED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + AccountEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(AccountEntry.TABLE_NAME));
+
+        // initialize new account table with data from old table
+        db.execSQL("INSERT INTO " + AccountEntry.TABLE_NAME + " ( "
+                        + AccountEntry._ID + ","
+                        + AccountEntry.COLUMN_UID + " , "
+                        + AccountEntry.COLUMN_NAME + " , "
+                        + AccountEntry.COLUMN_TYPE + " , "
+                        + AccountEntry.COLUMN_CURRENCY + " , "
+                        + AccountEntry.COLUMN_COLOR_CODE + " , "
+                        + AccountEntry.COLUMN_FAVORITE + " , "
+                        + AccountEntry.COLUMN_FULL_NAME + " , "
+                        + AccountEntry.COLUMN_PLACEHOLDER + " , "
+                        + AccountEntry.COLUMN_HIDDEN + " , "
+                        + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " , "
+                        + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
+                        + ") SELECT "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry._ID + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_UID + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_NAME + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_TYPE + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_CURRENCY + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_COLOR_CODE + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_FAVORITE + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_FULL_NAME + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_PLACEHOLDER + " , "
+                        + " CASE WHEN " + AccountEntry.TABLE_NAME + "_bak.type = 'ROOT' THEN 1 ELSE 0 END, "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " , "
+                        + AccountEntry.TABLE_NAME + "_bak." + AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID
+                        + " FROM " + AccountEntry.TABLE_NAME + "_bak;"
+        );
+
+        Log.i(DatabaseHelper.LOG_TAG, "Migrating transactions table");
+        // backup transaction table
+        db.execSQL("ALTER TABLE " + TransactionEntry.TABLE_NAME + " RENAME TO " + TransactionEntry.TABLE_NAME + "_bak");
+        // create new transaction table
+        db.execSQL("CREATE TABLE " + TransactionEntry.TABLE_NAME + " ("
+                + TransactionEntry._ID + " integer primary key autoincrement, "
+                + TransactionEntry.COLUMN_UID + " varchar(255) not null UNIQUE, "
+                + TransactionEntry.COLUMN_DESCRIPTION + " varchar(255), "
+                + TransactionEntry.COLUMN_NOTES + " text, "
+                + TransactionEntry.COLUMN_TIMESTAMP + " integer not null, "
+                + TransactionEntry.COLUMN_EXPORTED + " tinyint default 0, "
+                + TransactionEntry.COLUMN_TEMPLATE + " tinyint default 0, "
+                + TransactionEntry.COLUMN_CURRENCY + " varchar(255) not null, "
+                + TransactionEntry.COLUMN_SCHEDX_ACTION_UID + " varchar(255), "
+                + TransactionEntry.COLUMN_CREATED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + TransactionEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "FOREIGN KEY (" + TransactionEntry.COLUMN_SCHEDX_ACTION_UID + ") REFERENCES " + ScheduledActionEntry.TABLE_NAME + " (" + ScheduledActionEntry.COLUMN_UID + ") ON DELETE SET NULL "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(TransactionEntry.TABLE_NAME));
+
+        Log.i(DatabaseHelper.LOG_TAG, "Migrating splits table");
+        // backup split table
+        db.execSQL("ALTER TABLE " + SplitEntry.TABLE_NAME + " RENAME TO " + SplitEntry.TABLE_NAME + "_bak");
+        // create new split table
+        db.execSQL("CREATE TABLE " + SplitEntry.TABLE_NAME + " ("
+                + SplitEntry._ID + " integer primary key autoincrement, "
+                + SplitEntry.COLUMN_UID + " varchar(255) not null UNIQUE, "
+                + SplitEntry.COLUMN_MEMO + " text, "
+                + SplitEntry.COLUMN_TYPE + " varchar(255) not null, "
+                + "amount" + " varchar(255) not null, "
+                + SplitEntry.COLUMN_ACCOUNT_UID + " varchar(255) not null, "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " varchar(255) not null, "
+                + SplitEntry.COLUMN_CREATED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + SplitEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "FOREIGN KEY (" + SplitEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + ") ON DELETE CASCADE, "
+                + "FOREIGN KEY (" + SplitEntry.COLUMN_TRANSACTION_UID + ") REFERENCES " + TransactionEntry.TABLE_NAME + " (" + TransactionEntry.COLUMN_UID + ") ON DELETE CASCADE "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(SplitEntry.TABLE_NAME));
+    }
 
-            // String timestamp to be used for all new created entities in migration
-            String timestamp = TimestampHelper.getUtcStringFromTimestamp(TimestampHelper.getTimestampFromNow());
+    /**
+     * Copies the transactions in a range of row IDs from their backup table to the new transactions table
+     */
+    private static void copyTransactionsToVersion8(SQLiteDatabase db, String rowRange) {
+        // initialize new transaction table with data from old table
+        db.execSQL("INSERT INTO " + TransactionEntry.TABLE_NAME + " ( "
+                        + TransactionEntry._ID + " , "
+                        + TransactionEntry.COLUMN_UID + " , "
+                        + TransactionEntry.COLUMN_DESCRIPTION + " , "
+                        + TransactionEntry.COLUMN_NOTES + " , "
+                        + TransactionEntry.COLUMN_TIMESTAMP + " , "
+                        + TransactionEntry.COLUMN_EXPORTED + " , "
+                        + TransactionEntry.COLUMN_CURRENCY + " , "
+                        + TransactionEntry.COLUMN_TEMPLATE
+                        + ")  SELECT "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry._ID + " , "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_UID + " , "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_DESCRIPTION + " , "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_NOTES + " , "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_TIMESTAMP + " , "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_EXPORTED + " , "
+                        + TransactionEntry.TABLE_NAME + "_bak." + TransactionEntry.COLUMN_CURRENCY + " , "
+                        + " CASE WHEN " + TransactionEntry.TABLE_NAME + "_bak.recurrence_period > 0 THEN 1 ELSE 0 END "
+                        + " FROM " + TransactionEntry.TABLE_NAME + "_bak WHERE " + rowRange
+        );
+    }
 
-            //ScheduledActionDbAdapter scheduledActionDbAdapter = new ScheduledActionDbAdapter(db);
-            //SplitsDbAdapter splitsDbAdapter = new SplitsDbAdapter(db);
-            //TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(db, splitsDbAdapter);
-            //AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(db,transactionsDbAdapter);
+    /**
+     * Copies the splits in a range of row IDs from their backup table to the new splits table
+     */
+    private static void copySplitsToVersion8(SQLiteDatabase db, String rowRange) {
+        // initialize new split table with data from old table
+        db.execSQL("INSERT INTO " + SplitEntry.TABLE_NAME + " ( "
+                        + SplitEntry._ID + " , "
+                        + SplitEntry.COLUMN_UID + " , "
+                        + SplitEntry.COLUMN_MEMO + " , "
+                        + SplitEntry.COLUMN_TYPE + " , "
+                        + "amount" + " , "
+                        + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                        + SplitEntry.COLUMN_TRANSACTION_UID
+                        + ")  SELECT "
+                        + SplitEntry.TABLE_NAME + "_bak." + SplitEntry._ID + " , "
+                        + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_UID + " , "
+                        + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_MEMO + " , "
+                        + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TYPE + " , "
+                        + SplitEntry.TABLE_NAME + "_bak." + "amount" + " , "
+                        + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                        + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TRANSACTION_UID
+                        + " FROM " + SplitEntry.TABLE_NAME + "_bak WHERE " + rowRange
+        );
+    }
 
-            Log.i(DatabaseHelper.LOG_TAG, "Creating default root account if none exists");
-            ContentValues contentValues = new ContentValues();
-            //assign a root account to all accounts which had null as parent except ROOT (top-level accounts)
-            String rootAccountUID;
-            Cursor cursor = db.query(AccountEntry.TABLE_NAME,
-                    new String[]{AccountEntry.COLUMN_UID},
-                    AccountEntry.COLUMN_TYPE + "= ?",
-                    new String[]{AccountType.ROOT.name()}, null, null, null);
-            try {
-                if (cursor.moveToFirst()) {
-                    rootAccountUID = cursor.getString(cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_UID));
-                }
-                else
-                {
-                    rootAccountUID = BaseModel.generateUID();
-                    contentValues.clear();
-                    contentValues.put(CommonColumns.COLUMN_UID, rootAccountUID);
-                    contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
-                    contentValues.put(AccountEntry.COLUMN_NAME,         "ROOT");
-                    contentValues.put(AccountEntry.COLUMN_TYPE,         "ROOT");
-                    contentValues.put(AccountEntry.COLUMN_CURRENCY,     Money.DEFAULT_CURRENCY_CODE);
-                    contentValues.put(AccountEntry.COLUMN_PLACEHOLDER,  0);
-                    contentValues.put(AccountEntry.COLUMN_HIDDEN,       1);
-                    contentValues.putNull(AccountEntry.COLUMN_COLOR_CODE);
-                    contentValues.put(AccountEntry.COLUMN_FAVORITE, 0);
-                    contentValues.put(AccountEntry.COLUMN_FULL_NAME,    " ");
-                    contentValues.putNull(AccountEntry.COLUMN_PARENT_ACCOUNT_UID);
-                    contentValues.putNull(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID);
-                    db.insert(AccountEntry.TABLE_NAME, null, contentValues);
-                }
-            } finally {
-                cursor.close();
+    /**
+     * Migrates recurring transactions, balances the existing transactions and drops the backup tables
+     */
+    private static void finishUpgradeToVersion8(SQLiteDatabase db) {
+        // String timestamp to be used for all new created entities in migration
+        String timestamp = TimestampHelper.getUtcStringFromTimestamp(TimestampHelper.getTimestampFromNow());
+
+        //ScheduledActionDbAdapter scheduledActionDbAdapter = new ScheduledActionDbAdapter(db);
+        //SplitsDbAdapter splitsDbAdapter = new SplitsDbAdapter(db);
+        //TransactionsDbAdapter transactionsDbAdapter = new TransactionsDbAdapter(db, splitsDbAdapter);
+        //AccountsDbAdapter accountsDbAdapter = new AccountsDbAdapter(db,transactionsDbAdapter);
+
+        Log.i(DatabaseHelper.LOG_TAG, "Creating default root account if none exists");
+        ContentValues contentValues = new ContentValues();
+        //assign a root account to all accounts which had null as parent except ROOT (top-level accounts)
+        String rootAccountUID;
+        Cursor cursor = db.query(AccountEntry.TABLE_NAME,
+                new String[]{AccountEntry.COLUMN_UID},
+                AccountEntry.COLUMN_TYPE + "= ?",
+                new String[]{AccountType.ROOT.name()}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                rootAccountUID = cursor.getString(cursor.getColumnIndexOrThrow(AccountEntry.COLUMN_UID));
             }
-            //String rootAccountUID = accountsDbAdapter.getOrCreateGnuCashRootAccountUID();
-            contentValues.clear();
-            contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID, rootAccountUID);
-            db.update(AccountEntry.TABLE_NAME, contentValues, AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " IS NULL AND " + AccountEntry.COLUMN_TYPE + " != ?", new String[]{"ROOT"});
-
-            Log.i(DatabaseHelper.LOG_TAG, "Migrating existing recurring transactions");
-            cursor = db.query(TransactionEntry.TABLE_NAME + "_bak", null, "recurrence_period > 0", null, null, null, null);
-            long lastRun = System.currentTimeMillis();
-            while (cursor.moveToNext()){
-                contentValues.clear();
-                Timestamp timestampT = new Timestamp(cursor.getLong(cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP)));
-                contentValues.put(TransactionEntry.COLUMN_CREATED_AT, TimestampHelper.getUtcStringFromTimestamp(timestampT));
-                long transactionId = cursor.getLong(cursor.getColumnIndexOrThrow(TransactionEntry._ID));
-                db.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry._ID + "=" + transactionId, null);
-
-                //ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
-                //scheduledAction.setActionUID(cursor.getString(cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID)));
-                //long period = cursor.getLong(cursor.getColumnIndexOrThrow("recurrence_period"));
-                //scheduledAction.setPeriod(period);
-                //scheduledAction.setStartTime(timestampT.getTime()); //the start time is when the transaction was created
-                //scheduledAction.setLastRun(System.currentTimeMillis()); //prevent this from being executed at the end of migration
-
+            else
+            {
+                rootAccountUID = BaseModel.generateUID();
                 contentValues.clear();
-                contentValues.put(CommonColumns.COLUMN_UID, BaseModel.generateUID());
+                contentValues.put(CommonColumns.COLUMN_UID, rootAccountUID);
                 contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
-                contentValues.put(ScheduledActionEntry.COLUMN_ACTION_UID, cursor.getString(cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID)));
-                contentValues.put("period", cursor.getLong(cursor.getColumnIndexOrThrow("recurrence_period")));
-                contentValues.put(ScheduledActionEntry.COLUMN_START_TIME, timestampT.getTime());
-                contentValues.put(ScheduledActionEntry.COLUMN_END_TIME, 0);
-                contentValues.put(ScheduledActionEntry.COLUMN_LAST_RUN, lastRun);
-                contentValues.put(ScheduledActionEntry.COLUMN_TYPE, "TRANSACTION");
-                contentValues.put(ScheduledActionEntry.COLUMN_TAG, "");
-                contentValues.put(ScheduledActionEntry.COLUMN_ENABLED, 1);
-                contentValues.put(ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY, 0);
-                contentValues.put(ScheduledActionEntry.COLUMN_EXECUTION_COUNT, 0);
-                //scheduledActionDbAdapter.addRecord(scheduledAction);
-                db.insert(ScheduledActionEntry.TABLE_NAME, null, contentValues);
-
-                //build intent for recurring transactions in the database
-                Intent intent = new Intent(Intent.ACTION_INSERT);
-                intent.setType(Transaction.MIME_TYPE);
-
-                //cancel existing pending intent
-                Context context = GnuCashApplication.getAppContext();
-                PendingIntent recurringPendingIntent = PendingIntent.getBroadcast(context,
-                        (int)transactionId, intent, PendingIntent.FLAG_CANCEL_CURRENT);
-                AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-                alarmManager.cancel(recurringPendingIntent);
+                contentValues.put(AccountEntry.COLUMN_NAME,         "ROOT");
+                contentValues.put(AccountEntry.COLUMN_TYPE,         "ROOT");
+                contentValues.put(AccountEntry.COLUMN_CURRENCY,     Money.DEFAULT_CURRENCY_CODE);
+                contentValues.put(AccountEntry.COLUMN_PLACEHOLDER,  0);
+                contentValues.put(AccountEntry.COLUMN_HIDDEN,       1);
+                contentValues.putNull(AccountEntry.COLUMN_COLOR_CODE);
+                contentValues.put(AccountEntry.COLUMN_FAVORITE, 0);
+                contentValues.put(AccountEntry.COLUMN_FULL_NAME,    " ");
+                contentValues.putNull(AccountEntry.COLUMN_PARENT_ACCOUNT_UID);
+                contentValues.putNull(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID);
+                db.insert(AccountEntry.TABLE_NAME, null, contentValues);
             }
+        } finally {
             cursor.close();
+        }
+        //String rootAccountUID = accountsDbAdapter.getOrCreateGnuCashRootAccountUID();
+        contentValues.clear();
+        contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID, rootAccountUID);
+        db.update(AccountEntry.TABLE_NAME, contentValues, AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " IS NULL AND " + AccountEntry.COLUMN_TYPE + " != ?", new String[]{"ROOT"});
+
+        Log.i(DatabaseHelper.LOG_TAG, "Migrating existing recurring transactions");
+        cursor = db.query(TransactionEntry.TABLE_NAME + "_bak", null, "recurrence_period > 0", null, null, null, null);
+        long lastRun = System.currentTimeMillis();
+        while (cursor.moveToNext()){
+            contentValues.clear();
+            Timestamp timestampT = new Timestamp(cursor.getLong(cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP)));
+            contentValues.put(TransactionEntry.COLUMN_CREATED_AT, TimestampHelper.getUtcStringFromTimestamp(timestampT));
+            long transactionId = cursor.getLong(cursor.getColumnIndexOrThrow(TransactionEntry._ID));
+            db.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry._ID + "=" + transactionId, null);
+
+            //ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+            //scheduledAction.setActionUID(cursor.getString(cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID)));
+            //long period = cursor.getLong(cursor.getColumnIndexOrThrow("recurrence_period"));
+            //scheduledAction.setPeriod(period);
+            //scheduledAction.setStartTime(timestampT.getTime()); //the start time is when the transaction was created
+            //scheduledAction.setLastRun(System.currentTimeMillis()); //prevent this from being executed at the end of migration
 
-            //auto-balance existing splits
-            Log.i(DatabaseHelper.LOG_TAG, "Auto-balancing existing transaction splits");
-            cursor = db.query(
-                    TransactionEntry.TABLE_NAME + " , " + SplitEntry.TABLE_NAME + " ON "
-                            + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + "=" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
-                            + " , " + AccountEntry.TABLE_NAME + " ON "
-                            + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + "=" + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID,
-                    new String[]{
-                            TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " AS trans_uid",
-                            TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_CURRENCY + " AS trans_currency",
-                            "TOTAL ( CASE WHEN " +
-                                    SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN " +
-                                    SplitEntry.TABLE_NAME + "." + "amount" + " ELSE - " +
-                                    SplitEntry.TABLE_NAME + "." + "amount" + " END ) AS trans_acct_balance",
-                            "COUNT ( DISTINCT " +
-                                    AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY +
-                                    " ) AS trans_currency_count"
-                    },
-                    TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " == 0",
-                    null,
-                    TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID,
-                    "trans_acct_balance != 0 AND trans_currency_count = 1",
-                    null);
-            try {
-                while (cursor.moveToNext()){
-                    double imbalance = cursor.getDouble(cursor.getColumnIndexOrThrow("trans_acct_balance"));
-                    BigDecimal decimalImbalance = BigDecimal.valueOf(imbalance).setScale(2, BigDecimal.ROUND_HALF_UP);
-                    if (decimalImbalance.compareTo(BigDecimal.ZERO) != 0) {
-                        String currencyCode = cursor.getString(cursor.getColumnIndexOrThrow("trans_currency"));
-                        String imbalanceAccountName = GnuCashApplication.getAppContext().getString(R.string.imbalance_account_name) + "-" + currencyCode;
-                        String imbalanceAccountUID;
-                        Cursor c = db.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
-                                AccountEntry.COLUMN_FULL_NAME + "= ?", new String[]{imbalanceAccountName},
-                                null, null, null);
-                        try {
-                            if (c.moveToFirst()) {
-                                imbalanceAccountUID = c.getString(c.getColumnIndexOrThrow(AccountEntry.COLUMN_UID));
-                            }
-                            else {
-                                imbalanceAccountUID = BaseModel.generateUID();
-                                contentValues.clear();
-                                contentValues.put(CommonColumns.COLUMN_UID, imbalanceAccountUID);
-                                contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
-                                contentValues.put(AccountEntry.COLUMN_NAME,         imbalanceAccountName);
-                                contentValues.put(AccountEntry.COLUMN_TYPE,         "BANK");
-                                contentValues.put(AccountEntry.COLUMN_CURRENCY,     currencyCode);
-                                contentValues.put(AccountEntry.COLUMN_PLACEHOLDER,  0);
-                                contentValues.put(AccountEntry.COLUMN_HIDDEN,       GnuCashApplication.isDoubleEntryEnabled() ? 0 : 1);
-                                contentValues.putNull(AccountEntry.COLUMN_COLOR_CODE);
-                                contentValues.put(AccountEntry.COLUMN_FAVORITE, 0);
-                                contentValues.put(AccountEntry.COLUMN_FULL_NAME,    imbalanceAccountName);
-                                contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID, rootAccountUID);
-                                contentValues.putNull(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID);
-                                db.insert(AccountEntry.TABLE_NAME, null, contentValues);
-                            }
-                        } finally {
-                            c.close();
+            contentValues.clear();
+            contentValues.put(CommonColumns.COLUMN_UID, BaseModel.generateUID());
+            contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
+            contentValues.put(ScheduledActionEntry.COLUMN_ACTION_UID, cursor.getString(cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_UID)));
+            contentValues.put("period", cursor.getLong(cursor.getColumnIndexOrThrow("recurrence_period")));
+            contentValues.put(ScheduledActionEntry.COLUMN_START_TIME, timestampT.getTime());
+            contentValues.put(ScheduledActionEntry.COLUMN_END_TIME, 0);
+            contentValues.put(ScheduledActionEntry.COLUMN_LAST_RUN, lastRun);
+            contentValues.put(ScheduledActionEntry.COLUMN_TYPE, "TRANSACTION");
+            contentValues.put(ScheduledActionEntry.COLUMN_TAG, "");
+            contentValues.put(ScheduledActionEntry.COLUMN_ENABLED, 1);
+            contentValues.put(ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY, 0);
+            contentValues.put(ScheduledActionEntry.COLUMN_EXECUTION_COUNT, 0);
+            //scheduledActionDbAdapter.addRecord(scheduledAction);
+            db.insert(ScheduledActionEntry.TABLE_NAME, null, contentValues);
+
+            //build intent for recurring transactions in the database
+            Intent intent = new Intent(Intent.ACTION_INSERT);
+            intent.setType(Transaction.MIME_TYPE);
+
+            //cancel existing pending intent
+            Context context = GnuCashApplication.getAppContext();
+            PendingIntent recurringPendingIntent = PendingIntent.getBroadcast(context,
+                    (int)transactionId, intent, PendingIntent.FLAG_CANCEL_CURRENT);
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(recurringPendingIntent);
+        }
+        cursor.close();
+
+        //auto-balance existing splits
+        Log.i(DatabaseHelper.LOG_TAG, "Auto-balancing existing transaction splits");
+        cursor = db.query(
+                TransactionEntry.TABLE_NAME + " , " + SplitEntry.TABLE_NAME + " ON "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + "=" + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                        + " , " + AccountEntry.TABLE_NAME + " ON "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + "=" + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID,
+                new String[]{
+                        TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " AS trans_uid",
+                        TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_CURRENCY + " AS trans_currency",
+                        "TOTAL ( CASE WHEN " +
+                                SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN " +
+                                SplitEntry.TABLE_NAME + "." + "amount" + " ELSE - " +
+                                SplitEntry.TABLE_NAME + "." + "amount" + " END ) AS trans_acct_balance",
+                        "COUNT ( DISTINCT " +
+                                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY +
+                                " ) AS trans_currency_count"
+                },
+                TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " == 0",
+                null,
+                TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID,
+                "trans_acct_balance != 0 AND trans_currency_count = 1",
+                null);
+        try {
+            while (cursor.moveToNext()){
+                double imbalance = cursor.getDouble(cursor.getColumnIndexOrThrow("trans_acct_balance"));
+                BigDecimal decimalImbalance = BigDecimal.valueOf(imbalance).setScale(2, BigDecimal.ROUND_HALF_UP);
+                if (decimalImbalance.compareTo(BigDecimal.ZERO) != 0) {
+                    String currencyCode = cursor.getString(cursor.getColumnIndexOrThrow("trans_currency"));
+                    String imbalanceAccountName = GnuCashApplication.getAppContext().getString(R.string.imbalance_account_name) + "-" + currencyCode;
+                    String imbalanceAccountUID;
+                    Cursor c = db.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
+                            AccountEntry.COLUMN_FULL_NAME + "= ?", new String[]{imbalanceAccountName},
+                            null, null, null);
+                    try {
+                        if (c.moveToFirst()) {
+                            imbalanceAccountUID = c.getString(c.getColumnIndexOrThrow(AccountEntry.COLUMN_UID));
                         }
-                        String TransactionUID = cursor.getString(cursor.getColumnIndexOrThrow("trans_uid"));
-                        contentValues.clear();
-                        contentValues.put(CommonColumns.COLUMN_UID, BaseModel.generateUID());
-                        contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
-                        contentValues.put("amount",     decimalImbalance.abs().toPlainString());
-                        contentValues.put(SplitEntry.COLUMN_TYPE,       decimalImbalance.compareTo(BigDecimal.ZERO) < 0 ? "DEBIT" : "CREDIT");
-                        contentValues.put(SplitEntry.COLUMN_MEMO,       "");
-                        contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID, imbalanceAccountUID);
-                        contentValues.put(SplitEntry.COLUMN_TRANSACTION_UID, TransactionUID);
-                        db.insert(SplitEntry.TABLE_NAME, null, contentValues);
-                        contentValues.clear();
-                        contentValues.put(TransactionEntry.COLUMN_MODIFIED_AT, timestamp);
-                        db.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry.COLUMN_UID + " == ?",
-                                new String[]{TransactionUID});
+                        else {
+                            imbalanceAccountUID = BaseModel.generateUID();
+                            contentValues.clear();
+                            contentValues.put(CommonColumns.COLUMN_UID, imbalanceAccountUID);
+                            contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
+                            contentValues.put(AccountEntry.COLUMN_NAME,         imbalanceAccountName);
+                            contentValues.put(AccountEntry.COLUMN_TYPE,         "BANK");
+                            contentValues.put(AccountEntry.COLUMN_CURRENCY,     currencyCode);
+                            contentValues.put(AccountEntry.COLUMN_PLACEHOLDER,  0);
+                            contentValues.put(AccountEntry.COLUMN_HIDDEN,       GnuCashApplication.isDoubleEntryEnabled() ? 0 : 1);
+                            contentValues.putNull(AccountEntry.COLUMN_COLOR_CODE);
+                            contentValues.put(AccountEntry.COLUMN_FAVORITE, 0);
+                            contentValues.put(AccountEntry.COLUMN_FULL_NAME,    imbalanceAccountName);
+                            contentValues.put(AccountEntry.COLUMN_PARENT_ACCOUNT_UID, rootAccountUID);
+                            contentValues.putNull(AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID);
+                            db.insert(AccountEntry.TABLE_NAME, null, contentValues);
+                        }
+                    } finally {
+                        c.close();
                     }
+                    String TransactionUID = cursor.getString(cursor.getColumnIndexOrThrow("trans_uid"));
+                    contentValues.clear();
+                    contentValues.put(CommonColumns.COLUMN_UID, BaseModel.generateUID());
+                    contentValues.put(CommonColumns.COLUMN_CREATED_AT, timestamp);
+                    contentValues.put("amount",     decimalImbalance.abs().toPlainString());
+                    contentValues.put(SplitEntry.COLUMN_TYPE,       decimalImbalance.compareTo(BigDecimal.ZERO) < 0 ? "DEBIT" : "CREDIT");
+                    contentValues.put(SplitEntry.COLUMN_MEMO,       "");
+                    contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID, imbalanceAccountUID);
+                    contentValues.put(SplitEntry.COLUMN_TRANSACTION_UID, TransactionUID);
+                    db.insert(SplitEntry.TABLE_NAME, null, contentValues);
+                    contentValues.clear();
+                    contentValues.put(TransactionEntry.COLUMN_MODIFIED_AT, timestamp);
+                    db.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry.COLUMN_UID + " == ?",
+                            new String[]{TransactionUID});
                 }
-            } finally {
-                cursor.close();
             }
-
-            Log.i(DatabaseHelper.LOG_TAG, "Dropping temporary migration tables");
-            db.execSQL("DROP TABLE " + SplitEntry.TABLE_NAME + "_bak");
-            db.execSQL("DROP TABLE " + AccountEntry.TABLE_NAME + "_bak");
-            db.execSQL("DROP TABLE " + TransactionEntry.TABLE_NAME + "_bak");
-
-            db.setTransactionSuccessful();
-            oldVersion = 8;
         } finally {
-            db.endTransaction();
+            cursor.close();
         }
 
-        GnuCashApplication.startScheduledActionExecutionService(GnuCashApplication.getAppContext());
-
-        return oldVersion;
+        Log.i(DatabaseHelper.LOG_TAG, "Dropping temporary migration tables");
+        db.execSQL("DROP TABLE " + SplitEntry.TABLE_NAME + "_bak");
+        db.execSQL("DROP TABLE " + AccountEntry.TABLE_NAME + "_bak");
+        db.execSQL("DROP TABLE " + TransactionEntry.TABLE_NAME + "_bak");
     }
 
     /**
@@ -851,231 +962,264 @@ public class MigrationHelper {
      *  </ul>
      * </p>
      * @param db SQLite Database to be upgraded
-     * @return New database version (9) if upgrade successful, old version (8) if unsuccessful
+     * @return New database version (9)
      * @throws RuntimeException if the default commodities could not be imported
      */
     static int upgradeDbToVersion9(SQLiteDatabase db){
         Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 9");
-        int oldVersion = 8;
-
-        db.beginTransaction();
-        try {
-            db.execSQL("CREATE TABLE " + CommodityEntry.TABLE_NAME + " ("
-                    + CommodityEntry._ID                + " integer primary key autoincrement, "
-                    + CommodityEntry.COLUMN_UID         + " varchar(255) not null UNIQUE, "
-                    + CommodityEntry.COLUMN_NAMESPACE   + " varchar(255) not null default " + Commodity.Namespace.ISO4217.name() + ", "
-                    + CommodityEntry.COLUMN_FULLNAME    + " varchar(255) not null, "
-                    + CommodityEntry.COLUMN_MNEMONIC    + " varchar(255) not null, "
-                    + CommodityEntry.COLUMN_LOCAL_SYMBOL+ " varchar(255) not null default '', "
-                    + CommodityEntry.COLUMN_CUSIP       + " varchar(255), "
-                    + CommodityEntry.COLUMN_SMALLEST_FRACTION + " integer not null, "
-                    + CommodityEntry.COLUMN_QUOTE_FLAG  + " integer not null, "
-                    + CommodityEntry.COLUMN_CREATED_AT  + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + CommodityEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(CommodityEntry.TABLE_NAME));
-            db.execSQL("CREATE UNIQUE INDEX '" + CommodityEntry.INDEX_UID
-                    + "' ON " + CommodityEntry.TABLE_NAME + "(" + CommodityEntry.COLUMN_UID + ")");
-
-            try {
-                importCommodities(db);
-            } catch (SAXException | ParserConfigurationException | IOException e) {
-                Log.e(DatabaseHelper.LOG_TAG, "Error loading currencies into the database", e);
-                Crashlytics.logException(e);
-                throw new RuntimeException(e);
-            }
-
-            db.execSQL(" ALTER TABLE " + AccountEntry.TABLE_NAME
-                    + " ADD COLUMN " + AccountEntry.COLUMN_COMMODITY_UID + " varchar(255) "
-                    + " REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ");
-
-            db.execSQL(" ALTER TABLE " + TransactionEntry.TABLE_NAME
-                    + " ADD COLUMN " + TransactionEntry.COLUMN_COMMODITY_UID + " varchar(255) "
-                    + " REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ");
+        return runChunkedUpgradeStep(db, UPGRADE_TO_VERSION_9);
+    }
 
-            db.execSQL("UPDATE " + AccountEntry.TABLE_NAME + " SET " + AccountEntry.COLUMN_COMMODITY_UID + " = "
-                    + " (SELECT " + CommodityEntry.COLUMN_UID
-                    + " FROM " + CommodityEntry.TABLE_NAME
-                    + " WHERE " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_COMMODITY_UID + " = " + CommodityEntry.TABLE_NAME + "." + CommodityEntry.COLUMN_UID
-                    + ")");
+    /**
+     * Upgrade to version 9, see {@link #upgradeDbToVersion9(SQLiteDatabase)}.
+     * The splits are copied to the new table in chunks
+     */
+    static final ChunkedUpgradeStep UPGRADE_TO_VERSION_9 = new ChunkedUpgradeStep() {
+        @Override
+        public void prepare(SQLiteDatabase db) {
+            prepareUpgradeToVersion9(db);
+        }
 
-            db.execSQL("UPDATE " + TransactionEntry.TABLE_NAME + " SET " + TransactionEntry.COLUMN_COMMODITY_UID + " = "
-                    + " (SELECT " + CommodityEntry.COLUMN_UID
-                    + " FROM " + CommodityEntry.TABLE_NAME
-                    + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_COMMODITY_UID + " = " + CommodityEntry.TABLE_NAME + "." + CommodityEntry.COLUMN_UID
-                    + ")");
+        @Override
+        public String[] getCopiedTables() {
+            return new String[]{SplitEntry.TABLE_NAME};
+        }
 
-            db.execSQL("CREATE TABLE " + PriceEntry.TABLE_NAME + " ("
-                    + PriceEntry._ID                    + " integer primary key autoincrement, "
-                    + PriceEntry.COLUMN_UID             + " varchar(255) not null UNIQUE, "
-                    + PriceEntry.COLUMN_COMMODITY_UID 	+ " varchar(255) not null, "
-                    + PriceEntry.COLUMN_CURRENCY_UID    + " varchar(255) not null, "
-                    + PriceEntry.COLUMN_TYPE            + " varchar(255), "
-                    + PriceEntry.COLUMN_DATE 	        + " TIMESTAMP not null, "
-                    + PriceEntry.COLUMN_SOURCE          + " text, "
-                    + PriceEntry.COLUMN_VALUE_NUM       + " integer not null, "
-                    + PriceEntry.COLUMN_VALUE_DENOM     + " integer not null, "
-                    + PriceEntry.COLUMN_CREATED_AT      + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + PriceEntry.COLUMN_MODIFIED_AT     + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + "UNIQUE (" + PriceEntry.COLUMN_COMMODITY_UID + ", " + PriceEntry.COLUMN_CURRENCY_UID + ") ON CONFLICT REPLACE, "
-                    + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_COMMODITY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE, "
-                    + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_CURRENCY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(PriceEntry.TABLE_NAME));
-            db.execSQL("CREATE UNIQUE INDEX '" + PriceEntry.INDEX_UID
-                    + "' ON " + PriceEntry.TABLE_NAME + "(" + PriceEntry.COLUMN_UID + ")");
+        @Override
+        public void copyRows(SQLiteDatabase db, String tableName, long afterRowId, long lastRowId) {
+            copySplitsToVersion9(db, buildRowRange(tableName, afterRowId, lastRowId));
+        }
 
+        @Override
+        public int finish(SQLiteDatabase db) {
+            finishUpgradeToVersion9(db);
+            return 9;
+        }
+    };
 
-            //store split amounts as integer components numerator and denominator
+    /**
+     * Creates the commodities and prices tables and renames the splits table to its backup table
+     */
+    private static void prepareUpgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + CommodityEntry.TABLE_NAME + " ("
+                + CommodityEntry._ID                + " integer primary key autoincrement, "
+                + CommodityEntry.COLUMN_UID         + " varchar(255) not null UNIQUE, "
+                + CommodityEntry.COLUMN_NAMESPACE   + " varchar(255) not null default " + Commodity.Namespace.ISO4217.name() + ", "
+                + CommodityEntry.COLUMN_FULLNAME    + " varchar(255) not null, "
+                + CommodityEntry.COLUMN_MNEMONIC    + " varchar(255) not null, "
+                + CommodityEntry.COLUMN_LOCAL_SYMBOL+ " varchar(255) not null default '', "
+                + CommodityEntry.COLUMN_CUSIP       + " varchar(255), "
+                + CommodityEntry.COLUMN_SMALLEST_FRACTION + " integer not null, "
+                + CommodityEntry.COLUMN_QUOTE_FLAG  + " integer not null, "
+                + CommodityEntry.COLUMN_CREATED_AT  + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + CommodityEntry.COLUMN_MODIFIED_AT + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(CommodityEntry.TABLE_NAME));
+        db.execSQL("CREATE UNIQUE INDEX '" + CommodityEntry.INDEX_UID
+                + "' ON " + CommodityEntry.TABLE_NAME + "(" + CommodityEntry.COLUMN_UID + ")");
 
-            db.execSQL("ALTER TABLE " + SplitEntry.TABLE_NAME + " RENAME TO " + SplitEntry.TABLE_NAME + "_bak");
-            // create new split table
-            db.execSQL("CREATE TABLE " + SplitEntry.TABLE_NAME + " ("
-                    + SplitEntry._ID                    + " integer primary key autoincrement, "
-                    + SplitEntry.COLUMN_UID             + " varchar(255) not null UNIQUE, "
-                    + SplitEntry.COLUMN_MEMO 	        + " text, "
-                    + SplitEntry.COLUMN_TYPE            + " varchar(255) not null, "
-                    + SplitEntry.COLUMN_VALUE_NUM       + " integer not null, "
-                    + SplitEntry.COLUMN_VALUE_DENOM     + " integer not null, "
-                    + SplitEntry.COLUMN_QUANTITY_NUM    + " integer not null, "
-                    + SplitEntry.COLUMN_QUANTITY_DENOM  + " integer not null, "
-                    + SplitEntry.COLUMN_ACCOUNT_UID 	+ " varchar(255) not null, "
-                    + SplitEntry.COLUMN_TRANSACTION_UID + " varchar(255) not null, "
-                    + SplitEntry.COLUMN_CREATED_AT       + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + SplitEntry.COLUMN_MODIFIED_AT      + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
-                    + "FOREIGN KEY (" 	+ SplitEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + ") ON DELETE CASCADE, "
-                    + "FOREIGN KEY (" 	+ SplitEntry.COLUMN_TRANSACTION_UID + ") REFERENCES " + TransactionEntry.TABLE_NAME + " (" + TransactionEntry.COLUMN_UID + ") ON DELETE CASCADE "
-                    + ");" + DatabaseHelper.createUpdatedAtTrigger(SplitEntry.TABLE_NAME));
+        try {
+            importCommodities(db);
+        } catch (SAXException | ParserConfigurationException | IOException e) {
+            Log.e(DatabaseHelper.LOG_TAG, "Error loading currencies into the database", e);
+            Crashlytics.logException(e);
+            throw new RuntimeException(e);
+        }
 
-            // initialize new split table with data from old table
-            db.execSQL("INSERT INTO " + SplitEntry.TABLE_NAME + " ( "
-                    + SplitEntry._ID                    + " , "
-                    + SplitEntry.COLUMN_UID             + " , "
-                    + SplitEntry.COLUMN_MEMO            + " , "
-                    + SplitEntry.COLUMN_TYPE            + " , "
-                    + SplitEntry.COLUMN_VALUE_NUM       + " , "
-                    + SplitEntry.COLUMN_VALUE_DENOM     + " , "
-                    + SplitEntry.COLUMN_QUANTITY_NUM    + " , "
-                    + SplitEntry.COLUMN_QUANTITY_DENOM  + " , "
-                    + SplitEntry.COLUMN_ACCOUNT_UID     + " , "
-                    + SplitEntry.COLUMN_TRANSACTION_UID
-                    + ")  SELECT "
-                    + SplitEntry.TABLE_NAME + "_bak." + SplitEntry._ID + " , "
-                    + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_UID + " , "
-                    + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_MEMO + " , "
-                    + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TYPE + " , "
-                    + SplitEntry.TABLE_NAME + "_bak.amount * 100, " //we will update this value in the next steps
-                    + "100, "
-                    + SplitEntry.TABLE_NAME + "_bak.amount * 100, " //default units of 2 decimal places were assumed until now
-                    + "100, "
-                    + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
-                    + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TRANSACTION_UID
-                    + " FROM " + SplitEntry.TABLE_NAME + "_bak;");
+        db.execSQL(" ALTER TABLE " + AccountEntry.TABLE_NAME
+                + " ADD COLUMN " + AccountEntry.COLUMN_COMMODITY_UID + " varchar(255) "
+                + " REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ");
+
+        db.execSQL(" ALTER TABLE " + TransactionEntry.TABLE_NAME
+                + " ADD COLUMN " + TransactionEntry.COLUMN_COMMODITY_UID + " varchar(255) "
+                + " REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ");
+
+        db.execSQL("UPDATE " + AccountEntry.TABLE_NAME + " SET " + AccountEntry.COLUMN_COMMODITY_UID + " = "
+                + " (SELECT " + CommodityEntry.COLUMN_UID
+                + " FROM " + CommodityEntry.TABLE_NAME
+                + " WHERE " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_COMMODITY_UID + " = " + CommodityEntry.TABLE_NAME + "." + CommodityEntry.COLUMN_UID
+                + ")");
+
+        db.execSQL("UPDATE " + TransactionEntry.TABLE_NAME + " SET " + TransactionEntry.COLUMN_COMMODITY_UID + " = "
+                + " (SELECT " + CommodityEntry.COLUMN_UID
+                + " FROM " + CommodityEntry.TABLE_NAME
+                + " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_COMMODITY_UID + " = " + CommodityEntry.TABLE_NAME + "." + CommodityEntry.COLUMN_UID
+                + ")");
+
+        db.execSQL("CREATE TABLE " + PriceEntry.TABLE_NAME + " ("
+                + PriceEntry._ID                    + " integer primary key autoincrement, "
+                + PriceEntry.COLUMN_UID             + " varchar(255) not null UNIQUE, "
+                + PriceEntry.COLUMN_COMMODITY_UID 	+ " varchar(255) not null, "
+                + PriceEntry.COLUMN_CURRENCY_UID    + " varchar(255) not null, "
+                + PriceEntry.COLUMN_TYPE            + " varchar(255), "
+                + PriceEntry.COLUMN_DATE 	        + " TIMESTAMP not null, "
+                + PriceEntry.COLUMN_SOURCE          + " text, "
+                + PriceEntry.COLUMN_VALUE_NUM       + " integer not null, "
+                + PriceEntry.COLUMN_VALUE_DENOM     + " integer not null, "
+                + PriceEntry.COLUMN_CREATED_AT      + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + PriceEntry.COLUMN_MODIFIED_AT     + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "UNIQUE (" + PriceEntry.COLUMN_COMMODITY_UID + ", " + PriceEntry.COLUMN_CURRENCY_UID + ") ON CONFLICT REPLACE, "
+                + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_COMMODITY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE, "
+                + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_CURRENCY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(PriceEntry.TABLE_NAME));
+        db.execSQL("CREATE UNIQUE INDEX '" + PriceEntry.INDEX_UID
+                + "' ON " + PriceEntry.TABLE_NAME + "(" + PriceEntry.COLUMN_UID + ")");
+
+
+        //store split amounts as integer components numerator and denominator
+
+        db.execSQL("ALTER TABLE " + SplitEntry.TABLE_NAME + " RENAME TO " + SplitEntry.TABLE_NAME + "_bak");
+        // create new split table
+        db.execSQL("CREATE TABLE " + SplitEntry.TABLE_NAME + " ("
+                + SplitEntry._ID                    + " integer primary key autoincrement, "
+                + SplitEntry.COLUMN_UID             + " varchar(255) not null UNIQUE, "
+                + SplitEntry.COLUMN_MEMO 	        + " text, "
+                + SplitEntry.COLUMN_TYPE            + " varchar(255) not null, "
+                + SplitEntry.COLUMN_VALUE_NUM       + " integer not null, "
+                + SplitEntry.COLUMN_VALUE_DENOM     + " integer not null, "
+                + SplitEntry.COLUMN_QUANTITY_NUM    + " integer not null, "
+                + SplitEntry.COLUMN_QUANTITY_DENOM  + " integer not null, "
+                + SplitEntry.COLUMN_ACCOUNT_UID 	+ " varchar(255) not null, "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " varchar(255) not null, "
+                + SplitEntry.COLUMN_CREATED_AT       + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + SplitEntry.COLUMN_MODIFIED_AT      + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "FOREIGN KEY (" 	+ SplitEntry.COLUMN_ACCOUNT_UID + ") REFERENCES " + AccountEntry.TABLE_NAME + " (" + AccountEntry.COLUMN_UID + ") ON DELETE CASCADE, "
+                + "FOREIGN KEY (" 	+ SplitEntry.COLUMN_TRANSACTION_UID + ") REFERENCES " + TransactionEntry.TABLE_NAME + " (" + TransactionEntry.COLUMN_UID + ") ON DELETE CASCADE "
+                + ");" + DatabaseHelper.createUpdatedAtTrigger(SplitEntry.TABLE_NAME));
+    }
 
+    /**
+     * Copies the splits in a range of row IDs from their backup table to the new splits table,
+     * with amounts of 2 decimal places
+     */
+    private static void copySplitsToVersion9(SQLiteDatabase db, String rowRange) {
+        // initialize new split table with data from old table
+        db.execSQL("INSERT INTO " + SplitEntry.TABLE_NAME + " ( "
+                + SplitEntry._ID                    + " , "
+                + SplitEntry.COLUMN_UID             + " , "
+                + SplitEntry.COLUMN_MEMO            + " , "
+                + SplitEntry.COLUMN_TYPE            + " , "
+                + SplitEntry.COLUMN_VALUE_NUM       + " , "
+                + SplitEntry.COLUMN_VALUE_DENOM     + " , "
+                + SplitEntry.COLUMN_QUANTITY_NUM    + " , "
+                + SplitEntry.COLUMN_QUANTITY_DENOM  + " , "
+                + SplitEntry.COLUMN_ACCOUNT_UID     + " , "
+                + SplitEntry.COLUMN_TRANSACTION_UID
+                + ")  SELECT "
+                + SplitEntry.TABLE_NAME + "_bak." + SplitEntry._ID + " , "
+                + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_UID + " , "
+                + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_MEMO + " , "
+                + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TYPE + " , "
+                + SplitEntry.TABLE_NAME + "_bak.amount * 100, " //we will update this value in the next steps
+                + "100, "
+                + SplitEntry.TABLE_NAME + "_bak.amount * 100, " //default units of 2 decimal places were assumed until now
+                + "100, "
+                + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + SplitEntry.TABLE_NAME + "_bak." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " FROM " + SplitEntry.TABLE_NAME + "_bak WHERE " + rowRange);
+    }
 
-            //************** UPDATE SPLITS WHOSE CURRENCIES HAVE NO DECIMAL PLACES *****************
-            //get all account UIDs which have currencies with fraction digits of 0
-            String query = "SELECT " + "A." + AccountEntry.COLUMN_UID + " AS account_uid "
-                    + " FROM " + AccountEntry.TABLE_NAME + " AS A, " + CommodityEntry.TABLE_NAME + " AS C "
-                    + " WHERE A." + AccountEntry.COLUMN_CURRENCY + " = C." + CommodityEntry.COLUMN_MNEMONIC
-                    + " AND C." + CommodityEntry.COLUMN_SMALLEST_FRACTION + "= 1";
+    /**
+     * Corrects the amounts of splits in currencies without 2 decimal places and drops the backup table
+     */
+    private static void finishUpgradeToVersion9(SQLiteDatabase db) {
+        //************** UPDATE SPLITS WHOSE CURRENCIES HAVE NO DECIMAL PLACES *****************
+        //get all account UIDs which have currencies with fraction digits of 0
+        String query = "SELECT " + "A." + AccountEntry.COLUMN_UID + " AS account_uid "
+                + " FROM " + AccountEntry.TABLE_NAME + " AS A, " + CommodityEntry.TABLE_NAME + " AS C "
+                + " WHERE A." + AccountEntry.COLUMN_CURRENCY + " = C." + CommodityEntry.COLUMN_MNEMONIC
+                + " AND C." + CommodityEntry.COLUMN_SMALLEST_FRACTION + "= 1";
 
-            Cursor cursor = db.rawQuery(query, null);
+        Cursor cursor = db.rawQuery(query, null);
 
-            List<String> accountUIDs = new ArrayList<>();
-            try {
-                while (cursor.moveToNext()) {
-                    String accountUID = cursor.getString(cursor.getColumnIndexOrThrow("account_uid"));
-                    accountUIDs.add(accountUID);
-                }
-            } finally {
-                cursor.close();
+        List<String> accountUIDs = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                String accountUID = cursor.getString(cursor.getColumnIndexOrThrow("account_uid"));
+                accountUIDs.add(accountUID);
             }
+        } finally {
+            cursor.close();
+        }
 
-            String accounts = TextUtils.join("' , '", accountUIDs);
-            db.execSQL("REPLACE INTO " + SplitEntry.TABLE_NAME + " ( "
-                    + SplitEntry.COLUMN_UID + " , "
-                    + SplitEntry.COLUMN_MEMO + " , "
-                    + SplitEntry.COLUMN_TYPE + " , "
-                    + SplitEntry.COLUMN_ACCOUNT_UID + " , "
-                    + SplitEntry.COLUMN_TRANSACTION_UID + " , "
-                    + SplitEntry.COLUMN_CREATED_AT + " , "
-                    + SplitEntry.COLUMN_MODIFIED_AT + " , "
-                    + SplitEntry.COLUMN_VALUE_NUM + " , "
-                    + SplitEntry.COLUMN_VALUE_DENOM + " , "
-                    + SplitEntry.COLUMN_QUANTITY_NUM + " , "
-                    + SplitEntry.COLUMN_QUANTITY_DENOM
-                    + ")  SELECT "
-                    + SplitEntry.COLUMN_UID + " , "
-                    + SplitEntry.COLUMN_MEMO + " , "
-                    + SplitEntry.COLUMN_TYPE + " , "
-                    + SplitEntry.COLUMN_ACCOUNT_UID + " , "
-                    + SplitEntry.COLUMN_TRANSACTION_UID + " , "
-                    + SplitEntry.COLUMN_CREATED_AT + " , "
-                    + SplitEntry.COLUMN_MODIFIED_AT + " , "
-                    + " ROUND (" + SplitEntry.COLUMN_VALUE_NUM + "/ 100), "
-                    + "1, "
-                    + " ROUND (" + SplitEntry.COLUMN_QUANTITY_NUM + "/ 100), "
-                    + "1 "
-                    + " FROM " + SplitEntry.TABLE_NAME
-                    + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " IN ('" + accounts + "')"
-                    + ";");
-
-
-
-            //************ UPDATE SPLITS WITH CURRENCIES HAVING 3 DECIMAL PLACES *******************
-            query = "SELECT " + "A." + AccountEntry.COLUMN_UID + " AS account_uid "
-                    + " FROM " + AccountEntry.TABLE_NAME + " AS A, " + CommodityEntry.TABLE_NAME + " AS C "
-                    + " WHERE A." + AccountEntry.COLUMN_CURRENCY + " = C." + CommodityEntry.COLUMN_MNEMONIC
-                    + " AND C." + CommodityEntry.COLUMN_SMALLEST_FRACTION + "= 1000";
-
-            cursor = db.rawQuery(query, null);
-
-            accountUIDs.clear();
-            try {
-                while (cursor.moveToNext()) {
-                    String accountUID = cursor.getString(cursor.getColumnIndexOrThrow("account_uid"));
-                    accountUIDs.add(accountUID);
-                }
-            } finally {
-                cursor.close();
+        String accounts = TextUtils.join("' , '", accountUIDs);
+        db.execSQL("REPLACE INTO " + SplitEntry.TABLE_NAME + " ( "
+                + SplitEntry.COLUMN_UID + " , "
+                + SplitEntry.COLUMN_MEMO + " , "
+                + SplitEntry.COLUMN_TYPE + " , "
+                + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " , "
+                + SplitEntry.COLUMN_CREATED_AT + " , "
+                + SplitEntry.COLUMN_MODIFIED_AT + " , "
+                + SplitEntry.COLUMN_VALUE_NUM + " , "
+                + SplitEntry.COLUMN_VALUE_DENOM + " , "
+                + SplitEntry.COLUMN_QUANTITY_NUM + " , "
+                + SplitEntry.COLUMN_QUANTITY_DENOM
+                + ")  SELECT "
+                + SplitEntry.COLUMN_UID + " , "
+                + SplitEntry.COLUMN_MEMO + " , "
+                + SplitEntry.COLUMN_TYPE + " , "
+                + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " , "
+                + SplitEntry.COLUMN_CREATED_AT + " , "
+                + SplitEntry.COLUMN_MODIFIED_AT + " , "
+                + " ROUND (" + SplitEntry.COLUMN_VALUE_NUM + "/ 100), "
+                + "1, "
+                + " ROUND (" + SplitEntry.COLUMN_QUANTITY_NUM + "/ 100), "
+                + "1 "
+                + " FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " IN ('" + accounts + "')"
+                + ";");
+
+
+
+        //************ UPDATE SPLITS WITH CURRENCIES HAVING 3 DECIMAL PLACES *******************
+        query = "SELECT " + "A." + AccountEntry.COLUMN_UID + " AS account_uid "
+                + " FROM " + AccountEntry.TABLE_NAME + " AS A, " + CommodityEntry.TABLE_NAME + " AS C "
+                + " WHERE A." + AccountEntry.COLUMN_CURRENCY + " = C." + CommodityEntry.COLUMN_MNEMONIC
+                + " AND C." + CommodityEntry.COLUMN_SMALLEST_FRACTION + "= 1000";
+
+        cursor = db.rawQuery(query, null);
+
+        accountUIDs.clear();
+        try {
+            while (cursor.moveToNext()) {
+                String accountUID = cursor.getString(cursor.getColumnIndexOrThrow("account_uid"));
+                accountUIDs.add(accountUID);
             }
-
-            accounts = TextUtils.join("' , '", accountUIDs);
-            db.execSQL("REPLACE INTO " + SplitEntry.TABLE_NAME + " ( "
-                    + SplitEntry.COLUMN_UID             + " , "
-                    + SplitEntry.COLUMN_MEMO            + " , "
-                    + SplitEntry.COLUMN_TYPE            + " , "
-                    + SplitEntry.COLUMN_ACCOUNT_UID     + " , "
-                    + SplitEntry.COLUMN_TRANSACTION_UID + " , "
-                    + SplitEntry.COLUMN_CREATED_AT      + " , "
-                    + SplitEntry.COLUMN_MODIFIED_AT     + " , "
-                    + SplitEntry.COLUMN_VALUE_NUM       + " , "
-                    + SplitEntry.COLUMN_VALUE_DENOM     + " , "
-                    + SplitEntry.COLUMN_QUANTITY_NUM    + " , "
-                    + SplitEntry.COLUMN_QUANTITY_DENOM
-                    + ")  SELECT "
-                    + SplitEntry.COLUMN_UID + " , "
-                    + SplitEntry.COLUMN_MEMO + " , "
-                    + SplitEntry.COLUMN_TYPE + " , "
-                    + SplitEntry.COLUMN_ACCOUNT_UID + " , "
-                    + SplitEntry.COLUMN_TRANSACTION_UID + " , "
-                    + SplitEntry.COLUMN_CREATED_AT  + " , "
-                    + SplitEntry.COLUMN_MODIFIED_AT + " , "
-                    + SplitEntry.COLUMN_VALUE_NUM + "* 10, " //add an extra zero because we used only 2 digits before
-                    + "1000, "
-                    + SplitEntry.COLUMN_QUANTITY_NUM + "* 10, "
-                    + "1000 "
-                    + " FROM " + SplitEntry.TABLE_NAME
-                    + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " IN ('" + accounts + "')"
-                    + ";");
-
-            db.execSQL("DROP TABLE " + SplitEntry.TABLE_NAME + "_bak");
-
-            db.setTransactionSuccessful();
-            oldVersion = 9;
         } finally {
-            db.endTransaction();
+            cursor.close();
         }
-        return oldVersion;
+
+        accounts = TextUtils.join("' , '", accountUIDs);
+        db.execSQL("REPLACE INTO " + SplitEntry.TABLE_NAME + " ( "
+                + SplitEntry.COLUMN_UID             + " , "
+                + SplitEntry.COLUMN_MEMO            + " , "
+                + SplitEntry.COLUMN_TYPE            + " , "
+                + SplitEntry.COLUMN_ACCOUNT_UID     + " , "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " , "
+                + SplitEntry.COLUMN_CREATED_AT      + " , "
+                + SplitEntry.COLUMN_MODIFIED_AT     + " , "
+                + SplitEntry.COLUMN_VALUE_NUM       + " , "
+                + SplitEntry.COLUMN_VALUE_DENOM     + " , "
+                + SplitEntry.COLUMN_QUANTITY_NUM    + " , "
+                + SplitEntry.COLUMN_QUANTITY_DENOM
+                + ")  SELECT "
+                + SplitEntry.COLUMN_UID + " , "
+                + SplitEntry.COLUMN_MEMO + " , "
+                + SplitEntry.COLUMN_TYPE + " , "
+                + SplitEntry.COLUMN_ACCOUNT_UID + " , "
+                + SplitEntry.COLUMN_TRANSACTION_UID + " , "
+                + SplitEntry.COLUMN_CREATED_AT  + " , "
+                + SplitEntry.COLUMN_MODIFIED_AT + " , "
+                + SplitEntry.COLUMN_VALUE_NUM + "* 10, " //add an extra zero because we used only 2 digits before
+                + "1000, "
+                + SplitEntry.COLUMN_QUANTITY_NUM + "* 10, "
+                + "1000 "
+                + " FROM " + SplitEntry.TABLE_NAME
+                + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " IN ('" + accounts + "')"
+                + ";");
+
+        db.execSQL("DROP TABLE " + SplitEntry.TABLE_NAME + "_bak");
     }
 
     /**
@@ -1476,4 +1620,195 @@ public class MigrationHelper {
 
         return oldVersion;
     }
+
+    /**
+     * Upgrades the database to version 14.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Adds an index on the transaction GUID of splits</li>
+     *     <li>Adds a table of pre-computed transaction summaries (balance, number of splits and currencies)
+     *     which replaces the temporary view aggregating all splits, and fills it for existing transactions</li>
+     *     <li>Adds triggers which keep the transaction summaries up to date</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 14 if migration succeeds, 13 otherwise
+     */
+    static int upgradeDbToVersion14(SQLiteDatabase db){
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 14");
+        int oldVersion = 13;
+
+        db.beginTransaction();
+        try {
+            DatabaseHelper.createTransactionSummaryTable(db);
+            db.setTransactionSuccessful();
+            oldVersion = 14;
+        } finally {
+            db.endTransaction();
+        }
+        return oldVersion;
+    }
+
+    /**
+     * Upgrades the database to version 15.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Keeps the price history of commodities: the prices table is unique on
+     *     (commodity, currency, date) instead of (commodity, currency). The unique index is also
+     *     used for looking up the price of a pair at a date</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 15 if migration succeeds, 14 otherwise
+     */
+    static int upgradeDbToVersion15(SQLiteDatabase db){
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 15");
+        int oldVersion = 14;
+
+        db.beginTransaction();
+        try {
+            db.execSQL("ALTER TABLE " + PriceEntry.TABLE_NAME + " RENAME TO " + PriceEntry.TABLE_NAME + "_bak");
+            db.execSQL("CREATE TABLE " + PriceEntry.TABLE_NAME + " ("
+                    + PriceEntry._ID                    + " integer primary key autoincrement, "
+                    + PriceEntry.COLUMN_UID             + " varchar(255) not null UNIQUE, "
+                    + PriceEntry.COLUMN_COMMODITY_UID 	+ " varchar(255) not null, "
+                    + PriceEntry.COLUMN_CURRENCY_UID    + " varchar(255) not null, "
+                    + PriceEntry.COLUMN_TYPE            + " varchar(255), "
+                    + PriceEntry.COLUMN_DATE 	        + " TIMESTAMP not null, "
+                    + PriceEntry.COLUMN_SOURCE          + " text, "
+                    + PriceEntry.COLUMN_VALUE_NUM       + " integer not null, "
+                    + PriceEntry.COLUMN_VALUE_DENOM     + " integer not null, "
+                    + PriceEntry.COLUMN_CREATED_AT      + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                    + PriceEntry.COLUMN_MODIFIED_AT     + " TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                    + "UNIQUE (" + PriceEntry.COLUMN_COMMODITY_UID + ", " + PriceEntry.COLUMN_CURRENCY_UID + ", " + PriceEntry.COLUMN_DATE + ") ON CONFLICT REPLACE, "
+                    + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_COMMODITY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE, "
+                    + "FOREIGN KEY (" 	+ PriceEntry.COLUMN_CURRENCY_UID + ") REFERENCES " + CommodityEntry.TABLE_NAME + " (" + CommodityEntry.COLUMN_UID + ") ON DELETE CASCADE "
+                    + ");" + DatabaseHelper.createUpdatedAtTrigger(PriceEntry.TABLE_NAME));
+
+            String columns = PriceEntry._ID + ", " + PriceEntry.COLUMN_UID + ", "
+                    + PriceEntry.COLUMN_COMMODITY_UID + ", " + PriceEntry.COLUMN_CURRENCY_UID + ", "
+                    + PriceEntry.COLUMN_TYPE + ", " + PriceEntry.COLUMN_DATE + ", " + PriceEntry.COLUMN_SOURCE + ", "
+                    + PriceEntry.COLUMN_VALUE_NUM + ", " + PriceEntry.COLUMN_VALUE_DENOM + ", "
+                    + PriceEntry.COLUMN_CREATED_AT + ", " + PriceEntry.COLUMN_MODIFIED_AT;
+            db.execSQL("INSERT INTO " + PriceEntry.TABLE_NAME + " ( " + columns + " ) SELECT " + columns
+                    + " FROM " + PriceEntry.TABLE_NAME + "_bak");
+            db.execSQL("DROP TABLE " + PriceEntry.TABLE_NAME + "_bak");
+            db.execSQL("CREATE UNIQUE INDEX '" + PriceEntry.INDEX_UID
+                    + "' ON " + PriceEntry.TABLE_NAME + "(" + PriceEntry.COLUMN_UID + ")");
+
+            db.setTransactionSuccessful();
+            oldVersion = 15;
+        } finally {
+            db.endTransaction();
+        }
+        return oldVersion;
+    }
+
+    /**
+     * Upgrades the database to version 16.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Adds an index of splits on (account, reconcile state), which is used for computing
+     *     the cleared and reconciled balances of accounts and listing their unreconciled splits</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 16 if migration succeeds, 15 otherwise
+     */
+    static int upgradeDbToVersion16(SQLiteDatabase db){
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 16");
+        int oldVersion = 15;
+
+        db.beginTransaction();
+        try {
+            DatabaseHelper.createSplitReconcileStateIndex(db);
+            db.setTransactionSuccessful();
+            oldVersion = 16;
+        } finally {
+            db.endTransaction();
+        }
+        return oldVersion;
+    }
+
+    /**
+     * Upgrades the database to version 17.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Adds a table of transaction fingerprints (account, day, amount and payee of every split),
+     *     which is used for detecting duplicates when importing bank statements, and fills it for existing splits</li>
+     *     <li>Adds triggers which keep the fingerprints up to date</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 17 if migration succeeds, 16 otherwise
+     */
+    static int upgradeDbToVersion17(SQLiteDatabase db){
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 17");
+        int oldVersion = 16;
+
+        db.beginTransaction();
+        try {
+            DatabaseHelper.createTransactionFingerprintTable(db);
+            db.setTransactionSuccessful();
+            oldVersion = 17;
+        } finally {
+            db.endTransaction();
+        }
+        return oldVersion;
+    }
+
+    /**
+     * Upgrades the database to version 18.
+     * <p>This migration makes the following changes to the database:
+     * <ul>
+     *     <li>Converts the execution counts and planned execution counts of weekly scheduled actions with
+     *     several days of the week from periods to occurrences. Earlier versions created one transaction per week,
+     *     now every day of the week is an occurrence. The weeks which were executed are considered complete,
+     *     so that no transaction is created twice</li>
+     * </ul>
+     * </p>
+     * @param db SQLite database to be upgraded
+     * @return New database version, 18 if migration succeeds, 17 otherwise
+     */
+    static int upgradeDbToVersion18(SQLiteDatabase db){
+        Log.i(DatabaseHelper.LOG_TAG, "Upgrading database to version 18");
+        int oldVersion = 17;
+
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery("SELECT a." + ScheduledActionEntry._ID
+                    + ", a." + ScheduledActionEntry.COLUMN_EXECUTION_COUNT
+                    + ", a." + ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY
+                    + ", r." + RecurrenceEntry.COLUMN_BYDAY
+                    + " FROM " + ScheduledActionEntry.TABLE_NAME + " a"
+                    + " JOIN " + RecurrenceEntry.TABLE_NAME + " r ON r." + RecurrenceEntry.COLUMN_UID
+                    + " = a." + ScheduledActionEntry.COLUMN_RECURRENCE_UID
+                    + " WHERE r." + RecurrenceEntry.COLUMN_PERIOD_TYPE + " = '" + PeriodType.WEEK.name() + "'"
+                    + " AND r." + RecurrenceEntry.COLUMN_BYDAY + " IS NOT NULL", null);
+            try {
+                while (cursor.moveToNext()) {
+                    Recurrence recurrence = new Recurrence(PeriodType.WEEK);
+                    recurrence.setByDay(cursor.getString(3));
+                    int occurrencesPerPeriod = recurrence.getOccurrencesPerPeriod();
+                    if (occurrencesPerPeriod <= 1)
+                        continue;
+
+                    ContentValues contentValues = new ContentValues();
+                    contentValues.put(ScheduledActionEntry.COLUMN_EXECUTION_COUNT,
+                            cursor.getInt(1) * occurrencesPerPeriod);
+                    contentValues.put(ScheduledActionEntry.COLUMN_TOTAL_FREQUENCY,
+                            cursor.getInt(2) * occurrencesPerPeriod);
+                    db.update(ScheduledActionEntry.TABLE_NAME, contentValues,
+                            ScheduledActionEntry._ID + " = " + cursor.getLong(0), null);
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+            oldVersion = 18;
+        } finally {
+            db.endTransaction();
+        }
+        return oldVersion;
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.export.BackupManager;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Closes accounting periods of the active book.
+ * <p>Closing a period replaces all transactions up to the cut-off time with one opening balance
+ * transaction per account, dated at the cut-off. The balances are computed with a single grouped query
+ * and the opening balances are inserted in bulk, so the cost does not depend on the number of accounts.</p>
+ * <p>Before anything is deleted, the closed period is archived with
+ * {@link BackupManager#createPeriodArchive(long)}. The archive can be restored as a separate book.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class PeriodCloser {
+
+    private static final String LOG_TAG = "PeriodCloser";
+
+    //no instances
+    private PeriodCloser(){}
+
+    /**
+     * Closes the period ending at {@code cutoffTimeMillis} in the active book
+     * @param cutoffTimeMillis End of the period (inclusive) in milliseconds since the epoch
+     * @return Number of transactions removed from the book
+     * @throws IOException if the period could not be archived. Nothing is deleted in that case
+     */
+    public static int closePeriod(long cutoffTimeMillis) throws IOException {
+        long start = MetricsRegistry.start();
+        String archivePath = BackupManager.createPeriodArchive(cutoffTimeMillis);
+        Log.i(LOG_TAG, "Period archived to " + archivePath);
+
+        SQLiteDatabase db = GnuCashApplication.getActiveDb();
+        TransactionsDbAdapter transactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        int deleted;
+        transactionsDbAdapter.beginTransaction();
+        try {
+            List<Transaction> openingBalances = AccountsDbAdapter.getInstance()
+                    .getOpeningBalanceTransactions(cutoffTimeMillis);
+            deleted = db.delete(TransactionEntry.TABLE_NAME,
+                    TransactionEntry.COLUMN_TEMPLATE + " = 0 AND " + TransactionEntry.COLUMN_TIMESTAMP + " <= ?",
+                    new String[]{String.valueOf(cutoffTimeMillis)});
+            DataChangeBus.getInstance().publish(db, TransactionEntry.TABLE_NAME, null, null);
+            transactionsDbAdapter.bulkAddRecords(openingBalances, DatabaseAdapter.UpdateMethod.insert);
+            transactionsDbAdapter.setTransactionSuccessful();
+            Log.i(LOG_TAG, "Closed period: replaced " + deleted + " transactions with "
+                    + openingBalances.size() + " opening balances");
+        } finally {
+            transactionsDbAdapter.endTransaction(); //also publishes the changes
+        }
+        MetricsRegistry.stop(LOG_TAG, "closePeriod", start);
+        return deleted;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Pair;
+
+import org.gnucash.android.db.DatabaseSchema.PriceEntry;
+import org.gnucash.android.util.TimestampHelper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable in-memory index of the price history of a book.
+ * <p>The prices of every pair of commodities are kept as a time series sorted by date, in both directions,
+ * so the price valid at a date is found with a binary search. Commodities without a direct price are converted
+ * through intermediate commodities, e.g. from a stock to EUR via the USD price of the stock and the EUR/USD rate.
+ * The paths through the conversion graph are computed on first use and cached.</p>
+ * <p>The index is built and invalidated by
+ * {@link org.gnucash.android.db.adapter.PricesDbAdapter#getPriceIndex()}</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class PriceIndex {
+
+    /**
+     * Columns of the prices table which are read into the index
+     */
+    public static final String[] COLUMNS = {
+            PriceEntry.COLUMN_COMMODITY_UID,
+            PriceEntry.COLUMN_CURRENCY_UID,
+            PriceEntry.COLUMN_DATE,
+            PriceEntry.COLUMN_VALUE_NUM,
+            PriceEntry.COLUMN_VALUE_DENOM
+    };
+
+    /**
+     * Time series of the prices for converting one commodity into another
+     */
+    private static final class Series {
+        /**
+         * Initial number of prices a series can hold while the index is built
+         */
+        static final int INITIAL_CAPACITY = 8;
+
+        long[] mTimes;
+        long[] mNums;
+        long[] mDenoms;
+        int mSize;
+
+        Series() {
+            mTimes = new long[INITIAL_CAPACITY];
+            mNums = new long[INITIAL_CAPACITY];
+            mDenoms = new long[INITIAL_CAPACITY];
+        }
+
+        Series(Series series) {
+            mTimes = Arrays.copyOf(series.mTimes, series.mSize);
+            mNums = Arrays.copyOf(series.mNums, series.mSize);
+            mDenoms = Arrays.copyOf(series.mDenoms, series.mSize);
+            mSize = series.mSize;
+        }
+
+        void add(long time, long num, long denom) {
+            if (mSize == mTimes.length) {
+                int capacity = mSize * 2;
+                mTimes = Arrays.copyOf(mTimes, capacity);
+                mNums = Arrays.copyOf(mNums, capacity);
+                mDenoms = Arrays.copyOf(mDenoms, capacity);
+            }
+            mTimes[mSize] = time;
+            mNums[mSize] = num;
+            mDenoms[mSize] = denom;
+            mSize++;
+        }
+
+        /**
+         * Returns the position of the latest price on or before {@code time},
+         * or of the earliest price if all prices are later
+         */
+        int find(long time) {
+            int position = Arrays.binarySearch(mTimes, 0, mSize, time);
+            if (position >= 0) {
+                //there may be several prices at the same time, use the last one
+                while (position + 1 < mSize && mTimes[position + 1] == time)
+                    position++;
+                return position;
+            }
+            int insertionPoint = -position - 1;
+            return insertionPoint == 0 ? 0 : insertionPoint - 1;
+        }
+    }
+
+    /**
+     * Time series indexed by "commodityUID/currencyUID"
+     */
+    private final Map<String, Series> mSeries;
+
+    /**
+     * Commodities for which a direct price exists, indexed by commodity GUID
+     */
+    private final Map<String, List<String>> mNeighbours;
+
+    /**
+     * Cached conversion paths indexed by "fromUID/toUID". An empty list means there is no path
+     */
+    private final Map<String, List<String>> mPaths = new ConcurrentHashMap<>();
+
+    private final long mVersion;
+
+    /**
+     * Builds the index from the prices in {@code cursor}
+     * @param cursor Cursor containing at least the {@link #COLUMNS}, preferably sorted by date
+     * @param version Version of the price records the index was built from
+     */
+    public PriceIndex(@NonNull Cursor cursor, long version) {
+        int commodityColumn = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_COMMODITY_UID);
+        int currencyColumn  = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_CURRENCY_UID);
+        int dateColumn      = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_DATE);
+        int numColumn       = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_NUM);
+        int denomColumn     = cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_DENOM);
+
+        Map<String, Series> series = new HashMap<>();
+        Map<String, List<String>> neighbours = new HashMap<>();
+        while (cursor.moveToNext()) {
+            long num = cursor.getLong(numColumn);
+            long denom = cursor.getLong(denomColumn);
+            if (num <= 0 || denom <= 0)
+                continue;
+            String commodityUID = cursor.getString(commodityColumn);
+            String currencyUID = cursor.getString(currencyColumn);
+            long time = TimestampHelper.getTimestampFromUtcString(cursor.getString(dateColumn)).getTime();
+
+            addPrice(series, neighbours, commodityUID, currencyUID, time, num, denom);
+            addPrice(series, neighbours, currencyUID, commodityUID, time, denom, num);
+        }
+
+        mSeries = new HashMap<>(series.size() * 2);
+        for (Map.Entry<String, Series> entry : series.entrySet()) {
+            Series sorted = new Series(entry.getValue());
+            sort(sorted);
+            mSeries.put(entry.getKey(), sorted);
+        }
+        mNeighbours = neighbours;
+        mVersion = version;
+    }
+
+    private static void addPrice(Map<String, Series> seriesMap, Map<String, List<String>> neighbours,
+                                 String fromUID, String toUID, long time, long num, long denom) {
+        String key = key(fromUID, toUID);
+        Series series = seriesMap.get(key);
+        if (series == null) {
+            //the series grows with its prices, and is trimmed when the index is completed
+            series = new Series();
+            seriesMap.put(key, series);
+            List<String> targets = neighbours.get(fromUID);
+            if (targets == null) {
+                targets = new ArrayList<>();
+                neighbours.put(fromUID, targets);
+            }
+            targets.add(toUID);
+        }
+        series.add(time, num, denom);
+    }
+
+    /**
+     * Sorts the prices of the series by time, keeping the order of prices with the same time
+     */
+    private static void sort(Series series) {
+        boolean sorted = true;
+        for (int i = 1; i < series.mSize && sorted; i++) {
+            sorted = series.mTimes[i - 1] <= series.mTimes[i];
+        }
+        if (sorted)
+            return;
+
+        Integer[] order = new Integer[series.mSize];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final long[] times = series.mTimes.clone();
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return times[lhs] < times[rhs] ? -1 : (times[lhs] == times[rhs] ? 0 : 1);
+            }
+        });
+        long[] nums = series.mNums.clone();
+        long[] denoms = series.mDenoms.clone();
+        for (int i = 0; i < order.length; i++) {
+            series.mTimes[i] = times[order[i]];
+            series.mNums[i] = nums[order[i]];
+            series.mDenoms[i] = denoms[order[i]];
+        }
+    }
+
+    private static String key(String fromUID, String toUID) {
+        return fromUID + "/" + toUID;
+    }
+
+    /**
+     * Returns the version of the price records from which the index was built
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Returns the direct price for converting {@code commodityUID} into {@code currencyUID} at a point in time.
+     * <p>The price is the latest one on or before {@code timeMillis}. If all prices of the pair are later,
+     * the earliest one is returned.</p>
+     * @param commodityUID GUID of the commodity to convert from
+     * @param currencyUID GUID of the commodity to convert to
+     * @param timeMillis Time of the conversion in milliseconds since the epoch
+     * @return Numerator/denominator pair of the price, or {@code null} if there is no price for the pair
+     */
+    @Nullable
+    public Pair<Long, Long> getPrice(@NonNull String commodityUID, @NonNull String currencyUID, long timeMillis) {
+        if (commodityUID.equals(currencyUID))
+            return new Pair<>(1L, 1L);
+        Series series = mSeries.get(key(commodityUID, currencyUID));
+        if (series == null)
+            return null;
+        int position = series.find(timeMillis);
+        return new Pair<>(series.mNums[position], series.mDenoms[position]);
+    }
+
+    /**
+     * Converts an amount from one commodity to another at a point in time.
+     * <p>If there is no direct price for the pair, the amount is converted through the shortest chain
+     * of commodities with prices. The prices used are determined as in {@link #getPrice(String, String, long)}</p>
+     * @param amount Amount to convert
+     * @param fromUID GUID of the commodity of {@code amount}
+     * @param toUID GUID of the commodity to convert to
+     * @param timeMillis Time of the conversion in milliseconds since the epoch
+     * @param scale Number of decimal places of the result
+     * @return Converted amount, or {@code null} if the commodities cannot be converted
+     */
+    @Nullable
+    public BigDecimal convert(@NonNull BigDecimal amount, @NonNull String fromUID, @NonNull String toUID,
+                              long timeMillis, int scale) {
+        if (fromUID.equals(toUID))
+            return amount.setScale(scale, RoundingMode.HALF_EVEN);
+
+        List<String> path = getPath(fromUID, toUID);
+        if (path.isEmpty())
+            return null;
+
+        //multiply the fractions exactly and round only once
+        BigInteger num = amount.unscaledValue();
+        BigInteger denom = BigInteger.TEN.pow(Math.max(amount.scale(), 0));
+        if (amount.scale() < 0)
+            num = num.multiply(BigInteger.TEN.pow(-amount.scale()));
+        String current = fromUID;
+        for (String next : path) {
+            Pair<Long, Long> price = getPrice(current, next, timeMillis);
+            //every edge of the path has a price
+            num = num.multiply(BigInteger.valueOf(price.first));
+            denom = denom.multiply(BigInteger.valueOf(price.second));
+            current = next;
+        }
+        return new BigDecimal(num).divide(new BigDecimal(denom), scale, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Returns {@code true} if an amount in commodity {@code fromUID} can be converted to {@code toUID}
+     */
+    public boolean canConvert(@NonNull String fromUID, @NonNull String toUID) {
+        return fromUID.equals(toUID) || !getPath(fromUID, toUID).isEmpty();
+    }
+
+    /**
+     * Returns the commodities through which to convert from {@code fromUID} to {@code toUID},
+     * excluding {@code fromUID} and including {@code toUID}
+     * @return Shortest conversion path, or an empty list if there is none
+     */
+    private List<String> getPath(String fromUID, String toUID) {
+        String key = key(fromUID, toUID);
+        List<String> path = mPaths.get(key);
+        if (path == null) {
+            path = findPath(fromUID, toUID);
+            mPaths.put(key, path);
+        }
+        return path;
+    }
+
+    /**
+     * Breadth-first search of the shortest path in the conversion graph
+     */
+    private List<String> findPath(String fromUID, String toUID) {
+        if (mSeries.containsKey(key(fromUID, toUID)))
+            return Collections.singletonList(toUID);
+
+        Map<String, String> predecessors = new HashMap<>();
+        Queue<String> queue = new ArrayDeque<>();
+        predecessors.put(fromUID, fromUID);
+        queue.add(fromUID);
+        while (!queue.isEmpty()) {
+            String commodityUID = queue.remove();
+            List<String> neighbours = mNeighbours.get(commodityUID);
+            if (neighbours == null)
+                continue;
+            for (String neighbour : neighbours) {
+                if (predecessors.containsKey(neighbour))
+                    continue;
+                predecessors.put(neighbour, commodityUID);
+                if (neighbour.equals(toUID)) {
+                    List<String> path = new ArrayList<>();
+                    for (String uid = toUID; !uid.equals(fromUID); uid = predecessors.get(uid)) {
+                        path.add(uid);
+                    }
+                    Collections.reverse(path);
+                    return Collections.unmodifiableList(path);
+                }
+                queue.add(neighbour);
+            }
+        }
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.db;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.TransactionType;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reconciliation of an account with a statement, e.g. of a bank or a credit card.
+ * <p>The splits of the account up to the statement date which are not reconciled yet are loaded once.
+ * Marking them as cleared or not only updates the cleared balance and the difference to the statement
+ * balance in memory, so toggling stays fast for accounts with many splits. The changed states are written
+ * to the database with {@link #save()}, in bulk. When the difference is zero, {@link #finish()}
+ * marks all cleared splits as reconciled.</p>
+ * <p>Balances are signed like the balances of the account shown to the user,
+ * i.e. negated for accounts which have a credit normal balance, like credit cards.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class Reconciliation {
+
+    private final SplitsDbAdapter mSplitsDbAdapter;
+    private final String mAccountUID;
+    private final long mStatementTime;
+    private final Commodity mCommodity;
+    private final BigDecimal mStatementBalance;
+    private final BigDecimal mReconciledBalance;
+
+    /**
+     * Sum of the reconciled and the cleared splits
+     */
+    private BigDecimal mClearedBalance;
+
+    /**
+     * Amounts of the unreconciled splits, signed like the balance, in the order of their transactions
+     */
+    private final LinkedHashMap<String, BigDecimal> mAmounts = new LinkedHashMap<>();
+
+    /**
+     * Descriptions and times of the transactions of the unreconciled splits, for displaying them
+     */
+    private final Map<String, String> mDescriptions = new HashMap<>();
+    private final Map<String, Long> mTimes = new HashMap<>();
+
+    /**
+     * GUIDs of the unreconciled splits which are currently cleared
+     */
+    private final Set<String> mCleared = new HashSet<>();
+
+    /**
+     * Splits whose cleared state was changed since the last save, mapped to their new state
+     */
+    private final Map<String, Boolean> mChanges = new HashMap<>();
+
+    private Reconciliation(SplitsDbAdapter splitsDbAdapter, String accountUID, long statementTime,
+                           Money statementBalance) {
+        mSplitsDbAdapter = splitsDbAdapter;
+        mAccountUID = accountUID;
+        mStatementTime = statementTime;
+        mCommodity = statementBalance.getCommodity();
+        mStatementBalance = statementBalance.asBigDecimal();
+        boolean negate = !splitsDbAdapter.getAccountType(accountUID).hasDebitNormalBalance();
+
+        Money reconciled = splitsDbAdapter.computeSplitSumsByReconcileState(accountUID, statementTime)
+                .get(Split.FLAG_RECONCILED);
+        BigDecimal reconciledBalance = reconciled == null ? BigDecimal.ZERO : reconciled.asBigDecimal();
+        mReconciledBalance = negate ? reconciledBalance.negate() : reconciledBalance;
+        mClearedBalance = mReconciledBalance;
+
+        Cursor cursor = splitsDbAdapter.fetchUnreconciledSplits(accountUID, statementTime);
+        try {
+            int uidColumn = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_UID);
+            int typeColumn = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_TYPE);
+            int quantityNumColumn = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_QUANTITY_NUM);
+            int quantityDenomColumn = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_QUANTITY_DENOM);
+            int reconcileStateColumn = cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_RECONCILE_STATE);
+            int descriptionColumn = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_DESCRIPTION);
+            int timestampColumn = cursor.getColumnIndexOrThrow(TransactionEntry.COLUMN_TIMESTAMP);
+            while (cursor.moveToNext()) {
+                String splitUID = cursor.getString(uidColumn);
+                BigDecimal amount = Money.getBigDecimal(cursor.getLong(quantityNumColumn), cursor.getLong(quantityDenomColumn));
+                boolean isDebit = TransactionType.DEBIT.name().equals(cursor.getString(typeColumn));
+                if (isDebit == negate)
+                    amount = amount.negate();
+                mAmounts.put(splitUID, amount);
+                mDescriptions.put(splitUID, cursor.getString(descriptionColumn));
+                mTimes.put(splitUID, cursor.getLong(timestampColumn));
+                if (cursor.getString(reconcileStateColumn).charAt(0) == Split.FLAG_CLEARED) {
+                    mCleared.add(splitUID);
+                    mClearedBalance = mClearedBalance.add(amount);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Starts the reconciliation of an account in the active book with a statement
+     * @param accountUID GUID of the account
+     * @param statementTime Time of the statement. Transactions up to this time (inclusive) are reconciled
+     * @param statementBalance Ending balance of the statement, in the currency of the account
+     * @return Reconciliation of the account
+     */
+    public static Reconciliation start(@NonNull String accountUID, long statementTime, @NonNull Money statementBalance) {
+        return new Reconciliation(SplitsDbAdapter.getInstance(), accountUID, statementTime, statementBalance);
+    }
+
+    /**
+     * Returns the GUID of the account which is reconciled
+     */
+    public String getAccountUID() {
+        return mAccountUID;
+    }
+
+    /**
+     * Returns the GUIDs of the splits up to the statement date which are not reconciled, in the order of their transactions
+     */
+    public List<String> getUnreconciledSplitUIDs() {
+        return new ArrayList<>(mAmounts.keySet());
+    }
+
+    /**
+     * Returns the amount of an unreconciled split, signed like the balance of the account
+     * @param splitUID GUID of the split
+     * @throws IllegalArgumentException if the split is not one of the unreconciled splits
+     */
+    public Money getAmount(@NonNull String splitUID) {
+        return new Money(getSignedAmount(splitUID), mCommodity);
+    }
+
+    /**
+     * Returns the description of the transaction of an unreconciled split
+     * @param splitUID GUID of the split
+     * @throws IllegalArgumentException if the split is not one of the unreconciled splits
+     */
+    public String getDescription(@NonNull String splitUID) {
+        getSignedAmount(splitUID);
+        return mDescriptions.get(splitUID);
+    }
+
+    /**
+     * Returns the time of the transaction of an unreconciled split, in milliseconds
+     * @param splitUID GUID of the split
+     * @throws IllegalArgumentException if the split is not one of the unreconciled splits
+     */
+    public long getTime(@NonNull String splitUID) {
+        getSignedAmount(splitUID);
+        return mTimes.get(splitUID);
+    }
+
+    /**
+     * Returns the time of the statement. Transactions up to this time (inclusive) are reconciled
+     */
+    public long getStatementTime() {
+        return mStatementTime;
+    }
+
+    /**
+     * Returns {@code true} if the split is cleared, including changes which are not saved yet
+     * @param splitUID GUID of the split
+     */
+    public boolean isCleared(@NonNull String splitUID) {
+        return mCleared.contains(splitUID);
+    }
+
+    /**
+     * Marks an unreconciled split as cleared or not cleared and updates the cleared balance
+     * @param splitUID GUID of the split
+     * @param cleared {@code true} if the split appears on the statement
+     * @throws IllegalArgumentException if the split is not one of the unreconciled splits
+     */
+    public void setCleared(@NonNull String splitUID, boolean cleared) {
+        BigDecimal amount = getSignedAmount(splitUID);
+        if (cleared == isCleared(splitUID))
+            return;
+
+        if (cleared) {
+            mCleared.add(splitUID);
+            mClearedBalance = mClearedBalance.add(amount);
+        } else {
+            mCleared.remove(splitUID);
+            mClearedBalance = mClearedBalance.subtract(amount);
+        }
+        //toggling twice restores the saved state
+        if (mChanges.remove(splitUID) == null)
+            mChanges.put(splitUID, cleared);
+    }
+
+    /**
+     * Marks all unreconciled splits as cleared or not cleared
+     * @param cleared {@code true} to clear all splits, {@code false} to unclear them
+     */
+    public void setAllCleared(boolean cleared) {
+        for (String splitUID : mAmounts.keySet()) {
+            setCleared(splitUID, cleared);
+        }
+    }
+
+    /**
+     * Returns the balance of the reconciled splits up to the statement date
+     */
+    public Money getReconciledBalance() {
+        return new Money(mReconciledBalance, mCommodity);
+    }
+
+    /**
+     * Returns the balance of the reconciled and cleared splits up to the statement date
+     */
+    public Money getClearedBalance() {
+        return new Money(mClearedBalance, mCommodity);
+    }
+
+    /**
+     * Returns the ending balance of the statement
+     */
+    public Money getStatementBalance() {
+        return new Money(mStatementBalance, mCommodity);
+    }
+
+    /**
+     * Returns the difference between the statement balance and the cleared balance.
+     * The account can be reconciled when the difference is zero
+     */
+    public Money getDifference() {
+        return new Money(mStatementBalance.subtract(mClearedBalance), mCommodity);
+    }
+
+    /**
+     * Returns {@code true} if there are changes of cleared states which are not saved yet
+     */
+    public boolean hasUnsavedChanges() {
+        return !mChanges.isEmpty();
+    }
+
+    /**
+     * Writes the changed cleared states to the database, so that the reconciliation can be continued later
+     */
+    public void save() {
+        if (mChanges.isEmpty())
+            return;
+
+        List<String> clearedUIDs = new ArrayList<>();
+        List<String> unclearedUIDs = new ArrayList<>();
+        for (Map.Entry<String, Boolean> change : mChanges.entrySet()) {
+            if (change.getValue())
+                clearedUIDs.add(change.getKey());
+            else
+                unclearedUIDs.add(change.getKey());
+        }
+        mSplitsDbAdapter.beginTransaction();
+        try {
+            mSplitsDbAdapter.updateReconcileState(mAccountUID, clearedUIDs, Split.FLAG_CLEARED);
+            mSplitsDbAdapter.updateReconcileState(mAccountUID, unclearedUIDs, Split.FLAG_NOT_RECONCILED);
+            mSplitsDbAdapter.setTransactionSuccessful();
+        } finally {
+            mSplitsDbAdapter.endTransaction();
+        }
+        mChanges.clear();
+    }
+
+    /**
+     * Saves the changes and marks all cleared splits up to the statement date as reconciled
+     * @throws IllegalStateException if the cleared balance does not match the statement balance
+     */
+    public void finish() {
+        if (mStatementBalance.compareTo(mClearedBalance) != 0)
+            throw new IllegalStateException("Cleared balance " + mClearedBalance.toPlainString()
+                    + " does not match the statement balance " + mStatementBalance.toPlainString());
+
+        mSplitsDbAdapter.beginTransaction();
+        try {
+            save();
+            mSplitsDbAdapter.reconcileClearedSplits(mAccountUID, mStatementTime);
+            mSplitsDbAdapter.setTransactionSuccessful();
+        } finally {
+            mSplitsDbAdapter.endTransaction();
+        }
+    }
+
+    private BigDecimal getSignedAmount(String splitUID) {
+        BigDecimal amount = mAmounts.get(splitUID);
+        if (amount == null)
+            throw new IllegalArgumentException("Split " + splitUID + " is not an unreconciled split of the account");
+        return amount;
+    }
+}
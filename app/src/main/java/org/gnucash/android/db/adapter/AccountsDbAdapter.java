@@ -30,6 +30,9 @@ import android.util.Log;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountIndex;
+import org.gnucash.android.db.BalanceHistory;
+import org.gnucash.android.db.PriceIndex;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.AccountType;
@@ -38,19 +41,28 @@ import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.MetricsRegistry;
 import org.gnucash.android.util.TimestampHelper;
+import org.joda.time.LocalDate;
 
 import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Currency;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionSummaryEntry;
 
 /**
  * Manages persistence of {@link Account}s in the database
@@ -82,6 +94,17 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      */
     private final CommoditiesDbAdapter mCommoditiesDbAdapter;
 
+    /**
+     * In-memory index of the accounts, built on demand
+     */
+    private AccountIndex mAccountIndex;
+
+    /**
+     * Prices adapter for converting balances in other currencies, created on demand.
+     * It keeps the price index between balance computations
+     */
+    private PricesDbAdapter mPricesDbAdapter;
+
     /**
      * Overloaded constructor. Creates an adapter for an already open database
      * @param db SQliteDatabase instance
@@ -153,6 +176,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         //in-case the account already existed, we want to update the templates based on it as well
         List<Transaction> templateTransactions = mTransactionsAdapter.getScheduledTransactionsForAccount(account.getUID());
         super.addRecord(account, updateMethod);
+        invalidateAccountIndex();
         String accountUID = account.getUID();
 		//now add transactions if there are any
 		if (account.getAccountType() != AccountType.ROOT){
@@ -191,6 +215,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
             transactionList.addAll(mTransactionsAdapter.getScheduledTransactionsForAccount(account.getUID()));
         }
         long nRow = super.bulkAddRecords(accountList, updateMethod);
+        invalidateAccountIndex();
 
         if (nRow > 0 && !transactionList.isEmpty()){
             mTransactionsAdapter.bulkAddRecords(transactionList, updateMethod);
@@ -243,7 +268,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
     public int markAsExported(String accountUID){
         ContentValues contentValues = new ContentValues();
         contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
-        return mDb.update(
+        int rowsUpdated = mDb.update(
                 TransactionEntry.TABLE_NAME,
                 contentValues,
                 TransactionEntry.COLUMN_UID + " IN ( " +
@@ -258,6 +283,9 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                         + " ) ",
                 new String[]{accountUID}
         );
+        if (rowsUpdated > 0)
+            notifyChange(TransactionEntry.TABLE_NAME, null, Collections.singleton(accountUID));
+        return rowsUpdated;
     }
 
     /**
@@ -275,7 +303,10 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         } else {
             contentValues.put(columnKey, newValue);
         }
-        return mDb.update(AccountEntry.TABLE_NAME, contentValues, null, null);
+        int rowsUpdated = mDb.update(AccountEntry.TABLE_NAME, contentValues, null, null);
+        invalidateAccountIndex();
+        notifyChange(null, null);
+        return rowsUpdated;
     }
 
     /**
@@ -286,7 +317,9 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
      * @return Number of records affected
      */
     public int updateAccount(long accountId, String columnKey, String newValue){
-        return updateRecord(AccountEntry.TABLE_NAME, accountId, columnKey, newValue);
+        int rowsUpdated = updateRecord(AccountEntry.TABLE_NAME, accountId, columnKey, newValue);
+        invalidateAccountIndex();
+        return rowsUpdated;
     }
 
     /**
@@ -348,7 +381,13 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                     );
                 }
             }
+            //the balances of the old and the new parent include the moved sub-accounts
+            Set<String> affectedAccountUIDs = new HashSet<>(descendantAccountUIDs);
+            affectedAccountUIDs.add(accountUID);
+            affectedAccountUIDs.add(newParentAccountUID);
+            notifyChange(descendantAccountUIDs, affectedAccountUIDs);
         }
+        invalidateAccountIndex();
     }
 
     /**
@@ -375,7 +414,7 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         Log.d(LOG_TAG, "Delete account with rowId with its transactions and sub-accounts: " + accountId);
 
         List<String> descendantAccountUIDs = getDescendantAccountUIDs(accountUID, null, null);
-        mDb.beginTransaction();
+        beginTransaction();
         try {
             descendantAccountUIDs.add(accountUID); //add account to descendants list just for convenience
             for (String descendantAccountUID : descendantAccountUIDs) {
@@ -399,13 +438,15 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                 mDb.update(mTableName, contentValues,
                         AccountEntry.COLUMN_DEFAULT_TRANSFER_ACCOUNT_UID + " IN (" + accountUIDList + ")",
                         null);
+                notifyChange(descendantAccountUIDs, descendantAccountUIDs);
             }
 
-            mDb.setTransactionSuccessful();
+            setTransactionSuccessful();
             return true;
         }
         finally {
-            mDb.endTransaction();
+            endTransaction();
+            invalidateAccountIndex();
         }
     }
 
@@ -749,6 +790,36 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
                 AccountEntry.COLUMN_FULL_NAME + " ASC");
     }
 
+    /**
+     * Returns the in-memory index of all accounts, sorted by full name.
+     * <p>The index is built with a single query the first time it is requested and reused
+     * until the accounts of the database are modified through any accounts adapter.
+     * Use it instead of {@link #fetchAccountsOrderedByFullName(String, String[])} for account pickers</p>
+     * @return Account index
+     */
+    public synchronized AccountIndex getAccountIndex() {
+        long version = getTableVersion().get();
+        if (mAccountIndex == null || mAccountIndex.getVersion() != version) {
+            long start = MetricsRegistry.start();
+            Cursor cursor = mDb.query(AccountEntry.TABLE_NAME, AccountIndex.COLUMNS,
+                    null, null, null, null, AccountEntry.COLUMN_FULL_NAME + " ASC");
+            try {
+                mAccountIndex = new AccountIndex(cursor, version);
+            } finally {
+                cursor.close();
+                MetricsRegistry.stop(LOG_TAG, "buildAccountIndex", start);
+            }
+        }
+        return mAccountIndex;
+    }
+
+    /**
+     * Marks the account index as outdated, it will be rebuilt the next time it is requested
+     */
+    private void invalidateAccountIndex() {
+        getTableVersion().incrementAndGet();
+    }
+
     /**
      * Returns the balance of an account while taking sub-accounts into consideration
      * @return Account Balance of an account including sub-accounts
@@ -829,6 +900,246 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         
     }
 
+    /**
+     * Returns the balances of several accounts, including their sub-accounts, within the specified time range.
+     * <p>Computes the same balances as {@link #getAccountBalance(String, long, long)} for every account, but uses
+     * one query for the account tree and one query summing the splits of all accounts,
+     * instead of several queries per account</p>
+     * @param accountUIDs GUIDs of the accounts
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Map of account GUIDs to balances in the currency of the account
+     */
+    public Map<String, Money> getAccountBalances(@NonNull Collection<String> accountUIDs,
+                                                 long startTimestamp, long endTimestamp) {
+        long start = MetricsRegistry.start();
+        Map<String, List<String>> childrenByParent = new HashMap<>();
+        Map<String, String> currencyByAccount = new HashMap<>();
+        Map<String, AccountType> typeByAccount = new HashMap<>();
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME,
+                new String[]{AccountEntry.COLUMN_UID, AccountEntry.COLUMN_PARENT_ACCOUNT_UID,
+                        AccountEntry.COLUMN_CURRENCY, AccountEntry.COLUMN_TYPE},
+                null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                String accountUID = cursor.getString(0);
+                String parentUID = cursor.getString(1);
+                currencyByAccount.put(accountUID, cursor.getString(2));
+                typeByAccount.put(accountUID, AccountType.valueOf(cursor.getString(3)));
+                if (parentUID == null)
+                    continue;
+                List<String> children = childrenByParent.get(parentUID);
+                if (children == null) {
+                    children = new ArrayList<>();
+                    childrenByParent.put(parentUID, children);
+                }
+                children.add(accountUID);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Map<String, Money> splitSums = mTransactionsAdapter.getSplitDbAdapter()
+                .computeSplitSumsByAccount(startTimestamp, endTimestamp);
+
+        Map<String, Money> balances = new HashMap<>(accountUIDs.size() * 2);
+        PriceConverter priceConverter = new PriceConverter();
+        long priceTime = endTimestamp == -1 ? System.currentTimeMillis() : endTimestamp;
+        for (String accountUID : accountUIDs) {
+            String currencyCode = currencyByAccount.get(accountUID);
+            if (currencyCode == null)
+                continue;
+            boolean hasDebitNormalBalance = typeByAccount.get(accountUID).hasDebitNormalBalance();
+            Money balance = Money.createZeroInstance(currencyCode);
+            LinkedList<String> pending = new LinkedList<>();
+            pending.add(accountUID);
+            while (!pending.isEmpty()) {
+                String uid = pending.removeFirst();
+                List<String> children = childrenByParent.get(uid);
+                if (children != null)
+                    pending.addAll(children);
+                Money splitSum = splitSums.get(uid);
+                if (splitSum == null || splitSum.isAmountZero()
+                        || splitSum.getCommodity().getCurrencyCode().equals("XXX")) //ignore custom currency
+                    continue;
+                if (!hasDebitNormalBalance)
+                    splitSum = splitSum.negate();
+                Money converted = priceConverter.convert(splitSum, currencyCode, priceTime);
+                if (converted != null)
+                    balance = balance.add(converted);
+            }
+            balances.put(accountUID, balance);
+        }
+        MetricsRegistry.stop(LOG_TAG, "getAccountBalances", start);
+        return balances;
+    }
+
+    /**
+     * Returns the balance history of an account including its sub-accounts, with the balance at the end of
+     * every day on which it changed.
+     * <p>The history is computed from one scan over the splits of the account tree, ordered by time,
+     * which accumulates the running balance. This replaces one {@link #getAccountBalance(String, long, long)}
+     * query per point of a chart. Balances are signed like {@link #getAccountBalance(String)} and are in the
+     * currency of the account; amounts of sub-accounts in other commodities are accumulated per commodity and
+     * converted at the prices valid at the end of the day of each point, so every point is equal to
+     * {@code getAccountBalance(accountUID, -1, time)} at its time</p>
+     * @param accountUID GUID of the account
+     * @return Balance history of the account
+     */
+    public BalanceHistory getBalanceHistory(@NonNull String accountUID) {
+        long start = MetricsRegistry.start();
+        String currencyCode = mTransactionsAdapter.getAccountCurrencyCode(accountUID);
+        Commodity commodity = Commodity.getInstance(currencyCode);
+        boolean hasDebitNormalBalance = getAccountType(accountUID).hasDebitNormalBalance();
+        List<String> accountUIDs = getDescendantAccountUIDs(accountUID, null, null);
+        accountUIDs.add(0, accountUID);
+
+        String timestampColumn = TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP;
+        Cursor cursor = mDb.query("trans_split_acct",
+                new String[]{timestampColumn,
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE,
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM,
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM,
+                        AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY},
+                TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0 AND "
+                        + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID
+                        + " IN ( '" + TextUtils.join("' , '", accountUIDs) + "' )",
+                null, null, null, timestampColumn + " ASC");
+
+        long[] times = new long[Math.max(16, cursor.getCount() / 4)];
+        BigDecimal[] balances = new BigDecimal[times.length];
+        int size = 0;
+        PriceConverter priceConverter = new PriceConverter();
+        BigDecimal balance = BigDecimal.ZERO;
+        Map<String, BigDecimal> otherCommodityBalances = new HashMap<>();
+        long dayEnd = Long.MIN_VALUE;
+        try {
+            while (cursor.moveToNext()) {
+                long timestamp = cursor.getLong(0);
+                if (timestamp > dayEnd) {
+                    if (dayEnd != Long.MIN_VALUE) { //the day of the previous split is complete
+                        if (size == times.length) {
+                            times = Arrays.copyOf(times, size * 2);
+                            balances = Arrays.copyOf(balances, size * 2);
+                        }
+                        times[size] = dayEnd;
+                        balances[size++] = addConvertedBalances(balance, otherCommodityBalances,
+                                currencyCode, priceConverter, dayEnd);
+                    }
+                    dayEnd = new LocalDate(timestamp).plusDays(1).toDateTimeAtStartOfDay().getMillis() - 1;
+                }
+
+                BigDecimal amount = Money.getBigDecimal(cursor.getLong(2), cursor.getLong(3));
+                boolean isDebit = TransactionType.DEBIT.name().equals(cursor.getString(1));
+                if (isDebit != hasDebitNormalBalance)
+                    amount = amount.negate();
+                String splitCurrencyCode = cursor.getString(4);
+                if (splitCurrencyCode.equals(currencyCode)) {
+                    balance = balance.add(amount);
+                } else if (!splitCurrencyCode.equals("XXX")) { //ignore custom currency
+                    //converted at the prices of each point, like the balance as of its time
+                    BigDecimal otherBalance = otherCommodityBalances.get(splitCurrencyCode);
+                    otherCommodityBalances.put(splitCurrencyCode,
+                            otherBalance == null ? amount : otherBalance.add(amount));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (dayEnd != Long.MIN_VALUE) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size + 1);
+                balances = Arrays.copyOf(balances, size + 1);
+            }
+            times[size] = dayEnd;
+            balances[size++] = addConvertedBalances(balance, otherCommodityBalances,
+                    currencyCode, priceConverter, dayEnd);
+        }
+        MetricsRegistry.stop(LOG_TAG, "getBalanceHistory", start);
+        return new BalanceHistory(commodity, Arrays.copyOf(times, size), Arrays.copyOf(balances, size));
+    }
+
+    /**
+     * Adds balances in other commodities to a balance, converted at the prices valid at a point in time.
+     * Balances which cannot be converted are ignored, as in {@link #getAccountBalance(String, long, long)}
+     * @param balance Balance in the currency {@code currencyCode}
+     * @param otherCommodityBalances Balances in other commodities, by currency code
+     * @param currencyCode Currency code of the result
+     * @param priceConverter Converter for the balances
+     * @param timeMillis Time of the prices in milliseconds since the epoch
+     * @return Total balance in the currency {@code currencyCode}
+     */
+    private static BigDecimal addConvertedBalances(BigDecimal balance, Map<String, BigDecimal> otherCommodityBalances,
+                                                   String currencyCode, PriceConverter priceConverter, long timeMillis) {
+        for (Map.Entry<String, BigDecimal> entry : otherCommodityBalances.entrySet()) {
+            if (entry.getValue().signum() == 0)
+                continue;
+            Money converted = priceConverter.convert(
+                    new Money(entry.getValue(), Commodity.getInstance(entry.getKey())), currencyCode, timeMillis);
+            if (converted != null)
+                balance = balance.add(converted.asBigDecimal());
+        }
+        return balance;
+    }
+
+    /**
+     * Converts amounts between commodities using the prices valid at a point in time
+     */
+    private class PriceConverter {
+        private PriceIndex mPriceIndex;
+
+        /**
+         * Converts {@code amount} to the currency {@code currencyCode}
+         * @param timeMillis Time of the prices to use, in milliseconds since the epoch
+         * @return Converted amount, or {@code null} if there is no price for the conversion
+         */
+        @Nullable
+        Money convert(@NonNull Money amount, @NonNull String currencyCode, long timeMillis) {
+            String commodityCode = amount.getCommodity().getCurrencyCode();
+            if (commodityCode.equals(currencyCode))
+                return amount;
+
+            if (mPriceIndex == null)
+                mPriceIndex = getPricesDbAdapter().getPriceIndex();
+
+            Commodity commodity = mCommoditiesDbAdapter.getCommodity(currencyCode);
+            BigDecimal amountConverted = mPriceIndex.convert(amount.asBigDecimal(),
+                    mCommoditiesDbAdapter.getCommodityUID(commodityCode), commodity.getUID(),
+                    timeMillis, commodity.getSmallestFractionDigits());
+            return amountConverted == null ? null : new Money(amountConverted, commodity);
+        }
+    }
+
+    /**
+     * Returns the prices adapter for the database of this adapter
+     */
+    private synchronized PricesDbAdapter getPricesDbAdapter() {
+        if (mPricesDbAdapter == null)
+            mPricesDbAdapter = new PricesDbAdapter(mDb);
+        return mPricesDbAdapter;
+    }
+
+    /**
+     * Returns the number of direct sub-accounts of every account which has sub-accounts
+     * @return Map of account GUIDs to the number of their sub-accounts
+     * @see #getSubAccountCount(String)
+     */
+    public Map<String, Integer> getSubAccountCounts() {
+        Cursor cursor = mDb.query(AccountEntry.TABLE_NAME,
+                new String[]{AccountEntry.COLUMN_PARENT_ACCOUNT_UID, "COUNT(*)"},
+                AccountEntry.COLUMN_PARENT_ACCOUNT_UID + " IS NOT NULL",
+                null, AccountEntry.COLUMN_PARENT_ACCOUNT_UID, null, null);
+        Map<String, Integer> counts = new HashMap<>(cursor.getCount() * 2);
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
     /**
      * Returns the balance of account list within the specified time range. The default currency
      * takes as base currency.
@@ -991,6 +1302,8 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         contentValues.put(AccountEntry.COLUMN_COMMODITY_UID, getCommodityUID(defaultCurrencyCode));
         Log.i(LOG_TAG, "Creating ROOT account");
         mDb.insert(AccountEntry.TABLE_NAME, null, contentValues);
+        invalidateAccountIndex();
+        notifyChange(Collections.singleton(rootAccount.getUID()), Collections.<String>emptySet());
         return rootAccount.getUID();
     }
 
@@ -1127,42 +1440,118 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
     }
 
     /**
-     * Updates all opening balances to the current account balances
+     * Returns opening balance transactions for all accounts with their current balances
+     * @return List of opening balance transactions
+     * @see #getOpeningBalanceTransactions(long)
      */
     public List<Transaction> getAllOpeningBalanceTransactions(){
-        Cursor cursor = fetchAccounts(null, null, null);
+        return getOpeningBalanceTransactions(-1);
+    }
+
+    /**
+     * Returns opening balance transactions for all accounts with their balances as of {@code cutoffTimeMillis}.
+     * <p>The balances of all accounts are computed with a single query grouped by account,
+     * instead of querying the attributes and balance of every account separately.
+     * Each transaction balances the account against the opening balances equity account,
+     * and is dated at the cutoff time (or the current time, if there is no cutoff)</p>
+     * @param cutoffTimeMillis Time in milliseconds up to which (inclusive) transactions are considered,
+     *                         or -1 to consider all transactions
+     * @return List of opening balance transactions, one for each account with a non-zero balance
+     */
+    public List<Transaction> getOpeningBalanceTransactions(long cutoffTimeMillis){
+        long start = MetricsRegistry.start();
+        String where = TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0";
+        String[] whereArgs = null;
+        if (cutoffTimeMillis != -1) {
+            where += " AND " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " <= ?";
+            whereArgs = new String[]{String.valueOf(cutoffTimeMillis)};
+        }
+
+        //quantities are grouped by denominator as well, since numerators can only be added for equal denominators
+        Cursor cursor = mDb.query(SplitEntry.TABLE_NAME + " , " + TransactionEntry.TABLE_NAME + " ON "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " , "
+                        + AccountEntry.TABLE_NAME + " ON " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID
+                        + " = " + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID,
+                new String[]{
+                        AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID,
+                        AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_NAME,
+                        AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY,
+                        AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_TYPE,
+                        "TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END )",
+                        SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM},
+                where, whereArgs,
+                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " , "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM,
+                null,
+                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID);
+
         List<Transaction> openingTransactions = new ArrayList<>();
+        String openingBalanceAccountUID = getOrCreateOpeningBalanceAccountUID();
+        String transactionDescription = GnuCashApplication.getAppContext().getString(R.string.account_name_opening_balances);
         try {
-            SplitsDbAdapter splitsDbAdapter = mTransactionsAdapter.getSplitDbAdapter();
-            while (cursor.moveToNext()) {
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(AccountEntry._ID));
-                String accountUID = getUID(id);
-                String currencyCode = getCurrencyCode(accountUID);
-                ArrayList<String> accountList = new ArrayList<>();
-                accountList.add(accountUID);
-                Money balance = splitsDbAdapter.computeSplitBalance(accountList,
-                        currencyCode, getAccountType(accountUID).hasDebitNormalBalance());
-                if (balance.asBigDecimal().compareTo(new BigDecimal(0)) == 0)
+            String accountUID = null;
+            String accountName = null;
+            String currencyCode = null;
+            AccountType accountType = null;
+            Money balance = null;
+            while (true) {
+                boolean hasNext = cursor.moveToNext();
+                String rowAccountUID = hasNext ? cursor.getString(0) : null;
+                if (accountUID != null && !accountUID.equals(rowAccountUID)) {
+                    //the opening balances account itself is balanced by the pairs of the other opening balances
+                    if (!balance.isAmountZero() && !accountUID.equals(openingBalanceAccountUID)) {
+                        openingTransactions.add(createOpeningBalanceTransaction(transactionDescription, accountUID,
+                                accountName, currencyCode, accountType, balance, openingBalanceAccountUID, cutoffTimeMillis));
+                    }
+                    balance = null;
+                }
+                if (!hasNext)
+                    break;
+
+                accountUID = rowAccountUID;
+                currencyCode = cursor.getString(2);
+                if (balance == null) {
+                    accountName = cursor.getString(1);
+                    accountType = AccountType.valueOf(cursor.getString(3));
+                    balance = Money.createZeroInstance(currencyCode);
+                }
+                long amountNum = cursor.getLong(4);
+                if (amountNum == 0 || currencyCode.equals("XXX")) //ignore custom currency
                     continue;
-
-                Transaction transaction = new Transaction(GnuCashApplication.getAppContext().getString(R.string.account_name_opening_balances));
-                transaction.setNote(getAccountName(accountUID));
-                transaction.setCurrencyCode(currencyCode);
-                TransactionType transactionType = Transaction.getTypeForBalance(getAccountType(accountUID),
-                        balance.isNegative());
-                Split split = new Split(balance.abs(), accountUID);
-                split.setType(transactionType);
-                transaction.addSplit(split);
-                transaction.addSplit(split.createPair(getOrCreateOpeningBalanceAccountUID()));
-                transaction.setExported(true);
-                openingTransactions.add(transaction);
+                if (!accountType.hasDebitNormalBalance())
+                    amountNum = -amountNum;
+                balance = balance.add(new Money(amountNum, cursor.getLong(5), currencyCode));
             }
         } finally {
             cursor.close();
         }
+        MetricsRegistry.stop(LOG_TAG, "getOpeningBalanceTransactions", start);
         return openingTransactions;
     }
 
+    /**
+     * Creates a transaction which sets the balance of an account against the opening balances account
+     */
+    private static Transaction createOpeningBalanceTransaction(String description, String accountUID, String accountName,
+                                                               String currencyCode, AccountType accountType, Money balance,
+                                                               String openingBalanceAccountUID, long timeMillis){
+        Transaction transaction = new Transaction(description);
+        transaction.setNote(accountName);
+        transaction.setCurrencyCode(currencyCode);
+        if (timeMillis != -1)
+            transaction.setTime(timeMillis);
+        TransactionType transactionType = Transaction.getTypeForBalance(accountType, balance.isNegative());
+        Split split = new Split(balance.abs(), accountUID);
+        split.setType(transactionType);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(openingBalanceAccountUID));
+        transaction.setExported(true);
+        return transaction;
+    }
+
     public static String getImbalanceAccountPrefix() {
          return GnuCashApplication.getAppContext().getString(R.string.imbalance_account_name) + "-";
     }
@@ -1253,15 +1642,55 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
         // It take more than 300s to complete the deletion on my dataset without
         // clearing the split table first, but only needs a little more that 1s
         // if the split table is cleared first.
-        mDb.delete(DatabaseSchema.PriceEntry.TABLE_NAME, null, null);
-        mDb.delete(SplitEntry.TABLE_NAME, null, null);
-        mDb.delete(TransactionEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.ScheduledActionEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.BudgetAmountEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.BudgetEntry.TABLE_NAME, null, null);
-        mDb.delete(DatabaseSchema.RecurrenceEntry.TABLE_NAME, null, null);
+        String[] tableNames = {DatabaseSchema.PriceEntry.TABLE_NAME, SplitEntry.TABLE_NAME,
+                TransactionEntry.TABLE_NAME, DatabaseSchema.ScheduledActionEntry.TABLE_NAME,
+                DatabaseSchema.BudgetAmountEntry.TABLE_NAME, DatabaseSchema.BudgetEntry.TABLE_NAME,
+                DatabaseSchema.RecurrenceEntry.TABLE_NAME};
+        int rowsDeleted;
+        beginTransaction(); //publish the change of all tables as one event
+        try {
+            for (String tableName : tableNames) {
+                mDb.delete(tableName, null, null);
+                notifyChange(tableName, null, null);
+            }
+            rowsDeleted = mDb.delete(AccountEntry.TABLE_NAME, null, null);
+            notifyChange(null, null);
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+            invalidateAccountIndex();
+        }
+        return rowsDeleted;
+    }
+
+    @Override
+    protected @Nullable Set<String> getAffectedAccountUIDs(@Nullable String uid) {
+        if (uid == null)
+            return null;
+        Set<String> accountUIDs = new HashSet<>();
+        accountUIDs.add(uid);
+        return accountUIDs;
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        boolean result = super.deleteRecord(rowId);
+        invalidateAccountIndex();
+        return result;
+    }
 
-        return mDb.delete(AccountEntry.TABLE_NAME, null, null);
+    @Override
+    public int updateRecord(@NonNull String uid, @NonNull ContentValues contentValues) {
+        int rowsUpdated = super.updateRecord(uid, contentValues);
+        invalidateAccountIndex();
+        return rowsUpdated;
+    }
+
+    @Override
+    public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue) {
+        int rowsUpdated = super.updateRecords(where, whereArgs, columnKey, newValue);
+        invalidateAccountIndex();
+        return rowsUpdated;
     }
 
     @Override
@@ -1278,11 +1707,10 @@ public class AccountsDbAdapter extends DatabaseAdapter<Account> {
     }
 
     public int getTransactionMaxSplitNum(@NonNull String accountUID) {
-        Cursor cursor = mDb.query("trans_extra_info",
-                new String[]{"MAX(trans_split_count)"},
-                "trans_acct_t_uid IN ( SELECT DISTINCT " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID +
-                        " FROM trans_split_acct WHERE " + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID +
-                        " = ? )",
+        Cursor cursor = mDb.query(TransactionSummaryEntry.TABLE_NAME,
+                new String[]{"MAX(" + TransactionSummaryEntry.COLUMN_SPLIT_COUNT + ")"},
+                TransactionSummaryEntry.COLUMN_TRANSACTION_UID + " IN ( SELECT " + SplitEntry.COLUMN_TRANSACTION_UID +
+                        " FROM " + SplitEntry.TABLE_NAME + " WHERE " + SplitEntry.COLUMN_ACCOUNT_UID + " = ? )",
                 new String[]{accountUID},
                 null,
                 null,
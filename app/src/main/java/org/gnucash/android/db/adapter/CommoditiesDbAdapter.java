@@ -1,5 +1,6 @@
 package org.gnucash.android.db.adapter;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
@@ -12,12 +13,22 @@ import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.model.Commodity;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.gnucash.android.db.DatabaseSchema.CommodityEntry;
 
 /**
  * Database adapter for {@link org.gnucash.android.model.Commodity}
  */
 public class CommoditiesDbAdapter extends DatabaseAdapter<Commodity> {
+    /**
+     * Commodities by currency code. The same instance is shared by all models referring to a commodity,
+     * so loading many transactions or splits does not query and allocate the commodity again each time
+     */
+    private final Map<String, Commodity> mCommodityCache = new ConcurrentHashMap<>();
+
     /**
      * Opens the database adapter with an existing database
      *
@@ -33,9 +44,15 @@ public class CommoditiesDbAdapter extends DatabaseAdapter<Commodity> {
                 CommodityEntry.COLUMN_SMALLEST_FRACTION,
                 CommodityEntry.COLUMN_QUOTE_FLAG
         });
-        /**
-         * initialize commonly used commodities
-         */
+    }
+
+    /**
+     * Initializes the commonly used commodities (e.g. {@link Commodity#DEFAULT_COMMODITY}) from this database.
+     * <p>These are static, so they are only initialized from the database of the active book,
+     * when it is activated by the {@link org.gnucash.android.db.BookSessionManager}.
+     * Opening adapters for other books does not change them</p>
+     */
+    public void initCommonCommodities() {
         Commodity.USD = getCommodity("USD");
         Commodity.EUR = getCommodity("EUR");
         Commodity.GBP = getCommodity("GBP");
@@ -109,10 +126,15 @@ public class CommoditiesDbAdapter extends DatabaseAdapter<Commodity> {
      * @return Commodity associated with code or null if none is found
      */
     public Commodity getCommodity(String currencyCode){
+        Commodity cachedCommodity = mCommodityCache.get(currencyCode);
+        if (cachedCommodity != null)
+            return cachedCommodity;
+
         Cursor cursor = fetchAllRecords(CommodityEntry.COLUMN_MNEMONIC + "=?", new String[]{currencyCode}, null);
         Commodity commodity = null;
         if (cursor.moveToNext()){
             commodity = buildModelInstance(cursor);
+            mCommodityCache.put(currencyCode, commodity);
         } else {
             String msg = "Commodity not found in the database: " + currencyCode;
             Log.e(LOG_TAG, msg);
@@ -122,6 +144,47 @@ public class CommoditiesDbAdapter extends DatabaseAdapter<Commodity> {
         return commodity;
     }
 
+    @Override
+    public void addRecord(@NonNull Commodity commodity, UpdateMethod updateMethod) {
+        super.addRecord(commodity, updateMethod);
+        mCommodityCache.clear();
+    }
+
+    @Override
+    public long bulkAddRecords(@NonNull List<Commodity> commodityList, UpdateMethod updateMethod) {
+        long nRow = super.bulkAddRecords(commodityList, updateMethod);
+        mCommodityCache.clear();
+        return nRow;
+    }
+
+    @Override
+    public int updateRecord(@NonNull String uid, @NonNull ContentValues contentValues) {
+        int rowsUpdated = super.updateRecord(uid, contentValues);
+        mCommodityCache.clear();
+        return rowsUpdated;
+    }
+
+    @Override
+    public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue) {
+        int rowsUpdated = super.updateRecords(where, whereArgs, columnKey, newValue);
+        mCommodityCache.clear();
+        return rowsUpdated;
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        boolean result = super.deleteRecord(rowId);
+        mCommodityCache.clear();
+        return result;
+    }
+
+    @Override
+    public int deleteAllRecords() {
+        int rowsDeleted = super.deleteAllRecords();
+        mCommodityCache.clear();
+        return rowsDeleted;
+    }
+
     public String getCurrencyCode(@NonNull String guid) {
         Cursor cursor = mDb.query(mTableName, new String[]{CommodityEntry.COLUMN_MNEMONIC},
                 DatabaseSchema.CommonColumns.COLUMN_UID + " = ?", new String[]{guid},
@@ -22,11 +22,14 @@ import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteTransactionListener;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DataChangeBus;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import org.gnucash.android.db.DatabaseSchema.CommonColumns;
@@ -35,15 +38,44 @@ import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.BaseModel;
 import org.gnucash.android.ui.settings.PreferenceActivity;
+import org.gnucash.android.util.MetricsRegistry;
 import org.gnucash.android.util.TimestampHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Adapter to be used for creating and opening the database for read/write operations.
  * The adapter abstracts several methods for database access and should be subclassed
  * by any other adapters to database-backed data models.
+ * <h3>Thread safety</h3>
+ * <p>Adapters are shared application-wide (see {@link GnuCashApplication}) and may be used concurrently,
+ * e.g. by balance tasks on the UI thread pool, the scheduled actions service and export tasks.
+ * The model is the following:</p>
+ * <ul>
+ *     <li>The adapter itself holds no mutable state besides the compiled statements. The
+ *     {@link SQLiteDatabase} serializes access to its connection, so single-statement reads and writes
+ *     can be made from any thread without further locking</li>
+ *     <li>Compiled insert/update/replace statements are confined to the thread using them: each thread
+ *     gets its own instances, so bindings of concurrent writers cannot interleave and writers
+ *     do not contend on a shared monitor. They are closed for all threads by {@link #closeStatements()}
+ *     before the database is closed</li>
+ *     <li>Read paths ({@code get*}, {@code fetch*}, {@code compute*}) do not open a database transaction,
+ *     so a read which is made of several queries may observe writes committed in between.
+ *     Write paths which span several statements ({@link #bulkAddRecords(List, UpdateMethod)} and the
+ *     overrides of {@link #addRecord(BaseModel, UpdateMethod)} which also save child records) run inside
+ *     a database transaction, so other threads see either all or none of their changes</li>
+ *     <li>Cursors returned by the adapters must be consumed and closed by the thread which requested them</li>
+ *     <li>Write paths publish their changes to the {@link DataChangeBus}. Changes made inside a database
+ *     transaction are published together when the transaction ends, provided it was ended through
+ *     {@link #endTransaction()} of any adapter</li>
+ * </ul>
  * @author Ngewi Fet <ngewif@gmail.com>
  *
  */
@@ -51,7 +83,7 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 	/**
 	 * Tag for logging
 	 */
-	protected String LOG_TAG = "DatabaseAdapter";
+	protected final String LOG_TAG;
 
 	/**
 	 * SQLite database
@@ -62,11 +94,26 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 
     protected final String[] mColumns;
 
-    protected volatile SQLiteStatement mReplaceStatement;
+    /**
+     * Compiled statements, one set per thread. See {@link #getStatement(UpdateMethod)}
+     */
+    private final ThreadLocal<SQLiteStatement[]> mStatements = new ThreadLocal<SQLiteStatement[]>() {
+        @Override
+        protected SQLiteStatement[] initialValue() {
+            return new SQLiteStatement[UpdateMethod.values().length];
+        }
+    };
 
-    protected volatile SQLiteStatement mUpdateStatement;
+    /**
+     * Open compiled statements of all threads, so that they can be closed with {@link #closeStatements()}
+     */
+    private final Set<SQLiteStatement> mOpenStatements =
+            Collections.newSetFromMap(new ConcurrentHashMap<SQLiteStatement, Boolean>());
 
-    protected volatile SQLiteStatement mInsertStatement;
+    /**
+     * Versions of the tables by database path and table name, see {@link #getTableVersion()}
+     */
+    private static final ConcurrentHashMap<String, AtomicLong> sTableVersions = new ConcurrentHashMap<>();
 
     public enum UpdateMethod {
         insert, update, replace
@@ -80,18 +127,16 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         this.mTableName = tableName;
         this.mDb = db;
         this.mColumns = columns;
+        LOG_TAG = getClass().getSimpleName();
         if (!db.isOpen() || db.isReadOnly())
             throw new IllegalArgumentException("Database not open or is read-only. Require writeable database");
 
         if (mDb.getVersion() >= 9) {
             createTempView();
         }
-        LOG_TAG = getClass().getSimpleName();
     }
 
     private void createTempView() {
-        //the multiplication by 1.0 is to cause sqlite to handle the value as REAL and not to round off
-
         // Create some temporary views. Temporary views only exists in one DB session, and will not
         // be saved in the DB
         //
@@ -99,6 +144,9 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         //
         // create a temporary view, combining accounts, transactions and splits, as this is often used
         // in the queries
+        //
+        // per-transaction aggregates (balance, number of splits and currencies) are not computed by a view,
+        // but kept in the transaction summaries table which is maintained by triggers (see DatabaseHelper)
 
         //todo: would it be useful to add the split reconciled_state and reconciled_date to this view?
         mDb.execSQL("CREATE TEMP VIEW IF NOT EXISTS trans_split_acct AS SELECT "
@@ -157,43 +205,6 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
                         + " , " + AccountEntry.TABLE_NAME + " ON "
                         + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + "=" + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID
         );
-
-        // SELECT transactions_uid AS trans_acct_t_uid ,
-        //      SUBSTR (
-        //          MIN (
-        //              ( CASE WHEN IFNULL ( splits_memo , '' ) == '' THEN 'a' ELSE 'b' END ) || accounts_uid
-        //          ) ,
-        //          2
-        //      ) as trans_acct_a_uid ,
-        //   TOTAL ( CASE WHEN splits_type = 'DEBIT' THEN splits_amount ELSE - splits_amount END ) AS trans_acct_balance,
-        //   COUNT ( DISTINCT accounts_currency ) as trans_currency_count
-        //   FROM trans_split_acct GROUP BY transactions_uid
-        //
-        // This temporary view would pick one Account_UID for each
-        // Transaction, which can be used to order all transactions. If possible, account_uid of a split whose
-        // memo is null is select.
-        //
-        // Transaction balance is also picked out by this view
-        //
-        // a split without split memo is chosen if possible, in the following manner:
-        //   if the splits memo is null or empty string, attach an 'a' in front of the split account uid,
-        //   if not, attach a 'b' to the split account uid
-        //   pick the minimal value of the modified account uid (one of the ones begins with 'a', if exists)
-        //   use substr to get account uid
-
-        mDb.execSQL("CREATE TEMP VIEW IF NOT EXISTS trans_extra_info AS SELECT " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID +
-                " AS trans_acct_t_uid , SUBSTR ( MIN ( ( CASE WHEN IFNULL ( " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_MEMO + " , '' ) == '' THEN 'a' ELSE 'b' END ) || " +
-                AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID +
-                " ) , 2 ) AS trans_acct_a_uid , TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "+ SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_VALUE_NUM + " ELSE - " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_VALUE_NUM + " END ) * 1.0 / " + SplitEntry.TABLE_NAME + "_" +
-                SplitEntry.COLUMN_VALUE_DENOM + " AS trans_acct_balance , COUNT ( DISTINCT " +
-                AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_CURRENCY +
-                " ) AS trans_currency_count , COUNT (*) AS trans_split_count FROM trans_split_acct " +
-                " GROUP BY " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID
-        );
     }
 
     /**
@@ -221,23 +232,14 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @param updateMethod Method to use for adding the record
      */
     public void addRecord(@NonNull final Model model, UpdateMethod updateMethod){
-        Log.d(LOG_TAG, String.format("Adding %s record to database: ", model.getClass().getSimpleName()));
-        switch(updateMethod){
-            case insert:
-                synchronized(getInsertStatement()) {
-                    setBindings(getInsertStatement(), model).execute();
-                }
-                break;
-            case update:
-                synchronized(getUpdateStatement()) {
-                    setBindings(getUpdateStatement(), model).execute();
-                }
-                break;
-            default:
-                synchronized(getReplaceStatement()) {
-                    setBindings(getReplaceStatement(), model).execute();
-                }
-                break;
+        long start = MetricsRegistry.start();
+        try {
+            Log.d(LOG_TAG, String.format("Adding %s record to database: ", model.getClass().getSimpleName()));
+            setBindings(getStatement(updateMethod), model).execute();
+            if (isObserved())
+                notifyChange(Collections.singleton(model.getUID()), getAffectedAccountUIDs(model));
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "addRecord", start);
         }
     }
 
@@ -249,31 +251,10 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      */
     private long doAddModels(@NonNull final List<Model> modelList, UpdateMethod updateMethod) {
         long nRow = 0;
-        switch (updateMethod) {
-            case update:
-                synchronized(getUpdateStatement()) {
-                    for (Model model : modelList) {
-                        setBindings(getUpdateStatement(), model).execute();
-                        nRow++;
-                    }
-                }
-                break;
-            case insert:
-                synchronized(getInsertStatement()) {
-                    for (Model model : modelList) {
-                        setBindings(getInsertStatement(), model).execute();
-                        nRow++;
-                    }
-                }
-                break;
-            default:
-                synchronized(getReplaceStatement()) {
-                    for (Model model : modelList) {
-                        setBindings(getReplaceStatement(), model).execute();
-                        nRow++;
-                    }
-                }
-                break;
+        SQLiteStatement statement = getStatement(updateMethod);
+        for (Model model : modelList) {
+            setBindings(statement, model).execute();
+            nRow++;
         }
         return nRow;
     }
@@ -289,24 +270,48 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
     }
 
     public long bulkAddRecords(@NonNull List<Model> modelList, UpdateMethod updateMethod) {
-        if (modelList.isEmpty()) {
-            Log.d(LOG_TAG, "Empty model list. Cannot bulk add records, returning 0");
-            return 0;
-        }
-
-        Log.i(LOG_TAG, String.format("Bulk adding %d %s records to the database", modelList.size(),
-                modelList.size() == 0 ? "null": modelList.get(0).getClass().getSimpleName()));
-        long nRow = 0;
+        long start = MetricsRegistry.start();
         try {
-            mDb.beginTransaction();
-            nRow = doAddModels(modelList, updateMethod);
-            mDb.setTransactionSuccessful();
-        }
-        finally {
-            mDb.endTransaction();
+            if (modelList.isEmpty()) {
+                Log.d(LOG_TAG, "Empty model list. Cannot bulk add records, returning 0");
+                return 0;
+            }
+
+            Log.i(LOG_TAG, String.format("Bulk adding %d %s records to the database", modelList.size(),
+                    modelList.size() == 0 ? "null": modelList.get(0).getClass().getSimpleName()));
+            long nRow = 0;
+            try {
+                beginTransaction();
+                nRow = doAddModels(modelList, updateMethod);
+                if (isObserved())
+                    notifyBulkChange(modelList);
+                setTransactionSuccessful();
+            }
+            finally {
+                endTransaction();
+            }
+
+            return nRow;
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "bulkAddRecords", start);
         }
+    }
 
-        return nRow;
+    /**
+     * Publishes the change of the records in {@code modelList} as one change
+     */
+    private void notifyBulkChange(@NonNull List<Model> modelList) {
+        Set<String> uids = new HashSet<>(modelList.size());
+        Set<String> accountUIDs = new HashSet<>();
+        for (Model model : modelList) {
+            uids.add(model.getUID());
+            Set<String> modelAccountUIDs = getAffectedAccountUIDs(model);
+            if (modelAccountUIDs == null)
+                accountUIDs = null;
+            else if (accountUIDs != null)
+                accountUIDs.addAll(modelAccountUIDs);
+        }
+        notifyChange(uids, accountUIDs);
     }
 
     /**
@@ -318,65 +323,80 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
     public abstract Model buildModelInstance(@NonNull final Cursor cursor);
 
     /**
-     * Generates an {@link SQLiteStatement} with values from the {@code model}.
-     * This statement can be executed to replace a record in the database.
-     * <p>If the {@link #mReplaceStatement} is null, subclasses should create a new statement and return.<br/>
-     * If it is not null, the previous bindings will be cleared and replaced with those from the model</p>
-     * @return SQLiteStatement for replacing a record in the database
-     */
-    protected final @NonNull SQLiteStatement getReplaceStatement() {
-        SQLiteStatement stmt = mReplaceStatement;
-        if (stmt == null) {
-            synchronized (this) {
-                stmt = mReplaceStatement;
-                if (stmt == null) {
-                    mReplaceStatement = stmt
-                            = mDb.compileStatement("REPLACE INTO " + mTableName + " ( "
-                            + TextUtils.join(" , ", mColumns) + " , "
-                            + CommonColumns.COLUMN_UID
-                            + " ) VALUES ( "
-                            + (new String(new char[mColumns.length]).replace("\0", "? , "))
-                            + "?)");
-                }
-            }
+     * Returns the compiled statement of the calling thread for persisting records with {@code updateMethod}.
+     * <p>Statements are compiled on first use and confined to the calling thread, so they can be bound
+     * and executed without synchronization</p>
+     * @param updateMethod Method to use for adding records
+     * @return SQLiteStatement for adding a record to the database
+     */
+    protected final @NonNull SQLiteStatement getStatement(@NonNull UpdateMethod updateMethod) {
+        SQLiteStatement[] statements = mStatements.get();
+        SQLiteStatement stmt = statements[updateMethod.ordinal()];
+        if (stmt == null || !mOpenStatements.contains(stmt)) { //not compiled yet or closed by closeStatements()
+            stmt = statements[updateMethod.ordinal()] = mDb.compileStatement(buildStatementSql(updateMethod));
+            mOpenStatements.add(stmt);
         }
         return stmt;
     }
 
-    protected final @NonNull SQLiteStatement getUpdateStatement() {
-        SQLiteStatement stmt = mUpdateStatement;
-        if (stmt == null) {
-            synchronized (this) {
-                stmt = mUpdateStatement;
-                if (stmt == null) {
-                    mUpdateStatement = stmt
-                            = mDb.compileStatement("UPDATE " + mTableName + " SET "
-                            + TextUtils.join(" = ? , ", mColumns) + " = ? WHERE "
-                            + CommonColumns.COLUMN_UID
-                            + " = ?");
-                }
-            }
+    /**
+     * Returns the version of the table of this adapter in its database.
+     * <p>Adapters which cache the records of their table increment it on every write, so that the caches of
+     * all adapters of the same database can detect that they are outdated. Each database (i.e. each book)
+     * has its own version, so writes to one book do not invalidate the caches of another</p>
+     * @return Version counter shared by the adapters of the table in this database
+     */
+    protected final AtomicLong getTableVersion() {
+        String key = mDb.getPath() + ":" + mTableName;
+        AtomicLong version = sTableVersions.get(key);
+        if (version == null) {
+            AtomicLong newVersion = new AtomicLong();
+            version = sTableVersions.putIfAbsent(key, newVersion);
+            if (version == null)
+                version = newVersion;
         }
-        return stmt;
+        return version;
     }
 
-    protected final @NonNull SQLiteStatement getInsertStatement() {
-        SQLiteStatement stmt = mInsertStatement;
-        if (stmt == null) {
-            synchronized (this) {
-                stmt = mInsertStatement;
-                if (stmt == null) {
-                    mInsertStatement = stmt
-                            = mDb.compileStatement("INSERT INTO " + mTableName + " ( "
-                            + TextUtils.join(" , ", mColumns) + " , "
-                            + CommonColumns.COLUMN_UID
-                            + " ) VALUES ( "
-                            + (new String(new char[mColumns.length]).replace("\0", "? , "))
-                            + "?)");
-                }
-            }
+    /**
+     * Closes the compiled statements of all threads.
+     * <p>Must be called before the database of the adapter is closed, e.g. when the book is switched,
+     * since the statements of other threads cannot be reached through their thread-local storage.
+     * A thread which uses the adapter again afterwards compiles new statements</p>
+     */
+    public void closeStatements() {
+        for (SQLiteStatement statement : mOpenStatements) {
+            mOpenStatements.remove(statement);
+            statement.close();
+        }
+    }
+
+    /**
+     * Returns the SQL for adding a record with {@code updateMethod}, with placeholders for
+     * all columns of the table followed by the GUID
+     */
+    private String buildStatementSql(UpdateMethod updateMethod) {
+        switch (updateMethod) {
+            case update:
+                return "UPDATE " + mTableName + " SET "
+                        + TextUtils.join(" = ? , ", mColumns) + " = ? WHERE "
+                        + CommonColumns.COLUMN_UID
+                        + " = ?";
+            case insert:
+                return "INSERT INTO " + mTableName + " ( "
+                        + TextUtils.join(" , ", mColumns) + " , "
+                        + CommonColumns.COLUMN_UID
+                        + " ) VALUES ( "
+                        + (new String(new char[mColumns.length]).replace("\0", "? , "))
+                        + "?)";
+            default:
+                return "REPLACE INTO " + mTableName + " ( "
+                        + TextUtils.join(" , ", mColumns) + " , "
+                        + CommonColumns.COLUMN_UID
+                        + " ) VALUES ( "
+                        + (new String(new char[mColumns.length]).replace("\0", "? , "))
+                        + "?)";
         }
-        return stmt;
     }
 
     /**
@@ -395,18 +415,23 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @throws IllegalArgumentException if the record UID does not exist in thd database
      */
     public Model getRecord(@NonNull String uid){
-        Log.v(LOG_TAG, "Fetching record with GUID " + uid);
-
-        Cursor cursor = fetchRecord(uid);
+        long start = MetricsRegistry.start();
         try {
-            if (cursor.moveToFirst()) {
-                return buildModelInstance(cursor);
-            }
-            else {
-                throw new IllegalArgumentException(LOG_TAG + ": Record with " + uid + " does not exist");
+            Log.v(LOG_TAG, "Fetching record with GUID " + uid);
+
+            Cursor cursor = fetchRecord(uid);
+            try {
+                if (cursor.moveToFirst()) {
+                    return buildModelInstance(cursor);
+                }
+                else {
+                    throw new IllegalArgumentException(LOG_TAG + ": Record with " + uid + " does not exist");
+                }
+            } finally {
+                cursor.close();
             }
         } finally {
-            cursor.close();
+            MetricsRegistry.stop(LOG_TAG, "getRecord", start);
         }
     }
 
@@ -425,16 +450,21 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return List of records in the database
      */
     public List<Model> getAllRecords(){
-        List<Model> modelRecords = new ArrayList<>();
-        Cursor c = fetchAllRecords();
+        long start = MetricsRegistry.start();
         try {
-            while (c.moveToNext()) {
-                modelRecords.add(buildModelInstance(c));
+            List<Model> modelRecords = new ArrayList<>();
+            Cursor c = fetchAllRecords();
+            try {
+                while (c.moveToNext()) {
+                    modelRecords.add(buildModelInstance(c));
+                }
+            } finally {
+                c.close();
             }
+            return modelRecords;
         } finally {
-            c.close();
+            MetricsRegistry.stop(LOG_TAG, "getAllRecords", start);
         }
-        return modelRecords;
     }
 
     /**
@@ -475,8 +505,13 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 	 * @return {@link Cursor} to record retrieved
 	 */
 	public Cursor fetchRecord(long rowId){
-		return mDb.query(mTableName, null, DatabaseSchema.CommonColumns._ID + "=" + rowId,
-				null, null, null, null);
+		long start = MetricsRegistry.start();
+		try {
+			return executeQuery(mDb.query(mTableName, null, DatabaseSchema.CommonColumns._ID + "=" + rowId,
+					null, null, null, null));
+		} finally {
+			MetricsRegistry.stop(LOG_TAG, "fetchRecord", start);
+		}
 	}
 
     /**
@@ -485,8 +520,13 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return {@link Cursor} to record retrieved
      */
     public Cursor fetchRecord(@NonNull String uid){
-        return mDb.query(mTableName, null, CommonColumns.COLUMN_UID + "=?" ,
-                new String[]{uid}, null, null, null);
+        long start = MetricsRegistry.start();
+        try {
+            return executeQuery(mDb.query(mTableName, null, CommonColumns.COLUMN_UID + "=?" ,
+                    new String[]{uid}, null, null, null));
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "fetchRecord", start);
+        }
     }
 
 	/**
@@ -505,7 +545,32 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Cursor to records matching conditions
      */
     public Cursor fetchAllRecords(String where, String[] whereArgs, String orderBy){
-        return mDb.query(mTableName, null, where, whereArgs, null, null, orderBy);
+        long start = MetricsRegistry.start();
+        try {
+            return executeQuery(mDb.query(mTableName, null, where, whereArgs, null, null, orderBy));
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "fetchAllRecords", start);
+        }
+    }
+
+    /**
+     * Runs the query of a cursor, which SQLite otherwise defers until the cursor is first read.
+     * This way the timings of the fetch methods include reading the records, not only creating the cursor.
+     * <p>The query is only run early while metrics are recorded.
+     * The cursor is closed if the query fails</p>
+     * @param cursor Cursor returned by a query
+     * @return The same cursor, with its query executed if metrics are enabled
+     */
+    private static Cursor executeQuery(Cursor cursor) {
+        if (!MetricsRegistry.isEnabled())
+            return cursor;
+        try {
+            cursor.getCount();
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        return cursor;
     }
 
 	/**
@@ -514,8 +579,24 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 	 * @return <code>true</code> if deletion was successful, <code>false</code> otherwise
 	 */
 	public boolean deleteRecord(long rowId){
-        Log.d(LOG_TAG, "Deleting record with id " + rowId + " from " + mTableName);
-		return mDb.delete(mTableName, DatabaseSchema.CommonColumns._ID + "=" + rowId, null) > 0;
+		long start = MetricsRegistry.start();
+		try {
+	        Log.d(LOG_TAG, "Deleting record with id " + rowId + " from " + mTableName);
+			String uid = null;
+			Set<String> accountUIDs = null;
+			boolean observed = isObserved();
+			if (observed) {
+				//the affected accounts can only be found before the record is gone
+				uid = findUID(rowId);
+				accountUIDs = uid == null ? null : getAffectedAccountUIDs(uid);
+			}
+			boolean deleted = mDb.delete(mTableName, DatabaseSchema.CommonColumns._ID + "=" + rowId, null) > 0;
+			if (deleted && observed)
+				notifyChange(uid == null ? null : Collections.singleton(uid), accountUIDs);
+			return deleted;
+		} finally {
+			MetricsRegistry.stop(LOG_TAG, "deleteRecord", start);
+		}
 	}
 
     /**
@@ -523,7 +604,15 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Number of deleted records
      */
     public int deleteAllRecords(){
-        return mDb.delete(mTableName, null, null);
+        long start = MetricsRegistry.start();
+        try {
+            int rowsDeleted = mDb.delete(mTableName, null, null);
+            if (isObserved())
+                notifyChange(null, getAffectedAccountUIDs((String) null));
+            return rowsDeleted;
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "deleteAllRecords", start);
+        }
     }
 
     /**
@@ -533,22 +622,40 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @throws IllegalArgumentException if the GUID does not exist in the database
      */
     public long getID(@NonNull String uid){
-        Cursor cursor = mDb.query(mTableName,
-                new String[] {DatabaseSchema.CommonColumns._ID},
-                DatabaseSchema.CommonColumns.COLUMN_UID + " = ?",
-                new String[]{uid},
-                null, null, null);
-        long result = -1;
-        try{
-            if (cursor.moveToFirst()) {
-                result = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.CommonColumns._ID));
-            } else {
-                throw new IllegalArgumentException(mTableName + " with GUID " + uid + " does not exist in the db");
+        long start = MetricsRegistry.start();
+        try {
+            Cursor cursor = mDb.query(mTableName,
+                    new String[] {DatabaseSchema.CommonColumns._ID},
+                    DatabaseSchema.CommonColumns.COLUMN_UID + " = ?",
+                    new String[]{uid},
+                    null, null, null);
+            long result = -1;
+            try{
+                if (cursor.moveToFirst()) {
+                    result = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseSchema.CommonColumns._ID));
+                } else {
+                    throw new IllegalArgumentException(mTableName + " with GUID " + uid + " does not exist in the db");
+                }
+            } finally {
+                cursor.close();
             }
+            return result;
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "getID", start);
+        }
+    }
+
+    /**
+     * Returns the GUID of the record with database ID {@code id}, or {@code null} if there is no such record
+     */
+    private @Nullable String findUID(long id) {
+        Cursor cursor = mDb.query(mTableName, new String[]{CommonColumns.COLUMN_UID},
+                CommonColumns._ID + " = " + id, null, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
         } finally {
             cursor.close();
         }
-        return result;
     }
 
     /**
@@ -558,22 +665,27 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @throws IllegalArgumentException if the record ID does not exist in the database
      */
     public String getUID(long id){
-        Cursor cursor = mDb.query(mTableName,
-                new String[]{DatabaseSchema.CommonColumns.COLUMN_UID},
-                DatabaseSchema.CommonColumns._ID + " = " + id,
-                null, null, null, null);
-
-        String uid = null;
+        long start = MetricsRegistry.start();
         try {
-            if (cursor.moveToFirst()) {
-                uid = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.CommonColumns.COLUMN_UID));
-            } else {
-                throw new IllegalArgumentException(mTableName + " Record ID " + id + " does not exist in the db");
+            Cursor cursor = mDb.query(mTableName,
+                    new String[]{DatabaseSchema.CommonColumns.COLUMN_UID},
+                    DatabaseSchema.CommonColumns._ID + " = " + id,
+                    null, null, null, null);
+
+            String uid = null;
+            try {
+                if (cursor.moveToFirst()) {
+                    uid = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.CommonColumns.COLUMN_UID));
+                } else {
+                    throw new IllegalArgumentException(mTableName + " Record ID " + id + " does not exist in the db");
+                }
+            } finally {
+                cursor.close();
             }
+            return uid;
         } finally {
-            cursor.close();
+            MetricsRegistry.stop(LOG_TAG, "getUID", start);
         }
-        return uid;
     }
 
     /**
@@ -661,8 +773,11 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         } else {
             contentValues.put(columnKey, newValue);
         }
-        return mDb.update(tableName, contentValues,
+        int rowsUpdated = mDb.update(tableName, contentValues,
                 DatabaseSchema.CommonColumns._ID + "=" + recordId, null);
+        if (rowsUpdated > 0 && isObserved())
+            notifyChange(tableName, null, Collections.<String>emptySet());
+        return rowsUpdated;
     }
 
     /**
@@ -683,7 +798,24 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Number of records updated
      */
     public int updateRecord(@NonNull String uid, @NonNull ContentValues contentValues){
-        return mDb.update(mTableName, contentValues, CommonColumns.COLUMN_UID + "=?", new String[]{uid});
+        long start = MetricsRegistry.start();
+        try {
+            boolean observed = isObserved();
+            //records may be moved between accounts, so both the old and the new accounts are affected
+            Set<String> accountUIDs = observed ? getAffectedAccountUIDs(uid) : null;
+            int rowsUpdated = mDb.update(mTableName, contentValues, CommonColumns.COLUMN_UID + "=?", new String[]{uid});
+            if (rowsUpdated > 0 && observed) {
+                Set<String> newAccountUIDs = getAffectedAccountUIDs(uid);
+                if (accountUIDs != null && newAccountUIDs != null)
+                    accountUIDs.addAll(newAccountUIDs);
+                else
+                    accountUIDs = null;
+                notifyChange(Collections.singleton(uid), accountUIDs);
+            }
+            return rowsUpdated;
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "updateRecord", start);
+        }
     }
 
     /**
@@ -695,13 +827,21 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Number of records affected
      */
     public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue){
-        ContentValues contentValues = new ContentValues();
-        if (newValue == null) {
-            contentValues.putNull(columnKey);
-        } else {
-            contentValues.put(columnKey, newValue);
+        long start = MetricsRegistry.start();
+        try {
+            ContentValues contentValues = new ContentValues();
+            if (newValue == null) {
+                contentValues.putNull(columnKey);
+            } else {
+                contentValues.put(columnKey, newValue);
+            }
+            int rowsUpdated = mDb.update(mTableName, contentValues, where, whereArgs);
+            if (rowsUpdated > 0 && isObserved())
+                notifyChange(null, getAffectedAccountUIDs((String) null));
+            return rowsUpdated;
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "updateRecords", start);
         }
-        return mDb.update(mTableName, contentValues, where, whereArgs);
     }
 
     /**
@@ -742,19 +882,24 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @throws IllegalArgumentException if either the {@code recordUID} or {@code columnName} do not exist in the database
      */
     protected String getAttribute(@NonNull String tableName, @NonNull String recordUID, @NonNull String columnName){
-        Cursor cursor = mDb.query(tableName,
-                new String[]{columnName},
-                AccountEntry.COLUMN_UID + " = ?",
-                new String[]{recordUID}, null, null, null);
-
+        long start = MetricsRegistry.start();
         try {
-            if (cursor.moveToFirst())
-                return cursor.getString(cursor.getColumnIndexOrThrow(columnName));
-            else {
-                throw new IllegalArgumentException(String.format("Record with GUID %s does not exist in the db", recordUID));
+            Cursor cursor = mDb.query(tableName,
+                    new String[]{columnName},
+                    AccountEntry.COLUMN_UID + " = ?",
+                    new String[]{recordUID}, null, null, null);
+
+            try {
+                if (cursor.moveToFirst())
+                    return cursor.getString(cursor.getColumnIndexOrThrow(columnName));
+                else {
+                    throw new IllegalArgumentException(String.format("Record with GUID %s does not exist in the db", recordUID));
+                }
+            } finally {
+                cursor.close();
             }
         } finally {
-            cursor.close();
+            MetricsRegistry.stop(LOG_TAG, "getAttribute", start);
         }
     }
 
@@ -763,9 +908,14 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
      * @return Total number of records in the database
      */
     public long getRecordsCount(){
-        String sql = "SELECT COUNT(*) FROM " + mTableName;
-        SQLiteStatement statement = mDb.compileStatement(sql);
-        return statement.simpleQueryForLong();
+        long start = MetricsRegistry.start();
+        try {
+            String sql = "SELECT COUNT(*) FROM " + mTableName;
+            SQLiteStatement statement = mDb.compileStatement(sql);
+            return statement.simpleQueryForLong();
+        } finally {
+            MetricsRegistry.stop(LOG_TAG, "getRecordsCount", start);
+        }
     }
 
     /**
@@ -775,6 +925,14 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
         mDb.beginTransaction();
     }
 
+    /**
+     * Expose mDb.beginTransactionWithListener()
+     * <p>The listener is told whether the transaction is committed or rolled back when it ends</p>
+     */
+    public void beginTransactionWithListener(@NonNull SQLiteTransactionListener listener) {
+        mDb.beginTransactionWithListener(listener);
+    }
+
     /**
      * Expose mDb.setTransactionSuccessful()
      */
@@ -798,8 +956,67 @@ public abstract class DatabaseAdapter<Model extends BaseModel> {
 
     /**
      * Expose mDb.endTransaction()
+     * <p>Publishes the changes made in the transaction to the {@link DataChangeBus}
+     * when the outermost transaction ends</p>
      */
     public void endTransaction() {
-        mDb.endTransaction();
+        DataChangeBus.getInstance().endTransaction(mDb);
+    }
+
+    /**
+     * Returns the name of the table managed by this adapter
+     */
+    public String getTableName() {
+        return mTableName;
+    }
+
+    /**
+     * Returns {@code true} if changes need to be published, i.e. someone listens to the {@link DataChangeBus}.
+     * Used to skip the queries for the affected accounts otherwise
+     */
+    protected boolean isObserved() {
+        return DataChangeBus.getInstance().hasListeners();
+    }
+
+    /**
+     * Publishes a change of records of this adapter's table to the {@link DataChangeBus}
+     * @param uids GUIDs of the changed records, or {@code null} if unknown
+     * @param accountUIDs GUIDs of the affected accounts, or {@code null} if any account may be affected
+     */
+    protected void notifyChange(@Nullable Collection<String> uids, @Nullable Collection<String> accountUIDs) {
+        notifyChange(mTableName, uids, accountUIDs);
+    }
+
+    /**
+     * Publishes a change of records of the table {@code tableName} to the {@link DataChangeBus}.
+     * <p>Used by write paths which modify the tables directly instead of going through the adapter methods</p>
+     * @param tableName Name of the changed table
+     * @param uids GUIDs of the changed records, or {@code null} if unknown
+     * @param accountUIDs GUIDs of the affected accounts, or {@code null} if any account may be affected
+     */
+    protected void notifyChange(@NonNull String tableName, @Nullable Collection<String> uids,
+                                @Nullable Collection<String> accountUIDs) {
+        DataChangeBus.getInstance().publish(mDb, tableName, uids, accountUIDs);
+    }
+
+    /**
+     * Returns the GUIDs of the accounts whose transactions or balances are affected by a change of the record.
+     * <p>Subclasses for records which belong to accounts should override this method.
+     * The default implementation returns no accounts</p>
+     * @param uid GUID of the changed record, or {@code null} if unknown records of the table change
+     * @return Mutable set of account GUIDs, or {@code null} if any account may be affected
+     */
+    protected @Nullable Set<String> getAffectedAccountUIDs(@Nullable String uid) {
+        return new HashSet<>();
+    }
+
+    /**
+     * Returns the GUIDs of the accounts whose transactions or balances are affected when the model is saved.
+     * <p>The default implementation looks up the record of the model with {@link #getAffectedAccountUIDs(String)}</p>
+     * @param model Model which is saved
+     * @return Mutable set of account GUIDs, or {@code null} if any account may be affected
+     */
+    protected @Nullable Set<String> getAffectedAccountUIDs(@NonNull Model model) {
+        return getAffectedAccountUIDs(model.getUID());
     }
 }
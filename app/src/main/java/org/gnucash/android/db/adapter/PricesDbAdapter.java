@@ -1,21 +1,35 @@
 package org.gnucash.android.db.adapter;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Pair;
 
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.PriceIndex;
 import org.gnucash.android.model.Price;
+import org.gnucash.android.util.MetricsRegistry;
 import org.gnucash.android.util.TimestampHelper;
 
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Set;
+
 import static org.gnucash.android.db.DatabaseSchema.PriceEntry;
 
 /**
  * Database adapter for prices
  */
 public class PricesDbAdapter extends DatabaseAdapter<Price> {
+
+    /**
+     * In-memory index of the price history, built on demand
+     */
+    private PriceIndex mPriceIndex;
+
     /**
      * Opens the database adapter with an existing database
      * @param db SQLiteDatabase object
@@ -41,7 +55,7 @@ public class PricesDbAdapter extends DatabaseAdapter<Price> {
         stmt.clearBindings();
         stmt.bindString(1, price.getCommodityUID());
         stmt.bindString(2, price.getCurrencyUID());
-        stmt.bindString(3, price.getDate().toString());
+        stmt.bindString(3, TimestampHelper.getUtcStringFromTimestamp(price.getDate()));
         if (price.getSource() != null) {
             stmt.bindString(4, price.getSource());
         }
@@ -55,6 +69,55 @@ public class PricesDbAdapter extends DatabaseAdapter<Price> {
         return stmt;
     }
 
+    /**
+     * Prices are used to convert the balances of accounts in other commodities, so any account may be affected
+     */
+    @Override
+    protected @Nullable Set<String> getAffectedAccountUIDs(@Nullable String uid) {
+        return null;
+    }
+
+    @Override
+    public void addRecord(@NonNull Price price, UpdateMethod updateMethod) {
+        super.addRecord(price, updateMethod);
+        invalidatePriceIndex();
+    }
+
+    @Override
+    public long bulkAddRecords(@NonNull List<Price> priceList, UpdateMethod updateMethod) {
+        long rowsAdded = super.bulkAddRecords(priceList, updateMethod);
+        invalidatePriceIndex();
+        return rowsAdded;
+    }
+
+    @Override
+    public boolean deleteRecord(long rowId) {
+        boolean result = super.deleteRecord(rowId);
+        invalidatePriceIndex();
+        return result;
+    }
+
+    @Override
+    public int deleteAllRecords() {
+        int rowsDeleted = super.deleteAllRecords();
+        invalidatePriceIndex();
+        return rowsDeleted;
+    }
+
+    @Override
+    public int updateRecord(@NonNull String uid, @NonNull ContentValues contentValues) {
+        int rowsUpdated = super.updateRecord(uid, contentValues);
+        invalidatePriceIndex();
+        return rowsUpdated;
+    }
+
+    @Override
+    public int updateRecords(String where, String[] whereArgs, @NonNull String columnKey, String newValue) {
+        int rowsUpdated = super.updateRecords(where, whereArgs, columnKey, newValue);
+        invalidatePriceIndex();
+        return rowsUpdated;
+    }
+
     @Override
     public Price buildModelInstance(@NonNull final Cursor cursor) {
         String commodityUID = cursor.getString(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_COMMODITY_UID));
@@ -124,4 +187,77 @@ public class PricesDbAdapter extends DatabaseAdapter<Price> {
             cursor.close();
         }
     }
+
+    /**
+     * Get the price for commodity / currency pair which was valid at a point in time.
+     * <p>This is the latest price on or before {@code timeMillis}, in either orientation of the pair.
+     * It uses the index on (commodity, currency, date) of the prices table.
+     * Use {@link #getPriceIndex()} instead when looking up many prices, e.g. for reports</p>
+     *
+     * @param commodityUID GUID of the commodity which is starting point for conversion
+     * @param currencyUID GUID of target commodity for the conversion
+     * @param timeMillis Time of the conversion in milliseconds since the epoch
+     *
+     * @return The numerator/denominator pair for commodity / currency pair, or (0, 0) if there is no price
+     */
+    public Pair<Long, Long> getPrice(@NonNull String commodityUID, @NonNull String currencyUID, long timeMillis) {
+        if (commodityUID.equals(currencyUID)) {
+            return new Pair<>(1L, 1L);
+        }
+        String date = TimestampHelper.getUtcStringFromTimestamp(new Timestamp(timeMillis));
+        Cursor cursor = mDb.query(PriceEntry.TABLE_NAME, null,
+                "(( " + PriceEntry.COLUMN_COMMODITY_UID + " = ? AND " + PriceEntry.COLUMN_CURRENCY_UID + " = ? ) OR ( "
+                + PriceEntry.COLUMN_COMMODITY_UID + " = ? AND " + PriceEntry.COLUMN_CURRENCY_UID + " = ? )) AND "
+                + PriceEntry.COLUMN_DATE + " <= ?",
+                new String[]{commodityUID, currencyUID, currencyUID, commodityUID, date}, null, null,
+                PriceEntry.COLUMN_DATE + " DESC", "1");
+        try {
+            if (cursor.moveToNext()) {
+                String commodityUIDdb = cursor.getString(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_COMMODITY_UID));
+                long valueNum     = cursor.getLong(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_NUM));
+                long valueDenom   = cursor.getLong(cursor.getColumnIndexOrThrow(PriceEntry.COLUMN_VALUE_DENOM));
+                if (valueNum <= 0 || valueDenom <= 0) {
+                    return new Pair<>(0L, 0L);
+                }
+                if (!commodityUIDdb.equals(commodityUID)) {
+                    return new Pair<>(valueDenom, valueNum);
+                }
+                return new Pair<>(valueNum, valueDenom);
+            } else {
+                return new Pair<>(0L, 0L);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the in-memory index of the price history of all commodities.
+     * <p>The index is built with a single query the first time it is requested and reused
+     * until the prices of the database are modified through any prices adapter. It converts amounts at the prices
+     * valid at a given date, also between commodities without a direct price</p>
+     * @return Price index
+     */
+    public synchronized PriceIndex getPriceIndex() {
+        long version = getTableVersion().get();
+        if (mPriceIndex == null || mPriceIndex.getVersion() != version) {
+            long start = MetricsRegistry.start();
+            Cursor cursor = mDb.query(PriceEntry.TABLE_NAME, PriceIndex.COLUMNS,
+                    null, null, null, null, PriceEntry.COLUMN_DATE + " ASC");
+            try {
+                mPriceIndex = new PriceIndex(cursor, version);
+            } finally {
+                cursor.close();
+                MetricsRegistry.stop(LOG_TAG, "buildPriceIndex", start);
+            }
+        }
+        return mPriceIndex;
+    }
+
+    /**
+     * Marks the price index as outdated, it will be rebuilt the next time it is requested
+     */
+    private void invalidatePriceIndex() {
+        getTableVersion().incrementAndGet();
+    }
 }
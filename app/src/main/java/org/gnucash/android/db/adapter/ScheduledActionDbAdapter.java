@@ -61,7 +61,6 @@ public class ScheduledActionDbAdapter extends DatabaseAdapter<ScheduledAction> {
                 ScheduledActionEntry.COLUMN_EXECUTION_COUNT
         });
         mRecurrenceDbAdapter = recurrenceDbAdapter;
-        LOG_TAG = "ScheduledActionDbAdapter";
     }
 
     /**
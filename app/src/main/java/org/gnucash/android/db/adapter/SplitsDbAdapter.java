@@ -17,17 +17,20 @@
 
 package org.gnucash.android.db.adapter;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.PriceIndex;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
@@ -36,8 +39,16 @@ import org.gnucash.android.util.TimestampHelper;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
 
@@ -50,6 +61,27 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
  */
 public class SplitsDbAdapter extends DatabaseAdapter<Split> {
 
+    /**
+     * Alias of the currency of the transaction in cursors returned by {@link #querySplitsWithCurrencies(String, String[])}
+     */
+    private static final String COLUMN_TRANSACTION_CURRENCY = "transaction_currency";
+
+    /**
+     * Alias of the currency of the account in cursors returned by {@link #querySplitsWithCurrencies(String, String[])}
+     */
+    private static final String COLUMN_ACCOUNT_CURRENCY = "account_currency";
+
+    /**
+     * Maximum number of transaction UIDs bound in one query, well below the SQLite limit of 999 parameters
+     */
+    private static final int MAX_QUERY_PARAMETERS = 500;
+
+    /**
+     * Prices adapter for converting balances in other currencies, created on demand.
+     * It keeps the price index between balance computations
+     */
+    private PricesDbAdapter mPricesDbAdapter;
+
     public SplitsDbAdapter(SQLiteDatabase db) {
         super(db, SplitEntry.TABLE_NAME, new String[]{
                 SplitEntry.COLUMN_MEMO,
@@ -83,14 +115,41 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         Log.d(LOG_TAG, "Replace transaction split in db");
         super.addRecord(split, updateMethod);
 
-        long transactionId = getTransactionID(split.getTransactionUID());
+        ContentValues contentValues = new ContentValues();
         //when a split is updated, we want mark the transaction as not exported
-        updateRecord(TransactionEntry.TABLE_NAME, transactionId,
-                TransactionEntry.COLUMN_EXPORTED, String.valueOf(0));
-
+        contentValues.put(TransactionEntry.COLUMN_EXPORTED, 0);
         //modifying a split means modifying the accompanying transaction as well
-        updateRecord(TransactionEntry.TABLE_NAME, transactionId,
-                TransactionEntry.COLUMN_MODIFIED_AT, TimestampHelper.getUtcStringFromTimestamp(TimestampHelper.getTimestampFromNow()));
+        contentValues.put(TransactionEntry.COLUMN_MODIFIED_AT,
+                TimestampHelper.getUtcStringFromTimestamp(TimestampHelper.getTimestampFromNow()));
+        if (mDb.update(TransactionEntry.TABLE_NAME, contentValues, TransactionEntry.COLUMN_UID + " = ?",
+                new String[]{split.getTransactionUID()}) > 0) {
+            notifyChange(TransactionEntry.TABLE_NAME, Collections.singleton(split.getTransactionUID()),
+                    getAffectedAccountUIDs(split));
+        }
+    }
+
+    @Override
+    protected @Nullable Set<String> getAffectedAccountUIDs(@Nullable String uid) {
+        if (uid == null)
+            return null;
+        Set<String> accountUIDs = new HashSet<>();
+        Cursor cursor = mDb.query(SplitEntry.TABLE_NAME, new String[]{SplitEntry.COLUMN_ACCOUNT_UID},
+                SplitEntry.COLUMN_UID + " = ?", new String[]{uid}, null, null, null);
+        try {
+            if (cursor.moveToFirst())
+                accountUIDs.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        return accountUIDs;
+    }
+
+    @Override
+    protected @Nullable Set<String> getAffectedAccountUIDs(@NonNull Split split) {
+        Set<String> accountUIDs = new HashSet<>();
+        if (split.getAccountUID() != null)
+            accountUIDs.add(split.getAccountUID());
+        return accountUIDs;
     }
 
     @Override
@@ -131,9 +190,16 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         String reconcileState = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_RECONCILE_STATE));
         String reconcileDate  = cursor.getString(cursor.getColumnIndexOrThrow(SplitEntry.COLUMN_RECONCILE_DATE));
 
-        String transactionCurrency = getAttribute(TransactionEntry.TABLE_NAME, transxUID, TransactionEntry.COLUMN_CURRENCY);
+        //the currencies are part of the cursor when it comes from querySplitsWithCurrencies()
+        int transactionCurrencyColumn = cursor.getColumnIndex(COLUMN_TRANSACTION_CURRENCY);
+        String transactionCurrency = transactionCurrencyColumn >= 0
+                ? cursor.getString(transactionCurrencyColumn)
+                : getAttribute(TransactionEntry.TABLE_NAME, transxUID, TransactionEntry.COLUMN_CURRENCY);
         Money value = new Money(valueNum, valueDenom, transactionCurrency);
-        String currencyCode = getAccountCurrencyCode(accountUID);
+        int accountCurrencyColumn = cursor.getColumnIndex(COLUMN_ACCOUNT_CURRENCY);
+        String currencyCode = accountCurrencyColumn >= 0
+                ? cursor.getString(accountCurrencyColumn)
+                : getAccountCurrencyCode(accountUID);
         Money quantity = new Money(quantityNum, quantityDenom, currencyCode);
 
         Split split = new Split(value, accountUID);
@@ -165,7 +231,8 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
     /**
      * Returns the sum of the splits for given set of accounts within the specified time range.
      * This takes into account the kind of movement caused by the split in the account (which also depends on account type)
-     * The Caller must make sure all accounts have the currency, which is passed in as currencyCode
+     * The Caller must make sure all accounts have the currency, which is passed in as currencyCode.
+     * <p>Splits in other currencies are converted at the prices valid at the end of the time range</p>
      * @param accountUIDList List of String unique IDs of given set of accounts
      * @param currencyCode currencyCode for all the accounts in the list
      * @param hasDebitNormalBalance Does the final balance has normal debit credit meaning
@@ -186,20 +253,11 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         }
 
         Cursor cursor;
-        String[] selectionArgs = null;
         String selection = DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.CommonColumns.COLUMN_UID + " in ( '" + TextUtils.join("' , '", accountUIDList) + "' ) AND " +
                 TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0";
-
-        if (startTimestamp != -1 && endTimestamp != -1) {
-            selection += " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " BETWEEN ? AND ? ";
-            selectionArgs = new String[]{String.valueOf(startTimestamp), String.valueOf(endTimestamp)};
-        } else if (startTimestamp == -1 && endTimestamp != -1) {
-            selection += " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " <= ?";
-            selectionArgs = new String[]{String.valueOf(endTimestamp)};
-        } else if (startTimestamp != -1/* && endTimestamp == -1*/) {
-            selection += " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP + " >= ?";
-            selectionArgs = new String[]{String.valueOf(startTimestamp)};
-        }
+        Pair<String, String[]> timeSelection = buildTimeSelection(startTimestamp, endTimestamp);
+        selection += timeSelection.first;
+        String[] selectionArgs = timeSelection.second;
 
         cursor = mDb.query("trans_split_acct",
                 new String[]{"TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN " +
@@ -212,7 +270,7 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         try {
             Money total = Money.createZeroInstance(currencyCode);
             CommoditiesDbAdapter commoditiesDbAdapter = null;
-            PricesDbAdapter pricesDbAdapter = null;
+            PriceIndex priceIndex = null;
             Commodity commodity = null;
             String currencyUID = null;
             while (cursor.moveToNext()) {
@@ -235,20 +293,20 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
                     // there is a second currency involved
                     if (commoditiesDbAdapter == null) {
                         commoditiesDbAdapter = new CommoditiesDbAdapter(mDb);
-                        pricesDbAdapter = new PricesDbAdapter(mDb);
+                        priceIndex = getPricesDbAdapter().getPriceIndex();
                         commodity = commoditiesDbAdapter.getCommodity(currencyCode);
                         currencyUID = commoditiesDbAdapter.getCommodityUID(currencyCode);
                     }
-                    // get price
+                    // convert at the price valid at the end of the range, directly or through other commodities
                     String commodityUID = commoditiesDbAdapter.getCommodityUID(commodityCode);
-                    Pair<Long, Long> price = pricesDbAdapter.getPrice(commodityUID, currencyUID);
-                    if (price.first <= 0 || price.second <= 0) {
+                    BigDecimal amount = Money.getBigDecimal(amount_num, amount_denom);
+                    BigDecimal amountConverted = priceIndex.convert(amount, commodityUID, currencyUID,
+                            endTimestamp == -1 ? System.currentTimeMillis() : endTimestamp,
+                            commodity.getSmallestFractionDigits());
+                    if (amountConverted == null) {
                         // no price exists, just ignore it
                         continue;
                     }
-                    BigDecimal amount = Money.getBigDecimal(amount_num, amount_denom);
-                    BigDecimal amountConverted = amount.multiply(new BigDecimal(price.first))
-                            .divide(new BigDecimal(price.second), commodity.getSmallestFractionDigits(), BigDecimal.ROUND_HALF_EVEN);
                     total = total.add(new Money(amountConverted, commodity));
                     //Log.d(getClass().getName(), "currency " + commodity + " sub - total " + total);
                 }
@@ -259,13 +317,237 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         }
     }
 
+    /**
+     * Returns the prices adapter for the database of this adapter
+     */
+    private synchronized PricesDbAdapter getPricesDbAdapter() {
+        if (mPricesDbAdapter == null)
+            mPricesDbAdapter = new PricesDbAdapter(mDb);
+        return mPricesDbAdapter;
+    }
+
+    /**
+     * Returns the sum of the splits of every account within the specified time range, in the currency of the account.
+     * <p>Debit splits are added and credit splits subtracted, regardless of the account type.
+     * Accounts without splits in the time range are not contained in the result</p>
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Map of account GUIDs to the sum of their splits
+     */
+    public Map<String, Money> computeSplitSumsByAccount(long startTimestamp, long endTimestamp){
+        String accountUIDColumn = DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.CommonColumns.COLUMN_UID;
+        Pair<String, String[]> timeSelection = buildTimeSelection(startTimestamp, endTimestamp);
+        Cursor cursor = mDb.query("trans_split_acct",
+                new String[]{accountUIDColumn,
+                        "TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN " +
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - " +
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_NUM + " END )",
+                        SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM,
+                        DatabaseSchema.AccountEntry.TABLE_NAME + "_" + DatabaseSchema.AccountEntry.COLUMN_CURRENCY},
+                TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " = 0" + timeSelection.first,
+                timeSelection.second, accountUIDColumn, null, null);
+        Map<String, Money> sums = new HashMap<>(cursor.getCount() * 2);
+        try {
+            while (cursor.moveToNext()) {
+                sums.put(cursor.getString(0), new Money(cursor.getLong(1), cursor.getLong(2), cursor.getString(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return sums;
+    }
+
+    /**
+     * Builds the condition on the transaction time of the <code>trans_split_acct</code> view for a time range
+     * @param startTimestamp the start timestamp of the time range, or -1 for no lower bound
+     * @param endTimestamp the end timestamp of the time range, or -1 for no upper bound
+     * @return Condition to be appended to a WHERE clause with AND, and its arguments
+     */
+    private static Pair<String, String[]> buildTimeSelection(long startTimestamp, long endTimestamp){
+        String timestampColumn = TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TIMESTAMP;
+        if (startTimestamp != -1 && endTimestamp != -1) {
+            return new Pair<>(" AND " + timestampColumn + " BETWEEN ? AND ? ",
+                    new String[]{String.valueOf(startTimestamp), String.valueOf(endTimestamp)});
+        } else if (startTimestamp == -1 && endTimestamp != -1) {
+            return new Pair<>(" AND " + timestampColumn + " <= ?", new String[]{String.valueOf(endTimestamp)});
+        } else if (startTimestamp != -1/* && endTimestamp == -1*/) {
+            return new Pair<>(" AND " + timestampColumn + " >= ?", new String[]{String.valueOf(startTimestamp)});
+        }
+        return new Pair<>("", null);
+    }
+
+    /**
+     * Returns the sums of the splits of an account up to a time, grouped by their reconcile state.
+     * <p>Debit splits are added and credit splits subtracted, regardless of the account type.
+     * The amounts are in the currency of the account. States without splits are not contained in the result.
+     * The query uses the index on (account, reconcile state), so it only reads the splits of the account</p>
+     * @param accountUID GUID of the account
+     * @param endTimestamp Time up to which (inclusive) transactions are included, or -1 for no upper bound
+     * @return Map of reconcile states (see {@link Split#getReconcileState()}) to the sum of their splits
+     */
+    public Map<Character, Money> computeSplitSumsByReconcileState(@NonNull String accountUID, long endTimestamp){
+        String currencyCode = getAccountCurrencyCode(accountUID);
+        String reconcileStateColumn = SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_RECONCILE_STATE;
+        String quantityDenomColumn = SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_DENOM;
+        Pair<String, String[]> selection = buildReconcileSelection(accountUID, null, endTimestamp);
+        Cursor cursor = buildSplitsWithTransactionsQuery().query(mDb,
+                new String[]{reconcileStateColumn,
+                        "TOTAL ( CASE WHEN " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TYPE + " = 'DEBIT' THEN "
+                                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " ELSE - "
+                                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_QUANTITY_NUM + " END )",
+                        quantityDenomColumn},
+                selection.first, selection.second,
+                reconcileStateColumn + " , " + quantityDenomColumn, null, null);
+        Map<Character, Money> sums = new HashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                Character reconcileState = cursor.getString(0).charAt(0);
+                Money sum = new Money(cursor.getLong(1), cursor.getLong(2), currencyCode);
+                Money previousSum = sums.get(reconcileState);
+                sums.put(reconcileState, previousSum == null ? sum : previousSum.add(sum));
+            }
+        } finally {
+            cursor.close();
+        }
+        return sums;
+    }
+
+    /**
+     * Returns a cursor to the splits of an account which are not reconciled yet, i.e. which are
+     * {@link Split#FLAG_NOT_RECONCILED} or {@link Split#FLAG_CLEARED}, ordered by the time of their transactions.
+     * <p>Besides the columns of the splits table, the cursor contains the description and the time of the transaction
+     * as {@link TransactionEntry#COLUMN_DESCRIPTION} and {@link TransactionEntry#COLUMN_TIMESTAMP}</p>
+     * @param accountUID GUID of the account
+     * @param endTimestamp Time up to which (inclusive) transactions are included, or -1 for no upper bound
+     * @return Cursor to the unreconciled splits
+     */
+    public Cursor fetchUnreconciledSplits(@NonNull String accountUID, long endTimestamp){
+        Pair<String, String[]> selection = buildReconcileSelection(accountUID,
+                new char[]{Split.FLAG_NOT_RECONCILED, Split.FLAG_CLEARED}, endTimestamp);
+        return buildSplitsWithTransactionsQuery().query(mDb,
+                new String[]{SplitEntry.TABLE_NAME + ".*",
+                        TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_DESCRIPTION
+                                + " AS " + TransactionEntry.COLUMN_DESCRIPTION,
+                        TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP
+                                + " AS " + TransactionEntry.COLUMN_TIMESTAMP},
+                selection.first, selection.second, null, null,
+                TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " ASC");
+    }
+
+    /**
+     * Sets the reconcile state of several splits of an account, using one statement for up to
+     * {@link #MAX_QUERY_PARAMETERS} splits. All splits are updated in one database transaction.
+     * <p>The reconcile date of the splits is set to the current time</p>
+     * @param accountUID GUID of the account of the splits. Splits of other accounts are not changed
+     * @param splitUIDs GUIDs of the splits
+     * @param reconcileState New reconcile state, see {@link Split#setReconcileState(char)}
+     * @return Number of splits which were updated
+     */
+    public int updateReconcileState(@NonNull String accountUID, @NonNull Collection<String> splitUIDs, char reconcileState){
+        if (splitUIDs.isEmpty())
+            return 0;
+
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(SplitEntry.COLUMN_RECONCILE_STATE, String.valueOf(reconcileState));
+        contentValues.put(SplitEntry.COLUMN_RECONCILE_DATE,
+                TimestampHelper.getUtcStringFromTimestamp(TimestampHelper.getTimestampFromNow()));
+        int updated = 0;
+        beginTransaction();
+        try {
+            Iterator<String> iterator = splitUIDs.iterator();
+            while (iterator.hasNext()) {
+                List<String> chunk = new ArrayList<>(MAX_QUERY_PARAMETERS + 1);
+                chunk.add(accountUID);
+                while (iterator.hasNext() && chunk.size() <= MAX_QUERY_PARAMETERS) {
+                    chunk.add(iterator.next());
+                }
+                String placeholders = TextUtils.join(",", Collections.nCopies(chunk.size() - 1, "?"));
+                updated += mDb.update(SplitEntry.TABLE_NAME, contentValues,
+                        SplitEntry.COLUMN_ACCOUNT_UID + " = ? AND " + SplitEntry.COLUMN_UID + " IN (" + placeholders + ")",
+                        chunk.toArray(new String[chunk.size()]));
+            }
+            if (updated > 0)
+                notifyChange(splitUIDs, Collections.singleton(accountUID));
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return updated;
+    }
+
+    /**
+     * Marks all cleared splits of an account up to a time as reconciled, in one statement.
+     * <p>This is the last step of reconciling an account with a statement</p>
+     * @param accountUID GUID of the account
+     * @param endTimestamp Time of the statement. Transactions up to this time (inclusive) are reconciled
+     * @return Number of splits which were reconciled
+     */
+    public int reconcileClearedSplits(@NonNull String accountUID, long endTimestamp){
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(SplitEntry.COLUMN_RECONCILE_STATE, String.valueOf(Split.FLAG_RECONCILED));
+        contentValues.put(SplitEntry.COLUMN_RECONCILE_DATE,
+                TimestampHelper.getUtcStringFromTimestamp(TimestampHelper.getTimestampFromNow()));
+        int updated = mDb.update(SplitEntry.TABLE_NAME, contentValues,
+                SplitEntry.COLUMN_ACCOUNT_UID + " = ? AND " + SplitEntry.COLUMN_RECONCILE_STATE + " = ? AND "
+                        + "EXISTS ( SELECT 1 FROM " + TransactionEntry.TABLE_NAME + " WHERE "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                        + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " AND "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TEMPLATE + " = 0 AND "
+                        + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_TIMESTAMP + " <= ? )",
+                new String[]{accountUID, String.valueOf(Split.FLAG_CLEARED), String.valueOf(endTimestamp)});
+        if (updated > 0)
+            notifyChange(null, Collections.singleton(accountUID));
+        return updated;
+    }
+
+    /**
+     * Returns a query builder for splits joined with their transactions
+     */
+    private static SQLiteQueryBuilder buildSplitsWithTransactionsQuery(){
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(SplitEntry.TABLE_NAME
+                + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID);
+        return queryBuilder;
+    }
+
+    /**
+     * Builds the selection of the non-template splits of an account for {@link #buildSplitsWithTransactionsQuery()}
+     * @param accountUID GUID of the account
+     * @param reconcileStates Reconcile states of the splits to select, or {@code null} for all states
+     * @param endTimestamp Time up to which (inclusive) transactions are included, or -1 for no upper bound
+     * @return WHERE clause and its arguments
+     */
+    private static Pair<String, String[]> buildReconcileSelection(@NonNull String accountUID,
+                                                                  @Nullable char[] reconcileStates, long endTimestamp){
+        StringBuilder selection = new StringBuilder(SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID + " = ?");
+        List<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(accountUID);
+        if (reconcileStates != null) {
+            selection.append(" AND ").append(SplitEntry.TABLE_NAME).append(".").append(SplitEntry.COLUMN_RECONCILE_STATE)
+                    .append(" IN (").append(TextUtils.join(",", Collections.nCopies(reconcileStates.length, "?"))).append(")");
+            for (char reconcileState : reconcileStates) {
+                selectionArgs.add(String.valueOf(reconcileState));
+            }
+        }
+        selection.append(" AND ").append(TransactionEntry.TABLE_NAME).append(".").append(TransactionEntry.COLUMN_TEMPLATE).append(" = 0");
+        if (endTimestamp != -1) {
+            selection.append(" AND ").append(TransactionEntry.TABLE_NAME).append(".").append(TransactionEntry.COLUMN_TIMESTAMP).append(" <= ?");
+            selectionArgs.add(String.valueOf(endTimestamp));
+        }
+        return new Pair<>(selection.toString(), selectionArgs.toArray(new String[selectionArgs.size()]));
+    }
+
     /**
      * Returns the list of splits for a transaction
      * @param transactionUID String unique ID of transaction
      * @return List of {@link org.gnucash.android.model.Split}s
      */
     public List<Split> getSplitsForTransaction(String transactionUID){
-        Cursor cursor = fetchSplitsForTransaction(transactionUID);
+        Cursor cursor = querySplitsWithCurrencies(
+                SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " = ?",
+                new String[]{transactionUID});
         List<Split> splitList = new ArrayList<Split>();
         try {
             while (cursor.moveToNext()) {
@@ -277,6 +559,64 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         return splitList;
     }
 
+    /**
+     * Returns the splits of several transactions, using one query for up to {@link #MAX_QUERY_PARAMETERS} transactions.
+     * <p>Used to prefetch the splits when loading a list of transactions, instead of querying them per transaction</p>
+     * @param transactionUIDs GUIDs of the transactions
+     * @return Map of transaction GUIDs to their splits. Transactions without splits are not contained in the map
+     */
+    public Map<String, List<Split>> getSplitsForTransactions(Collection<String> transactionUIDs){
+        Map<String, List<Split>> splitsByTransaction = new HashMap<>(transactionUIDs.size() * 2);
+        Iterator<String> iterator = transactionUIDs.iterator();
+        while (iterator.hasNext()) {
+            List<String> chunk = new ArrayList<>(MAX_QUERY_PARAMETERS);
+            while (iterator.hasNext() && chunk.size() < MAX_QUERY_PARAMETERS) {
+                chunk.add(iterator.next());
+            }
+            String placeholders = TextUtils.join(",", Collections.nCopies(chunk.size(), "?"));
+            Cursor cursor = querySplitsWithCurrencies(
+                    SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " IN (" + placeholders + ")",
+                    chunk.toArray(new String[chunk.size()]));
+            try {
+                while (cursor.moveToNext()) {
+                    Split split = buildModelInstance(cursor);
+                    List<Split> splits = splitsByTransaction.get(split.getTransactionUID());
+                    if (splits == null) {
+                        splits = new ArrayList<>(2);
+                        splitsByTransaction.put(split.getTransactionUID(), splits);
+                    }
+                    splits.add(split);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return splitsByTransaction;
+    }
+
+    /**
+     * Queries splits together with the currencies of their transactions and accounts,
+     * so that no further queries are needed for building the split instances
+     * @param where SQL WHERE clause. Column names have to be qualified with the table name
+     * @param whereArgs Arguments for the WHERE clause
+     * @return Cursor to the splits, ordered by insertion
+     */
+    private Cursor querySplitsWithCurrencies(String where, String[] whereArgs){
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(SplitEntry.TABLE_NAME
+                + " INNER JOIN " + TransactionEntry.TABLE_NAME + " ON "
+                + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " INNER JOIN " + AccountEntry.TABLE_NAME + " ON "
+                + AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_UID + " = "
+                + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_ACCOUNT_UID);
+        String[] projection = {SplitEntry.TABLE_NAME + ".*",
+                TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_CURRENCY + " AS " + COLUMN_TRANSACTION_CURRENCY,
+                AccountEntry.TABLE_NAME + "." + AccountEntry.COLUMN_CURRENCY + " AS " + COLUMN_ACCOUNT_CURRENCY};
+        return queryBuilder.query(mDb, projection, where, whereArgs, null, null,
+                SplitEntry.TABLE_NAME + "." + SplitEntry._ID + " ASC");
+    }
+
     /**
      * Returns the list of splits for a transaction
      * @param transactionID DB record ID of the transaction
@@ -398,27 +738,50 @@ public class SplitsDbAdapter extends DatabaseAdapter<Split> {
         }
     }
 
+    /**
+     * Deletes the split with database record ID {@code rowId}.
+     * <p>If it was the last split of its transaction, the transaction is deleted as well.
+     * Only the transaction of the split is checked, so the cost does not depend on the size of the database</p>
+     * @param rowId Database record ID of the split
+     * @return {@code true} if the split was deleted, {@code false} otherwise
+     */
     @Override
     public boolean deleteRecord(long rowId) {
-        Split split = getRecord(rowId);
-        String transactionUID = split.getTransactionUID();
-        boolean result = mDb.delete(SplitEntry.TABLE_NAME, SplitEntry._ID + "=" + rowId, null) > 0;
-
-        if (!result) //we didn't delete for whatever reason, invalid rowId etc
-            return false;
+        String splitUID;
+        String transactionUID;
+        String accountUID;
+        Cursor cursor = mDb.query(SplitEntry.TABLE_NAME, new String[]{SplitEntry.COLUMN_UID,
+                        SplitEntry.COLUMN_TRANSACTION_UID, SplitEntry.COLUMN_ACCOUNT_UID},
+                SplitEntry._ID + " = " + rowId, null, null, null, null);
+        try {
+            if (!cursor.moveToFirst())
+                return false;
+            splitUID = cursor.getString(0);
+            transactionUID = cursor.getString(1);
+            accountUID = cursor.getString(2);
+        } finally {
+            cursor.close();
+        }
 
-        //if we just deleted the last split, then remove the transaction from db
-        Cursor cursor = fetchSplitsForTransaction(transactionUID);
+        beginTransaction();
         try {
-            if (cursor.getCount() > 0) {
-                long transactionID = getTransactionID(transactionUID);
-                result = mDb.delete(TransactionEntry.TABLE_NAME,
-                        TransactionEntry._ID + "=" + transactionID, null) > 0;
+            if (mDb.delete(SplitEntry.TABLE_NAME, SplitEntry._ID + " = " + rowId, null) == 0)
+                return false;
+            Set<String> accountUIDs = Collections.singleton(accountUID);
+            notifyChange(Collections.singleton(splitUID), accountUIDs);
+
+            //if we just deleted the last split, then remove the transaction from db
+            if (mDb.delete(TransactionEntry.TABLE_NAME,
+                    TransactionEntry.COLUMN_UID + " = ? AND NOT EXISTS ( SELECT 1 FROM " + SplitEntry.TABLE_NAME
+                            + " WHERE " + SplitEntry.COLUMN_TRANSACTION_UID + " = ? )",
+                    new String[]{transactionUID, transactionUID}) > 0) {
+                notifyChange(TransactionEntry.TABLE_NAME, Collections.singleton(transactionUID), accountUIDs);
             }
+            setTransactionSuccessful();
+            return true;
         } finally {
-            cursor.close();
+            endTransaction();
         }
-        return result;
     }
 
     /**
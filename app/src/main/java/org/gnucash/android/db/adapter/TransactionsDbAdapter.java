@@ -36,16 +36,26 @@ import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
+import org.gnucash.android.util.MetricsRegistry;
 import org.gnucash.android.util.TimestampHelper;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionFingerprintEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionSummaryEntry;
 
 /**
  * Manages persistence of {@link Transaction}s in the database
@@ -56,10 +66,25 @@ import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
  */
 public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
 
+    /**
+     * Length of a day in milliseconds, the unit of the days in the transaction fingerprints
+     */
+    private static final long DAY_MILLIS = 86400000L;
+
     private final SplitsDbAdapter mSplitsDbAdapter;
 
     private final CommoditiesDbAdapter mCommoditiesDbAdapter;
 
+    /**
+     * Loads the splits of transactions built by {@link #buildModelInstance(Cursor)} when they are first accessed
+     */
+    private final Transaction.SplitsLoader mSplitsLoader = new Transaction.SplitsLoader() {
+        @Override
+        public List<Split> loadSplits(String transactionUID) {
+            return mSplitsDbAdapter.getSplitsForTransaction(transactionUID);
+        }
+    };
+
     /**
      * Overloaded constructor. Creates adapter for already open db
      * @param db SQlite db instance
@@ -101,8 +126,12 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
     @Override
 	public void addRecord(@NonNull Transaction transaction, UpdateMethod updateMethod){
         Log.d(LOG_TAG, "Adding transaction to the db via " + updateMethod.name());
-        mDb.beginTransaction();
+        beginTransaction();
         try {
+            //splits may be moved to other accounts or dropped, so the accounts of the old splits are affected too
+            if (updateMethod != UpdateMethod.insert && isObserved())
+                notifyChange(Collections.singleton(transaction.getUID()), getAffectedAccountUIDs(transaction.getUID()));
+
             Split imbalanceSplit = transaction.createAutoBalanceSplit();
             if (imbalanceSplit != null){
                 String imbalanceAccountUID = new AccountsDbAdapter(mDb, this).getOrCreateImbalanceAccountUID(transaction.getCurrency());
@@ -129,12 +158,12 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
                     new String[]{transaction.getUID()});
             Log.d(LOG_TAG, deleted + " splits deleted");
 
-            mDb.setTransactionSuccessful();
+            setTransactionSuccessful();
         } catch (SQLException sqlEx) {
             Log.e(LOG_TAG, sqlEx.getMessage());
             Crashlytics.logException(sqlEx);
         } finally {
-            mDb.endTransaction();
+            endTransaction();
         }
 	}
 
@@ -149,27 +178,23 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      */
     @Override
     public long bulkAddRecords(@NonNull List<Transaction> transactionList, UpdateMethod updateMethod){
-        long start = System.nanoTime();
         long rowInserted = super.bulkAddRecords(transactionList, updateMethod);
-        long end = System.nanoTime();
-        Log.d(getClass().getSimpleName(), String.format("bulk add transaction time %d ", end - start));
         List<Split> splitList = new ArrayList<>(transactionList.size()*3);
         for (Transaction transaction : transactionList) {
             splitList.addAll(transaction.getSplits());
         }
         if (rowInserted != 0 && !splitList.isEmpty()) {
             try {
-                start = System.nanoTime();
                 long nSplits = mSplitsDbAdapter.bulkAddRecords(splitList, updateMethod);
-                Log.d(LOG_TAG, String.format("%d splits inserted in %d ns", nSplits, System.nanoTime()-start));
+                Log.d(LOG_TAG, String.format("%d splits inserted", nSplits));
             }
             finally {
-                SQLiteStatement deleteEmptyTransaction = mDb.compileStatement("DELETE FROM " +
-                        TransactionEntry.TABLE_NAME + " WHERE NOT EXISTS ( SELECT * FROM " +
-                        SplitEntry.TABLE_NAME +
-                        " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID +
-                        " = " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " ) ");
-                deleteEmptyTransaction.execute();
+                //only the transactions just saved can have lost their splits
+                List<String> transactionUIDs = new ArrayList<>(transactionList.size());
+                for (Transaction transaction : transactionList) {
+                    transactionUIDs.add(transaction.getUID());
+                }
+                deleteTransactionsWithNoSplits(transactionUIDs);
             }
         }
         return rowInserted;
@@ -257,6 +282,8 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
                 + " (SELECT " + SplitEntry.COLUMN_TRANSACTION_UID + " FROM " + SplitEntry.TABLE_NAME + " WHERE "
                 + SplitEntry.COLUMN_ACCOUNT_UID + " = ?)";
         mDb.execSQL(rawDeleteQuery, new String[]{accountUID});
+        //the other splits of the deleted transactions may belong to any account
+        notifyChange(null, null);
     }
 
     /**
@@ -264,13 +291,44 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return Number of records deleted
      */
     public int deleteTransactionsWithNoSplits(){
-        return mDb.delete(
+        int deleted = mDb.delete(
                 TransactionEntry.TABLE_NAME,
                 "NOT EXISTS ( SELECT * FROM " + SplitEntry.TABLE_NAME +
                         " WHERE " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID +
                         " = " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID + " ) ",
                 null
         );
+        if (deleted > 0) //transactions without splits do not belong to any account
+            notifyChange(null, Collections.<String>emptySet());
+        return deleted;
+    }
+
+    /**
+     * Deletes those of the transactions with GUIDs {@code transactionUIDs} which have no splits.
+     * <p>Unlike {@link #deleteTransactionsWithNoSplits()}, only the given transactions are checked,
+     * each with an index lookup</p>
+     * @param transactionUIDs GUIDs of the transactions to check
+     * @return Number of records deleted
+     */
+    public int deleteTransactionsWithNoSplits(@NonNull Collection<String> transactionUIDs){
+        if (transactionUIDs.isEmpty())
+            return 0;
+
+        String where = TransactionEntry.COLUMN_UID + " = ?1 AND NOT EXISTS ( SELECT 1 FROM "
+                + SplitEntry.TABLE_NAME + " WHERE " + SplitEntry.COLUMN_TRANSACTION_UID + " = ?1 )";
+        int deleted = 0;
+        beginTransaction();
+        try {
+            for (String transactionUID : transactionUIDs) {
+                deleted += mDb.delete(TransactionEntry.TABLE_NAME, where, new String[]{transactionUID});
+            }
+            if (deleted > 0)
+                notifyChange(transactionUIDs, Collections.<String>emptySet());
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        return deleted;
     }
 
     /**
@@ -292,6 +350,26 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         return queryBuilder.query(mDb, projectionIn, null, null, null, null, sortOrder);
     }
 
+    /**
+     * Returns the template transactions of all scheduled actions, with their splits
+     * @return Map of transaction GUIDs to template transactions
+     * @see #fetchAllScheduledTransactions()
+     */
+    public Map<String, Transaction> getAllScheduledTransactions(){
+        Cursor cursor = fetchAllScheduledTransactions();
+        Map<String, Transaction> transactions = new HashMap<>(cursor.getCount() * 2);
+        try {
+            while (cursor.moveToNext()) {
+                Transaction transaction = buildModelInstance(cursor);
+                transactions.put(transaction.getUID(), transaction);
+            }
+        } finally {
+            cursor.close();
+        }
+        prefetchSplits(new ArrayList<>(transactions.values()));
+        return transactions;
+    }
+
 	/**
 	 * Returns list of all transactions for account with UID <code>accountUID</code>
 	 * @param accountUID UID of account whose transactions are to be retrieved
@@ -307,6 +385,7 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         } finally {
             c.close();
         }
+        prefetchSplits(transactionsList);
 		return transactionsList;
 	}
 
@@ -324,34 +403,58 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         } finally {
             cursor.close();
         }
+        prefetchSplits(transactions);
         return transactions;
     }
 
+    /**
+     * Loads the splits of all {@code transactions} with a constant number of queries,
+     * instead of one query per transaction when the splits are accessed
+     * @param transactions Transactions built from the database
+     */
+    private void prefetchSplits(List<Transaction> transactions){
+        if (transactions.isEmpty())
+            return;
+        long start = MetricsRegistry.start();
+        List<String> transactionUIDs = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            transactionUIDs.add(transaction.getUID());
+        }
+        Map<String, List<Split>> splitsByTransaction = mSplitsDbAdapter.getSplitsForTransactions(transactionUIDs);
+        for (Transaction transaction : transactions) {
+            List<Split> splits = splitsByTransaction.get(transaction.getUID());
+            transaction.setSplits(splits != null ? splits : new ArrayList<Split>());
+        }
+        MetricsRegistry.stop(LOG_TAG, "prefetchSplits", start);
+    }
+
     public Cursor fetchTransactionsWithSplits(String [] columns, @Nullable String where, @Nullable String[] whereArgs, @Nullable String orderBy) {
         return mDb.query(TransactionEntry.TABLE_NAME + " , " + SplitEntry.TABLE_NAME +
                         " ON " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID +
                         " = " + SplitEntry.TABLE_NAME + "." + SplitEntry.COLUMN_TRANSACTION_UID +
-                        " , trans_extra_info ON trans_extra_info.trans_acct_t_uid = " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID ,
+                        " , " + TransactionSummaryEntry.TABLE_NAME + " ON " + TransactionSummaryEntry.TABLE_NAME + "." +
+                        TransactionSummaryEntry.COLUMN_TRANSACTION_UID + " = " + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID ,
                 columns, where, whereArgs, null, null,
                 orderBy);
     }
 
     public Cursor fetchTransactionsWithSplitsWithTransactionAccount(String [] columns, String where, String[] whereArgs, String orderBy) {
         // table is :
-        // trans_split_acct , trans_extra_info ON trans_extra_info.trans_acct_t_uid = transactions_uid ,
-        // accounts AS account1 ON account1.uid = trans_extra_info.trans_acct_a_uid
+        // trans_split_acct , transaction_summaries ON transaction_summaries.transaction_uid = transactions_uid ,
+        // accounts AS account1 ON account1.uid = transaction_summaries.account_uid
         //
-        // views effectively simplified this query
+        // the view and the pre-computed summaries effectively simplified this query
         //
         // account1 provides information for the grouped account. Splits from the grouped account
         // can be eliminated with a WHERE clause. Transactions in QIF can be auto balanced.
         //
         // Account, transaction and split Information can be retrieve in a single query.
         return mDb.query(
-                "trans_split_acct , trans_extra_info ON trans_extra_info.trans_acct_t_uid = trans_split_acct." +
+                "trans_split_acct , " + TransactionSummaryEntry.TABLE_NAME + " ON " + TransactionSummaryEntry.TABLE_NAME +
+                "." + TransactionSummaryEntry.COLUMN_TRANSACTION_UID + " = trans_split_acct." +
                 TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_UID + " , " +
                 AccountEntry.TABLE_NAME + " AS account1 ON account1." + AccountEntry.COLUMN_UID +
-                " = trans_extra_info.trans_acct_a_uid",
+                " = " + TransactionSummaryEntry.TABLE_NAME + "." + TransactionSummaryEntry.COLUMN_ACCOUNT_UID,
                 columns, where, whereArgs, null, null , orderBy);
     }
 
@@ -378,9 +481,9 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return Number of records in the databases
      */
     public long getRecordsCount(@Nullable String where, @Nullable String[] whereArgs) {
-        Cursor cursor = mDb.query(true, TransactionEntry.TABLE_NAME + " , trans_extra_info ON "
+        Cursor cursor = mDb.query(true, TransactionEntry.TABLE_NAME + " , " + TransactionSummaryEntry.TABLE_NAME + " ON "
                         + TransactionEntry.TABLE_NAME + "." + TransactionEntry.COLUMN_UID
-                        + " = trans_extra_info.trans_acct_t_uid",
+                        + " = " + TransactionSummaryEntry.TABLE_NAME + "." + TransactionSummaryEntry.COLUMN_TRANSACTION_UID,
                 new String[]{"COUNT(*)"},
                 where,
                 whereArgs,
@@ -416,8 +519,7 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         transaction.setCurrencyCode(currencyCode);
         transaction.setCommodity(mCommoditiesDbAdapter.getCommodity(currencyCode));
         transaction.setScheduledActionUID(c.getString(c.getColumnIndexOrThrow(TransactionEntry.COLUMN_SCHEDX_ACTION_UID)));
-        long transactionID = c.getLong(c.getColumnIndexOrThrow(TransactionEntry._ID));
-        transaction.setSplits(mSplitsDbAdapter.getSplitsForTransaction(transactionID));
+        transaction.setSplitsLoader(mSplitsLoader);
 
 		return transaction;
 	}
@@ -452,9 +554,192 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
             split.setAccountUID(dstAccountUID);
         }
         mSplitsDbAdapter.bulkAddRecords(splits, UpdateMethod.update);
+        if (!splits.isEmpty()) //the splits are published with their new account only
+            notifyChange(SplitEntry.TABLE_NAME, null, Collections.singleton(srcAccountUID));
         return splits.size();
 	}
 
+    /**
+     * Maximum number of record IDs in the IN clause of a single batch statement
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Statement which is executed for a batch of transactions
+     */
+    private interface BatchStatement {
+        /**
+         * Executes the statement for a batch of transactions
+         * @param transactionsCondition SQL condition selecting the transactions of the batch by record ID
+         * @return Number of rows affected
+         */
+        int execute(String transactionsCondition);
+    }
+
+    /**
+     * Executes a set-based statement for the transactions with record IDs {@code transactionIds}.
+     * <p>The IDs are split into batches of at most {@link #BATCH_SIZE} to bound the size of the SQL statements,
+     * and all batches are executed in a single database transaction</p>
+     * @param operation Name of the operation, used for logging and metrics
+     * @param transactionIds Record IDs of the transactions
+     * @param statement Statement to execute for each batch
+     * @return Total number of rows affected
+     */
+    private int executeInBatches(String operation, long[] transactionIds, BatchStatement statement){
+        if (transactionIds.length == 0)
+            return 0;
+
+        long start = MetricsRegistry.start();
+        int affected = 0;
+        beginTransaction();
+        try {
+            for (int offset = 0; offset < transactionIds.length; offset += BATCH_SIZE) {
+                affected += statement.execute(buildBatchCondition(transactionIds, offset));
+            }
+            setTransactionSuccessful();
+        } finally {
+            endTransaction();
+        }
+        Log.i(LOG_TAG, operation + ": " + transactionIds.length + " transactions, " + affected + " rows affected");
+        MetricsRegistry.stop(LOG_TAG, operation, start);
+        return affected;
+    }
+
+    /**
+     * Builds the SQL condition selecting the batch of transactions which starts at {@code offset}
+     * @param transactionIds Record IDs of all the transactions
+     * @param offset Index of the first transaction of the batch
+     * @return SQL condition on the record IDs of at most {@link #BATCH_SIZE} transactions
+     */
+    private static String buildBatchCondition(long[] transactionIds, int offset){
+        int end = Math.min(offset + BATCH_SIZE, transactionIds.length);
+        StringBuilder condition = new StringBuilder(TransactionEntry.TABLE_NAME + "." + TransactionEntry._ID + " IN ( ");
+        for (int i = offset; i < end; i++) {
+            if (i > offset)
+                condition.append(" , ");
+            condition.append(transactionIds[i]);
+        }
+        return condition.append(" )").toString();
+    }
+
+    /**
+     * Executes a batch statement which modifies the transactions with {@link #executeInBatches(String, long[], BatchStatement)}
+     * and publishes the change of the table {@code tableName}.
+     * <p>The affected accounts are those which have splits in the transactions before the statement
+     * and {@code additionalAccountUIDs}</p>
+     */
+    private int executeAndNotify(String operation, long[] transactionIds, String tableName,
+                                 BatchStatement statement, String... additionalAccountUIDs){
+        if (!isObserved())
+            return executeInBatches(operation, transactionIds, statement);
+
+        Set<String> accountUIDs = getAccountUIDs(transactionIds);
+        Collections.addAll(accountUIDs, additionalAccountUIDs);
+        int affected = executeInBatches(operation, transactionIds, statement);
+        if (affected > 0)
+            notifyChange(tableName, null, accountUIDs);
+        return affected;
+    }
+
+    /**
+     * Moves the splits of multiple transactions from one account to another with a set-based update.
+     * <p>Only splits of the transactions which belong to {@code srcAccountUID} are moved</p>
+     * @param transactionIds Record IDs of the transactions
+     * @param srcAccountUID GUID of the account from which the transactions are to be moved
+     * @param dstAccountUID GUID of the account to which the transactions will be assigned
+     * @return Number of splits moved
+     * @see #moveTransaction(String, String, String)
+     */
+    public int moveTransactions(@NonNull long[] transactionIds, @NonNull final String srcAccountUID,
+                                @NonNull String dstAccountUID){
+        final ContentValues contentValues = new ContentValues();
+        contentValues.put(SplitEntry.COLUMN_ACCOUNT_UID, dstAccountUID);
+        return executeAndNotify("moveTransactions", transactionIds, SplitEntry.TABLE_NAME, new BatchStatement() {
+            @Override
+            public int execute(String transactionsCondition) {
+                return mDb.update(SplitEntry.TABLE_NAME, contentValues,
+                        SplitEntry.COLUMN_ACCOUNT_UID + " = ? AND " + SplitEntry.COLUMN_TRANSACTION_UID
+                                + " IN ( SELECT " + TransactionEntry.COLUMN_UID + " FROM " + TransactionEntry.TABLE_NAME
+                                + " WHERE " + transactionsCondition + " )",
+                        new String[]{srcAccountUID});
+            }
+        }, dstAccountUID);
+    }
+
+    /**
+     * Deletes multiple transactions with a set-based delete.
+     * The splits of the transactions are deleted by the database through cascading
+     * @param transactionIds Record IDs of the transactions
+     * @return Number of transactions deleted
+     */
+    public int deleteTransactions(@NonNull long[] transactionIds){
+        return executeAndNotify("deleteTransactions", transactionIds, TransactionEntry.TABLE_NAME, new BatchStatement() {
+            @Override
+            public int execute(String transactionsCondition) {
+                return mDb.delete(TransactionEntry.TABLE_NAME, transactionsCondition, null);
+            }
+        });
+    }
+
+    /**
+     * Marks multiple transactions as exported with a set-based update
+     * @param transactionIds Record IDs of the transactions
+     * @return Number of transactions updated
+     */
+    public int markTransactionsAsExported(@NonNull long[] transactionIds){
+        final ContentValues contentValues = new ContentValues();
+        contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
+        return executeAndNotify("markTransactionsAsExported", transactionIds, TransactionEntry.TABLE_NAME, new BatchStatement() {
+            @Override
+            public int execute(String transactionsCondition) {
+                return mDb.update(TransactionEntry.TABLE_NAME, contentValues, transactionsCondition, null);
+            }
+        });
+    }
+
+    /**
+     * Sets the date of multiple transactions with a set-based update
+     * @param transactionIds Record IDs of the transactions
+     * @param timeMillis New time of the transactions in milliseconds since the epoch
+     * @return Number of transactions updated
+     */
+    public int setTransactionsTime(@NonNull long[] transactionIds, long timeMillis){
+        final ContentValues contentValues = new ContentValues();
+        contentValues.put(TransactionEntry.COLUMN_TIMESTAMP, timeMillis);
+        return executeAndNotify("setTransactionsTime", transactionIds, TransactionEntry.TABLE_NAME, new BatchStatement() {
+            @Override
+            public int execute(String transactionsCondition) {
+                return mDb.update(TransactionEntry.TABLE_NAME, contentValues, transactionsCondition, null);
+            }
+        });
+    }
+
+    /**
+     * Returns the GUIDs of all accounts which have splits in the transactions.
+     * <p>Used to determine which account balances are affected by a batch operation,
+     * so it has to be called before the transactions are deleted.
+     * This is a plain read: the batches are queried one after another without a database transaction</p>
+     * @param transactionIds Record IDs of the transactions
+     * @return Distinct account GUIDs, in the order in which they were found
+     */
+    public Set<String> getAccountUIDs(@NonNull long[] transactionIds){
+        Set<String> accountUIDs = new LinkedHashSet<>();
+        for (int offset = 0; offset < transactionIds.length; offset += BATCH_SIZE) {
+            Cursor cursor = mDb.query(true, SplitEntry.TABLE_NAME, new String[]{SplitEntry.COLUMN_ACCOUNT_UID},
+                    SplitEntry.COLUMN_TRANSACTION_UID + " IN ( SELECT " + TransactionEntry.COLUMN_UID
+                            + " FROM " + TransactionEntry.TABLE_NAME + " WHERE " + buildBatchCondition(transactionIds, offset) + " )",
+                    null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    accountUIDs.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return accountUIDs;
+    }
+
     /**
      * Returns the number of transactions belonging to an account
      * @param accountUID GUID of the account
@@ -494,6 +779,7 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
             while (cursor.moveToNext()) {
                 scheduledTransactions.add(buildModelInstance(cursor));
             }
+            prefetchSplits(scheduledTransactions);
             return scheduledTransactions;
         } finally {
             cursor.close();
@@ -541,6 +827,66 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
         return queryBuilder.query(mDb, projectionIn, selection, selectionArgs, groupBy, null, sortOrder, limit);
     }
 
+    /**
+     * Returns the GUIDs of the transactions which have a split with the same fingerprint as a statement entry,
+     * i.e. a split in the same account with the same amount, a matching description and a date at most one day apart.
+     * <p>The date tolerance covers the difference between the local date of statement entries and the UTC day
+     * which is stored in the fingerprints. The lookup uses the index of the transaction fingerprints table,
+     * so its cost does not depend on the number of transactions in the book</p>
+     * @param accountUID GUID of the account
+     * @param timeMillis Time of the statement entry
+     * @param amount Amount of the entry in the currency of the account, positive for debits
+     * @param payee Description of the transaction
+     * @return GUIDs of the matching transactions, possibly empty
+     */
+    public List<String> findTransactionsByFingerprint(@NonNull String accountUID, long timeMillis,
+                                                      @NonNull Money amount, @Nullable String payee){
+        long day = timeMillis / DAY_MILLIS;
+        Cursor cursor = mDb.query(TransactionFingerprintEntry.TABLE_NAME,
+                new String[]{TransactionFingerprintEntry.COLUMN_TRANSACTION_UID},
+                TransactionFingerprintEntry.COLUMN_ACCOUNT_UID + " = ? AND "
+                        + TransactionFingerprintEntry.COLUMN_AMOUNT_NUM + " = ? AND "
+                        + TransactionFingerprintEntry.COLUMN_DAY + " BETWEEN ? AND ? AND "
+                        + TransactionFingerprintEntry.COLUMN_AMOUNT_DENOM + " = ? AND "
+                        + TransactionFingerprintEntry.COLUMN_PAYEE + " = ?",
+                new String[]{accountUID, String.valueOf(amount.getNumerator()), String.valueOf(day - 1),
+                        String.valueOf(day + 1), String.valueOf(amount.getDenominator()), normalizePayee(payee)},
+                null, null, null);
+        try {
+            List<String> transactionUIDs = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                transactionUIDs.add(cursor.getString(0));
+            }
+            return transactionUIDs;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Normalizes a transaction description for comparing fingerprints.
+     * <p>This matches the normalization in SQL with {@code LOWER(TRIM(...))}, which only trims spaces
+     * and only converts ASCII letters to lower case</p>
+     * @param payee Transaction description
+     * @return Normalized description
+     */
+    public static String normalizePayee(@Nullable String payee){
+        if (payee == null)
+            return "";
+        int start = 0;
+        int end = payee.length();
+        while (start < end && payee.charAt(start) == ' ')
+            start++;
+        while (end > start && payee.charAt(end - 1) == ' ')
+            end--;
+        char[] chars = payee.substring(start, end).toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z')
+                chars[i] = (char) (chars[i] + ('a' - 'A'));
+        }
+        return new String(chars);
+    }
+
     /**
      * Updates a specific entry of an transaction
      * @param contentValues Values with which to update the record
@@ -549,7 +895,10 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return Number of records affected
      */
     public int updateTransaction(ContentValues contentValues, String whereClause, String[] whereArgs){
-        return mDb.update(TransactionEntry.TABLE_NAME, contentValues, whereClause, whereArgs);
+        int rowsUpdated = mDb.update(TransactionEntry.TABLE_NAME, contentValues, whereClause, whereArgs);
+        if (rowsUpdated > 0)
+            notifyChange(null, null);
+        return rowsUpdated;
     }
 
     /**
@@ -559,9 +908,9 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      * @return Number of currencies within the transaction
      */
     public int getNumCurrencies(String transactionUID) {
-        Cursor cursor = mDb.query("trans_extra_info",
-                new String[]{"trans_currency_count"},
-                "trans_acct_t_uid=?",
+        Cursor cursor = mDb.query(TransactionSummaryEntry.TABLE_NAME,
+                new String[]{TransactionSummaryEntry.COLUMN_CURRENCY_COUNT},
+                TransactionSummaryEntry.COLUMN_TRANSACTION_UID + "=?",
                 new String[]{transactionUID},
                 null, null, null);
         int numCurrencies = 0;
@@ -583,7 +932,37 @@ public class TransactionsDbAdapter extends DatabaseAdapter<Transaction> {
      */
     public int deleteAllNonTemplateTransactions(){
         String where = TransactionEntry.COLUMN_TEMPLATE + "=0";
-        return mDb.delete(mTableName, where, null);
+        int deleted = mDb.delete(mTableName, where, null);
+        if (deleted > 0)
+            notifyChange(null, null);
+        return deleted;
+    }
+
+    @Override
+    protected @Nullable Set<String> getAffectedAccountUIDs(@Nullable String uid) {
+        if (uid == null)
+            return null;
+        Set<String> accountUIDs = new HashSet<>();
+        Cursor cursor = mDb.query(true, SplitEntry.TABLE_NAME, new String[]{SplitEntry.COLUMN_ACCOUNT_UID},
+                SplitEntry.COLUMN_TRANSACTION_UID + " = ?", new String[]{uid}, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                accountUIDs.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return accountUIDs;
+    }
+
+    @Override
+    protected @Nullable Set<String> getAffectedAccountUIDs(@NonNull Transaction transaction) {
+        Set<String> accountUIDs = new HashSet<>();
+        for (Split split : transaction.getSplits()) {
+            if (split.getAccountUID() != null)
+                accountUIDs.add(split.getAccountUID());
+        }
+        return accountUIDs;
     }
 
     /**
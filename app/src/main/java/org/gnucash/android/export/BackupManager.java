@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.export;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.BookSession;
+import org.gnucash.android.db.BookSessionManager;
+import org.gnucash.android.db.DataChangeBus;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.db.DatabaseSchema.ScheduledActionEntry;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.BaseModel;
+import org.gnucash.android.model.Book;
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Creates and restores backups of books.
+ * <p>Two backup formats are supported:
+ * <ul>
+ *     <li>{@link BackupFormat#XML}: the book is serialized to compressed GnuCash XML by the {@link GncXmlExporter}.
+ *     This format can be opened by GnuCash desktop, but export and import time grow with the size of the book</li>
+ *     <li>{@link BackupFormat#DATABASE}: the SQLite database file of the book is copied in a consistent state
+ *     and compressed in a single streaming pass. Restoring just decompresses the file and registers it as a new book</li>
+ * </ul>
+ * XML remains available for interchange through the regular export.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class BackupManager {
+
+    private static final String LOG_TAG = "BackupManager";
+
+    /**
+     * File extension of database snapshot backups
+     */
+    public static final String DATABASE_SNAPSHOT_EXTENSION = ".gnucash.db.gz";
+
+    /**
+     * File extension of archives of closed periods
+     */
+    public static final String PERIOD_ARCHIVE_EXTENSION = ".gnucash.archive.db.gz";
+
+    /**
+     * Header with which every SQLite 3 database file begins
+     */
+    private static final byte[] SQLITE_HEADER = {'S', 'Q', 'L', 'i', 't', 'e', ' ',
+            'f', 'o', 'r', 'm', 'a', 't', ' ', '3', 0};
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Formats in which backups can be created
+     */
+    public enum BackupFormat {XML, DATABASE}
+
+    //no instances
+    private BackupManager(){}
+
+    /**
+     * Returns the backup format selected in the preferences.
+     * Defaults to {@link BackupFormat#DATABASE}
+     * @return Backup format
+     */
+    public static BackupFormat getBackupFormat() {
+        Context context = GnuCashApplication.getAppContext();
+        String format = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(context.getString(R.string.key_backup_format), BackupFormat.DATABASE.name());
+        try {
+            return BackupFormat.valueOf(format);
+        } catch (IllegalArgumentException e) {
+            return BackupFormat.DATABASE;
+        }
+    }
+
+    /**
+     * Creates a backup of the active book in the format selected in the preferences
+     * @return {@code true} if backup was successful, {@code false} otherwise
+     * @see #getBackupFormat()
+     */
+    public static boolean createBackup() {
+        if (getBackupFormat() == BackupFormat.XML)
+            return GncXmlExporter.createBackup();
+        else
+            return createDatabaseSnapshot(BooksDbAdapter.getInstance().getActiveBookUID());
+    }
+
+    /**
+     * Creates a compressed snapshot of the database of the book in the backup folder of the book
+     * @param bookUID GUID of the book
+     * @return {@code true} if backup was successful, {@code false} otherwise
+     * @see Exporter#getBackupFolderPath(String)
+     */
+    public static boolean createDatabaseSnapshot(@NonNull String bookUID) {
+        long start = MetricsRegistry.start();
+        BookSession session = BookSessionManager.getInstance().acquire(bookUID);
+        SQLiteDatabase db = session.getDatabase();
+
+        File backupFile = new File(getDatabaseSnapshotFilePath(bookUID, DATABASE_SNAPSHOT_EXTENSION));
+        try {
+            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(backupFile), BUFFER_SIZE);
+            try {
+                writeDatabaseSnapshot(db, outputStream);
+            } finally {
+                outputStream.close();
+            }
+            return true;
+        } catch (IOException e) {
+            Crashlytics.logException(e);
+            Log.e(LOG_TAG, "Error creating database backup", e);
+            backupFile.delete();
+            return false;
+        } finally {
+            BookSessionManager.getInstance().release(session);
+            MetricsRegistry.stop(LOG_TAG, "createDatabaseSnapshot", start);
+        }
+    }
+
+    /**
+     * Writes a gzip-compressed copy of the database file to the output stream.
+     * <p>An exclusive transaction is held on the database for the duration of the copy, so no other
+     * connection can modify the file while it is being read. The transaction is rolled back afterwards
+     * since nothing is written</p>
+     * @param db Database to be copied
+     * @param outputStream Destination of the compressed database. The stream is not closed
+     * @throws IOException if the database could not be read or the output could not be written
+     */
+    public static void writeDatabaseSnapshot(@NonNull SQLiteDatabase db, @NonNull OutputStream outputStream)
+            throws IOException {
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+        db.beginTransaction();
+        try {
+            InputStream inputStream = new FileInputStream(db.getPath());
+            try {
+                copy(inputStream, gzipOutputStream);
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            DataChangeBus.getInstance().endTransaction(db);
+        }
+        gzipOutputStream.finish();
+    }
+
+    /**
+     * Creates a compressed archive of the active book which contains only the transactions
+     * up to (and including) {@code cutoffTimeMillis}.
+     * <p>The archive is a database snapshot, so it never changes once written and can be restored
+     * as a separate book at any time. Scheduled actions and their template transactions are not archived,
+     * so that nothing is added automatically to a book restored from the archive</p>
+     * @param cutoffTimeMillis End of the archived period in milliseconds since the epoch
+     * @return Absolute path of the archive file
+     * @throws IOException if the database could not be copied or the archive could not be written
+     */
+    public static String createPeriodArchive(long cutoffTimeMillis) throws IOException {
+        long start = MetricsRegistry.start();
+        SQLiteDatabase db = GnuCashApplication.getActiveDb();
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        File tempFile = new File(db.getPath() + ".archive");
+        File archiveFile = new File(getDatabaseSnapshotFilePath(bookUID, PERIOD_ARCHIVE_EXTENSION));
+        try {
+            db.beginTransaction();
+            try {
+                copyFile(new File(db.getPath()), tempFile);
+            } finally {
+                DataChangeBus.getInstance().endTransaction(db);
+            }
+
+            SQLiteDatabase archiveDb = SQLiteDatabase.openDatabase(tempFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+            try {
+                archiveDb.execSQL("PRAGMA foreign_keys=ON");
+                archiveDb.beginTransaction();
+                try {
+                    int deleted = archiveDb.delete(TransactionEntry.TABLE_NAME,
+                            TransactionEntry.COLUMN_TEMPLATE + " = 1 OR " + TransactionEntry.COLUMN_TIMESTAMP + " > ?",
+                            new String[]{String.valueOf(cutoffTimeMillis)});
+                    archiveDb.delete(ScheduledActionEntry.TABLE_NAME, null, null);
+                    archiveDb.setTransactionSuccessful();
+                    Log.d(LOG_TAG, deleted + " transactions after the archived period removed from archive");
+                } finally {
+                    archiveDb.endTransaction();
+                }
+            } finally {
+                archiveDb.close();
+                DataChangeBus.getInstance().discard(); //the archive is not observed
+            }
+
+            OutputStream outputStream = new GZIPOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(archiveFile), BUFFER_SIZE), BUFFER_SIZE);
+            try {
+                InputStream inputStream = new FileInputStream(tempFile);
+                try {
+                    copy(inputStream, outputStream);
+                } finally {
+                    inputStream.close();
+                }
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            archiveFile.delete();
+            throw e;
+        } finally {
+            tempFile.delete();
+            new File(tempFile.getPath() + "-journal").delete();
+            MetricsRegistry.stop(LOG_TAG, "createPeriodArchive", start);
+        }
+        return archiveFile.getPath();
+    }
+
+    /**
+     * Checks if the file is a period archive created by {@link #createPeriodArchive(long)}
+     * @param file Backup file
+     * @return {@code true} if the file is a period archive, {@code false} otherwise
+     */
+    public static boolean isPeriodArchive(@NonNull File file) {
+        return file.getName().endsWith(PERIOD_ARCHIVE_EXTENSION);
+    }
+
+    /**
+     * Checks if the stream contains a database snapshot created by {@link #writeDatabaseSnapshot(SQLiteDatabase, OutputStream)}.
+     * <p>The stream is consumed, so a new stream should be opened for the actual restore</p>
+     * @param inputStream Stream to check
+     * @return {@code true} if the stream contains a compressed SQLite database, {@code false} otherwise
+     */
+    public static boolean isDatabaseSnapshot(@NonNull InputStream inputStream) {
+        try {
+            InputStream gzipInputStream = new GZIPInputStream(inputStream);
+            byte[] header = new byte[SQLITE_HEADER.length];
+            int read = 0;
+            while (read < header.length) {
+                int count = gzipInputStream.read(header, read, header.length - read);
+                if (count < 0)
+                    return false;
+                read += count;
+            }
+            return Arrays.equals(header, SQLITE_HEADER);
+        } catch (IOException e) { //not gzip-compressed or truncated
+            return false;
+        }
+    }
+
+    /**
+     * Restores a database snapshot as a new book.
+     * <p>The snapshot is decompressed next to the other book databases, verified,
+     * and then registered in the books database. The new book is not activated.
+     * If the snapshot was created with an older database version, it will be upgraded when the book is opened</p>
+     * @param inputStream Stream containing the compressed database snapshot
+     * @return GUID of the restored book
+     * @throws IOException if the snapshot could not be read or is not a valid book database
+     */
+    public static String restoreDatabaseSnapshot(@NonNull InputStream inputStream) throws IOException {
+        long start = MetricsRegistry.start();
+        Context context = GnuCashApplication.getAppContext();
+        String bookUID = BaseModel.generateUID();
+        File databaseFile = context.getDatabasePath(bookUID);
+        File tempFile = new File(databaseFile.getPath() + ".restore");
+        File parentDir = tempFile.getParentFile();
+        if (parentDir != null && !parentDir.exists())
+            parentDir.mkdirs();
+
+        try {
+            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+            try {
+                copy(new GZIPInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE), BUFFER_SIZE), outputStream);
+            } finally {
+                outputStream.close();
+            }
+
+            String rootAccountUID = readRootAccountUID(tempFile);
+            if (!tempFile.renameTo(databaseFile))
+                throw new IOException("Could not move restored database to " + databaseFile.getPath());
+
+            Book book = new Book(rootAccountUID);
+            book.setUID(bookUID);
+            BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
+            book.setDisplayName(booksDbAdapter.generateDefaultBookName());
+            booksDbAdapter.addRecord(book, DatabaseAdapter.UpdateMethod.insert);
+        } finally {
+            tempFile.delete();
+            MetricsRegistry.stop(LOG_TAG, "restoreDatabaseSnapshot", start);
+        }
+        return bookUID;
+    }
+
+    /**
+     * Verifies that the file is a book database which can be opened by this version of the application,
+     * and returns the GUID of its root account
+     * @param databaseFile Database file
+     * @return GUID of the root account
+     * @throws IOException if the file is not a valid book database
+     */
+    private static String readRootAccountUID(File databaseFile) throws IOException {
+        SQLiteDatabase db;
+        try {
+            db = SQLiteDatabase.openDatabase(databaseFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        } catch (RuntimeException e) {
+            throw new IOException("Backup is not a valid database: " + e.getMessage());
+        }
+
+        try {
+            if (db.getVersion() > DatabaseSchema.DATABASE_VERSION)
+                throw new IOException("Backup was created by a newer version of the application");
+
+            Cursor cursor = db.query(AccountEntry.TABLE_NAME, new String[]{AccountEntry.COLUMN_UID},
+                    AccountEntry.COLUMN_TYPE + " = ?", new String[]{AccountType.ROOT.name()},
+                    null, null, null);
+            try {
+                if (!cursor.moveToFirst())
+                    throw new IOException("Backup does not contain a root account");
+                return cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Backup is not a valid book database: " + e.getMessage());
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Returns the full path of the file for a new database snapshot of the book
+     * @param bookUID GUID of the book
+     * @param extension File extension of the snapshot
+     * @return Absolute path of the backup file
+     */
+    private static String getDatabaseSnapshotFilePath(String bookUID, String extension) {
+        String bookName = BooksDbAdapter.getInstance().getAttribute(bookUID, DatabaseSchema.BookEntry.COLUMN_DISPLAY_NAME);
+        return Exporter.getBackupFolderPath(bookUID)
+                + Exporter.buildExportFilename(extension, bookName);
+    }
+
+    private static void copyFile(File source, File destination) throws IOException {
+        InputStream inputStream = new FileInputStream(source);
+        try {
+            OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(destination), BUFFER_SIZE);
+            try {
+                copy(inputStream, outputStream);
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, count);
+        }
+    }
+}
@@ -61,6 +61,7 @@ import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
 import org.gnucash.android.db.adapter.SplitsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.export.csv.CsvExporter;
 import org.gnucash.android.export.ofx.OfxExporter;
 import org.gnucash.android.export.qif.QifExporter;
 import org.gnucash.android.export.xml.GncXmlExporter;
@@ -69,6 +70,7 @@ import org.gnucash.android.ui.account.AccountsActivity;
 import org.gnucash.android.ui.account.AccountsListFragment;
 import org.gnucash.android.ui.settings.BackupPreferenceFragment;
 import org.gnucash.android.ui.transaction.TransactionsActivity;
+import org.gnucash.android.util.MetricsRegistry;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -152,12 +154,17 @@ public class ExportAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
                     mExporter = new OfxExporter(mExportParams, mDb);
                     break;
 
+                case CSV:
+                    mExporter = new CsvExporter(mExportParams, mDb);
+                    break;
+
                 case XML:
                 default:
                     mExporter = new GncXmlExporter(mExportParams, mDb);
                     break;
         }
 
+        long start = MetricsRegistry.start();
         try {
             // FIXME: detect if there aren't transactions to export and inform the user
             mExportedFiles = mExporter.generateExport();
@@ -177,6 +184,8 @@ public class ExportAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
                 });
             }
             return false;
+        } finally {
+            MetricsRegistry.stop(mExporter.getClass().getSimpleName(), "generateExport", start);
         }
 
         switch (mExportParams.getExportTarget()) {
@@ -442,7 +451,7 @@ public class ExportAsyncTask extends AsyncTask<ExportParams, Void, Boolean> {
      * and deletes all non-template transactions in the database.
      */
     private void backupAndDeleteTransactions(){
-        GncXmlExporter.createBackup(); //create backup before deleting everything
+        BackupManager.createBackup(); //create backup before deleting everything
         List<Transaction> openingBalances = new ArrayList<>();
         boolean preserveOpeningBalances = GnuCashApplication.shouldSaveOpeningBalances(false);
 
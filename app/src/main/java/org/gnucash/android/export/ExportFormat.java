@@ -22,7 +22,8 @@ package org.gnucash.android.export;
 public enum ExportFormat {
     QIF("Quicken Interchange Format"),
     OFX("Open Financial eXchange"),
-    XML("GnuCash XML");
+    XML("GnuCash XML"),
+    CSV("Comma Separated Values");
 
     /**
      * Full name of the export format acronym
@@ -45,6 +46,8 @@ public enum ExportFormat {
                 return ".ofx";
             case XML:
                 return ".gnca";
+            case CSV:
+                return ".csv";
             default:
                 return ".txt";
         }
@@ -16,10 +16,14 @@
 
 package org.gnucash.android.export;
 
+import org.gnucash.android.export.csv.CsvExporter;
 import org.gnucash.android.ui.export.ExportFormFragment;
 import org.gnucash.android.util.TimestampHelper;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Encapsulation of the parameters used for exporting transactions.
@@ -59,6 +63,18 @@ public class ExportParams {
      */
     private ExportTarget mExportTarget      = ExportTarget.SHARING;
 
+    /**
+     * Columns exported in the {@link ExportFormat#CSV} format, in this order.
+     * By default all columns are exported
+     */
+    private List<CsvExporter.Column> mCsvColumns = Arrays.asList(CsvExporter.Column.values());
+
+    /**
+     * Flag to determine if the exported file should be compressed with gzip.
+     * Only supported by the {@link ExportFormat#CSV} format
+     */
+    private boolean mCompressOutput = false;
+
     /**
      * Creates a new set of paramters and specifies the export format
      * @param format Format to use when exporting the transactions
@@ -132,6 +148,38 @@ public class ExportParams {
         this.mExportTarget = mExportTarget;
     }
 
+    /**
+     * Returns the columns exported in the CSV format
+     * @return List of columns, in the order in which they are exported
+     */
+    public List<CsvExporter.Column> getCsvColumns() {
+        return mCsvColumns;
+    }
+
+    /**
+     * Set the columns exported in the CSV format
+     * @param csvColumns Columns in the order in which they should be exported
+     */
+    public void setCsvColumns(List<CsvExporter.Column> csvColumns) {
+        this.mCsvColumns = csvColumns;
+    }
+
+    /**
+     * Returns flag whether the exported file is compressed with gzip
+     * @return <code>true</code> if the file is compressed, <code>false</code> otherwise
+     */
+    public boolean shouldCompressOutput() {
+        return mCompressOutput;
+    }
+
+    /**
+     * Set flag to compress the exported file with gzip
+     * @param compressOutput Set to <code>true</code> if the file should be compressed, false if not
+     */
+    public void setCompressOutput(boolean compressOutput) {
+        this.mCompressOutput = compressOutput;
+    }
+
     @Override
     public String toString() {
         return "Export all transactions created since " + TimestampHelper.getUtcStringFromTimestamp(mExportStartTime) + " UTC"
@@ -140,15 +188,26 @@ public class ExportParams {
 
     /**
      * Returns the export parameters formatted as CSV.
-     * <p>The CSV format is: exportformat;exportTarget;shouldExportAllTransactions;shouldDeleteAllTransactions</p>
+     * <p>The CSV format is: exportformat;exportTarget;shouldExportAllTransactions;shouldDeleteAllTransactions,
+     * followed by csvColumns;shouldCompressOutput for the CSV export format. The columns are separated by commas</p>
      * @return String containing CSV format of ExportParams
      */
     public String toCsv(){
         String separator = ";";
 
-        return mExportFormat.name() + separator + mExportTarget.name() + separator
+        String csv = mExportFormat.name() + separator + mExportTarget.name() + separator
                 + TimestampHelper.getUtcStringFromTimestamp(mExportStartTime) + separator
                 + Boolean.toString(mDeleteTransactionsAfterExport);
+        if (mExportFormat == ExportFormat.CSV) {
+            StringBuilder columns = new StringBuilder();
+            for (CsvExporter.Column column : mCsvColumns) {
+                if (columns.length() > 0)
+                    columns.append(",");
+                columns.append(column.name());
+            }
+            csv += separator + columns + separator + Boolean.toString(mCompressOutput);
+        }
+        return csv;
     }
 
     /**
@@ -162,7 +221,31 @@ public class ExportParams {
         params.setExportTarget(ExportTarget.valueOf(tokens[1]));
         params.setExportStartTime(TimestampHelper.getTimestampFromUtcString(tokens[2]));
         params.setDeleteTransactionsAfterExport(Boolean.parseBoolean(tokens[3]));
+        //the CSV options are missing in parameters saved by older versions
+        if (tokens.length > 4)
+            params.setCsvColumns(parseCsvColumns(tokens[4]));
+        if (tokens.length > 5)
+            params.setCompressOutput(Boolean.parseBoolean(tokens[5]));
 
         return params;
     }
+
+    /**
+     * Parses the CSV columns saved by {@link #toCsv()}.
+     * Unknown column names are skipped, and all columns are used if none is left
+     * @param columnNames Names of the columns separated by commas
+     * @return List of columns
+     */
+    private static List<CsvExporter.Column> parseCsvColumns(String columnNames) {
+        List<CsvExporter.Column> columns = new ArrayList<>();
+        for (String name : columnNames.split(",")) {
+            for (CsvExporter.Column column : CsvExporter.Column.values()) {
+                if (column.name().equals(name.trim())) {
+                    columns.add(column);
+                    break;
+                }
+            }
+        }
+        return columns.isEmpty() ? Arrays.asList(CsvExporter.Column.values()) : columns;
+    }
 }
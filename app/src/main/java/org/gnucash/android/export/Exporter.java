@@ -58,7 +58,7 @@ public abstract class Exporter {
     /**
      * Tag for logging
      */
-    protected static String LOG_TAG = "Exporter";
+    protected final String LOG_TAG = getClass().getSimpleName();
 
     /**
      * Application folder on external storage
@@ -153,8 +153,19 @@ public abstract class Exporter {
      * @return String containing the file name
      */
     public static String buildExportFilename(ExportFormat format, String bookName) {
+        return buildExportFilename(format.getExtension(), bookName);
+    }
+
+    /**
+     * Builds a file name based on the current time stamp, with the given file extension
+     * @param extension File extension including the period e.g. ".qif"
+     * @param bookName Name of the book being exported. This name will be included in the generated file name
+     * @return String containing the file name
+     * @see #buildExportFilename(ExportFormat, String)
+     */
+    public static String buildExportFilename(String extension, String bookName) {
         return EXPORT_FILENAME_DATE_FORMAT.format(new Date(System.currentTimeMillis()))
-                + "_gnucash_export_" + sanitizeFilename(bookName) + format.getExtension();
+                + "_gnucash_export_" + sanitizeFilename(bookName) + extension;
     }
 
     /**
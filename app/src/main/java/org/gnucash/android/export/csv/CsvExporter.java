@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.export.csv;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.Exporter;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.PreferencesHelper;
+import org.gnucash.android.util.TimestampHelper;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+
+/**
+ * Exports the splits of the transactions in the database as comma-separated values, one split per line,
+ * for use in spreadsheets and other tools.
+ * <p>The splits are read in pages of {@link #PAGE_SIZE} rows. Each page continues after the last row of the
+ * previous one (keyset paging), so every page is found with the primary keys instead of skipping the rows
+ * already exported, and the rows are written to the file as they are read. The memory used does not depend
+ * on the size of the book. The splits are ordered by transaction in the order in which the transactions
+ * were added, and the splits of a transaction are always on consecutive lines.</p>
+ * <p>The exported columns can be chosen with {@link ExportParams#setCsvColumns(List)}, and the file can be
+ * compressed with gzip (see {@link ExportParams#setCompressOutput(boolean)}).</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class CsvExporter extends Exporter {
+
+    /**
+     * Columns which can be exported
+     */
+    public enum Column {
+        DATE("Date"),
+        TRANSACTION_UID("Transaction ID"),
+        DESCRIPTION("Description"),
+        NOTES("Notes"),
+        CURRENCY("Currency"),
+        SPLIT_UID("Split ID"),
+        ACCOUNT("Account"),
+        MEMO("Memo"),
+        VALUE("Value"),
+        QUANTITY("Quantity"),
+        COMMODITY("Commodity"),
+        RECONCILE_STATE("Reconciled");
+
+        private final String mHeader;
+
+        Column(String header) {
+            mHeader = header;
+        }
+
+        /**
+         * Returns the header of the column in the first line of the file
+         */
+        public String getHeader() {
+            return mHeader;
+        }
+    }
+
+    /**
+     * Number of splits which are read with one query
+     */
+    public static final int PAGE_SIZE = 1000;
+
+    private static final char SEPARATOR = ',';
+    private static final String NEW_LINE = "\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Columns of the split query, in this order
+     */
+    private static final String[] QUERY_COLUMNS = {
+            "t." + TransactionEntry._ID,
+            "s." + SplitEntry._ID,
+            "t." + TransactionEntry.COLUMN_TIMESTAMP,
+            "t." + TransactionEntry.COLUMN_UID,
+            "t." + TransactionEntry.COLUMN_DESCRIPTION,
+            "t." + TransactionEntry.COLUMN_NOTES,
+            "t." + TransactionEntry.COLUMN_CURRENCY,
+            "s." + SplitEntry.COLUMN_UID,
+            "a." + AccountEntry.COLUMN_FULL_NAME,
+            "s." + SplitEntry.COLUMN_MEMO,
+            "s." + SplitEntry.COLUMN_TYPE,
+            "s." + SplitEntry.COLUMN_VALUE_NUM,
+            "s." + SplitEntry.COLUMN_VALUE_DENOM,
+            "s." + SplitEntry.COLUMN_QUANTITY_NUM,
+            "s." + SplitEntry.COLUMN_QUANTITY_DENOM,
+            "a." + AccountEntry.COLUMN_CURRENCY,
+            "s." + SplitEntry.COLUMN_RECONCILE_STATE
+    };
+
+    private static final int INDEX_TRANSACTION_ID   = 0;
+    private static final int INDEX_SPLIT_ID         = 1;
+    private static final int INDEX_TIMESTAMP        = 2;
+    private static final int INDEX_TRANSACTION_UID  = 3;
+    private static final int INDEX_DESCRIPTION      = 4;
+    private static final int INDEX_NOTES            = 5;
+    private static final int INDEX_CURRENCY         = 6;
+    private static final int INDEX_SPLIT_UID        = 7;
+    private static final int INDEX_ACCOUNT          = 8;
+    private static final int INDEX_MEMO             = 9;
+    private static final int INDEX_TYPE             = 10;
+    private static final int INDEX_VALUE_NUM        = 11;
+    private static final int INDEX_VALUE_DENOM      = 12;
+    private static final int INDEX_QUANTITY_NUM     = 13;
+    private static final int INDEX_QUANTITY_DENOM   = 14;
+    private static final int INDEX_COMMODITY        = 15;
+    private static final int INDEX_RECONCILE_STATE  = 16;
+
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+
+    private int mExportedSplitCount;
+
+    /**
+     * Initialize the exporter
+     * @param params Export options
+     */
+    public CsvExporter(ExportParams params) {
+        super(params, null);
+    }
+
+    /**
+     * Initialize the exporter
+     * @param params Options for export
+     * @param db SQLiteDatabase to export
+     */
+    public CsvExporter(ExportParams params, SQLiteDatabase db) {
+        super(params, db);
+    }
+
+    @Override
+    public List<String> generateExport() throws ExporterException {
+        String path = getExportCacheFilePath();
+        if (mExportParams.shouldCompressOutput())
+            path += ".gz";
+
+        try {
+            OutputStream outputStream = new FileOutputStream(path);
+            if (mExportParams.shouldCompressOutput())
+                outputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, "UTF-8"), BUFFER_SIZE);
+            try {
+                writeSplits(writer, mExportParams.getCsvColumns());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new ExporterException(mExportParams, e);
+        }
+
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(TransactionEntry.COLUMN_EXPORTED, 1);
+        mTransactionsDbAdapter.updateTransaction(contentValues, null, null);
+
+        /// export successful
+        PreferencesHelper.setLastExportTime(TimestampHelper.getTimestampFromNow());
+        List<String> exportedFiles = new ArrayList<>();
+        exportedFiles.add(path);
+        return exportedFiles;
+    }
+
+    /**
+     * Writes the header and the splits of all transactions modified since the start time of the export
+     * @param writer Writer for the CSV file
+     * @param columns Columns to write, in this order
+     */
+    void writeSplits(Writer writer, List<Column> columns) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0)
+                writer.write(SEPARATOR);
+            writeValue(writer, columns.get(i).getHeader());
+        }
+        writer.write(NEW_LINE);
+
+        String modifiedSince = TimestampHelper.getUtcStringFromTimestamp(mExportParams.getExportStartTime());
+        String sql = "SELECT " + join(QUERY_COLUMNS)
+                + " FROM " + TransactionEntry.TABLE_NAME + " t"
+                + " JOIN " + SplitEntry.TABLE_NAME + " s ON s." + SplitEntry.COLUMN_TRANSACTION_UID
+                + " = t." + TransactionEntry.COLUMN_UID
+                + " JOIN " + AccountEntry.TABLE_NAME + " a ON a." + AccountEntry.COLUMN_UID
+                + " = s." + SplitEntry.COLUMN_ACCOUNT_UID
+                + " WHERE t." + TransactionEntry.COLUMN_TEMPLATE + " = 0"
+                + " AND t." + TransactionEntry.COLUMN_MODIFIED_AT + " > ?"
+                //written so that the transaction id is a range bound on the primary key
+                + " AND t." + TransactionEntry._ID + " >= ?"
+                + " AND ( t." + TransactionEntry._ID + " > ? OR s." + SplitEntry._ID + " > ? )"
+                + " ORDER BY t." + TransactionEntry._ID + " ASC, s." + SplitEntry._ID + " ASC"
+                + " LIMIT " + PAGE_SIZE;
+
+        long lastTransactionId = -1;
+        long lastSplitId = -1;
+        int rowCount;
+        do {
+            Cursor cursor = mDb.rawQuery(sql, new String[]{modifiedSince, String.valueOf(lastTransactionId),
+                    String.valueOf(lastTransactionId), String.valueOf(lastSplitId)});
+            try {
+                rowCount = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    writeSplit(writer, cursor, columns);
+                    lastTransactionId = cursor.getLong(INDEX_TRANSACTION_ID);
+                    lastSplitId = cursor.getLong(INDEX_SPLIT_ID);
+                }
+            } finally {
+                cursor.close();
+            }
+            mExportedSplitCount += rowCount;
+        } while (rowCount == PAGE_SIZE);
+    }
+
+    private void writeSplit(Writer writer, Cursor cursor, List<Column> columns) throws IOException {
+        boolean isDebit = TransactionType.DEBIT.name().equals(cursor.getString(INDEX_TYPE));
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0)
+                writer.write(SEPARATOR);
+            switch (columns.get(i)) {
+                case DATE:
+                    writer.write(mDateFormat.format(new Date(cursor.getLong(INDEX_TIMESTAMP))));
+                    break;
+                case TRANSACTION_UID:
+                    writer.write(cursor.getString(INDEX_TRANSACTION_UID));
+                    break;
+                case DESCRIPTION:
+                    writeValue(writer, cursor.getString(INDEX_DESCRIPTION));
+                    break;
+                case NOTES:
+                    writeValue(writer, cursor.getString(INDEX_NOTES));
+                    break;
+                case CURRENCY:
+                    writer.write(cursor.getString(INDEX_CURRENCY));
+                    break;
+                case SPLIT_UID:
+                    writer.write(cursor.getString(INDEX_SPLIT_UID));
+                    break;
+                case ACCOUNT:
+                    writeValue(writer, cursor.getString(INDEX_ACCOUNT));
+                    break;
+                case MEMO:
+                    writeValue(writer, cursor.getString(INDEX_MEMO));
+                    break;
+                case VALUE:
+                    writeAmount(writer, cursor.getLong(INDEX_VALUE_NUM), cursor.getLong(INDEX_VALUE_DENOM), isDebit);
+                    break;
+                case QUANTITY:
+                    writeAmount(writer, cursor.getLong(INDEX_QUANTITY_NUM), cursor.getLong(INDEX_QUANTITY_DENOM), isDebit);
+                    break;
+                case COMMODITY:
+                    writer.write(cursor.getString(INDEX_COMMODITY));
+                    break;
+                case RECONCILE_STATE:
+                    writer.write(cursor.getString(INDEX_RECONCILE_STATE));
+                    break;
+            }
+        }
+        writer.write(NEW_LINE);
+    }
+
+    /**
+     * Writes an amount of a split, positive for debits and negative for credits like in GnuCash
+     */
+    private static void writeAmount(Writer writer, long numerator, long denominator, boolean isDebit)
+            throws IOException {
+        //amounts are stored as absolute values
+        long signedNumerator = isDebit ? Math.abs(numerator) : -Math.abs(numerator);
+        writer.write(Money.getBigDecimal(signedNumerator, denominator).toPlainString());
+    }
+
+    /**
+     * Writes a text value, quoted if it contains a separator, a quote or a line break
+     */
+    private static void writeValue(Writer writer, String value) throws IOException {
+        if (value == null)
+            return;
+        boolean needsQuotes = false;
+        for (int i = 0; i < value.length() && !needsQuotes; i++) {
+            char c = value.charAt(i);
+            needsQuotes = c == SEPARATOR || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String join(String[] columns) {
+        StringBuilder builder = new StringBuilder();
+        for (String column : columns) {
+            if (builder.length() > 0)
+                builder.append(", ");
+            builder.append(column);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the number of splits written by the last export
+     */
+    public int getExportedSplitCount() {
+        return mExportedSplitCount;
+    }
+
+    @Override
+    public String getExportMimeType() {
+        return mExportParams.shouldCompressOutput() ? "application/gzip" : "text/csv";
+    }
+}
@@ -74,7 +74,6 @@ public class OfxExporter extends Exporter{
 	 */
 	public OfxExporter(ExportParams params) {
         super(params, null);
-        LOG_TAG = "OfxExporter";
 	}
 
     /**
@@ -84,7 +83,6 @@ public class OfxExporter extends Exporter{
      */
     public OfxExporter(ExportParams params, SQLiteDatabase db){
         super(params, db);
-        LOG_TAG = "OfxExporter";
     }
 
     /**
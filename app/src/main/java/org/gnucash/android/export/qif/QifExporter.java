@@ -43,6 +43,7 @@ import java.util.List;
 import static org.gnucash.android.db.DatabaseSchema.AccountEntry;
 import static org.gnucash.android.db.DatabaseSchema.SplitEntry;
 import static org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import static org.gnucash.android.db.DatabaseSchema.TransactionSummaryEntry;
 
 /**
  * Exports the accounts and transactions in the database to the QIF format
@@ -57,7 +58,6 @@ public class QifExporter extends Exporter{
      */
     public QifExporter(ExportParams params){
         super(params, null);
-        LOG_TAG = "OfxExporter";
     }
 
     /**
@@ -67,7 +67,6 @@ public class QifExporter extends Exporter{
      */
     public QifExporter(ExportParams params, SQLiteDatabase db){
         super(params, db);
-        LOG_TAG = "OfxExporter";
     }
 
     @Override
@@ -85,8 +84,8 @@ public class QifExporter extends Exporter{
                             SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_QUANTITY_DENOM + " AS split_quantity_denom",
                             SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_TYPE + " AS split_type",
                             SplitEntry.TABLE_NAME + "_" + SplitEntry.COLUMN_MEMO + " AS split_memo",
-                            "trans_extra_info.trans_acct_balance AS trans_acct_balance",
-                            "trans_extra_info.trans_split_count AS trans_split_count",
+                            TransactionSummaryEntry.TABLE_NAME + "." + TransactionSummaryEntry.COLUMN_BALANCE + " AS trans_acct_balance",
+                            TransactionSummaryEntry.TABLE_NAME + "." + TransactionSummaryEntry.COLUMN_SPLIT_COUNT + " AS trans_split_count",
                             "account1." + AccountEntry.COLUMN_UID + " AS acct1_uid",
                             "account1." + AccountEntry.COLUMN_FULL_NAME + " AS acct1_full_name",
                             "account1." + AccountEntry.COLUMN_CURRENCY + " AS acct1_currency",
@@ -96,11 +95,11 @@ public class QifExporter extends Exporter{
                     // no recurrence transactions
                     TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_TEMPLATE + " == 0 AND " +
                             // exclude transactions involving multiple currencies
-                            "trans_extra_info.trans_currency_count = 1 AND " +
+                            TransactionSummaryEntry.TABLE_NAME + "." + TransactionSummaryEntry.COLUMN_CURRENCY_COUNT + " = 1 AND " +
                             // in qif, split from the one account entry is not recorded (will be auto balanced)
                             "( " + AccountEntry.TABLE_NAME + "_" + AccountEntry.COLUMN_UID + " != account1." + AccountEntry.COLUMN_UID + " OR " +
                             // or if the transaction has only one split (the whole transaction would be lost if it is not selected)
-                            "trans_split_count == 1 )" +
+                            TransactionSummaryEntry.TABLE_NAME + "." + TransactionSummaryEntry.COLUMN_SPLIT_COUNT + " == 1 )" +
                             (
                                     " AND " + TransactionEntry.TABLE_NAME + "_" + TransactionEntry.COLUMN_MODIFIED_AT + " > \"" + lastExportTimeStamp + "\""
                             ),
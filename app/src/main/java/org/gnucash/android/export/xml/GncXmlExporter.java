@@ -44,6 +44,7 @@ import org.gnucash.android.model.PeriodType;
 import org.gnucash.android.model.Recurrence;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.MetricsRegistry;
 import org.gnucash.android.util.TimestampHelper;
 import org.xmlpull.v1.XmlPullParserFactory;
 import org.xmlpull.v1.XmlSerializer;
@@ -88,7 +89,6 @@ public class GncXmlExporter extends Exporter{
      */
     public GncXmlExporter(ExportParams params) {
         super(params, null);
-        LOG_TAG = "GncXmlExporter";
     }
 
     /**
@@ -99,7 +99,6 @@ public class GncXmlExporter extends Exporter{
      */
     public GncXmlExporter(ExportParams params, SQLiteDatabase db) {
         super(params, db);
-        LOG_TAG = "GncXmlExporter";
     }
 
     private void exportSlots(XmlSerializer xmlSerializer,
@@ -907,6 +906,7 @@ public class GncXmlExporter extends Exporter{
      * @return {@code true} if backup was successful, {@code false} otherwise
      */
     public static boolean createBackup(){
+        long start = MetricsRegistry.start();
         try {
             String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
             FileOutputStream fileOutputStream = new FileOutputStream(getBackupFilePath(bookUID));
@@ -922,6 +922,8 @@ public class GncXmlExporter extends Exporter{
             Crashlytics.logException(e);
             Log.e("GncXmlExporter", "Error creating XML  backup", e);
             return false;
+        } finally {
+            MetricsRegistry.stop("GncXmlExporter", "createBackup", start);
         }
     }
 
@@ -19,6 +19,7 @@ package org.gnucash.android.importer;
 
 import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.crashlytics.android.Crashlytics;
@@ -52,6 +53,8 @@ import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.AmountExpression;
+import org.gnucash.android.util.MetricsRegistry;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -285,17 +288,30 @@ public class GncXmlHandler extends DefaultHandler {
      * Creates a handler for handling XML stream events when parsing the XML backup file
      */
     public GncXmlHandler() {
-        init();
+        init(null);
     }
 
     /**
-     * Initialize the GnuCash XML handler
+     * Creates a handler which imports into an existing database, without creating a book for it.
+     * <p>Used for building template databases. The database is not closed after the import</p>
+     * @param db Database into which the XML is imported
      */
-    private void init() {
-        mBook = new Book();
+    public GncXmlHandler(@NonNull SQLiteDatabase db) {
+        init(db);
+    }
 
-        DatabaseHelper databaseHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), mBook.getUID());
-        mainDb = databaseHelper.getWritableDatabase();
+    /**
+     * Initialize the GnuCash XML handler
+     * @param db Database into which to import, or {@code null} to create a new book
+     */
+    private void init(@Nullable SQLiteDatabase db) {
+        if (db == null) {
+            mBook = new Book();
+            DatabaseHelper databaseHelper = DatabaseHelper.create(GnuCashApplication.getAppContext(), mBook.getUID());
+            mainDb = databaseHelper.getWritableDatabase();
+        } else {
+            mainDb = db;
+        }
         mTransactionsDbAdapter = new TransactionsDbAdapter(mainDb, new SplitsDbAdapter(mainDb));
         mAccountsDbAdapter = new AccountsDbAdapter(mainDb, mTransactionsDbAdapter);
         RecurrenceDbAdapter recurrenceDbAdapter = new RecurrenceDbAdapter(mainDb);
@@ -960,7 +976,7 @@ public class GncXmlHandler extends DefaultHandler {
                 mostAppearedCurrency = entry.getKey();
             }
         }
-        if (mostCurrencyAppearance > 0) {
+        if (mostCurrencyAppearance > 0 && mBook != null) {
             GnuCashApplication.setDefaultCurrencyCode(mostAppearedCurrency);
         }
 
@@ -973,11 +989,13 @@ public class GncXmlHandler extends DefaultHandler {
      */
     private void saveToDatabase() {
         BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
-        mBook.setRootAccountUID(mRootAccount.getUID());
-        mBook.setDisplayName(booksDbAdapter.generateDefaultBookName());
+        if (mBook != null) {
+            mBook.setRootAccountUID(mRootAccount.getUID());
+            mBook.setDisplayName(booksDbAdapter.generateDefaultBookName());
+        }
         //we on purpose do not set the book active. Only import. Caller should handle activation
         
-        long startTime = System.nanoTime();
+        long startTime = MetricsRegistry.start();
         mAccountsDbAdapter.beginTransaction();
         Log.d(getClass().getSimpleName(), "bulk insert starts");
         try {
@@ -986,7 +1004,7 @@ public class GncXmlHandler extends DefaultHandler {
             mAccountsDbAdapter.enableForeignKey(false);
             Log.d(getClass().getSimpleName(), "before clean up db");
             mAccountsDbAdapter.deleteAllRecords();
-            Log.d(getClass().getSimpleName(), String.format("deb clean up done %d ns", System.nanoTime()-startTime));
+            Log.d(getClass().getSimpleName(), "db clean up done");
             long nAccounts = mAccountsDbAdapter.bulkAddRecords(mAccountList, DatabaseAdapter.UpdateMethod.insert);
             Log.d("Handler:", String.format("%d accounts inserted", nAccounts));
             //We need to add scheduled actions first because there is a foreign key constraint on transactions
@@ -1007,16 +1025,17 @@ public class GncXmlHandler extends DefaultHandler {
 //            long nBudgets = mBudgetsDbAdapter.bulkAddRecords(mBudgetList, DatabaseAdapter.UpdateMethod.insert);
 //            Log.d(getClass().getSimpleName(), String.format("%d budgets inserted", nBudgets));
 
-            long endTime = System.nanoTime();
-            Log.d(getClass().getSimpleName(), String.format("bulk insert time: %d", endTime - startTime));
+            MetricsRegistry.stop(getClass().getSimpleName(), "saveToDatabase", startTime);
 
             //if all of the import went smoothly, then add the book to the book db
-            booksDbAdapter.addRecord(mBook, DatabaseAdapter.UpdateMethod.insert);
+            if (mBook != null)
+                booksDbAdapter.addRecord(mBook, DatabaseAdapter.UpdateMethod.insert);
             mAccountsDbAdapter.setTransactionSuccessful();
         } finally {
             mAccountsDbAdapter.enableForeignKey(true);
             mAccountsDbAdapter.endTransaction();
-            mainDb.close(); //close it after import
+            if (mBook != null)
+                mainDb.close(); //close it after import
         }
     }
 
@@ -1050,12 +1069,13 @@ public class GncXmlHandler extends DefaultHandler {
      */
     private void handleEndOfTemplateNumericSlot(String characterString, TransactionType splitType) {
         try {
-            BigDecimal amountBigD = GncXmlHelper.parseSplitAmount(characterString);
+            //the slot contains a fraction like 1250/100, which is evaluated exactly
+            BigDecimal amountBigD = AmountExpression.evaluate(characterString);
             Money amount = new Money(amountBigD, getCommodityForAccount(mSplit.getAccountUID()));
             mSplit.setValue(amount.abs());
             mSplit.setType(splitType);
             mIgnoreTemplateTransaction = false; //we have successfully parsed an amount
-        } catch (NumberFormatException | ParseException e) {
+        } catch (IllegalArgumentException | ParseException | ArithmeticException e) {
             String msg = "Error parsing template credit split amount " + characterString;
             Log.e(LOG_TAG, msg + "\n" + e.getMessage());
             Crashlytics.log(msg);
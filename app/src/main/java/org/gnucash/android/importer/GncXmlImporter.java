@@ -16,9 +16,11 @@
  */
 package org.gnucash.android.importer;
 
+import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.util.MetricsRegistry;
 import org.gnucash.android.util.PreferencesHelper;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -47,6 +49,29 @@ public class GncXmlImporter {
      * @return GUID of the book into which the XML was imported
      */
     public static String parse(InputStream gncXmlInputStream) throws ParserConfigurationException, SAXException, IOException {
+        GncXmlHandler handler = new GncXmlHandler();
+        parse(gncXmlInputStream, handler);
+
+        String bookUID = handler.getBookUID();
+        PreferencesHelper.setLastExportTime(
+                TransactionsDbAdapter.getInstance().getTimestampOfLastModification(),
+                bookUID
+        );
+
+        return bookUID;
+    }
+
+    /**
+     * Parse GnuCash XML input into an existing database, without creating a book for it
+     * @param gncXmlInputStream InputStream source of the GnuCash XML file
+     * @param db Database to populate. It is left open
+     * @see org.gnucash.android.db.DatabaseTemplate
+     */
+    public static void parse(InputStream gncXmlInputStream, SQLiteDatabase db) throws ParserConfigurationException, SAXException, IOException {
+        parse(gncXmlInputStream, new GncXmlHandler(db));
+    }
+
+    private static void parse(InputStream gncXmlInputStream, GncXmlHandler handler) throws ParserConfigurationException, SAXException, IOException {
         SAXParserFactory spf = SAXParserFactory.newInstance();
         SAXParser sp = spf.newSAXParser();
         XMLReader xr = sp.getXMLReader();
@@ -63,19 +88,13 @@ public class GncXmlImporter {
 
         //TODO: Set an error handler which can log errors
         Log.d(GncXmlImporter.class.getSimpleName(), "Start import");
-        GncXmlHandler handler = new GncXmlHandler();
         xr.setContentHandler(handler);
-        long startTime = System.nanoTime();
-        xr.parse(new InputSource(bos));
-        long endTime = System.nanoTime();
-        Log.d(GncXmlImporter.class.getSimpleName(), String.format("%d ns spent on importing the file", endTime-startTime));
-
-        String bookUID = handler.getBookUID();
-        PreferencesHelper.setLastExportTime(
-                TransactionsDbAdapter.getInstance().getTimestampOfLastModification(),
-                bookUID
-        );
-
-        return bookUID;
+        long startTime = MetricsRegistry.start();
+        try {
+            xr.parse(new InputSource(bos));
+        } finally {
+            MetricsRegistry.stop(GncXmlImporter.class.getSimpleName(), "parse", startTime);
+        }
+        Log.d(GncXmlImporter.class.getSimpleName(), "Import completed");
     }
 }
@@ -18,6 +18,7 @@ package org.gnucash.android.importer;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.ProgressDialog;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -33,13 +34,15 @@ import com.crashlytics.android.Crashlytics;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.DatabaseTemplate;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.export.BackupManager;
 import org.gnucash.android.ui.util.TaskDelegate;
 
 import java.io.InputStream;
 
 /**
- * Imports a GnuCash (desktop) account file and displays a progress dialog.
+ * Imports a GnuCash (desktop) account file or a database snapshot backup and displays a progress dialog.
  * The AccountsActivity is opened when importing is done.
  */
 public class ImportAsyncTask extends AsyncTask<Uri, Void, Boolean> {
@@ -77,28 +80,50 @@ public class ImportAsyncTask extends AsyncTask<Uri, Void, Boolean> {
 
     @Override
     protected Boolean doInBackground(Uri... uris) {
-        try {
-            InputStream accountInputStream = mContext.getContentResolver().openInputStream(uris[0]);
-            mImportedBookUID = GncXmlImporter.parse(accountInputStream);
-
-        } catch (Exception exception){
-            Log.e(ImportAsyncTask.class.getName(), "" + exception.getMessage());
-            Crashlytics.log("Could not open: " + uris[0].toString());
-            Crashlytics.logException(exception);
-            exception.printStackTrace();
-
-            final String err_msg = exception.getLocalizedMessage();
-            Crashlytics.log(err_msg);
-            mContext.runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    Toast.makeText(mContext,
-                            mContext.getString(R.string.toast_error_importing_accounts) + "\n" + err_msg,
-                            Toast.LENGTH_LONG).show();
+        //the default accounts are copied from a template when it is ready, which is much faster than parsing them
+        if (DatabaseTemplate.getDefaultAccountsUri().equals(uris[0]))
+            mImportedBookUID = DatabaseTemplate.createBookWithDefaultAccounts(mContext);
+
+        if (mImportedBookUID == null) {
+            try {
+                ContentResolver contentResolver = mContext.getContentResolver();
+                InputStream headerInputStream = contentResolver.openInputStream(uris[0]);
+                boolean isDatabaseSnapshot;
+                try {
+                    isDatabaseSnapshot = BackupManager.isDatabaseSnapshot(headerInputStream);
+                } finally {
+                    headerInputStream.close();
+                }
+
+                InputStream accountInputStream = contentResolver.openInputStream(uris[0]);
+                try {
+                    if (isDatabaseSnapshot)
+                        mImportedBookUID = BackupManager.restoreDatabaseSnapshot(accountInputStream);
+                    else
+                        mImportedBookUID = GncXmlImporter.parse(accountInputStream);
+                } finally {
+                    accountInputStream.close();
                 }
-            });
 
-            return false;
+            } catch (Exception exception){
+                Log.e(ImportAsyncTask.class.getName(), "" + exception.getMessage());
+                Crashlytics.log("Could not open: " + uris[0].toString());
+                Crashlytics.logException(exception);
+                exception.printStackTrace();
+
+                final String err_msg = exception.getLocalizedMessage();
+                Crashlytics.log(err_msg);
+                mContext.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(mContext,
+                                mContext.getString(R.string.toast_error_importing_accounts) + "\n" + err_msg,
+                                Toast.LENGTH_LONG).show();
+                    }
+                });
+
+                return false;
+            }
         }
 
         Cursor cursor = mContext.getContentResolver().query(uris[0], null, null, null, null);
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.R;
+import org.gnucash.android.ui.util.TaskDelegate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Imports a QIF or OFX bank statement into an account of the active book and displays a progress dialog
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class ImportStatementTask extends AsyncTask<Uri, Void, Boolean> {
+    private static final String LOG_TAG = "ImportStatementTask";
+
+    private final Activity mContext;
+    private final String mAccountUID;
+    private final TaskDelegate mDelegate;
+    private ProgressDialog mProgressDialog;
+    private StatementImporter mImporter;
+
+    public ImportStatementTask(Activity context, String accountUID, TaskDelegate delegate){
+        mContext = context;
+        mAccountUID = accountUID;
+        mDelegate = delegate;
+    }
+
+    @Override
+    protected void onPreExecute() {
+        super.onPreExecute();
+        mProgressDialog = new ProgressDialog(mContext);
+        mProgressDialog.setTitle(R.string.title_progress_importing_statement);
+        mProgressDialog.setIndeterminate(true);
+        mProgressDialog.show();
+    }
+
+    @Override
+    protected Boolean doInBackground(Uri... uris) {
+        try {
+            InputStream inputStream = new BufferedInputStream(mContext.getContentResolver().openInputStream(uris[0]));
+            try {
+                mImporter = isQif(inputStream) ? new QifImporter(mAccountUID) : new OfxImporter(mAccountUID);
+                mImporter.importStatement(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Error importing statement: " + e.getMessage());
+            Crashlytics.log("Could not import statement: " + uris[0].toString());
+            Crashlytics.logException(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a statement is a QIF file, which starts with a header like {@code !Type:Bank}.
+     * OFX files start with an SGML header or an XML declaration instead
+     * @param inputStream Input stream of the statement, which must support marking
+     */
+    private static boolean isQif(InputStream inputStream) throws IOException {
+        inputStream.mark(64);
+        try {
+            int c;
+            do {
+                c = inputStream.read();
+            } while (c == 0xEF || c == 0xBB || c == 0xBF || Character.isWhitespace(c)); //skip the UTF-8 byte order mark
+            return c == '!';
+        } finally {
+            inputStream.reset();
+        }
+    }
+
+    @Override
+    protected void onPostExecute(Boolean importSuccess) {
+        try {
+            if (mProgressDialog != null && mProgressDialog.isShowing())
+                mProgressDialog.dismiss();
+        } catch (IllegalArgumentException ex){
+            //the activity was destroyed while importing
+        } finally {
+            mProgressDialog = null;
+        }
+
+        if (importSuccess) {
+            String message = mImporter.getInvalidCount() == 0
+                    ? mContext.getString(R.string.toast_statement_imported,
+                            mImporter.getImportedCount(), mImporter.getDuplicateCount())
+                    : mContext.getString(R.string.toast_statement_imported_with_invalid_entries,
+                            mImporter.getImportedCount(), mImporter.getDuplicateCount(), mImporter.getInvalidCount());
+            Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(mContext, R.string.toast_error_importing_statement, Toast.LENGTH_LONG).show();
+        }
+
+        if (mDelegate != null)
+            mDelegate.onTaskComplete();
+    }
+}
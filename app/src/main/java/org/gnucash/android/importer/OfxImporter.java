@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import org.gnucash.android.export.ofx.OfxHelper;
+import org.joda.time.LocalDate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Importer for bank statements in the Open Financial Exchange format (OFX).
+ * <p>Both the SGML format of OFX 1.x, in which the closing tags of values are optional, and the XML format
+ * of OFX 2.x are read by the same tokenizer. The statement is not parsed into a document, only the
+ * statement transactions ({@code STMTTRN}) are picked from the stream of tags.</p>
+ * <p>The transaction IDs of the bank ({@code FITID}) are not stored in the book. Duplicates are detected
+ * with the transaction fingerprints instead, which also match transactions entered manually</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class OfxImporter extends StatementImporter {
+
+    private static final String LOG_TAG = "OfxImporter";
+
+    /**
+     * Creates an importer for an account of the active book
+     * @param accountUID GUID of the account to which the statement belongs
+     */
+    public OfxImporter(@NonNull String accountUID) {
+        super(accountUID);
+    }
+
+    @Override
+    protected void parse(@NonNull BufferedReader reader) throws IOException {
+        Entry entry = null;
+        String tag = null;
+        StringBuilder text = new StringBuilder();
+        StringBuilder tagName = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c != '<') {
+                if (tag != null)
+                    text.append((char) c);
+                continue;
+            }
+
+            tagName.setLength(0);
+            while ((c = reader.read()) != -1 && c != '>') {
+                tagName.append((char) c);
+            }
+            //the value of the previous tag ends at the next tag, closing or not
+            if (entry != null && tag != null)
+                setField(entry, tag, text.toString().trim());
+            text.setLength(0);
+            tag = null;
+
+            String name = tagName.toString().trim().toUpperCase();
+            if (name.isEmpty() || name.charAt(0) == '?' || name.charAt(0) == '!')
+                continue; //processing instruction or comment
+            if (name.equals(OfxHelper.TAG_STATEMENT_TRANSACTION)) {
+                entry = new Entry();
+            } else if (name.equals("/" + OfxHelper.TAG_STATEMENT_TRANSACTION)) {
+                if (entry != null)
+                    addEntry(entry);
+                entry = null;
+            } else if (name.charAt(0) != '/') {
+                tag = name;
+            }
+        }
+    }
+
+    /**
+     * Sets the field of an entry which corresponds to a tag
+     */
+    private static void setField(Entry entry, String tag, String value) {
+        if (value.isEmpty())
+            return;
+        switch (tag) {
+            case OfxHelper.TAG_DATE_POSTED:
+                entry.mTime = parseDate(value);
+                break;
+            case OfxHelper.TAG_TRANSACTION_AMOUNT:
+                entry.mAmount = parseAmount(value);
+                break;
+            case OfxHelper.TAG_NAME:
+                entry.mPayee = unescape(value);
+                break;
+            case OfxHelper.TAG_MEMO:
+                entry.mMemo = unescape(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Parses an OFX date like {@code 20160131120000.000[-5:EST]}. Only the date is used,
+     * since the time is often missing or set to an arbitrary value by banks
+     * @return Start of the day in the local time zone, or 0 if the date could not be parsed
+     */
+    static long parseDate(String date) {
+        try {
+            int year = Integer.parseInt(date.substring(0, 4));
+            int month = Integer.parseInt(date.substring(4, 6));
+            int day = Integer.parseInt(date.substring(6, 8));
+            return new LocalDate(year, month, day).toDateTimeAtStartOfDay().getMillis();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            Log.w(LOG_TAG, "Invalid date " + date);
+            return 0;
+        }
+    }
+
+    /**
+     * Parses an OFX amount. Some banks use a comma as decimal separator
+     * @return Amount, or {@code null} if it could not be parsed
+     */
+    static BigDecimal parseAmount(String amount) {
+        try {
+            return new BigDecimal(amount.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            Log.w(LOG_TAG, "Invalid amount " + amount);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the character entities which may occur in the text of OFX values
+     */
+    private static String unescape(String value) {
+        if (value.indexOf('&') < 0)
+            return value;
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&nbsp;", " ").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import org.gnucash.android.export.qif.QifHelper;
+import org.gnucash.android.model.Split;
+import org.joda.time.LocalDate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Importer for bank statements in the Quicken Interchange Format (QIF).
+ * <p>Only the transactions of bank, cash and credit card statements are imported. Account lists,
+ * categories and investment transactions are skipped.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class QifImporter extends StatementImporter {
+
+    private static final String LOG_TAG = "QifImporter";
+
+    /**
+     * Header prefix of a list of transactions, like {@code !Type:Bank}
+     */
+    private static final String TYPE_HEADER = "!Type:";
+
+    /**
+     * Transaction types which are not lists of bank transactions
+     */
+    private static final String[] IGNORED_TYPES = {"Cat", "Class", "Memorized", "Invst", "Prices"};
+
+    /**
+     * Creates an importer for an account of the active book
+     * @param accountUID GUID of the account to which the statement belongs
+     */
+    public QifImporter(@NonNull String accountUID) {
+        super(accountUID);
+    }
+
+    @Override
+    protected void parse(@NonNull BufferedReader reader) throws IOException {
+        boolean inTransactions = false;
+        Entry entry = new Entry();
+        Entry split = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+
+            if (line.startsWith("!")) {
+                inTransactions = line.startsWith(TYPE_HEADER) && !isIgnoredType(line.substring(TYPE_HEADER.length()));
+                entry = new Entry();
+                split = null;
+                continue;
+            }
+            if (!inTransactions)
+                continue;
+
+            if (line.startsWith(QifHelper.ENTRY_TERMINATOR)) {
+                addEntry(entry);
+                entry = new Entry();
+                split = null;
+                continue;
+            }
+
+            String value = line.substring(1).trim();
+            switch (line.charAt(0)) {
+                case 'D':
+                    entry.mTime = parseDate(value);
+                    break;
+                case 'T':
+                case 'U':
+                    if (entry.mAmount == null || line.startsWith(QifHelper.AMOUNT_PREFIX))
+                        entry.mAmount = parseAmount(value);
+                    break;
+                case 'P':
+                    entry.mPayee = value;
+                    break;
+                case 'M':
+                    entry.mMemo = value;
+                    break;
+                case 'L':
+                    entry.mCategory = value;
+                    break;
+                case 'C':
+                    entry.mReconcileState = parseStatus(value);
+                    break;
+                case 'S':
+                    split = new Entry();
+                    split.mCategory = value;
+                    entry.mSplits.add(split);
+                    break;
+                case 'E':
+                    if (split != null)
+                        split.mMemo = value;
+                    break;
+                case '$':
+                    if (split != null)
+                        split.mAmount = parseAmount(value);
+                    break;
+                default:
+                    //check numbers, addresses and other fields are not imported
+                    break;
+            }
+        }
+        if (!entry.isEmpty()) //the terminator of the last entry is missing
+            addEntry(entry);
+    }
+
+    private static boolean isIgnoredType(String type) {
+        for (String ignoredType : IGNORED_TYPES) {
+            if (type.trim().startsWith(ignoredType))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses a QIF date. Dates are written like {@code 2016/1/31} by GnuCash, and like {@code 1/31'16}
+     * or {@code 1/31/16} by Quicken and most banks. Two-digit years after an apostrophe are in the 2000s
+     * @return Start of the day in the local time zone, or 0 if the date could not be parsed
+     */
+    static long parseDate(String date) {
+        String[] fields = date.replace('\'', '/').replace('-', '/').replace('.', '/').split("/");
+        if (fields.length != 3) {
+            Log.w(LOG_TAG, "Invalid date " + date);
+            return 0;
+        }
+        try {
+            int year, month, day;
+            if (fields[0].trim().length() == 4) {
+                year = Integer.parseInt(fields[0].trim());
+                month = Integer.parseInt(fields[1].trim());
+                day = Integer.parseInt(fields[2].trim());
+            } else {
+                month = Integer.parseInt(fields[0].trim());
+                day = Integer.parseInt(fields[1].trim());
+                year = Integer.parseInt(fields[2].trim());
+                if (year < 100)
+                    year += date.indexOf('\'') >= 0 || year < 70 ? 2000 : 1900;
+            }
+            return new LocalDate(year, month, day).toDateTimeAtStartOfDay().getMillis();
+        } catch (IllegalArgumentException e) { //also catches NumberFormatException
+            Log.w(LOG_TAG, "Invalid date " + date);
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a QIF amount, which may contain thousands separators and a decimal comma, like {@code -1.234,50}.
+     * <p>The last comma or period is the decimal separator if it is followed by one or two digits,
+     * or if it is the only period of the amount. All other commas and periods are thousands separators</p>
+     * @return Amount, or {@code null} if it could not be parsed
+     */
+    static BigDecimal parseAmount(String amount) {
+        String value = amount.replace(" ", "").replace("'", "");
+        int separator = Math.max(value.lastIndexOf(','), value.lastIndexOf('.'));
+        int fractionDigits = value.length() - separator - 1;
+        boolean isDecimalSeparator = separator >= 0
+                && ((fractionDigits == 1 || fractionDigits == 2) && isDigits(value.substring(separator + 1))
+                    || value.charAt(separator) == '.' && value.indexOf('.') == separator);
+
+        StringBuilder number = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '.') {
+                if (i == separator && isDecimalSeparator)
+                    number.append('.');
+            } else {
+                number.append(c);
+            }
+        }
+        try {
+            return new BigDecimal(number.toString());
+        } catch (NumberFormatException e) {
+            Log.w(LOG_TAG, "Invalid amount " + amount);
+            return null;
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the cleared status of a transaction
+     */
+    private static char parseStatus(String status) {
+        if (status.isEmpty())
+            return Split.FLAG_NOT_RECONCILED;
+        switch (Character.toUpperCase(status.charAt(0))) {
+            case '*':
+            case 'C':
+                return Split.FLAG_CLEARED;
+            case 'X':
+            case 'R':
+                return Split.FLAG_RECONCILED;
+            default:
+                return Split.FLAG_NOT_RECONCILED;
+        }
+    }
+}
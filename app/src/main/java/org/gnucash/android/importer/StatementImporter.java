@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.importer;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class of importers for bank statements, which append the transactions of a statement to an account
+ * of the active book.
+ * <p>Statements are parsed line by line and the transactions are written in batches, so the memory used
+ * does not depend on the size of the statement. The whole statement is imported in one database transaction.</p>
+ * <p>Entries which are already in the book, e.g. because an overlapping statement was imported before,
+ * are skipped. They are found with the transaction fingerprints (account, date, amount and description),
+ * see {@link TransactionsDbAdapter#findTransactionsByFingerprint(String, long, Money, String)}.
+ * Each existing transaction is matched by at most one entry, so that several identical entries
+ * of a statement are only skipped as often as they already exist in the book.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public abstract class StatementImporter {
+
+    private static final String LOG_TAG = "StatementImporter";
+
+    /**
+     * Number of transactions which are written to the database at once
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private final TransactionsDbAdapter mTransactionsDbAdapter;
+    private final AccountsDbAdapter mAccountsDbAdapter;
+
+    /**
+     * GUID of the account into which the statement is imported
+     */
+    private final String mAccountUID;
+
+    private final Commodity mCommodity;
+
+    private final List<Transaction> mBatch = new ArrayList<>(BATCH_SIZE);
+
+    /**
+     * GUIDs of the transactions created by this import
+     */
+    private final Set<String> mImportedTransactionUIDs = new HashSet<>();
+
+    /**
+     * GUIDs of the existing transactions which were already matched by an entry of the statement
+     */
+    private final Set<String> mMatchedTransactionUIDs = new HashSet<>();
+
+    /**
+     * Account GUIDs of the categories of the statement, by category name
+     */
+    private final Map<String, String> mCategoryAccountUIDs = new HashMap<>();
+
+    private int mImportedCount;
+    private int mDuplicateCount;
+    private int mInvalidCount;
+
+    /**
+     * Creates an importer for an account of the active book
+     * @param accountUID GUID of the account to which the statement belongs
+     */
+    public StatementImporter(@NonNull String accountUID) {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        mAccountUID = accountUID;
+        mCommodity = Commodity.getInstance(mAccountsDbAdapter.getAccountCurrencyCode(accountUID));
+    }
+
+    /**
+     * Entry of a statement
+     */
+    public static class Entry {
+        long mTime;
+        BigDecimal mAmount;
+        String mPayee;
+        String mMemo;
+        String mCategory;
+        char mReconcileState = Split.FLAG_NOT_RECONCILED;
+        final List<Entry> mSplits = new ArrayList<>();
+
+        /**
+         * Returns {@code true} if the entry has the date and amount which are required to import it
+         */
+        boolean isComplete() {
+            return mTime > 0 && mAmount != null;
+        }
+
+        /**
+         * Returns {@code true} if the entry has no fields at all, e.g. because of a stray terminator
+         */
+        boolean isEmpty() {
+            return mTime == 0 && mAmount == null && mPayee == null && mMemo == null && mCategory == null
+                    && mSplits.isEmpty();
+        }
+    }
+
+    /**
+     * Imports a statement into the account
+     * @param inputStream Input stream of the statement. It is not closed by this method
+     * @throws IOException if the statement could not be read. Nothing is imported in that case
+     */
+    public void importStatement(@NonNull InputStream inputStream) throws IOException {
+        long start = MetricsRegistry.start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        mTransactionsDbAdapter.beginTransaction();
+        try {
+            parse(reader);
+            flush();
+            mTransactionsDbAdapter.setTransactionSuccessful();
+        } finally {
+            mTransactionsDbAdapter.endTransaction();
+        }
+        MetricsRegistry.stop(LOG_TAG, "import", start);
+        Log.i(LOG_TAG, "Imported " + mImportedCount + " transactions, skipped " + mDuplicateCount + " duplicates and "
+                + mInvalidCount + " invalid entries");
+    }
+
+    /**
+     * Parses the statement and calls {@link #addEntry(Entry)} for each of its entries
+     * @param reader Reader of the statement
+     * @throws IOException if the statement could not be read
+     */
+    protected abstract void parse(@NonNull BufferedReader reader) throws IOException;
+
+    /**
+     * Adds an entry of the statement to the account, unless it already exists in the book.
+     * Incomplete entries, e.g. with a date or amount which could not be parsed, are skipped and counted
+     * @param entry Entry of the statement
+     * @return {@code true} if the entry was imported, {@code false} otherwise
+     */
+    protected boolean addEntry(@NonNull Entry entry) {
+        if (!entry.isComplete()) {
+            if (!entry.isEmpty()) {
+                Log.w(LOG_TAG, "Skipping statement entry without valid date or amount");
+                mInvalidCount++;
+            }
+            return false;
+        }
+        Money amount = new Money(entry.mAmount, mCommodity);
+        if (isDuplicate(entry, amount)) {
+            mDuplicateCount++;
+            return false;
+        }
+
+        Transaction transaction = new Transaction(entry.mPayee == null ? "" : entry.mPayee);
+        transaction.setCommodity(mCommodity);
+        transaction.setTime(entry.mTime);
+        if (entry.mMemo != null)
+            transaction.setNote(entry.mMemo);
+
+        Split split = new Split(amount.abs(), mAccountUID);
+        split.setType(amount.isNegative() ? TransactionType.CREDIT : TransactionType.DEBIT);
+        split.setReconcileState(entry.mReconcileState);
+        transaction.addSplit(split);
+
+        if (entry.mSplits.isEmpty()) {
+            Split pair = split.createPair(getCategoryAccountUID(entry.mCategory));
+            pair.setReconcileState(Split.FLAG_NOT_RECONCILED);
+            transaction.addSplit(pair);
+        } else {
+            //the amounts of the splits of the category are signed like the amount of the entry
+            for (Entry categorySplit : entry.mSplits) {
+                if (categorySplit.mAmount == null)
+                    continue;
+                Money splitAmount = new Money(categorySplit.mAmount, mCommodity);
+                Split pair = new Split(splitAmount.abs(), getCategoryAccountUID(categorySplit.mCategory));
+                pair.setType(splitAmount.isNegative() ? TransactionType.DEBIT : TransactionType.CREDIT);
+                pair.setMemo(categorySplit.mMemo);
+                transaction.addSplit(pair);
+            }
+            //the remainder, if the splits do not add up to the amount of the entry
+            Money imbalance = transaction.getImbalance();
+            if (!imbalance.isAmountZero()) {
+                Split pair = new Split(imbalance.abs(), getCategoryAccountUID(null));
+                pair.setType(imbalance.isNegative() ? TransactionType.CREDIT : TransactionType.DEBIT);
+                transaction.addSplit(pair);
+            }
+        }
+
+        mImportedTransactionUIDs.add(transaction.getUID());
+        mBatch.add(transaction);
+        if (mBatch.size() >= BATCH_SIZE)
+            flush();
+        mImportedCount++;
+        return true;
+    }
+
+    /**
+     * Checks if an entry matches an existing transaction of the account, which no other entry matched before
+     */
+    private boolean isDuplicate(Entry entry, Money amount) {
+        List<String> transactionUIDs = mTransactionsDbAdapter.findTransactionsByFingerprint(
+                mAccountUID, entry.mTime, amount, entry.mPayee);
+        for (String transactionUID : transactionUIDs) {
+            if (mImportedTransactionUIDs.contains(transactionUID))
+                continue;
+            if (mMatchedTransactionUIDs.add(transactionUID))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the GUID of the account of a category. Categories are account names, possibly qualified
+     * with the names of their parents. Unknown categories are booked into the imbalance account
+     */
+    private String getCategoryAccountUID(@Nullable String category) {
+        String name = category == null ? "" : category.trim();
+        //QIF marks transfers to other accounts with brackets
+        if (name.startsWith("[") && name.endsWith("]"))
+            name = name.substring(1, name.length() - 1);
+
+        String accountUID = mCategoryAccountUIDs.get(name);
+        if (accountUID == null) {
+            accountUID = name.isEmpty() ? null : mAccountsDbAdapter.findAccountUidByFullName(name);
+            if (accountUID == null)
+                accountUID = mAccountsDbAdapter.getOrCreateImbalanceAccountUID(
+                        Currency.getInstance(mCommodity.getCurrencyCode()));
+            mCategoryAccountUIDs.put(name, accountUID);
+        }
+        return accountUID;
+    }
+
+    /**
+     * Writes the pending transactions to the database
+     */
+    private void flush() {
+        if (mBatch.isEmpty())
+            return;
+        mTransactionsDbAdapter.bulkAddRecords(mBatch, DatabaseAdapter.UpdateMethod.insert);
+        mBatch.clear();
+    }
+
+    /**
+     * Returns the GUID of the account into which the statement is imported
+     */
+    public String getAccountUID() {
+        return mAccountUID;
+    }
+
+    /**
+     * Returns the number of transactions which were imported
+     */
+    public int getImportedCount() {
+        return mImportedCount;
+    }
+
+    /**
+     * Returns the number of entries which were skipped because they were already in the book
+     */
+    public int getDuplicateCount() {
+        return mDuplicateCount;
+    }
+
+    /**
+     * Returns the number of entries which were skipped because their date or amount is missing or invalid
+     */
+    public int getInvalidCount() {
+        return mInvalidCount;
+    }
+}
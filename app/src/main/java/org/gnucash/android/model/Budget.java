@@ -19,8 +19,6 @@ package org.gnucash.android.model;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
-import org.joda.time.LocalDateTime;
-
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -198,26 +196,11 @@ public class Budget extends BaseModel {
 
     /**
      * Returns the timestamp of the start of current period of the budget
+     * <p>The first period is considered current if the budget has not started yet</p>
      * @return Start timestamp in milliseconds
      */
     public long getStartofCurrentPeriod(){
-        LocalDateTime localDate = new LocalDateTime();
-        int interval = mRecurrence.getPeriodType().getMultiplier();
-        switch (mRecurrence.getPeriodType()){
-            case DAY:
-                localDate = localDate.millisOfDay().withMinimumValue().plusDays(interval);
-                break;
-            case WEEK:
-                localDate = localDate.dayOfWeek().withMinimumValue().minusDays(interval);
-                break;
-            case MONTH:
-                localDate = localDate.dayOfMonth().withMinimumValue().minusMonths(interval);
-                break;
-            case YEAR:
-                localDate = localDate.dayOfYear().withMinimumValue().minusYears(interval);
-                break;
-        }
-        return localDate.toDate().getTime();
+        return getStartOfPeriod(getCurrentPeriodNum());
     }
 
     /**
@@ -225,68 +208,32 @@ public class Budget extends BaseModel {
      * @return End timestamp in milliseconds
      */
     public long getEndOfCurrentPeriod(){
-        LocalDateTime localDate = new LocalDateTime();
-        int interval = mRecurrence.getPeriodType().getMultiplier();
-        switch (mRecurrence.getPeriodType()){
-            case DAY:
-                localDate = localDate.millisOfDay().withMaximumValue().plusDays(interval);
-                break;
-            case WEEK:
-                localDate = localDate.dayOfWeek().withMaximumValue().plusWeeks(interval);
-                break;
-            case MONTH:
-                localDate = localDate.dayOfMonth().withMaximumValue().plusMonths(interval);
-                break;
-            case YEAR:
-                localDate = localDate.dayOfYear().withMaximumValue().plusYears(interval);
-                break;
-        }
-        return localDate.toDate().getTime();
+        return getEndOfPeriod(getCurrentPeriodNum());
     }
 
+    /**
+     * Returns the index of the period of the recurrence which contains the current time
+     */
+    private int getCurrentPeriodNum(){
+        return Math.max(mRecurrence.getPeriodIndex(System.currentTimeMillis()), 0);
+    }
+
+    /**
+     * Returns the start timestamp of the period
+     * @param periodNum Number of the period, starting from 0
+     * @return Start timestamp in milliseconds of the period
+     */
     public long getStartOfPeriod(int periodNum){
-        LocalDateTime localDate = new LocalDateTime(mRecurrence.getPeriodStart().getTime());
-        int interval = mRecurrence.getPeriodType().getMultiplier() * periodNum;
-        switch (mRecurrence.getPeriodType()){
-            case DAY:
-                localDate = localDate.millisOfDay().withMinimumValue().plusDays(interval);
-                break;
-            case WEEK:
-                localDate = localDate.dayOfWeek().withMinimumValue().minusDays(interval);
-                break;
-            case MONTH:
-                localDate = localDate.dayOfMonth().withMinimumValue().minusMonths(interval);
-                break;
-            case YEAR:
-                localDate = localDate.dayOfYear().withMinimumValue().minusYears(interval);
-                break;
-        }
-        return localDate.toDate().getTime();
+        return mRecurrence.getPeriodStartTime(periodNum);
     }
 
     /**
      * Returns the end timestamp of the period
-     * @param periodNum Number of the period
-     * @return End timestamp in milliseconds of the period
+     * @param periodNum Number of the period, starting from 0
+     * @return End timestamp in milliseconds of the period, which is just before the start of the next period
      */
     public long getEndOfPeriod(int periodNum){
-        LocalDateTime localDate = new LocalDateTime();
-        int interval = mRecurrence.getPeriodType().getMultiplier() * periodNum;
-        switch (mRecurrence.getPeriodType()){
-            case DAY:
-                localDate = localDate.millisOfDay().withMaximumValue().plusDays(interval);
-                break;
-            case WEEK:
-                localDate = localDate.dayOfWeek().withMaximumValue().plusWeeks(interval);
-                break;
-            case MONTH:
-                localDate = localDate.dayOfMonth().withMaximumValue().plusMonths(interval);
-                break;
-            case YEAR:
-                localDate = localDate.dayOfYear().withMaximumValue().plusYears(interval);
-                break;
-        }
-        return localDate.toDate().getTime();
+        return mRecurrence.getPeriodStartTime(periodNum + 1) - 1;
     }
 
     /**
@@ -23,6 +23,7 @@ import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.ui.util.RecurrenceParser;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
 import org.joda.time.Days;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalDateTime;
@@ -33,6 +34,7 @@ import org.joda.time.Years;
 
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 
 /**
@@ -59,6 +61,16 @@ public class Recurrence extends BaseModel {
      */
     private String mByDay;
 
+    /**
+     * Start of the recurrence as local date and time, computed on demand
+     */
+    private LocalDateTime mStartDateTime;
+
+    /**
+     * Offsets in days of the occurrences within a period, computed on demand from {@link #mByDay}
+     */
+    private int[] mByDayOffsets;
+
     public Recurrence(@NonNull PeriodType periodType){
         setPeriodType(periodType);
         mPeriodStart = new Timestamp(System.currentTimeMillis());
@@ -78,6 +90,7 @@ public class Recurrence extends BaseModel {
      */
     public void setPeriodType(PeriodType periodType) {
         this.mPeriodType = periodType;
+        mByDayOffsets = null;
     }
 
     /**
@@ -94,6 +107,8 @@ public class Recurrence extends BaseModel {
      */
     public void setPeriodStart(Timestamp periodStart) {
         this.mPeriodStart = periodStart;
+        mStartDateTime = null;
+        mByDayOffsets = null;
     }
 
 
@@ -231,11 +246,12 @@ public class Recurrence extends BaseModel {
     }
 
     /**
-     * Return the name of the current period
-     * @return String of current period
+     * Return the name of a period
+     * @param periodNum Index of the period, starting from 0
+     * @return String of the period
      */
     public String getTextOfCurrentPeriod(int periodNum){
-        LocalDate startDate = new LocalDate(mPeriodStart.getTime());
+        LocalDate startDate = new LocalDate(getPeriodStartTime(periodNum));
         switch (mPeriodType){
 
             case DAY:
@@ -256,6 +272,7 @@ public class Recurrence extends BaseModel {
      */
     public void setByDay(String byDay){
         this.mByDay = byDay;
+        mByDayOffsets = null;
     }
 
     /**
@@ -363,4 +380,193 @@ public class Recurrence extends BaseModel {
     public void setPeriodEnd(Timestamp endTimestamp){
         mPeriodEnd = endTimestamp;
     }
+
+    /**
+     * Returns the start time of a period of this recurrence.
+     * <p>Period {@code periodIndex} starts {@code periodIndex} times the period (e.g. every 2 weeks) after the start
+     * of the recurrence. It is computed from the start directly, so a day of month which is clamped in a shorter
+     * month (e.g. 31 January to 29 February) does not shift the following periods</p>
+     * @param periodIndex Index of the period, 0 for the period starting at the start of the recurrence
+     * @return Start time of the period in milliseconds since Epoch
+     */
+    public long getPeriodStartTime(int periodIndex){
+        return plusPeriods(getStartDateTime(), periodIndex).toDate().getTime();
+    }
+
+    /**
+     * Returns the index of the period containing {@code timeMillis}
+     * @param timeMillis Time in milliseconds since Epoch
+     * @return Index of the period, or -1 if the time is before the start of the recurrence
+     * @see #getPeriodStartTime(int)
+     */
+    public int getPeriodIndex(long timeMillis){
+        if (timeMillis < mPeriodStart.getTime())
+            return -1;
+
+        LocalDateTime start = getStartDateTime();
+        LocalDateTime time = new LocalDateTime(timeMillis);
+        int units;
+        switch (mPeriodType){
+            case DAY:
+                units = Days.daysBetween(start, time).getDays();
+                break;
+            case WEEK:
+                units = Weeks.weeksBetween(start, time).getWeeks();
+                break;
+            case MONTH:
+                units = Months.monthsBetween(start, time).getMonths();
+                break;
+            case YEAR:
+            default:
+                units = Years.yearsBetween(start, time).getYears();
+                break;
+        }
+        //the estimate may be off by one around clamped days of month and daylight saving time changes
+        int index = units / mPeriodType.getMultiplier();
+        while (getPeriodStartTime(index + 1) <= timeMillis)
+            index++;
+        while (index > 0 && getPeriodStartTime(index) > timeMillis)
+            index--;
+        return index;
+    }
+
+    /**
+     * Returns the time of an occurrence of this recurrence.
+     * <p>Without {@link #getByDay()}, there is one occurrence per period, at the start of the period.
+     * Weekly recurrences with {@link #getByDay()} occur on each of the days of the week, in the week
+     * which starts at the start of the period. The time of day is always that of the start of the recurrence.</p>
+     * <p>This method does not consider the end of the recurrence</p>
+     * @param occurrenceIndex Index of the occurrence, 0 for the first occurrence
+     * @return Time of the occurrence in milliseconds since Epoch
+     */
+    public long getOccurrenceTime(int occurrenceIndex){
+        int[] offsets = getByDayOffsets();
+        int periodIndex = occurrenceIndex / offsets.length;
+        int offset = offsets[occurrenceIndex % offsets.length];
+        LocalDateTime periodStart = plusPeriods(getStartDateTime(), periodIndex);
+        return (offset == 0 ? periodStart : periodStart.plusDays(offset)).toDate().getTime();
+    }
+
+    /**
+     * Returns the number of occurrences in each period, which is the number of days of {@link #getByDay()}
+     * for weekly recurrences and 1 otherwise
+     */
+    public int getOccurrencesPerPeriod(){
+        return getByDayOffsets().length;
+    }
+
+    /**
+     * Returns the index of the first occurrence at or after {@code timeMillis}
+     * @param timeMillis Time in milliseconds since Epoch
+     * @return Index of the occurrence
+     * @see #getOccurrenceTime(int)
+     */
+    public int getOccurrenceIndex(long timeMillis){
+        int periodIndex = getPeriodIndex(timeMillis);
+        if (periodIndex < 0)
+            return 0;
+        int index = periodIndex * getByDayOffsets().length;
+        while (getOccurrenceTime(index) < timeMillis)
+            index++;
+        return index;
+    }
+
+    /**
+     * Returns an iterator over the occurrences of this recurrence in a time window, in chronological order.
+     * <p>The iteration stops at the end of the recurrence ({@link #getPeriodEnd()}, inclusive) if there is one</p>
+     * @param fromMillis Start of the window in milliseconds since Epoch, inclusive
+     * @param toMillis End of the window in milliseconds since Epoch, inclusive
+     * @return Iterator over the occurrence times
+     */
+    public RecurrenceIterator iterator(long fromMillis, long toMillis){
+        return new RecurrenceIterator(this, getOccurrenceIndex(fromMillis), toMillis);
+    }
+
+    /**
+     * Returns an iterator over the occurrences of this recurrence, starting with the occurrence {@code fromIndex}.
+     * <p>The iteration stops at the end of the recurrence ({@link #getPeriodEnd()}, inclusive) if there is one</p>
+     * @param fromIndex Index of the first occurrence
+     * @param toMillis End of the iteration in milliseconds since Epoch, inclusive
+     * @return Iterator over the occurrence times
+     */
+    public RecurrenceIterator iterator(int fromIndex, long toMillis){
+        return new RecurrenceIterator(this, fromIndex, toMillis);
+    }
+
+    private LocalDateTime getStartDateTime(){
+        if (mStartDateTime == null)
+            mStartDateTime = new LocalDateTime(mPeriodStart.getTime());
+        return mStartDateTime;
+    }
+
+    /**
+     * Adds {@code count} periods of this recurrence to {@code dateTime}
+     */
+    private LocalDateTime plusPeriods(LocalDateTime dateTime, int count){
+        int units = count * mPeriodType.getMultiplier();
+        switch (mPeriodType){
+            case DAY:
+                return dateTime.plusDays(units);
+            case WEEK:
+                return dateTime.plusWeeks(units);
+            case MONTH:
+                return dateTime.plusMonths(units);
+            case YEAR:
+            default:
+                return dateTime.plusYears(units);
+        }
+    }
+
+    /**
+     * Returns the sorted offsets in days from the start of a period to its occurrences.
+     * <p>Only weekly recurrences support the byDay rule, other recurrences occur at the start of the period</p>
+     */
+    private int[] getByDayOffsets(){
+        if (mByDayOffsets != null)
+            return mByDayOffsets;
+
+        int[] offsets = new int[7];
+        int count = 0;
+        if (mPeriodType == PeriodType.WEEK && mByDay != null){
+            int startDayOfWeek = getStartDateTime().getDayOfWeek();
+            boolean[] days = new boolean[7];
+            for (String day : mByDay.split(",")) {
+                int dayOfWeek = parseDayOfWeek(day.trim());
+                if (dayOfWeek < 0)
+                    continue;
+                days[(dayOfWeek - startDayOfWeek + 7) % 7] = true;
+            }
+            for (int offset = 0; offset < days.length; offset++) {
+                if (days[offset])
+                    offsets[count++] = offset;
+            }
+        }
+        mByDayOffsets = count == 0 ? new int[]{0} : Arrays.copyOf(offsets, count);
+        return mByDayOffsets;
+    }
+
+    /**
+     * Parses a two-letter day of the week of a byDay rule (RFC 2445)
+     * @return Day of the week as in {@link DateTimeConstants}, or -1 if it is not a day of the week
+     */
+    private static int parseDayOfWeek(String day){
+        switch (day){
+            case "MO":
+                return DateTimeConstants.MONDAY;
+            case "TU":
+                return DateTimeConstants.TUESDAY;
+            case "WE":
+                return DateTimeConstants.WEDNESDAY;
+            case "TH":
+                return DateTimeConstants.THURSDAY;
+            case "FR":
+                return DateTimeConstants.FRIDAY;
+            case "SA":
+                return DateTimeConstants.SATURDAY;
+            case "SU":
+                return DateTimeConstants.SUNDAY;
+            default:
+                return -1;
+        }
+    }
 }
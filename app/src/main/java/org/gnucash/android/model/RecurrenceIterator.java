@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.model;
+
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the occurrence times of a {@link Recurrence}, in chronological order.
+ * <p>Each occurrence is computed directly from its index (see {@link Recurrence#getOccurrenceTime(int)}),
+ * so skipping to the start of a window does not step through the occurrences before it.
+ * The iteration ends at the end of the recurrence, if it has one, or at the end of the window</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see Recurrence#iterator(long, long)
+ * @see Recurrence#iterator(int, long)
+ */
+public class RecurrenceIterator implements Iterator<Long> {
+
+    private final Recurrence mRecurrence;
+
+    /**
+     * Last time which may be returned, inclusive
+     */
+    private final long mEndTime;
+
+    private int mNextIndex;
+    private long mNextTime;
+    private int mIndex = -1;
+
+    RecurrenceIterator(Recurrence recurrence, int fromIndex, long toMillis) {
+        mRecurrence = recurrence;
+        Timestamp periodEnd = recurrence.getPeriodEnd();
+        mEndTime = periodEnd == null ? toMillis : Math.min(toMillis, periodEnd.getTime());
+        mNextIndex = Math.max(fromIndex, 0);
+        mNextTime = recurrence.getOccurrenceTime(mNextIndex);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mNextTime <= mEndTime;
+    }
+
+    @Override
+    public Long next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        long time = mNextTime;
+        mIndex = mNextIndex++;
+        mNextTime = mRecurrence.getOccurrenceTime(mNextIndex);
+        return time;
+    }
+
+    /**
+     * Returns the index of the occurrence last returned by {@link #next()}, or -1 before the first call
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Returns the index of the occurrence which will be returned by the next call to {@link #next()}
+     */
+    public int nextIndex() {
+        return mNextIndex;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Occurrences of a recurrence cannot be removed");
+    }
+}
@@ -22,7 +22,6 @@ import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
-import org.joda.time.LocalDateTime;
 
 import java.sql.Timestamp;
 import java.text.DateFormat;
@@ -150,26 +149,7 @@ public class ScheduledAction extends BaseModel{
         if (mExecutionCount == 0)
             return  -1;
 
-        LocalDateTime startTime = LocalDateTime.fromDateFields(new Date(mStartDate));
-        int multiplier = mRecurrence.getPeriodType().getMultiplier();
-
-        int factor = (mExecutionCount-1) * multiplier;
-        switch (mRecurrence.getPeriodType()){
-            case DAY:
-                startTime = startTime.plusDays(factor);
-                break;
-            case WEEK:
-                startTime = startTime.plusWeeks(factor);
-                break;
-            case MONTH:
-                startTime = startTime.plusMonths(factor);
-                break;
-            case YEAR:
-                startTime = startTime.plusYears(factor);
-                break;
-        }
-
-        return startTime.toDate().getTime();
+        return mRecurrence.getOccurrenceTime(mExecutionCount - 1);
     }
 
     /**
@@ -179,29 +159,9 @@ public class ScheduledAction extends BaseModel{
      * @return Next run time in milliseconds
      */
     public long computeNextScheduledExecutionTime(){
-        int multiplier = mRecurrence.getPeriodType().getMultiplier();
-        //this is the last planned time for the action to occur, not the last run time
-        long lastActionTime = getTimeOfLastSchedule(); //mStartDate + ((mExecutionCount-1)*getPeriod());
-        if (lastActionTime < 0){
-            return mStartDate;
-        }
-
-        LocalDateTime localDate = LocalDateTime.fromDateFields(new Date(lastActionTime));
-        switch (mRecurrence.getPeriodType()) {
-            case DAY:
-                localDate = localDate.plusDays(multiplier);
-                break;
-            case WEEK:
-                localDate = localDate.plusWeeks(multiplier);
-                break;
-            case MONTH:
-                localDate = localDate.plusMonths(multiplier);
-                break;
-            case YEAR:
-                localDate = localDate.plusYears(multiplier);
-                break;
-        }
-        return localDate.toDate().getTime();
+        //computed from the start time rather than the last schedule, so that days of month which were
+        //clamped in a shorter month (e.g. 31st to 30th) do not shift all the following executions
+        return mRecurrence.getOccurrenceTime(mExecutionCount);
     }
 
     /**
@@ -95,6 +95,11 @@ public class Transaction extends BaseModel{
      */
     private List<Split> mSplitList = new ArrayList<>();
 
+    /**
+     * Loader for the splits of a transaction read from the database, until they are first accessed
+     */
+    private SplitsLoader mSplitsLoader;
+
 	/**
 	 * Name describing the transaction
 	 */
@@ -153,7 +158,7 @@ public class Transaction extends BaseModel{
         mCurrencyCode = transaction.mCurrencyCode;
         //exported flag is left at default value of false
 
-        for (Split split : transaction.mSplitList) {
+        for (Split split : transaction.getSplits()) {
             addSplit(new Split(split, generateNewUID));
         }
 
@@ -197,7 +202,7 @@ public class Transaction extends BaseModel{
     @Override
     public void setUID(String uid) {
         super.setUID(uid);
-        for (Split split : mSplitList) {
+        for (Split split : getSplits()) {
             split.setTransactionUID(uid);
         }
     }
@@ -207,6 +212,11 @@ public class Transaction extends BaseModel{
      * @return {@link java.util.List} of splits in the transaction
      */
     public List<Split> getSplits(){
+        if (mSplitsLoader != null){
+            SplitsLoader loader = mSplitsLoader;
+            mSplitsLoader = null;
+            mSplitList = loader.loadSplits(getUID());
+        }
         return mSplitList;
     }
 
@@ -217,7 +227,7 @@ public class Transaction extends BaseModel{
      */
     public List<Split> getSplits(String accountUID){
         List<Split> splits = new ArrayList<>();
-        for (Split split : mSplitList) {
+        for (Split split : getSplits()) {
             if (split.getAccountUID().equals(accountUID)){
                 splits.add(split);
             }
@@ -231,12 +241,23 @@ public class Transaction extends BaseModel{
      * @param splitList List of splits for this transaction
      */
     public void setSplits(List<Split> splitList){
+        mSplitsLoader = null;
         mSplitList = splitList;
         for (Split split : splitList) {
             split.setTransactionUID(getUID());
         }
     }
 
+    /**
+     * Defers loading the splits of this transaction until they are first accessed.
+     * <p>Used by the database adapter so that listing transactions does not load all their splits.
+     * Setting the splits explicitly with {@link #setSplits(List)} discards the loader</p>
+     * @param splitsLoader Loader for the splits of this transaction
+     */
+    public void setSplitsLoader(SplitsLoader splitsLoader){
+        mSplitsLoader = splitsLoader;
+    }
+
     /**
      * Add a split to the transaction.
      * <p>Sets the split UID and currency to that of this transaction</p>
@@ -245,7 +266,7 @@ public class Transaction extends BaseModel{
     public void addSplit(Split split){
         //sets the currency of the split to the currency of the transaction
         split.setTransactionUID(getUID());
-        mSplitList.add(split);
+        getSplits().add(split);
     }
 
     /**
@@ -256,7 +277,7 @@ public class Transaction extends BaseModel{
      * @see #computeBalance(String, java.util.List)
      */
     public Money getBalance(String accountUID){
-        return computeBalance(accountUID, mSplitList);
+        return computeBalance(accountUID, getSplits());
     }
 
     /**
@@ -267,7 +288,7 @@ public class Transaction extends BaseModel{
      */
     public Money getImbalance(){
         Money imbalance = Money.createZeroInstance(mCurrencyCode);
-        for (Split split : mSplitList) {
+        for (Split split : getSplits()) {
             if (!split.getQuantity().getCurrency().getCurrencyCode().equals(mCurrencyCode)) {
                 // this may happen when importing XML exported from GNCA before 2.0.0
                 // these transactions should only be imported from XML exported from GNC desktop
@@ -531,9 +552,9 @@ public class Transaction extends BaseModel{
             transactionNode.appendChild(memo);
         }
 
-        if (mSplitList.size() == 2){ //if we have exactly one other split, then treat it like a transfer
+        if (getSplits().size() == 2){ //if we have exactly one other split, then treat it like a transfer
             String transferAccountUID = accountUID;
-            for (Split split : mSplitList) {
+            for (Split split : getSplits()) {
                 if (!split.getAccountUID().equals(accountUID)){
                     transferAccountUID = split.getAccountUID();
                     break;
@@ -596,4 +617,15 @@ public class Transaction extends BaseModel{
         intent.putExtra(Transaction.EXTRA_SPLITS, stringBuilder.toString());
         return intent;
     }
+
+    /**
+     * Loads the splits of a transaction on demand
+     * @see #setSplitsLoader(SplitsLoader)
+     */
+    public interface SplitsLoader {
+        /**
+         * Returns the splits of the transaction with GUID {@code transactionUID}
+         */
+        List<Split> loadSplits(String transactionUID);
+    }
 }
@@ -22,6 +22,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
 
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
 import org.gnucash.android.model.Account;
@@ -33,7 +34,8 @@ import org.gnucash.android.model.Commodity;
  * for the name, currency and optionally, a unique identifier for the account (which should be unique to Gnucash)
  * of the Account to be created. Also remember to set the right mime type so that Android can properly route the Intent
  * <b>Note</b> This Broadcast receiver requires the permission "org.gnucash.android.permission.CREATE_ACCOUNT"
- * in order to be able to use Intents to create accounts. So remember to declare it in your manifest
+ * in order to be able to use Intents to create accounts. So remember to declare it in your manifest.
+ * Use the {@link org.gnucash.android.db.GnucashProvider} to create many accounts at once
  *
  * @author Ngewi Fet <ngewif@gmail.com>
  * @see {@link Account#EXTRA_CURRENCY_CODE}, {@link Account#MIME_TYPE} {@link Intent#EXTRA_TITLE}, {@link Intent#EXTRA_UID}
@@ -43,6 +45,10 @@ public class AccountCreator extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.i("Gnucash", "Received account creation intent");
+        if (GnuCashApplication.isDatabaseUpgradePending()) {
+            Log.w(getClass().getSimpleName(), "The database is being upgraded, ignoring the account");
+            return;
+        }
         Bundle args = intent.getExtras();
 
         Account account = new Account(args.getString(Intent.EXTRA_TITLE));
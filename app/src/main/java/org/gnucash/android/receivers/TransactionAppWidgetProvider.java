@@ -21,13 +21,16 @@ import android.content.Context;
 import android.content.SharedPreferences.Editor;
 import android.preference.PreferenceManager;
 
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.ui.common.UxArgument;
 import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
+import org.gnucash.android.ui.homescreen.WidgetUpdater;
 
 /**
  * {@link AppWidgetProvider} which is responsible for managing widgets on the homescreen
  * It receives broadcasts related to updating and deleting widgets
  * Widgets can also be updated manually by calling {@link WidgetConfigurationActivity#updateAllWidgets(Context)}
+ * or {@link WidgetConfigurationActivity#updateWidgetsForAccounts(Context, java.util.Collection)}
  * @author Ngewi Fet <ngewif@gmail.com>
  *
  */
@@ -37,6 +40,9 @@ public class TransactionAppWidgetProvider extends AppWidgetProvider {
 	public void onUpdate(Context context, AppWidgetManager appWidgetManager,
 			int[] appWidgetIds) {
 		super.onUpdate(context, appWidgetManager, appWidgetIds);
+		//the widgets are updated by the upgrade once it is complete
+		if (GnuCashApplication.isDatabaseUpgradePending())
+			return;
 		final int N = appWidgetIds.length;
 
         // Perform this loop procedure for each App Widget that belongs to this provider
@@ -56,9 +62,17 @@ public class TransactionAppWidgetProvider extends AppWidgetProvider {
     @Override
     public void onEnabled(Context context) {
         super.onEnabled(context);
+        WidgetUpdater.getInstance(context).startListening();
         WidgetConfigurationActivity.updateAllWidgets(context);
     }
 
+    @Override
+    public void onDisabled(Context context) {
+        super.onDisabled(context);
+        //the last widget was removed, database writes need not report the affected accounts anymore
+        WidgetUpdater.getInstance(context).stopListening();
+    }
+
     @Override
 	public void onDeleted(Context context, int[] appWidgetIds) {
 		super.onDeleted(context, appWidgetIds);		
@@ -24,6 +24,7 @@ import android.util.Log;
 
 import com.crashlytics.android.Crashlytics;
 
+import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
@@ -34,7 +35,6 @@ import org.gnucash.android.model.Money;
 import org.gnucash.android.model.Split;
 import org.gnucash.android.model.Transaction;
 import org.gnucash.android.model.TransactionType;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -50,6 +50,7 @@ import java.util.Currency;
  * create an Account for your transaction splits.
  * <p>Remember to declare the appropriate permissions in order to create transactions with Intents. 
  * The required permission is "org.gnucash.android.permission.RECORD_TRANSACTION"</p>
+ * <p>Use the {@link org.gnucash.android.db.GnucashProvider} to record many transactions at once</p>
  * @author Ngewi Fet <ngewif@gmail.com>
  * @see AccountCreator
  * @see org.gnucash.android.model.Transaction#createIntent(org.gnucash.android.model.Transaction)
@@ -59,6 +60,10 @@ public class TransactionRecorder extends BroadcastReceiver {
 	@Override
 	public void onReceive(Context context, Intent intent) {
 		Log.i(this.getClass().getName(), "Received transaction recording intent");
+		if (GnuCashApplication.isDatabaseUpgradePending()) {
+			Log.w(getClass().getSimpleName(), "The database is being upgraded, ignoring the transaction");
+			return;
+		}
 		Bundle args = intent.getExtras();
 		String name = args.getString(Intent.EXTRA_TITLE);
 		String note = args.getString(Intent.EXTRA_TEXT);
@@ -106,8 +111,6 @@ public class TransactionRecorder extends BroadcastReceiver {
         }
 
 		TransactionsDbAdapter.getInstance().addRecord(transaction, DatabaseAdapter.UpdateMethod.insert);
-		
-		WidgetConfigurationActivity.updateAllWidgets(context);
 	}
 
 }
@@ -27,19 +27,22 @@ import android.util.Log;
 import com.crashlytics.android.Crashlytics;
 
 import org.gnucash.android.app.GnuCashApplication;
-import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.BookSession;
+import org.gnucash.android.db.BookSessionManager;
+import org.gnucash.android.db.DatabaseMigrator;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
-import org.gnucash.android.db.adapter.RecurrenceDbAdapter;
-import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
 import org.gnucash.android.db.adapter.SplitsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.export.ExportAsyncTask;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.model.Book;
+import org.gnucash.android.model.RecurrenceIterator;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.Transaction;
+import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
+import org.gnucash.android.util.MetricsRegistry;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -69,28 +72,39 @@ public class ScheduledActionService extends IntentService {
         PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
         wakeLock.acquire();
 
+        long start = MetricsRegistry.start();
         try {
             BooksDbAdapter booksDbAdapter = BooksDbAdapter.getInstance();
             List<Book> books = booksDbAdapter.getAllRecords();
             for (Book book : books) {
-                DatabaseHelper dbHelper = new DatabaseHelper(GnuCashApplication.getAppContext(), book.getUID());
-                SQLiteDatabase db = dbHelper.getWritableDatabase();
-                RecurrenceDbAdapter recurrenceDbAdapter = new RecurrenceDbAdapter(db);
-                ScheduledActionDbAdapter scheduledActionDbAdapter = new ScheduledActionDbAdapter(db, recurrenceDbAdapter);
-
-                List<ScheduledAction> scheduledActions = scheduledActionDbAdapter.getAllEnabledScheduledActions();
-                Log.i(LOG_TAG, String.format("Processing %d total scheduled actions for Book: %s",
-                        scheduledActions.size(), book.getDisplayName()));
-                processScheduledActions(scheduledActions, db);
-
-                //close all databases except the currently active database
-                if (!db.getPath().equals(GnuCashApplication.getActiveDb().getPath()))
-                    db.close();
+                //books are only upgraded by the DatabaseUpgradeActivity, their actions run once they are upgraded
+                if (DatabaseMigrator.isMigrationRequired(this, book.getUID())) {
+                    Log.i(LOG_TAG, "Skipping book awaiting database upgrade: " + book.getDisplayName());
+                    continue;
+                }
+                //avoid opening a session for books without any scheduled actions
+                if (BookSessionManager.getInstance().countRecords(book.getUID(),
+                        DatabaseSchema.ScheduledActionEntry.TABLE_NAME)[0] == 0)
+                    continue;
+                //the book may be open already, in which case its database is shared with the application.
+                //Otherwise a transient session is opened, which does not evict the books open in the application
+                BookSession session = BookSessionManager.getInstance().acquire(book.getUID());
+                try {
+                    List<ScheduledAction> scheduledActions =
+                            session.getScheduledActionDbAdapter().getAllEnabledScheduledActions();
+                    Log.i(LOG_TAG, String.format("Processing %d total scheduled actions for Book: %s",
+                            scheduledActions.size(), book.getDisplayName()));
+                    processScheduledActions(scheduledActions, session.getDatabase());
+                } finally {
+                    BookSessionManager.getInstance().release(session);
+                }
             }
 
+            WidgetConfigurationActivity.updateAllWidgets(this);
             Log.i(LOG_TAG, "Completed service @ " + java.text.DateFormat.getDateTimeInstance().format(new Date()));
 
         } finally { //release the lock either way
+            MetricsRegistry.stop(LOG_TAG, "onHandleIntent", start);
             wakeLock.release();
         }
     }
@@ -117,7 +131,9 @@ public class ScheduledActionService extends IntentService {
                 continue;
             }
 
+            long start = MetricsRegistry.start();
             executeScheduledEvent(scheduledAction, db);
+            MetricsRegistry.stop(LOG_TAG, "executeScheduledEvent", start);
         }
     }
 
@@ -213,18 +229,17 @@ public class ScheduledActionService extends IntentService {
         List<Transaction> transactions = new ArrayList<>();
 
         //we may be executing scheduled action significantly after scheduled time (depending on when Android fires the alarm)
-        //so compute the actual transaction time from pre-known values
-        long transactionTime = scheduledAction.computeNextScheduledExecutionTime();
-        while (transactionTime <= endTime) {
+        //so compute the actual transaction times from the recurrence, starting after the last executed occurrence
+        RecurrenceIterator occurrences = scheduledAction.getRecurrence()
+                .iterator(scheduledAction.getExecutionCount(), endTime);
+        while (occurrences.hasNext()) {
+            if (totalPlannedExecutions > 0 && occurrences.nextIndex() >= totalPlannedExecutions)
+                break; //if we hit the total planned executions set, then abort
             Transaction recurringTrxn = new Transaction(trxnTemplate, true);
-            recurringTrxn.setTime(transactionTime);
-            transactions.add(recurringTrxn);
+            recurringTrxn.setTime(occurrences.next());
             recurringTrxn.setScheduledActionUID(scheduledAction.getUID());
-            scheduledAction.setExecutionCount(++executionCount); //required for computingNextScheduledExecutionTime
-
-            if (totalPlannedExecutions > 0 && executionCount >= totalPlannedExecutions)
-                break; //if we hit the total planned executions set, then abort
-            transactionTime = scheduledAction.computeNextScheduledExecutionTime();
+            transactions.add(recurringTrxn);
+            executionCount++;
         }
 
         transactionsDbAdapter.bulkAddRecords(transactions, DatabaseAdapter.UpdateMethod.insert);
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.account;
+
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.model.Money;
+
+/**
+ * Precomputed data displayed in a row of the accounts list.
+ * <p>The row models are computed by the accounts loader in the background, so that binding
+ * a row does not access the database</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class AccountRowModel {
+    /**
+     * Value of {@link #getBudgetProgress()} if no budget progress is displayed for the account
+     */
+    public static final int NO_BUDGET = -1;
+
+    private final long mId;
+    private final int mSubAccountCount;
+    private final boolean mPlaceholder;
+    private final boolean mFavorite;
+    private final Money mBalance;
+    private final int mBudgetProgress;
+
+    public AccountRowModel(long id, int subAccountCount, boolean placeholder, boolean favorite,
+                           @NonNull Money balance, int budgetProgress) {
+        mId = id;
+        mSubAccountCount = subAccountCount;
+        mPlaceholder = placeholder;
+        mFavorite = favorite;
+        mBalance = balance;
+        mBudgetProgress = budgetProgress;
+    }
+
+    /**
+     * Returns the database record ID of the account
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Returns the number of direct sub-accounts of the account
+     */
+    public int getSubAccountCount() {
+        return mSubAccountCount;
+    }
+
+    public boolean isPlaceholder() {
+        return mPlaceholder;
+    }
+
+    public boolean isFavorite() {
+        return mFavorite;
+    }
+
+    /**
+     * Returns the balance of the account including its sub-accounts, up to now
+     */
+    @NonNull
+    public Money getBalance() {
+        return mBalance;
+    }
+
+    /**
+     * Returns the percentage of the budget of the account which is spent in the current budgeting period,
+     * or {@link #NO_BUDGET} if the account does not belong to exactly one budget
+     */
+    public int getBudgetProgress() {
+        return mBudgetProgress;
+    }
+}
@@ -60,11 +60,13 @@ import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.DatabaseTemplate;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
-import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.export.BackupManager;
 import org.gnucash.android.importer.ImportAsyncTask;
 import org.gnucash.android.ui.common.BaseDrawerActivity;
+import org.gnucash.android.ui.common.DatabaseUpgradeActivity;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.Refreshable;
 import org.gnucash.android.ui.common.UxArgument;
@@ -228,6 +230,9 @@ public class AccountsActivity extends BaseDrawerActivity implements OnAccountCli
 	public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        if (DatabaseUpgradeActivity.redirectIfUpgradePending(this))
+            return;
+
         final Intent intent = getIntent();
         handleOpenFileIntent(intent);
 
@@ -293,7 +298,7 @@ public class AccountsActivity extends BaseDrawerActivity implements OnAccountCli
         //when someone launches the app to view a (.gnucash or .gnca) file
         Uri data = intent.getData();
         if (data != null){
-            GncXmlExporter.createBackup();
+            BackupManager.createBackup();
             intent.setData(null);
             new ImportAsyncTask(this).execute(data);
             removeFirstRunFlag();
@@ -495,8 +500,7 @@ public class AccountsActivity extends BaseDrawerActivity implements OnAccountCli
             };
         }
 
-        Uri uri = Uri.parse("android.resource://" + BuildConfig.APPLICATION_ID + "/" + R.raw.default_accounts);
-        new ImportAsyncTask(activity, delegate).execute(uri);
+        new ImportAsyncTask(activity, delegate).execute(DatabaseTemplate.getDefaultAccountsUri());
     }
 
     /**
@@ -550,7 +554,7 @@ public class AccountsActivity extends BaseDrawerActivity implements OnAccountCli
      * @param onFinishTask Task to be executed when import is complete
      */
     public static void importXmlFileFromIntent(Activity context, Intent data, TaskDelegate onFinishTask) {
-        GncXmlExporter.createBackup();
+        BackupManager.createBackup();
         new ImportAsyncTask(context, onFinishTask).execute(data.getData());
     }
 
@@ -23,10 +23,10 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.graphics.Color;
-import android.os.AsyncTask;
-import android.os.Build;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
 import android.support.v4.content.Loader;
@@ -51,21 +51,30 @@ import android.widget.TextView;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DataChangeEvent;
 import org.gnucash.android.db.DatabaseCursorLoader;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BudgetsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.Budget;
+import org.gnucash.android.model.BudgetAmount;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.Refreshable;
 import org.gnucash.android.ui.common.UxArgument;
-import org.gnucash.android.ui.util.AccountBalanceTask;
+import org.gnucash.android.ui.transaction.TransactionsActivity;
 import org.gnucash.android.ui.util.CursorRecyclerAdapter;
 import org.gnucash.android.ui.util.widget.EmptyRecyclerView;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
@@ -243,8 +252,9 @@ public class AccountsListFragment extends Fragment implements
      * @param rowId The record ID of the account
      */
     public void tryDeleteAccount(long rowId) {
-        Account acc = mAccountsDbAdapter.getRecord(rowId);
-        if (acc.getTransactionCount() > 0 || mAccountsDbAdapter.getSubAccountCount(acc.getUID()) > 0) {
+        String accountUID = mAccountsDbAdapter.getUID(rowId);
+        if (TransactionsDbAdapter.getInstance().getTransactionsCount(accountUID) > 0
+                || mAccountsDbAdapter.getSubAccountCount(accountUID) > 0) {
             showConfirmationDialog(rowId);
         } else {
             mAccountsDbAdapter.deleteRecord(rowId);
@@ -427,6 +437,17 @@ public class AccountsListFragment extends Fragment implements
             mFilter = filter;
         }
 
+        /**
+         * The rows include balances and budget progress, so the loader also reloads when those change
+         */
+        @Override
+        protected boolean isAffectedBy(@NonNull DataChangeEvent event) {
+            return event.affectsAnyTable(DatabaseSchema.AccountEntry.TABLE_NAME,
+                    DatabaseSchema.TransactionEntry.TABLE_NAME, DatabaseSchema.SplitEntry.TABLE_NAME,
+                    DatabaseSchema.PriceEntry.TABLE_NAME, DatabaseSchema.CommodityEntry.TABLE_NAME,
+                    DatabaseSchema.BudgetEntry.TABLE_NAME, DatabaseSchema.BudgetAmountEntry.TABLE_NAME);
+        }
+
         @Override
         public Cursor loadInBackground() {
             mDatabaseAdapter = AccountsDbAdapter.getInstance();
@@ -457,9 +478,120 @@ public class AccountsListFragment extends Fragment implements
 
             }
 
-            if (cursor != null)
-                registerContentObserver(cursor);
-            return cursor;
+            if (cursor == null)
+                return null;
+
+            registerContentObserver(cursor);
+            return new AccountsCursor(cursor, buildRowModels(cursor));
+        }
+
+        /**
+         * Computes the row models of all accounts in the cursor with a few queries over all accounts,
+         * instead of querying the database for every row while it is displayed
+         * @param cursor Cursor to account records
+         * @return Map of account GUIDs to row models
+         */
+        private Map<String, AccountRowModel> buildRowModels(Cursor cursor) {
+            AccountsDbAdapter accountsDbAdapter = (AccountsDbAdapter) mDatabaseAdapter;
+            int uidColumn = cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_UID);
+            List<String> accountUIDs = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                accountUIDs.add(cursor.getString(uidColumn));
+            }
+
+            Map<String, Money> balances = accountsDbAdapter.getAccountBalances(accountUIDs, -1, System.currentTimeMillis());
+            Map<String, Integer> subAccountCounts = accountsDbAdapter.getSubAccountCounts();
+            Map<String, Integer> budgetProgress = computeBudgetProgress(accountsDbAdapter, accountUIDs);
+
+            int idColumn = cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry._ID);
+            int placeholderColumn = cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_PLACEHOLDER);
+            int favoriteColumn = cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_FAVORITE);
+            int currencyColumn = cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_CURRENCY);
+            Map<String, AccountRowModel> rowModels = new HashMap<>(accountUIDs.size() * 2);
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                String accountUID = cursor.getString(uidColumn);
+                Money balance = balances.get(accountUID);
+                Integer subAccountCount = subAccountCounts.get(accountUID);
+                Integer progress = budgetProgress.get(accountUID);
+                rowModels.put(accountUID, new AccountRowModel(cursor.getLong(idColumn),
+                        subAccountCount == null ? 0 : subAccountCount,
+                        cursor.getInt(placeholderColumn) == 1,
+                        cursor.getInt(favoriteColumn) == 1,
+                        balance != null ? balance : Money.createZeroInstance(cursor.getString(currencyColumn)),
+                        progress == null ? AccountRowModel.NO_BUDGET : progress));
+            }
+            cursor.moveToPosition(-1);
+            return rowModels;
+        }
+
+        /**
+         * Computes the budget progress in the current period for the accounts which belong to exactly one budget
+         * @param accountsDbAdapter Accounts database adapter
+         * @param accountUIDs GUIDs of the accounts
+         * @return Map of account GUIDs to the percentage of the budget which is spent
+         */
+        private Map<String, Integer> computeBudgetProgress(AccountsDbAdapter accountsDbAdapter, List<String> accountUIDs) {
+            Set<String> displayedAccounts = new HashSet<>(accountUIDs);
+            Map<String, Budget> budgetByAccount = new HashMap<>();
+            Set<String> accountsWithSeveralBudgets = new HashSet<>();
+            //TODO: include fetch only active budgets
+            for (Budget budget : BudgetsDbAdapter.getInstance().getAllRecords()) {
+                for (BudgetAmount budgetAmount : budget.getBudgetAmounts()) {
+                    String accountUID = budgetAmount.getAccountUID();
+                    if (!displayedAccounts.contains(accountUID))
+                        continue;
+                    Budget other = budgetByAccount.put(accountUID, budget);
+                    if (other != null && !other.getUID().equals(budget.getUID()))
+                        accountsWithSeveralBudgets.add(accountUID);
+                }
+            }
+            budgetByAccount.keySet().removeAll(accountsWithSeveralBudgets);
+
+            Map<Budget, List<String>> accountsByBudget = new HashMap<>();
+            for (Map.Entry<String, Budget> entry : budgetByAccount.entrySet()) {
+                List<String> budgetAccounts = accountsByBudget.get(entry.getValue());
+                if (budgetAccounts == null) {
+                    budgetAccounts = new ArrayList<>();
+                    accountsByBudget.put(entry.getValue(), budgetAccounts);
+                }
+                budgetAccounts.add(entry.getKey());
+            }
+
+            Map<String, Integer> progress = new HashMap<>();
+            for (Map.Entry<Budget, List<String>> entry : accountsByBudget.entrySet()) {
+                Budget budget = entry.getKey();
+                Map<String, Money> balances = accountsDbAdapter.getAccountBalances(entry.getValue(),
+                        budget.getStartofCurrentPeriod(), budget.getEndOfCurrentPeriod());
+                for (String accountUID : entry.getValue()) {
+                    Money balance = balances.get(accountUID);
+                    Money amount = budget.getAmount(accountUID);
+                    if (balance == null || amount == null || amount.isAmountZero())
+                        continue;
+                    BigDecimal ratio = balance.asBigDecimal().divide(amount.asBigDecimal(), 4, BigDecimal.ROUND_HALF_EVEN);
+                    progress.put(accountUID, ratio.multiply(new BigDecimal(100)).intValue());
+                }
+            }
+            return progress;
+        }
+    }
+
+    /**
+     * Cursor to the accounts displayed in the list, together with their precomputed row models
+     */
+    private static final class AccountsCursor extends CursorWrapper {
+        private final Map<String, AccountRowModel> mRowModels;
+
+        AccountsCursor(Cursor cursor, Map<String, AccountRowModel> rowModels) {
+            super(cursor);
+            mRowModels = rowModels;
+        }
+
+        /**
+         * Returns the row model of the account at the current position
+         */
+        AccountRowModel getRowModel() {
+            return mRowModels.get(getString(getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_UID)));
         }
     }
 
@@ -481,11 +613,11 @@ public class AccountsListFragment extends Fragment implements
         @Override
         public void onBindViewHolderCursor(final AccountViewHolder holder, final Cursor cursor) {
             final String accountUID = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_UID));
-            mAccountsDbAdapter = AccountsDbAdapter.getInstance();
-            holder.accoundId = mAccountsDbAdapter.getID(accountUID);
+            AccountRowModel rowModel = ((AccountsCursor) cursor).getRowModel();
+            holder.accoundId = rowModel.getId();
 
             holder.accountName.setText(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_NAME)));
-            int subAccountCount = mAccountsDbAdapter.getSubAccountCount(accountUID);
+            int subAccountCount = rowModel.getSubAccountCount();
             if (subAccountCount > 0) {
                 holder.description.setVisibility(View.VISIBLE);
                 String text = getResources().getQuantityString(R.plurals.label_sub_accounts, subAccountCount, subAccountCount);
@@ -494,20 +626,15 @@ public class AccountsListFragment extends Fragment implements
                 holder.description.setVisibility(View.GONE);
 
             // add a summary of transactions to the account view
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-                // Make sure the balance task is truly multithread
-                new AccountBalanceTask(holder.accountBalance).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, accountUID);
-            } else {
-                new AccountBalanceTask(holder.accountBalance).execute(accountUID);
-            }
+            TransactionsActivity.displayBalance(holder.accountBalance, rowModel.getBalance());
             String accountColor = cursor.getString(cursor.getColumnIndexOrThrow(DatabaseSchema.AccountEntry.COLUMN_COLOR_CODE));
             int colorCode = accountColor == null ? Color.TRANSPARENT : Color.parseColor(accountColor);
             holder.colorStripView.setBackgroundColor(colorCode);
 
-            boolean isPlaceholderAccount = mAccountsDbAdapter.isPlaceholderAccount(accountUID);
-            if (isPlaceholderAccount) {
+            if (rowModel.isPlaceholder()) {
                 holder.createTransaction.setVisibility(View.GONE);
             } else {
+                holder.createTransaction.setVisibility(View.VISIBLE);
                 holder.createTransaction.setOnClickListener(new View.OnClickListener() {
 
                     @Override
@@ -521,21 +648,15 @@ public class AccountsListFragment extends Fragment implements
                 });
             }
 
-            List<Budget> budgets = BudgetsDbAdapter.getInstance().getAccountBudgets(accountUID);
-            //TODO: include fetch only active budgets
-            if (budgets.size() == 1){
-                Budget budget = budgets.get(0);
-                Money balance = mAccountsDbAdapter.getAccountBalance(accountUID, budget.getStartofCurrentPeriod(), budget.getEndOfCurrentPeriod());
-                double budgetProgress = balance.divide(budget.getAmount(accountUID)).asBigDecimal().doubleValue() * 100;
-
+            if (rowModel.getBudgetProgress() != AccountRowModel.NO_BUDGET){
                 holder.budgetIndicator.setVisibility(View.VISIBLE);
-                holder.budgetIndicator.setProgress((int) budgetProgress);
+                holder.budgetIndicator.setProgress(rowModel.getBudgetProgress());
             } else {
                 holder.budgetIndicator.setVisibility(View.GONE);
             }
 
 
-            if (mAccountsDbAdapter.isFavoriteAccount(accountUID)){
+            if (rowModel.isFavorite()){
                 holder.favoriteStatus.setImageResource(R.drawable.ic_star_black_24dp);
             } else {
                 holder.favoriteStatus.setImageResource(R.drawable.ic_star_border_black_24dp);
@@ -38,7 +38,6 @@ import org.gnucash.android.db.adapter.SplitsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.ui.common.Refreshable;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 import org.gnucash.android.util.QualifiedAccountNameCursorAdapter;
 
 import java.util.List;
@@ -231,7 +230,6 @@ public class DeleteAccountDialogFragment extends DialogFragment {
                 //now kill them all!!
                 accountsDbAdapter.recursiveDeleteAccount(accountsDbAdapter.getID(mOriginAccountUID));
 
-                WidgetConfigurationActivity.updateAllWidgets(getActivity());
                 ((Refreshable)getTargetFragment()).refresh();
                 dismiss();
             }
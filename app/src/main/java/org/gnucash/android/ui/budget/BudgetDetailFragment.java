@@ -254,9 +254,8 @@ public class BudgetDetailFragment extends Fragment implements Refreshable {
             //todo: refactor getNumberOfPeriods into budget
             int budgetPeriods = (int) mBudget.getNumberOfPeriods();
             budgetPeriods = budgetPeriods == 0 ? 12 : budgetPeriods;
-            int periods = mBudget.getRecurrence().getNumberOfPeriods(budgetPeriods); //// FIXME: 15.08.2016 why do we need number of periods
 
-            for (int periodNum = 1; periodNum <= periods; periodNum++) {
+            for (int periodNum = 0; periodNum < budgetPeriods; periodNum++) {
                 BigDecimal amount = accountsDbAdapter.getAccountBalance(budgetAmount.getAccountUID(),
                         mBudget.getStartOfPeriod(periodNum), mBudget.getEndOfPeriod(periodNum))
                         .asBigDecimal();
@@ -22,6 +22,7 @@ import android.content.Intent;
 import android.content.res.Configuration;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
@@ -45,6 +46,7 @@ import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import org.gnucash.android.R;
+import org.gnucash.android.db.DataChangeEvent;
 import org.gnucash.android.db.DatabaseCursorLoader;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
@@ -318,6 +320,16 @@ public class BudgetListFragment extends Fragment implements Refreshable,
             super(context);
         }
 
+        /**
+         * The list displays the amounts spent of the budgets, so it also depends on the transactions
+         */
+        @Override
+        protected boolean isAffectedBy(@NonNull DataChangeEvent event) {
+            return event.affectsAnyTable(DatabaseSchema.BudgetEntry.TABLE_NAME,
+                    DatabaseSchema.BudgetAmountEntry.TABLE_NAME, DatabaseSchema.RecurrenceEntry.TABLE_NAME,
+                    DatabaseSchema.TransactionEntry.TABLE_NAME, DatabaseSchema.SplitEntry.TABLE_NAME);
+        }
+
         @Override
         public Cursor loadInBackground() {
             mDatabaseAdapter = BudgetsDbAdapter.getInstance();
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.common;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.R;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseMigrator;
+import org.gnucash.android.ui.account.AccountsActivity;
+import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+
+/**
+ * Activity which upgrades the database of the active book in the background and displays the progress.
+ * <p>It is started instead of the accounts list when the schema of the book database is outdated,
+ * and opens the accounts list once the upgrade is complete</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see DatabaseMigrator
+ */
+public class DatabaseUpgradeActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = "DatabaseUpgradeActivity";
+
+    @Bind(R.id.database_upgrade_progress) ProgressBar mProgressBar;
+    @Bind(R.id.database_upgrade_status) TextView mStatusTextView;
+
+    /**
+     * Starts the database upgrade activity
+     * @param context Context from which to start the activity
+     */
+    public static void start(Context context){
+        Intent intent = new Intent(context, DatabaseUpgradeActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK|Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        context.startActivity(intent);
+    }
+
+    /**
+     * Redirects to the database upgrade activity if the upgrade of the active book is still pending.
+     * <p>Activities which can be opened from outside the application, e.g. from widgets or shortcuts,
+     * call this first in {@code onCreate} and return immediately if it returns {@code true}</p>
+     * @param activity Activity being created, which is finished if the upgrade is pending
+     * @return {@code true} if the upgrade is pending and the activity was finished, {@code false} otherwise
+     */
+    public static boolean redirectIfUpgradePending(Activity activity){
+        if (!GnuCashApplication.isDatabaseUpgradePending())
+            return false;
+        start(activity);
+        activity.finish();
+        return true;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_database_upgrade);
+        ButterKnife.bind(this);
+
+        new DatabaseUpgradeTask().execute();
+    }
+
+    @Override
+    public void onBackPressed() {
+        //the upgrade cannot be cancelled
+    }
+
+    /**
+     * Runs the upgrade on a background thread and publishes the progress of each step
+     */
+    private class DatabaseUpgradeTask extends AsyncTask<Void, Integer, Boolean> {
+
+        @Override
+        protected Boolean doInBackground(Void... params) {
+            try {
+                GnuCashApplication.upgradeDatabase(new DatabaseMigrator.ProgressListener() {
+                    @Override
+                    public void onProgress(int completedSteps, int totalSteps, int version) {
+                        publishProgress(completedSteps, totalSteps, version);
+                    }
+                });
+                return true;
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Error upgrading database: " + e.getMessage());
+                Crashlytics.logException(e);
+                return false;
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            int completedSteps = values[0];
+            int totalSteps = values[1];
+            mProgressBar.setIndeterminate(false);
+            mProgressBar.setMax(totalSteps);
+            mProgressBar.setProgress(completedSteps);
+            mStatusTextView.setText(getString(R.string.msg_database_upgrade_progress, completedSteps, totalSteps));
+        }
+
+        @Override
+        protected void onPostExecute(Boolean success) {
+            if (success) {
+                WidgetConfigurationActivity.updateAllWidgets(DatabaseUpgradeActivity.this);
+                AccountsActivity.start(DatabaseUpgradeActivity.this);
+            } else {
+                Toast.makeText(DatabaseUpgradeActivity.this, R.string.toast_database_upgrade_failed, Toast.LENGTH_LONG).show();
+            }
+            finish();
+        }
+    }
+}
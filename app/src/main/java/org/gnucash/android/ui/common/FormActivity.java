@@ -55,6 +55,8 @@ public class FormActivity extends PasscodeLockActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (DatabaseUpgradeActivity.redirectIfUpgradePending(this))
+            return;
         setContentView(R.layout.activity_form);
 
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
@@ -18,6 +18,7 @@ package org.gnucash.android.ui.export;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
@@ -26,6 +27,7 @@ import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.ActionBar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.SwitchCompat;
 import android.util.Log;
@@ -58,6 +60,7 @@ import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
 import org.gnucash.android.export.ExportAsyncTask;
 import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.csv.CsvExporter;
 import org.gnucash.android.model.BaseModel;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.ui.account.AccountsActivity;
@@ -72,9 +75,12 @@ import org.gnucash.android.util.TimestampHelper;
 
 import java.sql.Timestamp;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import butterknife.Bind;
 import butterknife.ButterKnife;
@@ -130,6 +136,19 @@ public class ExportFormFragment extends Fragment implements
 	@Bind(R.id.radio_ofx_format) RadioButton mOfxRadioButton;
 	@Bind(R.id.radio_qif_format) RadioButton mQifRadioButton;
 	@Bind(R.id.radio_xml_format) RadioButton mXmlRadioButton;
+	@Bind(R.id.radio_csv_format) RadioButton mCsvRadioButton;
+
+	/**
+	 * Options of the CSV format, shown only when it is selected
+	 */
+	@Bind(R.id.csv_options_layout) LinearLayout mCsvOptionsLayout;
+	@Bind(R.id.input_csv_columns) TextView mCsvColumnsTextView;
+	@Bind(R.id.checkbox_compress_export) CheckBox mCompressCheckBox;
+
+	/**
+	 * Columns selected for the CSV export, indexed by the ordinal of {@link CsvExporter.Column}
+	 */
+	private boolean[] mSelectedCsvColumns;
 
 	/**
 	 * Event recurrence options
@@ -157,6 +176,7 @@ public class ExportFormFragment extends Fragment implements
 
 
 	private void onRadioButtonClicked(View view){
+		mCsvOptionsLayout.setVisibility(view.getId() == R.id.radio_csv_format ? View.VISIBLE : View.GONE);
         switch (view.getId()){
             case R.id.radio_ofx_format:
                 mExportFormat = ExportFormat.OFX;
@@ -184,8 +204,15 @@ public class ExportFormFragment extends Fragment implements
 			case R.id.radio_xml_format:
 				mExportFormat = ExportFormat.XML;
 				mExportWarningTextView.setText(R.string.export_warning_xml);
+				mExportWarningTextView.setVisibility(View.VISIBLE);
 				mExportDateLayout.setVisibility(View.GONE);
 				break;
+
+			case R.id.radio_csv_format:
+				mExportFormat = ExportFormat.CSV;
+				mExportWarningTextView.setVisibility(View.GONE);
+				mExportDateLayout.setVisibility(View.VISIBLE);
+				break;
         }
     }
 
@@ -272,6 +299,10 @@ public class ExportFormFragment extends Fragment implements
 
 		exportParameters.setExportTarget(mExportTarget);
 		exportParameters.setDeleteTransactionsAfterExport(mDeleteAllCheckBox.isChecked());
+		if (mExportFormat == ExportFormat.CSV) {
+			exportParameters.setCsvColumns(getSelectedCsvColumns());
+			exportParameters.setCompressOutput(mCompressCheckBox.isChecked());
+		}
 
 		Log.i(TAG, "Commencing async export of transactions");
 		new ExportAsyncTask(getActivity(), GnuCashApplication.getActiveDb()).execute(exportParameters);
@@ -430,6 +461,15 @@ public class ExportFormFragment extends Fragment implements
 
 		mRecurrenceTextView.setOnClickListener(new RecurrenceViewClickListener((AppCompatActivity) getActivity(), mRecurrenceRule, this));
 
+		mSelectedCsvColumns = new boolean[CsvExporter.Column.values().length];
+		Arrays.fill(mSelectedCsvColumns, true);
+		mCsvColumnsTextView.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				showCsvColumnsDialog();
+			}
+		});
+
 		//this part (setting the export format) must come after the recurrence view bindings above
         String defaultExportFormat = sharedPrefs.getString(getString(R.string.key_default_export_format), ExportFormat.QIF.name());
         mExportFormat = ExportFormat.valueOf(defaultExportFormat);
@@ -447,12 +487,14 @@ public class ExportFormFragment extends Fragment implements
 		mOfxRadioButton.setOnClickListener(radioClickListener);
 		mQifRadioButton.setOnClickListener(radioClickListener);
 		mXmlRadioButton.setOnClickListener(radioClickListener);
+		mCsvRadioButton.setOnClickListener(radioClickListener);
 
 		ExportFormat defaultFormat = ExportFormat.valueOf(defaultExportFormat.toUpperCase());
 		switch (defaultFormat){
 			case QIF: mQifRadioButton.performClick(); break;
 			case OFX: mOfxRadioButton.performClick(); break;
 			case XML: mXmlRadioButton.performClick(); break;
+			case CSV: mCsvRadioButton.performClick(); break;
 		}
 
 		if (GnuCashApplication.isDoubleEntryEnabled()){
@@ -463,6 +505,62 @@ public class ExportFormFragment extends Fragment implements
 
 	}
 
+	/**
+	 * Shows a dialog for choosing the columns of the CSV export
+	 */
+	private void showCsvColumnsDialog() {
+		CsvExporter.Column[] columns = CsvExporter.Column.values();
+		String[] headers = new String[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			headers[i] = columns[i].getHeader();
+		}
+		final boolean[] selection = mSelectedCsvColumns.clone();
+		new AlertDialog.Builder(getActivity())
+				.setTitle(R.string.title_select_csv_columns)
+				.setMultiChoiceItems(headers, selection, new DialogInterface.OnMultiChoiceClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which, boolean isChecked) {
+						selection[which] = isChecked;
+					}
+				})
+				.setNegativeButton(android.R.string.cancel, null)
+				.setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						mSelectedCsvColumns = selection;
+						updateCsvColumnsText();
+					}
+				})
+				.show();
+	}
+
+	/**
+	 * Returns the columns selected for the CSV export, or all columns if none are selected
+	 */
+	private List<CsvExporter.Column> getSelectedCsvColumns() {
+		List<CsvExporter.Column> columns = new ArrayList<>();
+		for (CsvExporter.Column column : CsvExporter.Column.values()) {
+			if (mSelectedCsvColumns[column.ordinal()])
+				columns.add(column);
+		}
+		return columns.isEmpty() ? Arrays.asList(CsvExporter.Column.values()) : columns;
+	}
+
+	private void updateCsvColumnsText() {
+		List<CsvExporter.Column> columns = getSelectedCsvColumns();
+		if (columns.size() == CsvExporter.Column.values().length) {
+			mCsvColumnsTextView.setText(R.string.label_csv_all_columns);
+			return;
+		}
+		StringBuilder text = new StringBuilder();
+		for (CsvExporter.Column column : columns) {
+			if (text.length() > 0)
+				text.append(", ");
+			text.append(column.getHeader());
+		}
+		mCsvColumnsTextView.setText(text);
+	}
+
 	@Override
 	public void onRecurrenceSet(String rrule) {
 		mRecurrenceRule = rrule;
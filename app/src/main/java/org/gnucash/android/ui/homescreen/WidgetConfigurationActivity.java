@@ -19,15 +19,13 @@ package org.gnucash.android.ui.homescreen;
 import android.app.Activity;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
-import android.support.v4.widget.SimpleCursorAdapter;
+import android.support.annotation.NonNull;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -36,17 +34,25 @@ import android.widget.Spinner;
 import android.widget.Toast;
 
 import org.gnucash.android.R;
+import org.gnucash.android.db.AccountIndex;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.Money;
-import org.gnucash.android.receivers.TransactionAppWidgetProvider;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
 import org.gnucash.android.ui.account.AccountsActivity;
+import org.gnucash.android.ui.common.DatabaseUpgradeActivity;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.UxArgument;
 import org.gnucash.android.ui.transaction.TransactionsActivity;
-import org.gnucash.android.util.QualifiedAccountNameCursorAdapter;
+import org.gnucash.android.ui.util.dialog.AccountSearchDialog;
+import org.gnucash.android.util.QualifiedAccountNameAdapter;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * Activity for configuration which account to display on a widget.
@@ -64,6 +70,8 @@ public class WidgetConfigurationActivity extends Activity {
 	@Override
 	public void onCreate(Bundle savedInstanceState) {		
 		super.onCreate(savedInstanceState);
+		if (DatabaseUpgradeActivity.redirectIfUpgradePending(this))
+			return;
 		setContentView(R.layout.widget_configuration);
 		setResult(RESULT_CANCELED);
 		
@@ -72,17 +80,23 @@ public class WidgetConfigurationActivity extends Activity {
 		mCancelButton 	= (Button) findViewById(R.id.btn_cancel);
 
 		mAccountsDbAdapter = AccountsDbAdapter.getInstance();
-		Cursor cursor = mAccountsDbAdapter.fetchAllRecordsOrderedByFullName();
-		
-		if (cursor.getCount() <= 0){
+		QualifiedAccountNameAdapter accountNameAdapter = new QualifiedAccountNameAdapter(this,
+				new AccountIndex.Condition() {
+					@Override
+					public boolean accept(@NonNull AccountIndex.Entry entry) {
+						return !entry.isHidden() && entry.getAccountType() != AccountType.ROOT;
+					}
+				});
+
+		if (accountNameAdapter.getCount() <= 0){
 			Toast.makeText(this, R.string.error_no_accounts, Toast.LENGTH_LONG).show();
 			finish();
 		}
 
-        SimpleCursorAdapter cursorAdapter = new QualifiedAccountNameCursorAdapter(this, cursor);
 		//without this line, the app crashes when a user tries to select an account
-		cursorAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-		mAccountsSpinner.setAdapter(cursorAdapter);
+		accountNameAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+		mAccountsSpinner.setAdapter(accountNameAdapter);
+		AccountSearchDialog.attach(mAccountsSpinner);
 		
 		bindListeners();
 	}
@@ -171,7 +185,7 @@ public class WidgetConfigurationActivity extends Activity {
 				R.layout.widget_4x1);
 		views.setTextViewText(R.id.account_name, account.getName());
 
-		Money accountBalance = accountsDbAdapter.getAccountBalance(accountUID, -1, System.currentTimeMillis());
+		Money accountBalance = WidgetUpdater.getInstance(context).getAccountBalance(accountUID);
 
 		views.setTextViewText(R.id.transactions_summary,
 				accountBalance.formattedString(Locale.getDefault()));
@@ -200,32 +214,35 @@ public class WidgetConfigurationActivity extends Activity {
 	}
 	
 	/**
-	 * Updates all widgets belonging to the application
+	 * Schedules an update of all widgets belonging to the application.
+	 * <p>All cached balances are discarded. If the accounts which were modified are known,
+	 * prefer {@link #updateWidgetsForAccounts(Context, Collection)}</p>
 	 * @param context Application context
 	 */
 	public static void updateAllWidgets(final Context context){
-		Log.i("WidgetConfiguration", "Updating all widgets");
-		AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
-		ComponentName componentName = new ComponentName(context, TransactionAppWidgetProvider.class);
-		final int[] appWidgetIds = widgetManager.getAppWidgetIds(componentName);
-
-		//update widgets asynchronously so as not to block method which called the update
-		//inside the computation of the account balance
-		new Thread(new Runnable() {
-			SharedPreferences defaultSharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
-
-			@Override
-			public void run() {
-				for (final int widgetId : appWidgetIds) {
-					final String accountUID = defaultSharedPrefs
-							.getString(UxArgument.SELECTED_ACCOUNT_UID + widgetId, null);
+		Log.i("WidgetConfiguration", "Scheduling update of all widgets");
+		WidgetUpdater.getInstance(context).scheduleUpdateAll();
+	}
 
-					if (accountUID == null)
-						continue;
+	/**
+	 * Schedules an update of the widgets displaying any of the accounts or their ancestors
+	 * @param context Application context
+	 * @param accountUIDs GUIDs of the accounts which were modified
+	 */
+	public static void updateWidgetsForAccounts(Context context, Collection<String> accountUIDs){
+		WidgetUpdater.getInstance(context).scheduleUpdate(accountUIDs);
+	}
 
-					updateWidget(context, widgetId, accountUID);
-				}
-			}
-		}).start();
+	/**
+	 * Schedules an update of the widgets affected by changes to the transaction
+	 * @param context Application context
+	 * @param transaction Transaction which was created, modified or is about to be deleted
+	 */
+	public static void updateWidgetsForTransaction(Context context, Transaction transaction){
+		Set<String> accountUIDs = new HashSet<>();
+		for (Split split : transaction.getSplits()) {
+			accountUIDs.add(split.getAccountUID());
+		}
+		updateWidgetsForAccounts(context, accountUIDs);
 	}
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.homescreen;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DataChangeBus;
+import org.gnucash.android.db.DataChangeEvent;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.receivers.TransactionAppWidgetProvider;
+import org.gnucash.android.ui.common.UxArgument;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Schedules updates of the home screen widgets.
+ * <p>Update requests are debounced so that a burst of database changes (e.g. a bulk move of transactions)
+ * results in a single update pass. Only widgets whose account is affected by a change are redrawn,
+ * i.e. widgets showing the changed account or one of its ancestors.</p>
+ * <p>Account balances displayed in the widgets are cached until a change to the account sub-tree
+ * is reported through {@link #scheduleUpdate(Collection)} or {@link #scheduleUpdateAll()}.
+ * The updater listens to the {@link DataChangeBus} for such changes, but only while widgets exist</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class WidgetUpdater implements DataChangeBus.Listener {
+
+    private static final String LOG_TAG = "WidgetUpdater";
+
+    /**
+     * Time in milliseconds to wait for further changes before updating the widgets
+     */
+    private static final long UPDATE_DELAY_MILLIS = 500;
+
+    private static WidgetUpdater sInstance;
+
+    private final Context mContext;
+
+    private final Handler mHandler;
+
+    /**
+     * Cache of account balances (including sub-accounts) indexed by account UID
+     */
+    private final Map<String, Money> mBalanceCache = new ConcurrentHashMap<>();
+
+    /**
+     * UIDs of accounts which have been modified since the last update pass
+     */
+    private final Set<String> mChangedAccountUIDs = new HashSet<>();
+
+    /**
+     * Flag indicating that all widgets should be recomputed on the next update pass
+     */
+    private boolean mUpdateAll = false;
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            performUpdate();
+        }
+    };
+
+    private WidgetUpdater(Context context) {
+        mContext = context.getApplicationContext();
+        HandlerThread handlerThread = new HandlerThread("widget-updater", Process.THREAD_PRIORITY_BACKGROUND);
+        handlerThread.start();
+        mHandler = new Handler(handlerThread.getLooper());
+    }
+
+    /**
+     * Returns the application-wide widget updater
+     * @param context Context
+     * @return WidgetUpdater instance
+     */
+    public static synchronized WidgetUpdater getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new WidgetUpdater(context);
+        return sInstance;
+    }
+
+    /**
+     * Starts listening to the {@link DataChangeBus} if any widgets are on the home screen.
+     * <p>Without a listener, database writes skip looking up the affected accounts</p>
+     */
+    public void startListeningIfWidgetsExist() {
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(mContext);
+        ComponentName componentName = new ComponentName(mContext, TransactionAppWidgetProvider.class);
+        if (widgetManager.getAppWidgetIds(componentName).length > 0)
+            startListening();
+    }
+
+    /**
+     * Starts listening to the {@link DataChangeBus}, e.g. when the first widget is added.
+     * <p>Changes made while not listening were missed, so all cached balances are discarded</p>
+     */
+    public void startListening() {
+        mBalanceCache.clear();
+        DataChangeBus.getInstance().register(this);
+    }
+
+    /**
+     * Stops listening to the {@link DataChangeBus}, e.g. when the last widget has been removed
+     */
+    public void stopListening() {
+        DataChangeBus.getInstance().unregister(this);
+        mBalanceCache.clear();
+    }
+
+    /**
+     * Schedules an update of the widgets affected by changes to the accounts with UIDs {@code accountUIDs}.
+     * <p>The balances of the accounts and all their ancestors are invalidated</p>
+     * @param accountUIDs GUIDs of accounts whose transactions were modified
+     */
+    public void scheduleUpdate(@NonNull Collection<String> accountUIDs) {
+        synchronized (this) {
+            mChangedAccountUIDs.addAll(accountUIDs);
+        }
+        reschedule();
+    }
+
+    /**
+     * Schedules an update of all widgets and clears all cached balances.
+     * <p>Should be used when the changes cannot be attributed to specific accounts,
+     * e.g. deleting all transactions or changing the account hierarchy</p>
+     */
+    public void scheduleUpdateAll() {
+        synchronized (this) {
+            mUpdateAll = true;
+        }
+        reschedule();
+    }
+
+    @Override
+    public void onDataChanged(@NonNull DataChangeEvent event) {
+        if (event.isAllAccounts() || event.affectsTable(DatabaseSchema.AccountEntry.TABLE_NAME)) {
+            //account names and the hierarchy are displayed too
+            scheduleUpdateAll();
+        } else if (event.affectsAnyTable(DatabaseSchema.TransactionEntry.TABLE_NAME, DatabaseSchema.SplitEntry.TABLE_NAME)
+                && !event.getAccountUIDs().isEmpty()) {
+            scheduleUpdate(event.getAccountUIDs());
+        }
+    }
+
+    private void reschedule() {
+        mHandler.removeCallbacks(mUpdateRunnable);
+        mHandler.postDelayed(mUpdateRunnable, UPDATE_DELAY_MILLIS);
+    }
+
+    /**
+     * Returns the balance of the account, including its sub-accounts, reading it from the cache if possible
+     * @param accountUID GUID of the account
+     * @return Balance of the account
+     */
+    public Money getAccountBalance(@NonNull String accountUID) {
+        Money balance = mBalanceCache.get(accountUID);
+        if (balance == null) {
+            balance = AccountsDbAdapter.getInstance().getAccountBalance(accountUID, -1, System.currentTimeMillis());
+            mBalanceCache.put(accountUID, balance);
+        }
+        return balance;
+    }
+
+    /**
+     * Removes the cached balances of the accounts and all their ancestors
+     * @param accountUIDs GUIDs of changed accounts
+     * @return Set of GUIDs of all accounts whose balance may have changed
+     */
+    private Set<String> invalidate(Set<String> accountUIDs) {
+        AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
+        Set<String> affectedAccountUIDs = new HashSet<>();
+        for (String accountUID : accountUIDs) {
+            String uid = accountUID;
+            while (uid != null && affectedAccountUIDs.add(uid)) {
+                mBalanceCache.remove(uid);
+                uid = accountsDbAdapter.getParentAccountUID(uid);
+            }
+        }
+        return affectedAccountUIDs;
+    }
+
+    /**
+     * Recomputes and redraws the widgets affected by the changes collected since the last update
+     */
+    private void performUpdate() {
+        //the changes stay queued, all widgets are updated once the upgrade is complete
+        if (GnuCashApplication.isDatabaseUpgradePending())
+            return;
+
+        Set<String> changedAccountUIDs;
+        boolean updateAll;
+        synchronized (this) {
+            changedAccountUIDs = new HashSet<>(mChangedAccountUIDs);
+            mChangedAccountUIDs.clear();
+            updateAll = mUpdateAll;
+            mUpdateAll = false;
+        }
+
+        AppWidgetManager widgetManager = AppWidgetManager.getInstance(mContext);
+        ComponentName componentName = new ComponentName(mContext, TransactionAppWidgetProvider.class);
+        int[] appWidgetIds = widgetManager.getAppWidgetIds(componentName);
+        if (appWidgetIds.length == 0)
+            return;
+
+        Set<String> affectedAccountUIDs = null;
+        if (updateAll) {
+            mBalanceCache.clear();
+        } else {
+            affectedAccountUIDs = invalidate(changedAccountUIDs);
+        }
+
+        SharedPreferences defaultSharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        int updateCount = 0;
+        for (int widgetId : appWidgetIds) {
+            String accountUID = defaultSharedPrefs.getString(UxArgument.SELECTED_ACCOUNT_UID + widgetId, null);
+            if (accountUID == null)
+                continue;
+
+            if (updateAll || affectedAccountUIDs.contains(accountUID)) {
+                try {
+                    WidgetConfigurationActivity.updateWidget(mContext, widgetId, accountUID);
+                    updateCount++;
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Error updating widget " + widgetId + ": " + e.getMessage());
+                    Crashlytics.logException(e);
+                }
+            }
+        }
+        Log.i(LOG_TAG, "Updated " + updateCount + " of " + appWidgetIds.length + " widgets");
+    }
+}
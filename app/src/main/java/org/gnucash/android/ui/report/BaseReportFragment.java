@@ -17,9 +17,12 @@ package org.gnucash.android.ui.report;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.LayoutRes;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.v4.app.Fragment;
@@ -29,6 +32,7 @@ import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.View;
+import android.util.Log;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
@@ -38,6 +42,9 @@ import com.github.mikephil.charting.listener.OnChartValueSelectedListener;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DataChangeBus;
+import org.gnucash.android.db.DataChangeEvent;
+import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
 import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.Commodity;
@@ -58,7 +65,8 @@ import butterknife.ButterKnife;
  * This base activity will automatically call {@link ButterKnife#bind(View)} for the layout.
  * </p>
  * <p>Any custom information to be initialized for the report should be done in {@link #onActivityCreated(Bundle)} in implementing classes.
- * The report is then generated in {@link #onStart()}
+ * The report is then generated in {@link #onStart()}, and generated again only if the report options
+ * or the underlying data (as published to the {@link DataChangeBus}) change
  * </p>
  * @author Ngewi Fet <ngewif@gmail.com>
  */
@@ -105,7 +113,50 @@ public abstract class BaseReportFragment extends Fragment implements
 
     @Nullable @Bind(R.id.selected_chart_slice) protected TextView mSelectedValueTextView;
 
-    private AsyncTask<Void, Void, Void> mReportGenerator;
+    private ReportExecutor.ReportTask mReportGenerator;
+
+    /**
+     * Time (from {@link SystemClock#elapsedRealtime()}) of the last request to refresh the report.
+     * Used to measure the latency until the report is displayed
+     */
+    private long mRefreshRequestTime;
+
+    /**
+     * Flag indicating that the displayed report matches the current data.
+     * Cleared when a new view is created or the data of the report changes
+     */
+    private volatile boolean mReportUpToDate = false;
+
+    /**
+     * Flag indicating that the fragment is started, i.e. changes to the data should be displayed immediately
+     */
+    private boolean mStarted = false;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mDataChangedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mStarted && !mReportUpToDate)
+                refresh();
+        }
+    };
+
+    /**
+     * Marks the report as outdated when accounts, transactions or prices change.
+     * Called on the thread which made the changes
+     */
+    private final DataChangeBus.Listener mDataChangeListener = new DataChangeBus.Listener() {
+        @Override
+        public void onDataChanged(@NonNull DataChangeEvent event) {
+            if (event.affectsAnyTable(DatabaseSchema.AccountEntry.TABLE_NAME, DatabaseSchema.TransactionEntry.TABLE_NAME,
+                    DatabaseSchema.SplitEntry.TABLE_NAME, DatabaseSchema.PriceEntry.TABLE_NAME,
+                    DatabaseSchema.CommodityEntry.TABLE_NAME)) {
+                mReportUpToDate = false;
+                mMainHandler.post(mDataChangedRunnable);
+            }
+        }
+    };
 
     /**
      * Return the title of this report
@@ -148,6 +199,8 @@ public abstract class BaseReportFragment extends Fragment implements
      * <p>This method should not call any methods which modify the UI as it will be run in a background thread
      * <br>Put any code to update the UI in {@link #displayReport()}
      * </p>
+     * <p>Implementations should call {@link #checkCancelled()} regularly in long running loops
+     * so that outdated report requests can be abandoned early</p>
      */
     protected abstract void generateReport();
 
@@ -168,6 +221,7 @@ public abstract class BaseReportFragment extends Fragment implements
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View view = inflater.inflate(getLayoutResource(), container, false);
         ButterKnife.bind(this, view);
+        mReportUpToDate = false;
         return view;
     }
 
@@ -192,7 +246,15 @@ public abstract class BaseReportFragment extends Fragment implements
     @Override
     public void onStart() {
         super.onStart();
-        refresh();
+        mStarted = true;
+        if (!mReportUpToDate)
+            refresh();
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        mStarted = false;
     }
 
     @Override
@@ -201,6 +263,7 @@ public abstract class BaseReportFragment extends Fragment implements
         mReportsActivity.setAppBarColor(getReportType().getTitleColor());
         mReportsActivity.toggleToolbarTitleVisibility();
         toggleBaseReportingOptionsVisibility();
+        ReportExecutor.getInstance().updatePriority(this, ReportExecutor.PRIORITY_VISIBLE);
     }
 
     @Override
@@ -210,13 +273,16 @@ public abstract class BaseReportFragment extends Fragment implements
             throw new RuntimeException("Report fragments can only be used with the ReportsActivity");
         else
             mReportsActivity = (ReportsActivity) getActivity();
+        DataChangeBus.getInstance().register(mDataChangeListener);
     }
 
     @Override
     public void onDetach() {
         super.onDetach();
-        if (mReportGenerator != null)
-            mReportGenerator.cancel(true);
+        DataChangeBus.getInstance().unregister(mDataChangeListener);
+        mMainHandler.removeCallbacks(mDataChangedRunnable);
+        ReportExecutor.getInstance().cancel(this);
+        mReportGenerator = null;
     }
 
     private void toggleBaseReportingOptionsVisibility() {
@@ -272,29 +338,50 @@ public abstract class BaseReportFragment extends Fragment implements
 
     @Override
     public void refresh() {
-        if (mReportGenerator != null)
-            mReportGenerator.cancel(true);
-
-        mReportGenerator = new AsyncTask<Void, Void, Void>() {
+        mRefreshRequestTime = SystemClock.elapsedRealtime();
+        mReportUpToDate = true; //changes made while the report is generated will trigger another refresh
+        mReportsActivity.getProgressBar().setVisibility(View.VISIBLE);
 
+        mReportGenerator = new ReportExecutor.ReportTask() {
             @Override
-            protected void onPreExecute() {
-                mReportsActivity.getProgressBar().setVisibility(View.VISIBLE);
-            }
-
-            @Override
-            protected Void doInBackground(Void... params) {
+            protected void doInBackground() {
                 generateReport();
-                return null;
             }
 
             @Override
-            protected void onPostExecute(Void aVoid) {
+            protected void onPostExecute() {
+                if (mReportGenerator != this || !isAdded())
+                    return;
+
                 displayReport();
                 mReportsActivity.getProgressBar().setVisibility(View.GONE);
+                mReportGenerator = null;
+                Log.d(TAG, "Report displayed " + (SystemClock.elapsedRealtime() - mRefreshRequestTime)
+                        + "ms after last refresh request");
+            }
+
+            @Override
+            protected void onCancelled() {
+                if (mReportGenerator == this && isAdded()) {
+                    mReportsActivity.getProgressBar().setVisibility(View.GONE);
+                    mReportGenerator = null;
+                    mReportUpToDate = false;
+                }
             }
         };
-        mReportGenerator.execute();
+
+        int priority = mReportsActivity.isReportVisible(this)
+                ? ReportExecutor.PRIORITY_VISIBLE : ReportExecutor.PRIORITY_BACKGROUND;
+        ReportExecutor.getInstance().submit(this, priority, mReportGenerator);
+    }
+
+    /**
+     * Aborts report generation if a newer request for this report has been made.
+     * <p>Should be called from {@link #generateReport()} inside loops over accounts or time periods</p>
+     * @throws java.util.concurrent.CancellationException if the report generation was cancelled
+     */
+    protected void checkCancelled() {
+        ReportExecutor.checkCancelled();
     }
 
     /**
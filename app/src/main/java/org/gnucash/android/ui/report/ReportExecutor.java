@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.report;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.crashlytics.android.Crashlytics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes report generation tasks in the background.
+ * <p>There is a single worker thread, and pending tasks are ordered by priority so that the report
+ * which is currently visible is computed before any off-screen reports.
+ * Requests are coalesced per key (usually the report fragment): submitting a new task for a key
+ * cancels any task already pending or running for that key.</p>
+ * <p>Cancellation is cooperative. Long running report computations should call
+ * {@link #checkCancelled()} inside their aggregation loops to abandon work which is no longer needed</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class ReportExecutor {
+
+    private static final String LOG_TAG = "ReportExecutor";
+
+    /**
+     * Priority of tasks for the report which is currently displayed
+     */
+    public static final int PRIORITY_VISIBLE = 0;
+
+    /**
+     * Priority of tasks for reports which are not currently displayed
+     */
+    public static final int PRIORITY_BACKGROUND = 10;
+
+    private static ReportExecutor sInstance;
+
+    /**
+     * Task which is currently being executed on the worker thread
+     */
+    private static final ThreadLocal<ReportTask> sCurrentTask = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Tasks which have been submitted and not yet completed, indexed by their key
+     */
+    private final Map<Object, ReportTask> mActiveTasks = new HashMap<>();
+
+    private ReportExecutor() {
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "report-generator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the application-wide report executor
+     * @return ReportExecutor instance
+     */
+    public static synchronized ReportExecutor getInstance() {
+        if (sInstance == null)
+            sInstance = new ReportExecutor();
+        return sInstance;
+    }
+
+    /**
+     * Submits a task for execution.
+     * <p>Any task previously submitted with the same {@code key} which has not yet completed is cancelled.</p>
+     * @param key Key used for coalescing requests e.g. the report fragment
+     * @param priority Priority of the task. Lower values are executed first
+     * @param task Report task to be executed
+     */
+    public void submit(@NonNull Object key, int priority, @NonNull ReportTask task) {
+        task.mKey = key;
+        task.mPriority = priority;
+        task.mSequence = mSequence.incrementAndGet();
+        synchronized (mActiveTasks) {
+            ReportTask previous = mActiveTasks.put(key, task);
+            if (previous != null) {
+                previous.cancel();
+                mExecutor.remove(previous);
+            }
+        }
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Cancels any pending or running task with the given key
+     * @param key Key with which the task was submitted
+     */
+    public void cancel(@NonNull Object key) {
+        synchronized (mActiveTasks) {
+            ReportTask task = mActiveTasks.remove(key);
+            if (task != null) {
+                task.cancel();
+                mExecutor.remove(task);
+            }
+        }
+    }
+
+    /**
+     * Changes the priority of a task which is still waiting in the queue.
+     * <p>Has no effect if the task is already running or has completed</p>
+     * @param key Key with which the task was submitted
+     * @param priority New priority for the task
+     */
+    public void updatePriority(@NonNull Object key, int priority) {
+        synchronized (mActiveTasks) {
+            ReportTask task = mActiveTasks.get(key);
+            if (task == null || task.mPriority == priority)
+                return;
+
+            //re-inserting the task is required for the queue to reorder it
+            if (mExecutor.remove(task)) {
+                task.mPriority = priority;
+                mExecutor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Throws a {@link CancellationException} if the report task running on the current thread has been cancelled.
+     * <p>Has no effect when called outside of a report task</p>
+     * @throws CancellationException if the current task was cancelled
+     */
+    public static void checkCancelled() throws CancellationException {
+        ReportTask task = sCurrentTask.get();
+        if (task != null && task.isCancelled())
+            throw new CancellationException("Report generation cancelled");
+    }
+
+    private void onTaskFinished(ReportTask task) {
+        synchronized (mActiveTasks) {
+            if (mActiveTasks.get(task.mKey) == task)
+                mActiveTasks.remove(task.mKey);
+        }
+    }
+
+    /**
+     * Unit of work for the report executor.
+     * <p>{@link #doInBackground()} is run on the worker thread and {@link #onPostExecute()} on the main thread,
+     * the latter only if the task was not cancelled in the meantime</p>
+     */
+    public static abstract class ReportTask implements Runnable, Comparable<ReportTask> {
+        private Object mKey;
+        private int mPriority;
+        private long mSequence;
+        private volatile boolean mCancelled = false;
+
+        /**
+         * Performs the computation in a background thread
+         */
+        protected abstract void doInBackground();
+
+        /**
+         * Called on the main thread after the computation completes, if it was not cancelled
+         */
+        protected abstract void onPostExecute();
+
+        /**
+         * Called on the main thread if the task was cancelled or failed, instead of {@link #onPostExecute()}.
+         * <p>The base implementation does nothing</p>
+         */
+        protected void onCancelled() {
+            //nothing to see here, move along
+        }
+
+        /**
+         * Marks this task as cancelled.
+         * A running task stops at the next call to {@link ReportExecutor#checkCancelled()}
+         */
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public final void run() {
+            final ReportExecutor executor = getInstance();
+            if (mCancelled) {
+                executor.onTaskFinished(this);
+                return;
+            }
+
+            sCurrentTask.set(this);
+            try {
+                doInBackground();
+            } catch (CancellationException e) {
+                Log.d(LOG_TAG, "Report task cancelled: " + mKey);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error generating report: " + e.getMessage());
+                Crashlytics.logException(e);
+                mCancelled = true;
+            } finally {
+                sCurrentTask.remove();
+            }
+
+            executor.mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    executor.onTaskFinished(ReportTask.this);
+                    if (mCancelled)
+                        onCancelled();
+                    else
+                        onPostExecute();
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(@NonNull ReportTask another) {
+            if (mPriority != another.mPriority)
+                return mPriority < another.mPriority ? -1 : 1;
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+}
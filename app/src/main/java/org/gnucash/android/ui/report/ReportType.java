@@ -22,6 +22,7 @@ import android.support.annotation.ColorRes;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.ui.report.barchart.StackedBarChartFragment;
+import org.gnucash.android.ui.report.linechart.CashFlowForecastFragment;
 import org.gnucash.android.ui.report.linechart.CashFlowLineChartFragment;
 import org.gnucash.android.ui.report.piechart.PieChartFragment;
 import org.gnucash.android.ui.report.sheet.BalanceSheetFragment;
@@ -54,6 +55,7 @@ public enum ReportType {
                 break;
             case 2:
                 mReportTypeMap.put(context.getString(R.string.title_cash_flow_report), CashFlowLineChartFragment.class);
+                mReportTypeMap.put(context.getString(R.string.title_cash_flow_forecast_report), CashFlowForecastFragment.class);
                 break;
             case 3:
                 mReportTypeMap.put(context.getString(R.string.title_balance_sheet_report), BalanceSheetFragment.class);
@@ -188,6 +188,15 @@ public class ReportsActivity extends BaseDrawerActivity implements AdapterView.O
         fragmentTransaction.commit();
     }
 
+    /**
+     * Returns {@code true} if {@code fragment} is the report currently displayed in this activity
+     * @param fragment Report fragment
+     * @return {@code true} if the report is visible, {@code false} otherwise
+     */
+    public boolean isReportVisible(BaseReportFragment fragment) {
+        return getSupportFragmentManager().findFragmentById(R.id.fragment_container) == fragment;
+    }
+
     /**
      * Update the report type spinner
      */
@@ -179,6 +179,7 @@ public class ReportsOverviewFragment extends BaseReportFragment {
         List<String> labels = new ArrayList<>();
         List<Integer> colors = new ArrayList<>();
         for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
+            checkCancelled();
             if (account.getAccountType() == AccountType.EXPENSE
                     && !account.isPlaceholderAccount()
                     && account.getCommodity().equals(mCommodity)) {
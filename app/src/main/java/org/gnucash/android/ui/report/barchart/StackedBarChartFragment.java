@@ -131,6 +131,7 @@ public class StackedBarChartFragment extends BaseReportFragment {
         int count = getDateDiff(new LocalDateTime(getStartDate(mAccountType).toDate().getTime()),
                 new LocalDateTime(getEndDate(mAccountType).toDate().getTime()));
         for (int i = 0; i <= count; i++) {
+            checkCancelled();
             long start = 0;
             long end = 0;
             switch (mGroupInterval) {
@@ -159,6 +160,7 @@ public class StackedBarChartFragment extends BaseReportFragment {
             }
             List<Float> stack = new ArrayList<>();
             for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
+                checkCancelled();
                 if (account.getAccountType() == mAccountType
                         && !account.isPlaceholderAccount()
                         && account.getCommodity().equals(mCommodity)) {
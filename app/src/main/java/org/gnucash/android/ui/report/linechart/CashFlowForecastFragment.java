@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.ui.report.linechart;
+
+import android.graphics.Color;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.components.Legend;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.highlight.Highlight;
+import com.github.mikephil.charting.utils.LargeValueFormatter;
+
+import org.gnucash.android.R;
+import org.gnucash.android.db.CashFlowForecast;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.ui.report.BaseReportFragment;
+import org.gnucash.android.ui.report.ReportType;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import butterknife.Bind;
+
+/**
+ * Line chart of the balances of the top-level asset and liability accounts projected
+ * from the scheduled transactions over the next year
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see CashFlowForecast
+ */
+public class CashFlowForecastFragment extends BaseReportFragment {
+
+    private static final String X_AXIS_PATTERN = "dd MMM";
+    private static final String SELECTED_BALANCE_PATTERN = "%s - %s: %.2f";
+    private static final int FORECAST_DAYS = 365;
+    private static final int ANIMATION_DURATION = 3000;
+    private static final int[] COLORS = {
+            Color.parseColor("#68F1AF"), Color.parseColor("#cc1f09"), Color.parseColor("#EE8600"),
+            Color.parseColor("#1469EB"), Color.parseColor("#B304AD"),
+    };
+    private static final List<AccountType> FORECAST_ACCOUNT_TYPES = Arrays.asList(AccountType.ASSET,
+            AccountType.BANK, AccountType.CASH, AccountType.CREDIT, AccountType.LIABILITY);
+
+    private AccountsDbAdapter mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+    private LineData mLineData;
+
+    @Bind(R.id.line_chart) LineChart mChart;
+
+    @Override
+    public int getLayoutResource() {
+        return R.layout.fragment_line_chart;
+    }
+
+    @Override
+    public int getTitle() {
+        return R.string.title_cash_flow_forecast_report;
+    }
+
+    @Override
+    public ReportType getReportType() {
+        return ReportType.LINE_CHART;
+    }
+
+    @Override
+    public boolean requiresAccountTypeOptions() {
+        return false;
+    }
+
+    @Override
+    public boolean requiresTimeRangeOptions() {
+        return false;
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        mChart.setOnChartValueSelectedListener(this);
+        mChart.setDescription("");
+        mChart.getXAxis().setDrawGridLines(false);
+        mChart.getAxisRight().setEnabled(false);
+        mChart.getAxisLeft().enableGridDashedLine(4.0f, 4.0f, 0);
+        mChart.getAxisLeft().setValueFormatter(new LargeValueFormatter(mCommodity.getSymbol()));
+
+        Legend legend = mChart.getLegend();
+        legend.setPosition(Legend.LegendPosition.BELOW_CHART_CENTER);
+        legend.setTextSize(16);
+        legend.setForm(Legend.LegendForm.CIRCLE);
+    }
+
+    /**
+     * Returns the top-level accounts in the report currency whose balances are forecast
+     */
+    private List<Account> getForecastAccounts() {
+        String rootAccountUID = mAccountsDbAdapter.getOrCreateGnuCashRootAccountUID();
+        List<Account> accounts = new ArrayList<>();
+        for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
+            if (rootAccountUID.equals(account.getParentUID())
+                    && FORECAST_ACCOUNT_TYPES.contains(account.getAccountType())
+                    && account.getCommodity().equals(mCommodity)) {
+                accounts.add(account);
+                if (accounts.size() == COLORS.length)
+                    break;
+            }
+        }
+        return accounts;
+    }
+
+    @Override
+    protected void generateReport() {
+        List<Account> accounts = getForecastAccounts();
+        checkCancelled();
+
+        //one sample at the end of each day
+        LocalDate date = new LocalDate();
+        long[] sampleTimes = new long[FORECAST_DAYS];
+        List<String> xValues = new ArrayList<>(FORECAST_DAYS);
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            xValues.add(date.toString(X_AXIS_PATTERN));
+            date = date.plusDays(1);
+            sampleTimes[day] = date.toDateTimeAtStartOfDay().getMillis() - 1;
+        }
+
+        List<String> accountUIDs = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            accountUIDs.add(account.getUID());
+        }
+        CashFlowForecast forecast = CashFlowForecast.compute(accountUIDs, sampleTimes);
+        checkCancelled();
+
+        List<LineDataSet> dataSets = new ArrayList<>();
+        for (Account account : accounts) {
+            float[] balances = forecast.getBalanceSeries(account.getUID());
+            List<Entry> entries = new ArrayList<>(balances.length);
+            for (int day = 0; day < balances.length; day++) {
+                entries.add(new Entry(balances[day], day));
+            }
+            LineDataSet set = new LineDataSet(entries, account.getName());
+            set.setDrawCircles(false);
+            set.setDrawValues(false);
+            set.setLineWidth(2);
+            set.setColor(COLORS[dataSets.size()]);
+            dataSets.add(set);
+        }
+        mLineData = dataSets.isEmpty() ? null : new LineData(xValues, dataSets);
+    }
+
+    @Override
+    protected void displayReport() {
+        if (mLineData == null) {
+            mChart.clear();
+            mChart.setTouchEnabled(false);
+            mSelectedValueTextView.setText(getResources().getString(R.string.label_chart_no_data));
+        } else {
+            mChart.setData(mLineData);
+            mChart.setTouchEnabled(true);
+            mChart.animateX(ANIMATION_DURATION);
+        }
+        mChart.invalidate();
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        // hide menu items which do not apply to the forecast
+        menu.findItem(R.id.menu_toggle_average_lines).setVisible(false);
+        menu.findItem(R.id.menu_order_by_size).setVisible(false);
+        menu.findItem(R.id.menu_toggle_labels).setVisible(false);
+        menu.findItem(R.id.menu_percentage_mode).setVisible(false);
+        menu.findItem(R.id.menu_group_other_slice).setVisible(false);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.isCheckable())
+            item.setChecked(!item.isChecked());
+        switch (item.getItemId()) {
+            case R.id.menu_toggle_legend:
+                mChart.getLegend().setEnabled(!mChart.getLegend().isEnabled());
+                mChart.invalidate();
+                return true;
+
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    @Override
+    public void onValueSelected(Entry e, int dataSetIndex, Highlight h) {
+        if (e == null) return;
+        String label = mChart.getData().getXVals().get(e.getXIndex());
+        String account = mChart.getData().getDataSetByIndex(dataSetIndex).getLabel();
+        mSelectedValueTextView.setText(String.format(SELECTED_BALANCE_PATTERN, label, account, e.getVal()));
+    }
+}
@@ -161,6 +161,7 @@ public class CashFlowLineChartFragment extends BaseReportFragment {
 
         List<LineDataSet> dataSets = new ArrayList<>();
         for (AccountType accountType : accountTypeList) {
+            checkCancelled();
             LineDataSet set = new LineDataSet(getEntryList(accountType), accountType.toString());
             set.setDrawFilled(true);
             set.setLineWidth(2);
@@ -229,6 +230,7 @@ public class CashFlowLineChartFragment extends BaseReportFragment {
         int count = getDateDiff(earliest, latest);
         List<Entry> values = new ArrayList<>(count + 1);
         for (int i = 0; i <= count; i++) {
+            checkCancelled();
             long start = 0;
             long end = 0;
             switch (mGroupInterval) {
@@ -149,6 +149,7 @@ public class PieChartFragment extends BaseReportFragment {
         List<String> labels = new ArrayList<>();
         List<Integer> colors = new ArrayList<>();
         for (Account account : mAccountsDbAdapter.getSimpleAccountList()) {
+            checkCancelled();
             if (account.getAccountType() == mAccountType
                     && !account.isPlaceholderAccount()
                     && account.getCommodity().equals(mCommodity)) {
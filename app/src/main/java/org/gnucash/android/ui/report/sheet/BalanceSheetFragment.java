@@ -104,6 +104,7 @@ public class BalanceSheetFragment extends BaseReportFragment {
     @Override
     protected void generateReport() {
         mAssetsBalance = mAccountsDbAdapter.getAccountBalance(mAssetAccountTypes, -1, System.currentTimeMillis());
+        checkCancelled();
         mLiabilitiesBalance = mAccountsDbAdapter.getAccountBalance(mLiabilityAccountTypes, -1, System.currentTimeMillis());
     }
 
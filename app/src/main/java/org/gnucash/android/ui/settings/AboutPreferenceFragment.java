@@ -25,6 +25,8 @@ import android.support.v7.preference.PreferenceFragmentCompat;
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.ui.account.AccountsActivity;
+import org.gnucash.android.ui.settings.dialog.PerformanceMetricsDialogFragment;
+import org.gnucash.android.util.MetricsRegistry;
 
 
 /**
@@ -37,6 +39,20 @@ public class AboutPreferenceFragment extends PreferenceFragmentCompat{
 	@Override
 	public void onCreatePreferences(Bundle bundle, String s) {
 		addPreferencesFromResource(R.xml.fragment_about_preferences);
+
+		Preference metricsPreference = findPreference(getString(R.string.key_performance_metrics));
+		if (!MetricsRegistry.isEnabled()) { //the metrics screen is hidden unless metrics are collected
+			getPreferenceScreen().removePreference(metricsPreference);
+		} else {
+			metricsPreference.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+				@Override
+				public boolean onPreferenceClick(Preference preference) {
+					PerformanceMetricsDialogFragment.newInstance()
+							.show(getFragmentManager(), "performance_metrics_dialog");
+					return true;
+				}
+			});
+		}
 	}
 
 	@Override
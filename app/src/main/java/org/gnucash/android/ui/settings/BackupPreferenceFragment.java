@@ -28,6 +28,7 @@ import android.os.Bundle;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.CheckBoxPreference;
+import android.support.v7.preference.ListPreference;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceManager;
@@ -47,8 +48,8 @@ import com.google.android.gms.drive.MetadataChangeSet;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.export.BackupManager;
 import org.gnucash.android.export.Exporter;
-import org.gnucash.android.export.xml.GncXmlExporter;
 import org.gnucash.android.importer.ImportAsyncTask;
 import org.gnucash.android.ui.settings.dialog.OwnCloudDialogFragment;
 
@@ -137,6 +138,13 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
         }
         pref.setOnPreferenceChangeListener(this);
 
+		pref = findPreference(getString(R.string.key_backup_format));
+		CharSequence backupFormat = ((ListPreference) pref).getEntry();
+		if (backupFormat != null){
+			pref.setSummary(backupFormat);
+		}
+		pref.setOnPreferenceChangeListener(this);
+
 		pref = findPreference(getString(R.string.key_restore_backup));
 		pref.setOnPreferenceClickListener(this);
 
@@ -181,7 +189,7 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
 		}
 
 		if (key.equals(getString(R.string.key_create_backup))){
-			boolean result = GncXmlExporter.createBackup();
+			boolean result = BackupManager.createBackup();
 			int msg = result ? R.string.toast_backup_successful : R.string.toast_backup_failed;
 			Toast.makeText(getActivity(), msg, Toast.LENGTH_SHORT).show();
 		}
@@ -215,6 +223,14 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
                 preference.setSummary(R.string.summary_default_export_format);
             }
         }
+
+		if (preference.getKey().equals(getString(R.string.key_backup_format))){
+			ListPreference listPreference = (ListPreference) preference;
+			int index = listPreference.findIndexOfValue(newValue.toString());
+			if (index >= 0){
+				preference.setSummary(listPreference.getEntries()[index]);
+			}
+		}
 		return true;
 	}
 
@@ -352,7 +368,7 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
 	 * Opens a dialog for a user to select a backup to restore and then restores the backup
 	 */
 	private void restoreBackup() {
-		Log.i("Settings", "Opening GnuCash XML backups for restore");
+		Log.i("Settings", "Opening backups for restore");
 		String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
 		File[] backupFiles = new File(Exporter.getBackupFolderPath(bookUID)).listFiles();
 		if (backupFiles == null || backupFiles.length == 0){
@@ -378,10 +394,11 @@ public class BackupPreferenceFragment extends PreferenceFragmentCompat implement
 		final DateFormat dateFormatter = SimpleDateFormat.getDateTimeInstance();
 		for (File backupFile : sortedBackupFiles) {
 			long time = Exporter.getExportTime(backupFile.getName());
-			if (time > 0)
-				arrayAdapter.add(dateFormatter.format(new Date(time)));
-			else //if no timestamp was found in the filename, just use the name
-				arrayAdapter.add(backupFile.getName());
+			String label = time > 0 ? dateFormatter.format(new Date(time))
+					: backupFile.getName(); //if no timestamp was found in the filename, just use the name
+			if (BackupManager.isPeriodArchive(backupFile))
+				label = getString(R.string.label_period_archive, label);
+			arrayAdapter.add(label);
 		}
 
 		AlertDialog.Builder restoreDialogBuilder =  new AlertDialog.Builder(getActivity());
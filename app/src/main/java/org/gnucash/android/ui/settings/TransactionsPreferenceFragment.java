@@ -16,21 +16,38 @@
 
 package org.gnucash.android.ui.settings;
 
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.SharedPreferences;
+import android.database.SQLException;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.SwitchPreferenceCompat;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.codetroopers.betterpickers.calendardatepicker.CalendarDatePickerDialogFragment;
+import com.crashlytics.android.Crashlytics;
 
 import org.gnucash.android.R;
 import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.PeriodCloser;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 import org.gnucash.android.ui.settings.dialog.DeleteAllTransactionsConfirmationDialog;
 
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Calendar;
 import java.util.Currency;
+import java.util.GregorianCalendar;
 import java.util.List;
 
 /**
@@ -38,7 +55,8 @@ import java.util.List;
  * @author Ngewi Fet <ngewif@gmail.com>
  *
  */
-public class TransactionsPreferenceFragment extends PreferenceFragmentCompat implements Preference.OnPreferenceChangeListener {
+public class TransactionsPreferenceFragment extends PreferenceFragmentCompat implements Preference.OnPreferenceChangeListener,
+		CalendarDatePickerDialogFragment.OnDateSetListener {
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -92,6 +110,45 @@ public class TransactionsPreferenceFragment extends PreferenceFragmentCompat imp
                 return true;
             }
         });
+
+		preference = findPreference(getString(R.string.key_close_period));
+		preference.setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(Preference preference) {
+				Calendar calendar = Calendar.getInstance();
+				CalendarDatePickerDialogFragment datePickerDialog = CalendarDatePickerDialogFragment.newInstance(
+						TransactionsPreferenceFragment.this, calendar.get(Calendar.YEAR),
+						calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
+				datePickerDialog.show(getFragmentManager(), "close_period_date_picker");
+				return true;
+			}
+		});
+	}
+
+	@Override
+	public void onDateSet(CalendarDatePickerDialogFragment dialog, int year, int monthOfYear, int dayOfMonth) {
+		//the selected day is included in the closed period
+		Calendar calendar = new GregorianCalendar(year, monthOfYear, dayOfMonth, 23, 59, 59);
+		calendar.set(Calendar.MILLISECOND, 999);
+		final long cutoffTimeMillis = calendar.getTimeInMillis();
+
+		String date = DateFormat.getDateInstance().format(calendar.getTime());
+		new AlertDialog.Builder(getActivity())
+				.setTitle(R.string.title_close_period)
+				.setMessage(getString(R.string.msg_close_period_confirmation, date))
+				.setPositiveButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						new ClosePeriodTask(getActivity()).execute(cutoffTimeMillis);
+					}
+				})
+				.setNegativeButton(R.string.alert_dialog_cancel, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						dialog.dismiss();
+					}
+				})
+				.show();
 	}
 
 	@Override
@@ -139,5 +196,51 @@ public class TransactionsPreferenceFragment extends PreferenceFragmentCompat imp
 		String localizedLabel = value.equals("DEBIT") ? getString(R.string.label_debit) : getActivity().getString(R.string.label_credit);
 		preference.setSummary(localizedLabel);
 	}
+
+	/**
+	 * Closes the period ending at the cut-off time passed to {@link #execute(Object[])} in the background
+	 * @see PeriodCloser#closePeriod(long)
+	 */
+	private static class ClosePeriodTask extends AsyncTask<Long, Void, Integer> {
+		private final Context mContext;
+		private ProgressDialog mProgressDialog;
+
+		ClosePeriodTask(Context context) {
+			mContext = context;
+		}
+
+		@Override
+		protected void onPreExecute() {
+			mProgressDialog = new ProgressDialog(mContext);
+			mProgressDialog.setIndeterminate(true);
+			mProgressDialog.setCancelable(false);
+			mProgressDialog.setMessage(mContext.getString(R.string.progress_closing_period));
+			mProgressDialog.show();
+		}
+
+		@Override
+		protected Integer doInBackground(Long... params) {
+			try {
+				return PeriodCloser.closePeriod(params[0]);
+			} catch (IOException | SQLException e) {
+				Log.e("ClosePeriodTask", "Error closing period: " + e.getMessage());
+				Crashlytics.logException(e);
+				return -1;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Integer count) {
+			if (mProgressDialog.isShowing())
+				mProgressDialog.dismiss();
+
+			if (count < 0) {
+				Toast.makeText(mContext, R.string.toast_error_closing_period, Toast.LENGTH_LONG).show();
+			} else {
+				Toast.makeText(mContext, mContext.getString(R.string.toast_period_closed, count), Toast.LENGTH_LONG).show();
+				WidgetConfigurationActivity.updateAllWidgets(mContext);
+			}
+		}
+	}
 	
 }
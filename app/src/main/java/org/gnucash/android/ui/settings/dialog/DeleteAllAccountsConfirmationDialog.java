@@ -27,8 +27,7 @@ import android.widget.Toast;
 
 import org.gnucash.android.R;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
-import org.gnucash.android.export.xml.GncXmlExporter;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
+import org.gnucash.android.export.BackupManager;
 
 /**
  * Confirmation dialog for deleting all accounts from the system.
@@ -53,10 +52,9 @@ public class DeleteAllAccountsConfirmationDialog extends DialogFragment {
                         new DialogInterface.OnClickListener() {
                             public void onClick(DialogInterface dialog, int whichButton) {
                                 Context context = getDialog().getContext();
-                                GncXmlExporter.createBackup();
+                                BackupManager.createBackup();
                                 AccountsDbAdapter.getInstance().deleteAllRecords();
                                 Toast.makeText(context, R.string.toast_all_accounts_deleted, Toast.LENGTH_SHORT).show();
-                                WidgetConfigurationActivity.updateAllWidgets(context);
                             }
                         }
                 )
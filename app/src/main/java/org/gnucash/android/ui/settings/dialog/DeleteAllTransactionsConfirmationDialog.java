@@ -31,9 +31,8 @@ import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
-import org.gnucash.android.export.xml.GncXmlExporter;
+import org.gnucash.android.export.BackupManager;
 import org.gnucash.android.model.Transaction;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -59,7 +58,7 @@ public class DeleteAllTransactionsConfirmationDialog extends DialogFragment {
                 .setPositiveButton(R.string.alert_dialog_ok_delete,
                         new DialogInterface.OnClickListener() {
                             public void onClick(DialogInterface dialog, int whichButton) {
-                                GncXmlExporter.createBackup();
+                                BackupManager.createBackup();
 
                                 Context context = getActivity();
                                 AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
@@ -76,7 +75,6 @@ public class DeleteAllTransactionsConfirmationDialog extends DialogFragment {
                                     transactionsDbAdapter.bulkAddRecords(openingBalances, DatabaseAdapter.UpdateMethod.insert);
                                 }
                                 Toast.makeText(context, R.string.toast_all_transactions_deleted, Toast.LENGTH_SHORT).show();
-                                WidgetConfigurationActivity.updateAllWidgets(getActivity());
                             }
                         }
 
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.settings.dialog;
+
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.R;
+import org.gnucash.android.export.Exporter;
+import org.gnucash.android.util.MetricsRegistry;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Debug dialog which displays the performance metrics collected by {@link MetricsRegistry}
+ * and allows saving them to a file on external storage
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class PerformanceMetricsDialogFragment extends DialogFragment {
+
+    public static PerformanceMetricsDialogFragment newInstance() {
+        return new PerformanceMetricsDialogFragment();
+    }
+
+    @Override
+    @NonNull public Dialog onCreateDialog(Bundle savedInstanceState) {
+        String metrics = MetricsRegistry.dump();
+        if (metrics.isEmpty())
+            metrics = getString(R.string.msg_no_performance_metrics);
+
+        return new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.title_performance_metrics)
+                .setMessage(metrics)
+                .setPositiveButton(R.string.btn_save_metrics_to_file, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        saveToFile(getActivity());
+                    }
+                })
+                .setNeutralButton(R.string.btn_reset_metrics, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        MetricsRegistry.reset();
+                    }
+                })
+                .setNegativeButton(R.string.alert_dialog_cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        dismiss();
+                    }
+                })
+                .create();
+    }
+
+    /**
+     * Writes the current metrics to a time-stamped file in the application folder on external storage
+     * @param context Context used to display the result
+     */
+    private static void saveToFile(Context context) {
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File file = new File(Exporter.BASE_FOLDER_PATH + "/metrics/metrics_" + timestamp + ".txt");
+        try {
+            MetricsRegistry.dump(file);
+            Toast.makeText(context, context.getString(R.string.toast_metrics_saved, file.getPath()),
+                    Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Log.e("PerformanceMetrics", "Error saving metrics: " + e.getMessage());
+            Crashlytics.logException(e);
+            Toast.makeText(context, R.string.toast_error_saving_metrics, Toast.LENGTH_SHORT).show();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.transaction;
+
+import android.graphics.Color;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.crashlytics.android.Crashlytics;
+import com.github.mikephil.charting.charts.LineChart;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+import com.github.mikephil.charting.highlight.Highlight;
+import com.github.mikephil.charting.listener.OnChartValueSelectedListener;
+import com.github.mikephil.charting.utils.LargeValueFormatter;
+
+import org.gnucash.android.R;
+import org.gnucash.android.db.BalanceHistory;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.ui.common.Refreshable;
+import org.gnucash.android.ui.common.UxArgument;
+import org.joda.time.LocalDate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+
+/**
+ * Line chart of the balance of an account, including its sub-accounts, from its first transaction until today.
+ * <p>The balance is sampled at most once per pixel of the chart width, so accounts with long histories
+ * do not create more chart entries than can be displayed</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ * @see AccountsDbAdapter#getBalanceHistory(String)
+ */
+public class BalanceHistoryFragment extends Fragment implements Refreshable, OnChartValueSelectedListener {
+
+    private static final String LOG_TAG = "BalanceHistoryFragment";
+    private static final String X_AXIS_PATTERN = "d MMM yyyy";
+    private static final String SELECTED_BALANCE_PATTERN = "%s: %.2f";
+    private static final int ANIMATION_DURATION = 1000;
+
+    private String mAccountUID;
+    private BalanceHistoryTask mTask;
+
+    @Bind(R.id.line_chart) LineChart mChart;
+    @Bind(R.id.selected_chart_slice) TextView mSelectedValueTextView;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mAccountUID = getArguments().getString(UxArgument.SELECTED_ACCOUNT_UID);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_line_chart, container, false);
+        ButterKnife.bind(this, view);
+        return view;
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+
+        mChart.setOnChartValueSelectedListener(this);
+        mChart.setDescription("");
+        mChart.getLegend().setEnabled(false);
+        mChart.getXAxis().setDrawGridLines(false);
+        mChart.getAxisRight().setEnabled(false);
+        mChart.getAxisLeft().enableGridDashedLine(4.0f, 4.0f, 0);
+        refresh();
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mTask != null)
+            mTask.cancel(true);
+        ButterKnife.unbind(this);
+    }
+
+    @Override
+    public void refresh() {
+        if (mChart == null)
+            return;
+        if (mTask != null)
+            mTask.cancel(true);
+        int width = mChart.getWidth() > 0 ? mChart.getWidth() : getResources().getDisplayMetrics().widthPixels;
+        mTask = new BalanceHistoryTask(width);
+        mTask.execute(mAccountUID);
+    }
+
+    @Override
+    public void refresh(String accountUID) {
+        mAccountUID = accountUID;
+        getArguments().putString(UxArgument.SELECTED_ACCOUNT_UID, accountUID);
+        refresh();
+    }
+
+    @Override
+    public void onValueSelected(Entry e, int dataSetIndex, Highlight h) {
+        if (e == null) return;
+        String label = mChart.getData().getXVals().get(e.getXIndex());
+        mSelectedValueTextView.setText(String.format(SELECTED_BALANCE_PATTERN, label, e.getVal()));
+    }
+
+    @Override
+    public void onNothingSelected() {
+        mSelectedValueTextView.setText(R.string.select_chart_to_view_details);
+    }
+
+    /**
+     * Computes the balance history and the chart data off the UI thread
+     */
+    private class BalanceHistoryTask extends AsyncTask<String, Void, LineData> {
+        private final int mMaxSamples;
+        private String mCurrencySymbol;
+
+        BalanceHistoryTask(int maxSamples) {
+            mMaxSamples = maxSamples;
+        }
+
+        @Override
+        protected LineData doInBackground(String... accountUIDs) {
+            BalanceHistory history;
+            try {
+                history = AccountsDbAdapter.getInstance().getBalanceHistory(accountUIDs[0]);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error computing the balance history", e);
+                Crashlytics.logException(e);
+                return null;
+            }
+            if (history.size() == 0 || isCancelled())
+                return null;
+            mCurrencySymbol = history.getCommodity().getSymbol();
+
+            long startTime = new LocalDate(history.getTime(0)).toDateTimeAtStartOfDay().getMillis();
+            long endTime = new LocalDate().plusDays(1).toDateTimeAtStartOfDay().getMillis() - 1;
+            long[] sampleTimes = BalanceHistory.getSampleTimes(startTime,
+                    Math.max(endTime, history.getTime(history.size() - 1)), mMaxSamples);
+            float[] balances = history.sample(sampleTimes);
+
+            List<String> xValues = new ArrayList<>(sampleTimes.length);
+            List<Entry> entries = new ArrayList<>(sampleTimes.length);
+            for (int sample = 0; sample < sampleTimes.length; sample++) {
+                xValues.add(new LocalDate(sampleTimes[sample]).toString(X_AXIS_PATTERN));
+                entries.add(new Entry(balances[sample], sample));
+            }
+            LineDataSet set = new LineDataSet(entries, "");
+            set.setDrawCircles(false);
+            set.setDrawValues(false);
+            set.setLineWidth(2);
+            set.setColor(Color.parseColor("#1469EB"));
+            set.setDrawFilled(true);
+            set.setFillColor(Color.parseColor("#1469EB"));
+            return new LineData(xValues, Collections.singletonList(set));
+        }
+
+        @Override
+        protected void onPostExecute(LineData lineData) {
+            if (mChart == null)
+                return;
+            if (lineData == null) {
+                mChart.clear();
+                mChart.setTouchEnabled(false);
+                mSelectedValueTextView.setText(R.string.label_chart_no_data);
+            } else {
+                mChart.getAxisLeft().setValueFormatter(new LargeValueFormatter(mCurrencySymbol));
+                mChart.setData(lineData);
+                mChart.setTouchEnabled(true);
+                mChart.animateX(ANIMATION_DURATION);
+                mSelectedValueTextView.setText(R.string.select_chart_to_view_details);
+            }
+            mChart.invalidate();
+        }
+    }
+}
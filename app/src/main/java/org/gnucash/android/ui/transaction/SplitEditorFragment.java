@@ -18,11 +18,10 @@ package org.gnucash.android.ui.transaction;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.res.Configuration;
-import android.database.Cursor;
 import android.inputmethodservice.KeyboardView;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v4.app.Fragment;
-import android.support.v4.widget.SimpleCursorAdapter;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.text.Editable;
@@ -43,11 +42,8 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-
 import org.gnucash.android.R;
-import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.AccountIndex;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
 import org.gnucash.android.model.AccountType;
@@ -60,12 +56,15 @@ import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.UxArgument;
 import org.gnucash.android.ui.transaction.dialog.TransferFundsDialogFragment;
+import org.gnucash.android.ui.util.dialog.AccountSearchDialog;
 import org.gnucash.android.ui.util.widget.CalculatorEditText;
 import org.gnucash.android.ui.util.widget.CalculatorKeyboard;
 import org.gnucash.android.ui.util.widget.TransactionTypeSwitch;
-import org.gnucash.android.util.QualifiedAccountNameCursorAdapter;
+import org.gnucash.android.util.AmountExpression;
+import org.gnucash.android.util.QualifiedAccountNameAdapter;
 
 import java.math.BigDecimal;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -84,8 +83,8 @@ public class SplitEditorFragment extends Fragment {
     @Bind(R.id.imbalance_textview)  TextView mImbalanceTextView;
 
     private AccountsDbAdapter mAccountsDbAdapter;
-    private Cursor mCursor;
-    private SimpleCursorAdapter mCursorAdapter;
+    private AccountIndex.Condition mTransferAccountCondition;
+    private QualifiedAccountNameAdapter mAccountNameAdapter;
     private List<View> mSplitItemViewList;
     private String mAccountUID;
     private Commodity mCommodity;
@@ -216,11 +215,12 @@ public class SplitEditorFragment extends Fragment {
         mAccountUID = ((FormActivity) getActivity()).getCurrentAccountUID();
         mBaseAmount = new BigDecimal(args.getString(UxArgument.AMOUNT_STRING));
 
-        String conditions = "("
-                + DatabaseSchema.AccountEntry.COLUMN_HIDDEN + " = 0 AND "
-                + DatabaseSchema.AccountEntry.COLUMN_PLACEHOLDER + " = 0"
-                + ")";
-        mCursor = mAccountsDbAdapter.fetchAccountsOrderedByFullName(conditions, null);
+        mTransferAccountCondition = new AccountIndex.Condition() {
+            @Override
+            public boolean accept(@NonNull AccountIndex.Entry entry) {
+                return !entry.isHidden() && !entry.isPlaceholder();
+            }
+        };
         mCommodity = CommoditiesDbAdapter.getInstance().getCommodity(mAccountsDbAdapter.getCurrencyCode(mAccountUID));
     }
 
@@ -265,6 +265,7 @@ public class SplitEditorFragment extends Fragment {
             });
 
             updateTransferAccountsList(accountsSpinner);
+            AccountSearchDialog.attach(accountsSpinner);
 
             splitCurrencyTextView.setText(mCommodity.getSymbol());
             splitTypeSwitch.setAmountFormattingListener(splitAmountEditText, splitCurrencyTextView);
@@ -278,7 +279,7 @@ public class SplitEditorFragment extends Fragment {
                 splitMemoEditText.setText(split.getMemo());
                 splitUidTextView.setText(split.getUID());
                 String splitAccountUID = split.getAccountUID();
-                setSelectedTransferAccount(mAccountsDbAdapter.getID(splitAccountUID), accountsSpinner);
+                setSelectedTransferAccount(splitAccountUID, accountsSpinner);
                 splitTypeSwitch.setAccountType(mAccountsDbAdapter.getAccountType(splitAccountUID));
                 splitTypeSwitch.setChecked(split.getType());
             }
@@ -304,20 +305,11 @@ public class SplitEditorFragment extends Fragment {
             if (amountString.isEmpty())
                 return BigDecimal.ZERO;
 
-            ExpressionBuilder expressionBuilder = new ExpressionBuilder(amountString);
-            Expression expression;
-
             try {
-                expression = expressionBuilder.build();
-            } catch (RuntimeException e) {
-                return BigDecimal.ZERO;
-            }
-
-            if (expression != null && expression.validate().isValid()) {
-                return new BigDecimal(expression.evaluate());
-            } else {
+                return AmountExpression.evaluate(amountString);
+            } catch (ParseException | ArithmeticException | IllegalArgumentException e) {
                 Log.v(SplitEditorFragment.this.getClass().getSimpleName(),
-                        "Incomplete expression for updating imbalance: " + expression);
+                        "Incomplete expression for updating imbalance: " + amountString);
                 return BigDecimal.ZERO;
             }
         }
@@ -325,23 +317,20 @@ public class SplitEditorFragment extends Fragment {
 
     /**
      * Updates the spinner to the selected transfer account
-     * @param accountId Database ID of the transfer account
+     * @param accountUID GUID of the transfer account
      */
-    private void setSelectedTransferAccount(long accountId, final Spinner accountsSpinner){
-        for (int pos = 0; pos < mCursorAdapter.getCount(); pos++) {
-            if (mCursorAdapter.getItemId(pos) == accountId){
-                accountsSpinner.setSelection(pos);
-                break;
-            }
-        }
+    private void setSelectedTransferAccount(String accountUID, final Spinner accountsSpinner){
+        int position = mAccountNameAdapter.getPosition(accountUID);
+        if (position >= 0)
+            accountsSpinner.setSelection(position);
     }
     /**
      * Updates the list of possible transfer accounts.
      * Only accounts with the same currency can be transferred to
      */
     private void updateTransferAccountsList(Spinner transferAccountSpinner){
-        mCursorAdapter = new QualifiedAccountNameCursorAdapter(getActivity(), mCursor);
-        transferAccountSpinner.setAdapter(mCursorAdapter);
+        mAccountNameAdapter = new QualifiedAccountNameAdapter(getActivity(), mTransferAccountCondition);
+        transferAccountSpinner.setAdapter(mAccountNameAdapter);
     }
 
     /**
@@ -58,6 +58,7 @@ import com.codetroopers.betterpickers.recurrencepicker.RecurrencePickerDialogFra
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountIndex;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
@@ -75,14 +76,14 @@ import org.gnucash.android.model.Transaction;
 import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.UxArgument;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 import org.gnucash.android.ui.settings.PreferenceActivity;
 import org.gnucash.android.ui.transaction.dialog.TransferFundsDialogFragment;
 import org.gnucash.android.ui.util.RecurrenceParser;
 import org.gnucash.android.ui.util.RecurrenceViewClickListener;
+import org.gnucash.android.ui.util.dialog.AccountSearchDialog;
 import org.gnucash.android.ui.util.widget.CalculatorEditText;
 import org.gnucash.android.ui.util.widget.TransactionTypeSwitch;
-import org.gnucash.android.util.QualifiedAccountNameCursorAdapter;
+import org.gnucash.android.util.QualifiedAccountNameAdapter;
 
 import java.math.BigDecimal;
 import java.text.DateFormat;
@@ -120,12 +121,7 @@ public class TransactionFormFragment extends Fragment implements
 	/**
 	 * Adapter for transfer account spinner
 	 */
-	private QualifiedAccountNameCursorAdapter mAccountCursorAdapter;
-
-	/**
-	 * Cursor for transfer account spinner
-	 */
-	private Cursor mCursor;
+	private QualifiedAccountNameAdapter mAccountNameAdapter;
 
     /**
 	 * Transaction to be created/updated
@@ -314,6 +310,7 @@ public class TransactionFormFragment extends Fragment implements
         setListeners();
         //updateTransferAccountsList must only be called after initializing mAccountsDbAdapter
         updateTransferAccountsList();
+        AccountSearchDialog.attach(mTransferAccountSpinner);
         mTransferAccountSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             /**
              * Flag for ignoring first call to this listener.
@@ -571,18 +568,15 @@ public class TransactionFormFragment extends Fragment implements
      * Only accounts with the same currency can be transferred to
      */
 	private void updateTransferAccountsList(){
-		String conditions = "(" + DatabaseSchema.AccountEntry.COLUMN_UID + " != ?"
-                            + " AND " + DatabaseSchema.AccountEntry.COLUMN_TYPE + " != ?"
-                            + " AND " + DatabaseSchema.AccountEntry.COLUMN_PLACEHOLDER + " = 0"
-                            + ")";
-
-        if (mCursor != null) {
-            mCursor.close();
-        }
-		mCursor = mAccountsDbAdapter.fetchAccountsOrderedByFullName(conditions, new String[]{mAccountUID, AccountType.ROOT.name()});
-
-        mAccountCursorAdapter = new QualifiedAccountNameCursorAdapter(getActivity(), mCursor);
-		mTransferAccountSpinner.setAdapter(mAccountCursorAdapter);
+        mAccountNameAdapter = new QualifiedAccountNameAdapter(getActivity(), new AccountIndex.Condition() {
+            @Override
+            public boolean accept(@NonNull AccountIndex.Entry entry) {
+                return !entry.getUID().equals(mAccountUID)
+                        && entry.getAccountType() != AccountType.ROOT
+                        && !entry.isPlaceholder();
+            }
+        });
+		mTransferAccountSpinner.setAdapter(mAccountNameAdapter);
 	}
 
     /**
@@ -677,7 +671,7 @@ public class TransactionFormFragment extends Fragment implements
      * @param accountId Database ID of the transfer account
      */
 	private void setSelectedTransferAccount(long accountId){
-        int position = mAccountCursorAdapter.getPosition(mAccountsDbAdapter.getUID(accountId));
+        int position = mAccountNameAdapter.getPosition(accountId);
         if (position >= 0)
             mTransferAccountSpinner.setSelection(position);
 	}
@@ -847,12 +841,9 @@ public class TransactionFormFragment extends Fragment implements
             mAccountsDbAdapter.setTransactionSuccessful();
         }
         finally {
-            mAccountsDbAdapter.endTransaction();
+            mAccountsDbAdapter.endTransaction(); //also updates the widgets of the affected accounts
         }
 
-        //update widgets, if any
-		WidgetConfigurationActivity.updateAllWidgets(getActivity().getApplicationContext());
-
 		finish(Activity.RESULT_OK);
 	}
 
@@ -888,14 +879,6 @@ public class TransactionFormFragment extends Fragment implements
 
     }
 
-
-    @Override
-	public void onDestroyView() {
-		super.onDestroyView();
-		if (mCursor != null)
-			mCursor.close();
-	}
-
 	@Override
 	public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
 		inflater.inflate(R.menu.default_save_actions, menu);
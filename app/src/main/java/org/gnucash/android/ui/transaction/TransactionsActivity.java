@@ -17,6 +17,7 @@
 
 package org.gnucash.android.ui.transaction;
 
+import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
@@ -43,22 +44,27 @@ import android.widget.AdapterView;
 import android.widget.Spinner;
 import android.widget.SpinnerAdapter;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.importer.ImportStatementTask;
 import org.gnucash.android.model.Account;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.ui.account.AccountsActivity;
 import org.gnucash.android.ui.account.AccountsListFragment;
 import org.gnucash.android.ui.account.OnAccountClickedListener;
 import org.gnucash.android.ui.common.BaseDrawerActivity;
+import org.gnucash.android.ui.common.DatabaseUpgradeActivity;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.Refreshable;
 import org.gnucash.android.ui.common.UxArgument;
+import org.gnucash.android.ui.transaction.dialog.ReconcileDialogFragment;
 import org.gnucash.android.ui.util.AccountBalanceTask;
+import org.gnucash.android.ui.util.TaskDelegate;
 import org.gnucash.android.util.QualifiedAccountNameCursorAdapter;
 import org.joda.time.LocalDate;
 
@@ -90,10 +96,20 @@ public class TransactionsActivity extends BaseDrawerActivity implements
      */
     private static final int INDEX_TRANSACTIONS_FRAGMENT     = 1;
 
+    /**
+     * ViewPager index for the balance history chart
+     */
+    private static final int INDEX_BALANCE_HISTORY_FRAGMENT  = 2;
+
     /**
      * Number of pages to show
      */
-    private static final int DEFAULT_NUM_PAGES = 2;
+    private static final int DEFAULT_NUM_PAGES = 3;
+
+    /**
+     * Request code for a bank statement to import into the account
+     */
+    private static final int REQUEST_PICK_STATEMENT_FILE = 0x20;
     private static SimpleDateFormat mDayMonthDateFormat = new SimpleDateFormat("EEE, d MMM");
 
     /**
@@ -135,12 +151,14 @@ public class TransactionsActivity extends BaseDrawerActivity implements
             if (mIsPlaceholderAccount){
                 if (mTabLayout.getTabCount() > 1) {
                     mPagerAdapter.notifyDataSetChanged();
-                    mTabLayout.removeTabAt(1);
+                    mTabLayout.removeTabAt(INDEX_BALANCE_HISTORY_FRAGMENT);
+                    mTabLayout.removeTabAt(INDEX_TRANSACTIONS_FRAGMENT);
                 }
             } else {
                 if (mTabLayout.getTabCount() < 2) {
                     mPagerAdapter.notifyDataSetChanged();
                     mTabLayout.addTab(mTabLayout.newTab().setText(R.string.section_header_transactions));
+                    mTabLayout.addTab(mTabLayout.newTab().setText(R.string.section_header_balance_history));
                 }
             }
             //refresh any fragments in the tab with the new account UID
@@ -179,6 +197,10 @@ public class TransactionsActivity extends BaseDrawerActivity implements
                     currentFragment = prepareSubAccountsListFragment();
                     break;
 
+                case INDEX_BALANCE_HISTORY_FRAGMENT:
+                    currentFragment = prepareBalanceHistoryFragment();
+                    break;
+
                 case INDEX_TRANSACTIONS_FRAGMENT:
                 default:
                     currentFragment = prepareTransactionsListFragment();
@@ -204,6 +226,9 @@ public class TransactionsActivity extends BaseDrawerActivity implements
                 case INDEX_SUB_ACCOUNTS_FRAGMENT:
                     return getString(R.string.section_header_subaccounts);
 
+                case INDEX_BALANCE_HISTORY_FRAGMENT:
+                    return getString(R.string.section_header_balance_history);
+
                 case INDEX_TRANSACTIONS_FRAGMENT:
                 default:
                     return getString(R.string.section_header_transactions);
@@ -242,6 +267,18 @@ public class TransactionsActivity extends BaseDrawerActivity implements
             Log.i(TAG, "Opening transactions for account:  " +  mAccountUID);
             return transactionsListFragment;
         }
+
+        /**
+         * Creates and initializes the fragment for displaying the balance history chart
+         * @return {@link BalanceHistoryFragment} initialized with the current account
+         */
+        private BalanceHistoryFragment prepareBalanceHistoryFragment(){
+            BalanceHistoryFragment balanceHistoryFragment = new BalanceHistoryFragment();
+            Bundle args = new Bundle();
+            args.putString(UxArgument.SELECTED_ACCOUNT_UID, mAccountUID);
+            balanceHistoryFragment.setArguments(args);
+            return balanceHistoryFragment;
+        }
     }
 
     /**
@@ -283,6 +320,8 @@ public class TransactionsActivity extends BaseDrawerActivity implements
     @Override
 	protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (DatabaseUpgradeActivity.redirectIfUpgradePending(this))
+            return;
 
         getSupportActionBar().setDisplayShowTitleEnabled(false);
 
@@ -294,6 +333,7 @@ public class TransactionsActivity extends BaseDrawerActivity implements
         mTabLayout.addTab(mTabLayout.newTab().setText(R.string.section_header_subaccounts));
         if (!mIsPlaceholderAccount) {
             mTabLayout.addTab(mTabLayout.newTab().setText(R.string.section_header_transactions));
+            mTabLayout.addTab(mTabLayout.newTab().setText(R.string.section_header_balance_history));
         }
 
         setupActionBarNavigation();
@@ -341,6 +381,7 @@ public class TransactionsActivity extends BaseDrawerActivity implements
                         break;
 
                     case INDEX_TRANSACTIONS_FRAGMENT:
+                    case INDEX_BALANCE_HISTORY_FRAGMENT:
                         createNewTransaction(mAccountUID);
                         break;
 
@@ -447,6 +488,23 @@ public class TransactionsActivity extends BaseDrawerActivity implements
                 startActivityForResult(editAccountIntent, AccountsActivity.REQUEST_EDIT_ACCOUNT);
                 return true;
 
+            case R.id.menu_import_statement:
+                Intent pickIntent = new Intent(Intent.ACTION_GET_CONTENT);
+                pickIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                pickIntent.setType("*/*");
+                try {
+                    startActivityForResult(Intent.createChooser(pickIntent, getString(R.string.title_select_statement_file)),
+                            REQUEST_PICK_STATEMENT_FILE);
+                } catch (ActivityNotFoundException ex) {
+                    Toast.makeText(this, R.string.toast_install_file_manager, Toast.LENGTH_LONG).show();
+                }
+                return true;
+
+            case R.id.menu_reconcile:
+                ReconcileDialogFragment.newInstance(mAccountUID)
+                        .show(getSupportFragmentManager(), "reconcile_dialog");
+                return true;
+
         default:
 			return false;
 		}
@@ -457,6 +515,16 @@ public class TransactionsActivity extends BaseDrawerActivity implements
         if (resultCode == RESULT_CANCELED)
             return;
 
+        if (requestCode == REQUEST_PICK_STATEMENT_FILE && data != null) {
+            new ImportStatementTask(this, mAccountUID, new TaskDelegate() {
+                @Override
+                public void onTaskComplete() {
+                    refresh();
+                }
+            }).execute(data.getData());
+            return;
+        }
+
         refresh();
         setupActionBarNavigation();
         super.onActivityResult(requestCode, resultCode, data);
@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.content.res.Configuration;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
@@ -43,6 +44,7 @@ import android.widget.TextView;
 
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DataChangeEvent;
 import org.gnucash.android.db.DatabaseCursorLoader;
 import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
@@ -55,7 +57,6 @@ import org.gnucash.android.model.Transaction;
 import org.gnucash.android.ui.common.FormActivity;
 import org.gnucash.android.ui.common.Refreshable;
 import org.gnucash.android.ui.common.UxArgument;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 import org.gnucash.android.ui.settings.PreferenceActivity;
 import org.gnucash.android.ui.transaction.dialog.BulkMoveDialogFragment;
 import org.gnucash.android.ui.util.CursorRecyclerAdapter;
@@ -232,6 +233,17 @@ public class TransactionsListFragment extends Fragment implements
 			super(context);			
 			this.accountUID = accountUID;
 		}
+
+		/**
+		 * Only changes of transactions in the account, and of account names, affect the list
+		 */
+		@Override
+		protected boolean isAffectedBy(@NonNull DataChangeEvent event) {
+			if (event.affectsTable(DatabaseSchema.AccountEntry.TABLE_NAME))
+				return true;
+			return event.affectsAnyTable(DatabaseSchema.TransactionEntry.TABLE_NAME, DatabaseSchema.SplitEntry.TABLE_NAME)
+					&& event.affectsAccount(accountUID);
+		}
 		
 		@Override
 		public Cursor loadInBackground() {
@@ -354,8 +366,7 @@ public class TransactionsListFragment extends Fragment implements
 			public boolean onMenuItemClick(MenuItem item) {
 				switch (item.getItemId()) {
 					case R.id.context_menu_delete:
-						mTransactionsDbAdapter.deleteRecord(transactionId);
-						WidgetConfigurationActivity.updateAllWidgets(getActivity());
+						mTransactionsDbAdapter.deleteTransactions(new long[]{transactionId});
 						refresh();
 						return true;
 
@@ -16,10 +16,9 @@
 
 package org.gnucash.android.ui.transaction.dialog;
 
-import android.database.Cursor;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.v4.app.DialogFragment;
-import android.support.v4.widget.SimpleCursorAdapter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -29,14 +28,15 @@ import android.widget.Spinner;
 import android.widget.Toast;
 
 import org.gnucash.android.R;
-import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.AccountIndex;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.ui.common.Refreshable;
 import org.gnucash.android.ui.common.UxArgument;
-import org.gnucash.android.ui.homescreen.WidgetConfigurationActivity;
 import org.gnucash.android.ui.transaction.TransactionsActivity;
-import org.gnucash.android.util.QualifiedAccountNameCursorAdapter;
+import org.gnucash.android.ui.util.dialog.AccountSearchDialog;
+import org.gnucash.android.util.QualifiedAccountNameAdapter;
+
 
 /**
  * Dialog fragment for moving transactions from one account to another
@@ -119,17 +119,19 @@ public class BulkMoveDialogFragment extends DialogFragment {
 				mTransactionIds.length);
 		getDialog().setTitle(title);
 
-        AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
-        String conditions = "(" + DatabaseSchema.AccountEntry.COLUMN_UID    + " != ? AND "
-                + DatabaseSchema.AccountEntry.COLUMN_CURRENCY               + " = ? AND "
-                + DatabaseSchema.AccountEntry.COLUMN_HIDDEN         + " = 0 AND "
-                + DatabaseSchema.AccountEntry.COLUMN_PLACEHOLDER + " = 0"
-                + ")";
-		Cursor cursor = accountsDbAdapter.fetchAccountsOrderedByFullName(conditions,
-                new String[]{mOriginAccountUID, accountsDbAdapter.getCurrencyCode(mOriginAccountUID)});
-
-		SimpleCursorAdapter mCursorAdapter = new QualifiedAccountNameCursorAdapter(getActivity(), cursor);
-		mDestinationAccountSpinner.setAdapter(mCursorAdapter);
+        final String currencyCode = AccountsDbAdapter.getInstance().getCurrencyCode(mOriginAccountUID);
+		QualifiedAccountNameAdapter accountNameAdapter = new QualifiedAccountNameAdapter(getActivity(),
+                new AccountIndex.Condition() {
+                    @Override
+                    public boolean accept(@NonNull AccountIndex.Entry entry) {
+                        return !entry.getUID().equals(mOriginAccountUID)
+                                && currencyCode.equals(entry.getCurrencyCode())
+                                && !entry.isHidden()
+                                && !entry.isPlaceholder();
+                    }
+                });
+		mDestinationAccountSpinner.setAdapter(accountNameAdapter);
+		AccountSearchDialog.attach(mDestinationAccountSpinner);
 		setListeners();
 	}
 	
@@ -162,11 +164,7 @@ public class BulkMoveDialogFragment extends DialogFragment {
 				}
 				String srcAccountUID = ((TransactionsActivity) getActivity()).getCurrentAccountUID();
 
-				for (long trxnId : mTransactionIds) {
-					trxnAdapter.moveTransaction(trxnAdapter.getUID(trxnId), srcAccountUID, dstAccountUID);
-				}
-
-				WidgetConfigurationActivity.updateAllWidgets(getActivity());
+				trxnAdapter.moveTransactions(mTransactionIds, srcAccountUID, dstAccountUID);
 				((Refreshable) getTargetFragment()).refresh();
 				dismiss();
 			}
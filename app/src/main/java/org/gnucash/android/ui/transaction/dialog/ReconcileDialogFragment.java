@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gnucash.android.ui.transaction.dialog;
+
+import android.app.DatePickerDialog;
+import android.app.Dialog;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.design.widget.TextInputLayout;
+import android.support.v4.app.DialogFragment;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.DatePicker;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.crashlytics.android.Crashlytics;
+
+import org.gnucash.android.R;
+import org.gnucash.android.db.Reconciliation;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.ui.common.Refreshable;
+import org.gnucash.android.ui.common.UxArgument;
+import org.gnucash.android.ui.util.dialog.DatePickerDialogFragment;
+import org.gnucash.android.util.AmountParser;
+
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import butterknife.Bind;
+import butterknife.ButterKnife;
+
+/**
+ * Dialog for reconciling an account with a statement.
+ * <p>The unreconciled splits up to the statement date are listed and can be marked as cleared.
+ * The account is reconciled when the cleared balance matches the ending balance of the statement.
+ * Saving keeps the cleared states, so that the reconciliation can be continued later.</p>
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class ReconcileDialogFragment extends DialogFragment implements DatePickerDialog.OnDateSetListener {
+
+    private static final String LOG_TAG = "ReconcileDialogFragment";
+
+    @Bind(R.id.btn_statement_date)          Button mStatementDateButton;
+    @Bind(R.id.input_statement_balance)     EditText mStatementBalanceInput;
+    @Bind(R.id.statement_balance_text_input_layout)
+    TextInputLayout mStatementBalanceInputLayout;
+    @Bind(R.id.label_reconcile_balances)    TextView mBalancesLabel;
+    @Bind(R.id.unreconciled_splits)         ListView mSplitsListView;
+    @Bind(R.id.empty_unreconciled_splits)   TextView mEmptyView;
+
+    @Bind(R.id.btn_save) Button mFinishButton;
+    @Bind(R.id.btn_cancel) Button mSaveButton;
+
+    private String mAccountUID;
+    private String mCurrencyCode;
+
+    /**
+     * Reconciliation of the account up to the selected statement date.
+     * It is started with a zero statement balance, the difference to the entered balance is computed here
+     */
+    private Reconciliation mReconciliation;
+    private List<String> mSplitUIDs = new ArrayList<>();
+
+    /**
+     * Statement time of the reconciliation which is listed or being loaded
+     */
+    private long mStatementTime;
+
+    private LoadSplitsTask mLoadSplitsTask;
+
+    /**
+     * Creates a dialog for reconciling an account in the active book
+     * @param accountUID GUID of the account
+     * @return Dialog fragment
+     */
+    public static ReconcileDialogFragment newInstance(String accountUID){
+        ReconcileDialogFragment fragment = new ReconcileDialogFragment();
+        Bundle args = new Bundle();
+        args.putString(UxArgument.SELECTED_ACCOUNT_UID, accountUID);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.dialog_reconcile, container, false);
+        ButterKnife.bind(this, view);
+
+        mAccountUID = getArguments().getString(UxArgument.SELECTED_ACCOUNT_UID);
+        mCurrencyCode = AccountsDbAdapter.getInstance().getCurrencyCode(mAccountUID);
+
+        mSplitsListView.setChoiceMode(ListView.CHOICE_MODE_MULTIPLE);
+        mSplitsListView.setEmptyView(mEmptyView);
+        mSplitsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                mReconciliation.setCleared(mSplitUIDs.get(position), mSplitsListView.isItemChecked(position));
+                displayBalances();
+            }
+        });
+
+        mStatementDateButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                DatePickerDialogFragment.newInstance(ReconcileDialogFragment.this, mStatementTime)
+                        .show(getFragmentManager(), "date_picker_fragment");
+            }
+        });
+
+        mStatementBalanceInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mStatementBalanceInputLayout.setErrorEnabled(false);
+                displayBalances();
+            }
+        });
+
+        mSaveButton.setText(R.string.btn_save);
+        mSaveButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                //keep the splits cleared so far, the statement can be finished later
+                mReconciliation.save();
+                dismiss();
+            }
+        });
+
+        mFinishButton.setText(R.string.btn_finish_reconcile);
+        mFinishButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                finishReconciliation();
+            }
+        });
+
+        loadSplits(getEndOfDay(System.currentTimeMillis()));
+        return view;
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        Dialog dialog = super.onCreateDialog(savedInstanceState);
+        dialog.setTitle(R.string.title_reconcile);
+        return dialog;
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (mLoadSplitsTask != null)
+            mLoadSplitsTask.cancel(true);
+    }
+
+    @Override
+    public void onDateSet(DatePicker view, int year, int monthOfYear, int dayOfMonth) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(year, monthOfYear, dayOfMonth);
+        loadSplits(getEndOfDay(calendar.getTimeInMillis()));
+    }
+
+    /**
+     * Starts the reconciliation up to the statement time in the background and lists the unreconciled splits
+     * once they are loaded. The cleared states of the current reconciliation are saved first
+     * @param statementTime Time of the statement
+     */
+    private void loadSplits(long statementTime) {
+        if (mLoadSplitsTask != null)
+            mLoadSplitsTask.cancel(true);
+        mStatementTime = statementTime;
+        mStatementDateButton.setText(DateFormat.getDateInstance(DateFormat.MEDIUM).format(new Date(statementTime)));
+        setControlsEnabled(false);
+
+        mLoadSplitsTask = new LoadSplitsTask(mReconciliation);
+        mReconciliation = null;
+        mLoadSplitsTask.execute(statementTime);
+    }
+
+    /**
+     * Enables or disables the controls which need the splits to be loaded
+     */
+    private void setControlsEnabled(boolean enabled) {
+        mStatementDateButton.setEnabled(enabled);
+        mSplitsListView.setEnabled(enabled);
+        mSaveButton.setEnabled(enabled);
+        if (enabled)
+            displayBalances();
+        else
+            mFinishButton.setEnabled(false);
+    }
+
+    /**
+     * Displays the cleared balance and its difference to the entered statement balance.
+     * Reconciling is only possible when there is no difference
+     */
+    private void displayBalances() {
+        if (mReconciliation == null)
+            return;
+        Money clearedBalance = mReconciliation.getClearedBalance();
+        Money statementBalance = getStatementBalance();
+        if (statementBalance == null) {
+            mBalancesLabel.setText(getString(R.string.label_reconcile_balances,
+                    clearedBalance.formattedString(), "-"));
+            mFinishButton.setEnabled(false);
+            return;
+        }
+        Money difference = statementBalance.subtract(clearedBalance);
+        mBalancesLabel.setText(getString(R.string.label_reconcile_balances,
+                clearedBalance.formattedString(), difference.formattedString()));
+        mFinishButton.setEnabled(difference.isAmountZero());
+    }
+
+    /**
+     * Returns the entered statement balance, or {@code null} if it is empty or invalid
+     */
+    @Nullable
+    private Money getStatementBalance() {
+        String input = mStatementBalanceInput.getText().toString();
+        if (input.trim().isEmpty())
+            return null;
+        try {
+            BigDecimal amount = AmountParser.parse(input);
+            return new Money(amount, mReconciliation.getClearedBalance().getCommodity());
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the cleared states and marks the cleared splits as reconciled
+     */
+    private void finishReconciliation() {
+        Money statementBalance = getStatementBalance();
+        if (statementBalance == null) {
+            mStatementBalanceInputLayout.setError(getString(R.string.error_invalid_amount));
+            return;
+        }
+        mReconciliation.save();
+        try {
+            Reconciliation.start(mAccountUID, mReconciliation.getStatementTime(), statementBalance).finish();
+        } catch (IllegalStateException e) {
+            Log.e(LOG_TAG, e.getMessage());
+            displayBalances();
+            return;
+        }
+        Toast.makeText(getActivity(), R.string.toast_account_reconciled, Toast.LENGTH_SHORT).show();
+        if (getActivity() instanceof Refreshable)
+            ((Refreshable) getActivity()).refresh();
+        dismiss();
+    }
+
+    /**
+     * Returns the last millisecond of the day of a time, so that all transactions of the statement date are included
+     */
+    private static long getEndOfDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 23);
+        calendar.set(Calendar.MINUTE, 59);
+        calendar.set(Calendar.SECOND, 59);
+        calendar.set(Calendar.MILLISECOND, 999);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Starts the reconciliation and builds the labels of the unreconciled splits off the UI thread
+     */
+    private class LoadSplitsTask extends AsyncTask<Long, Void, Reconciliation> {
+        private final Reconciliation mPreviousReconciliation;
+        private List<String> mLabels;
+
+        /**
+         * @param previousReconciliation Reconciliation whose cleared states are saved before loading,
+         *                               or {@code null} if there is none yet
+         */
+        LoadSplitsTask(@Nullable Reconciliation previousReconciliation) {
+            mPreviousReconciliation = previousReconciliation;
+        }
+
+        @Override
+        protected Reconciliation doInBackground(Long... statementTimes) {
+            Reconciliation reconciliation;
+            try {
+                if (mPreviousReconciliation != null)
+                    mPreviousReconciliation.save();
+                reconciliation = Reconciliation.start(mAccountUID, statementTimes[0],
+                        Money.createZeroInstance(mCurrencyCode));
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Error loading the unreconciled splits", e);
+                Crashlytics.logException(e);
+                return null;
+            }
+
+            DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.SHORT);
+            List<String> splitUIDs = reconciliation.getUnreconciledSplitUIDs();
+            mLabels = new ArrayList<>(splitUIDs.size());
+            for (String splitUID : splitUIDs) {
+                mLabels.add(dateFormat.format(new Date(reconciliation.getTime(splitUID))) + "  "
+                        + reconciliation.getDescription(splitUID) + "  "
+                        + reconciliation.getAmount(splitUID).formattedString());
+            }
+            return reconciliation;
+        }
+
+        @Override
+        protected void onPostExecute(Reconciliation reconciliation) {
+            if (!isAdded())
+                return;
+            if (reconciliation == null) {
+                Toast.makeText(getActivity(), R.string.toast_error_loading_splits, Toast.LENGTH_SHORT).show();
+                dismiss();
+                return;
+            }
+            mReconciliation = reconciliation;
+            mSplitUIDs = reconciliation.getUnreconciledSplitUIDs();
+            mSplitsListView.setAdapter(new ArrayAdapter<>(getActivity(),
+                    android.R.layout.simple_list_item_multiple_choice, mLabels));
+            for (int i = 0; i < mSplitUIDs.size(); i++) {
+                mSplitsListView.setItemChecked(i, reconciliation.isCleared(mSplitUIDs.get(i)));
+            }
+            setControlsEnabled(true);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.ui.util.dialog;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.Spinner;
+
+import org.gnucash.android.R;
+import org.gnucash.android.util.QualifiedAccountNameAdapter;
+
+/**
+ * Dialog for finding an account of an account spinner by typing part of its name.
+ * <p>The dialog is opened by long pressing a spinner backed by a {@link QualifiedAccountNameAdapter}.
+ * The results are narrowed down as the user types, and the chosen account is selected in the spinner.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class AccountSearchDialog {
+
+    private AccountSearchDialog() {
+        //only static methods
+    }
+
+    /**
+     * Opens the search dialog when the {@code spinner} is long pressed.
+     * <p>The adapter of the spinner is read when the dialog opens, so it may be replaced afterwards</p>
+     * @param spinner Spinner whose adapter is a {@link QualifiedAccountNameAdapter}
+     */
+    public static void attach(@NonNull final Spinner spinner) {
+        spinner.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                if (!(spinner.getAdapter() instanceof QualifiedAccountNameAdapter) || !spinner.isEnabled())
+                    return false;
+                show(spinner);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Shows the search dialog for the accounts of {@code spinner}
+     * @param spinner Spinner whose adapter is a {@link QualifiedAccountNameAdapter}
+     */
+    public static void show(@NonNull final Spinner spinner) {
+        Context context = spinner.getContext();
+        final QualifiedAccountNameAdapter spinnerAdapter = (QualifiedAccountNameAdapter) spinner.getAdapter();
+        //the spinner adapter is not filtered, since that would change the positions of its accounts
+        final QualifiedAccountNameAdapter searchAdapter = new QualifiedAccountNameAdapter(context,
+                spinnerAdapter.getCondition(), R.layout.account_spinner_dropdown_item);
+
+        View view = LayoutInflater.from(context).inflate(R.layout.dialog_account_search, null);
+        EditText searchEditText = (EditText) view.findViewById(R.id.input_account_search);
+        ListView resultsListView = (ListView) view.findViewById(R.id.account_search_results);
+        resultsListView.setAdapter(searchAdapter);
+
+        final AlertDialog dialog = new AlertDialog.Builder(context)
+                .setTitle(R.string.title_search_accounts)
+                .setView(view)
+                .setNegativeButton(R.string.alert_dialog_cancel, null)
+                .create();
+
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                //nothing to see here, move along
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                //nothing to see here, move along
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchAdapter.getFilter().filter(s);
+            }
+        });
+
+        resultsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                int spinnerPosition = spinnerAdapter.getPosition(searchAdapter.getItem(position).getUID());
+                if (spinnerPosition >= 0)
+                    spinner.setSelection(spinnerPosition);
+                dialog.dismiss();
+            }
+        });
+
+        dialog.getWindow().setSoftInputMode(WindowManager.LayoutParams.SOFT_INPUT_STATE_VISIBLE);
+        dialog.show();
+    }
+}
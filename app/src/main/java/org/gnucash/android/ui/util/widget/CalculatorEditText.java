@@ -33,13 +33,11 @@ import android.widget.EditText;
 
 import com.crashlytics.android.Crashlytics;
 
-import net.objecthunter.exp4j.Expression;
-import net.objecthunter.exp4j.ExpressionBuilder;
-
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.ui.common.FormActivity;
+import org.gnucash.android.util.AmountExpression;
 import org.gnucash.android.util.AmountParser;
 
 import java.math.BigDecimal;
@@ -258,26 +256,18 @@ public class CalculatorEditText extends EditText {
         if (amountString.isEmpty())
             return amountString;
 
-        ExpressionBuilder expressionBuilder = new ExpressionBuilder(amountString);
-        Expression expression;
-
+        BigDecimal result;
         try {
-            expression = expressionBuilder.build();
-        } catch (RuntimeException e) {
+            result = AmountExpression.evaluate(amountString);
+        } catch (ParseException | ArithmeticException | IllegalArgumentException e) {
             setError(getContext().getString(R.string.label_error_invalid_expression));
             String msg = "Invalid expression: " + amountString;
-            Log.e(this.getClass().getSimpleName(), msg);
+            Log.e(this.getClass().getSimpleName(), msg + " " + e.getMessage());
             Crashlytics.log(msg);
             return "";
         }
 
-        if (expression != null && expression.validate().isValid()) {
-            BigDecimal result = new BigDecimal(expression.evaluate());
-            setValue(result);
-        } else {
-            setError(getContext().getString(R.string.label_error_invalid_expression));
-            Log.w(VIEW_LOG_TAG, "Expression is null or invalid: " + expression);
-        }
+        setValue(result);
         return getText().toString();
     }
 
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.util;
+
+import android.support.annotation.NonNull;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Arithmetic expression for amounts, e.g. {@code 12.50*3+(4-1.5)/2} or a split formula like {@code 1250/100}.
+ * <p>Expressions are parsed once into a syntax tree which is cached, so evaluating the same expression
+ * repeatedly does not parse it again. Evaluation is exact: all operations are done with {@link BigDecimal}
+ * and only division is rounded, to 34 significant digits ({@link MathContext#DECIMAL128}).</p>
+ * <p>Supported are the operators {@code + - * /}, unary minus, parentheses and named variables.
+ * Both the period and the comma are accepted as decimal separator, since the comma is the decimal
+ * separator in many locales. Grouping separators are not supported.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class AmountExpression {
+
+    /**
+     * Maximum number of compiled expressions kept in the cache
+     */
+    private static final int CACHE_SIZE = 64;
+
+    private static final MathContext MATH_CONTEXT = MathContext.DECIMAL128;
+
+    private static final Map<String, AmountExpression> sCache =
+            new LinkedHashMap<String, AmountExpression>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AmountExpression> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final String mExpression;
+
+    private final Node mRoot;
+
+    private final Set<String> mVariables;
+
+    private AmountExpression(String expression, Node root, Set<String> variables) {
+        mExpression = expression;
+        mRoot = root;
+        mVariables = Collections.unmodifiableSet(variables);
+    }
+
+    /**
+     * Parses the expression, or returns the previously parsed expression from the cache
+     * @param expression Arithmetic expression
+     * @return Compiled expression
+     * @throws ParseException if the expression is empty or not valid
+     */
+    public static AmountExpression compile(@NonNull String expression) throws ParseException {
+        String key = expression.trim();
+        synchronized (sCache) {
+            AmountExpression compiled = sCache.get(key);
+            if (compiled != null)
+                return compiled;
+        }
+
+        Set<String> variables = new TreeSet<>();
+        Node root = new Parser(key, variables).parse();
+        AmountExpression compiled = new AmountExpression(key, root, variables);
+        synchronized (sCache) {
+            sCache.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses and evaluates an expression without variables
+     * @param expression Arithmetic expression
+     * @return Value of the expression
+     * @throws ParseException if the expression is not valid
+     * @throws ArithmeticException if the expression divides by zero
+     */
+    public static BigDecimal evaluate(@NonNull String expression) throws ParseException {
+        return compile(expression).evaluate();
+    }
+
+    /**
+     * Evaluates an expression without variables
+     * @return Value of the expression
+     * @throws IllegalArgumentException if the expression contains variables
+     * @throws ArithmeticException if the expression divides by zero
+     */
+    public BigDecimal evaluate() {
+        return evaluate(Collections.<String, BigDecimal>emptyMap());
+    }
+
+    /**
+     * Evaluates the expression with the given values of the variables.
+     * <p>The compiled expression can be evaluated any number of times with different values</p>
+     * @param variables Values of the variables in the expression
+     * @return Value of the expression
+     * @throws IllegalArgumentException if the value of a variable is missing
+     * @throws ArithmeticException if the expression divides by zero
+     */
+    public BigDecimal evaluate(@NonNull Map<String, BigDecimal> variables) {
+        return mRoot.evaluate(variables);
+    }
+
+    /**
+     * Returns the names of the variables used in the expression, sorted alphabetically
+     */
+    public Set<String> getVariables() {
+        return mVariables;
+    }
+
+    @Override
+    public String toString() {
+        return mExpression;
+    }
+
+    /**
+     * Node of the syntax tree
+     */
+    private static abstract class Node {
+        abstract BigDecimal evaluate(Map<String, BigDecimal> variables);
+    }
+
+    private static final class Constant extends Node {
+        private final BigDecimal mValue;
+
+        Constant(BigDecimal value) {
+            mValue = value;
+        }
+
+        @Override
+        BigDecimal evaluate(Map<String, BigDecimal> variables) {
+            return mValue;
+        }
+    }
+
+    private static final class Variable extends Node {
+        private final String mName;
+
+        Variable(String name) {
+            mName = name;
+        }
+
+        @Override
+        BigDecimal evaluate(Map<String, BigDecimal> variables) {
+            BigDecimal value = variables.get(mName);
+            if (value == null)
+                throw new IllegalArgumentException("No value for variable " + mName);
+            return value;
+        }
+    }
+
+    private static final class Negation extends Node {
+        private final Node mOperand;
+
+        Negation(Node operand) {
+            mOperand = operand;
+        }
+
+        @Override
+        BigDecimal evaluate(Map<String, BigDecimal> variables) {
+            return mOperand.evaluate(variables).negate();
+        }
+    }
+
+    private static final class BinaryOperation extends Node {
+        private final char mOperator;
+        private final Node mLeft;
+        private final Node mRight;
+
+        BinaryOperation(char operator, Node left, Node right) {
+            mOperator = operator;
+            mLeft = left;
+            mRight = right;
+        }
+
+        @Override
+        BigDecimal evaluate(Map<String, BigDecimal> variables) {
+            BigDecimal left = mLeft.evaluate(variables);
+            BigDecimal right = mRight.evaluate(variables);
+            switch (mOperator) {
+                case '+':
+                    return left.add(right);
+                case '-':
+                    return left.subtract(right);
+                case '*':
+                    return left.multiply(right);
+                default:
+                    return left.divide(right, MATH_CONTEXT);
+            }
+        }
+    }
+
+    /**
+     * Recursive descent parser for the grammar:
+     * <pre>
+     *     expression := term (('+' | '-') term)*
+     *     term       := factor (('*' | '/') factor)*
+     *     factor     := ('+' | '-') factor | number | variable | '(' expression ')'
+     * </pre>
+     */
+    private static final class Parser {
+        private final String mInput;
+        private final Set<String> mVariables;
+        private int mPosition = 0;
+
+        Parser(String input, Set<String> variables) {
+            mInput = input;
+            mVariables = variables;
+        }
+
+        Node parse() throws ParseException {
+            Node node = parseExpression();
+            skipWhitespace();
+            if (mPosition < mInput.length())
+                throw error("Unexpected character '" + mInput.charAt(mPosition) + "'");
+            return node;
+        }
+
+        private Node parseExpression() throws ParseException {
+            Node node = parseTerm();
+            while (true) {
+                skipWhitespace();
+                char operator = peek();
+                if (operator != '+' && operator != '-')
+                    return node;
+                mPosition++;
+                node = new BinaryOperation(operator, node, parseTerm());
+            }
+        }
+
+        private Node parseTerm() throws ParseException {
+            Node node = parseFactor();
+            while (true) {
+                skipWhitespace();
+                char operator = peek();
+                if (operator != '*' && operator != '/')
+                    return node;
+                mPosition++;
+                node = new BinaryOperation(operator, node, parseFactor());
+            }
+        }
+
+        private Node parseFactor() throws ParseException {
+            skipWhitespace();
+            char c = peek();
+            if (c == '-') {
+                mPosition++;
+                return new Negation(parseFactor());
+            }
+            if (c == '+') {
+                mPosition++;
+                return parseFactor();
+            }
+            if (c == '(') {
+                mPosition++;
+                Node node = parseExpression();
+                skipWhitespace();
+                if (peek() != ')')
+                    throw error("Missing closing parenthesis");
+                mPosition++;
+                return node;
+            }
+            if (Character.isDigit(c) || c == '.' || c == ',')
+                return parseNumber();
+            if (Character.isLetter(c) || c == '_')
+                return parseVariable();
+            throw error(mPosition < mInput.length() ? "Unexpected character '" + c + "'" : "Unexpected end of expression");
+        }
+
+        private Node parseNumber() throws ParseException {
+            int start = mPosition;
+            StringBuilder number = new StringBuilder();
+            boolean hasDigits = false;
+            boolean hasSeparator = false;
+            while (mPosition < mInput.length()) {
+                char c = mInput.charAt(mPosition);
+                if (Character.isDigit(c)) {
+                    hasDigits = true;
+                    number.append(c);
+                } else if ((c == '.' || c == ',') && !hasSeparator) {
+                    hasSeparator = true;
+                    number.append('.');
+                } else {
+                    break;
+                }
+                mPosition++;
+            }
+            if (!hasDigits)
+                throw new ParseException("Invalid number in expression: " + mInput, start);
+            return new Constant(new BigDecimal(number.toString()));
+        }
+
+        private Node parseVariable() {
+            int start = mPosition;
+            while (mPosition < mInput.length()
+                    && (Character.isLetterOrDigit(mInput.charAt(mPosition)) || mInput.charAt(mPosition) == '_')) {
+                mPosition++;
+            }
+            String name = mInput.substring(start, mPosition);
+            mVariables.add(name);
+            return new Variable(name);
+        }
+
+        private char peek() {
+            return mPosition < mInput.length() ? mInput.charAt(mPosition) : '\0';
+        }
+
+        private void skipWhitespace() {
+            while (mPosition < mInput.length() && Character.isWhitespace(mInput.charAt(mPosition))) {
+                mPosition++;
+            }
+        }
+
+        private ParseException error(String message) {
+            return new ParseException(message + " in expression: " + mInput, mPosition);
+        }
+    }
+}
@@ -2,14 +2,21 @@ package org.gnucash.android.util;
 
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.text.ParsePosition;
+import java.util.Locale;
 
 /**
  * Parses amounts as String into BigDecimal.
  */
 public class AmountParser {
+    /**
+     * Number format of the current thread, which is reused as long as the default locale does not change
+     */
+    private static final ThreadLocal<LocaleFormat> sFormat = new ThreadLocal<>();
+
     /**
      * Parses {@code amount} and returns it as a BigDecimal.
      *
@@ -18,10 +25,15 @@ public class AmountParser {
      * @throws ParseException if the full string couldn't be parsed as an amount.
      */
     public static BigDecimal parse(String amount) throws ParseException {
-        DecimalFormat formatter = (DecimalFormat) NumberFormat.getNumberInstance();
-        formatter.setParseBigDecimal(true);
+        LocaleFormat format = getFormat();
+
+        // plain amounts like "-123.45" don't need the number format
+        BigDecimal parsedAmount = parsePlainAmount(amount, format.mDecimalSeparator);
+        if (parsedAmount != null)
+            return parsedAmount;
+
         ParsePosition parsePosition = new ParsePosition(0);
-        BigDecimal parsedAmount = (BigDecimal) formatter.parse(amount, parsePosition);
+        parsedAmount = (BigDecimal) format.mFormatter.parse(amount, parsePosition);
 
         // Ensure any mistyping by the user is caught instead of partially parsed
         if ((parsedAmount == null) || (parsePosition.getIndex() < amount.length()))
@@ -29,4 +41,57 @@ public class AmountParser {
 
         return parsedAmount;
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses amounts consisting only of an optional minus sign, digits and at most one decimal separator
+     * @return Parsed amount, or {@code null} if the amount has any other format
+     */
+    private static BigDecimal parsePlainAmount(String amount, char decimalSeparator) {
+        int length = amount.length();
+        int start = length > 0 && amount.charAt(0) == '-' ? 1 : 0;
+        boolean hasDigits = false;
+        int separatorIndex = -1;
+        for (int i = start; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+            } else if (c == decimalSeparator && separatorIndex < 0) {
+                separatorIndex = i;
+            } else {
+                return null;
+            }
+        }
+        if (!hasDigits)
+            return null;
+
+        if (separatorIndex >= 0 && decimalSeparator != '.')
+            amount = amount.substring(0, separatorIndex) + '.' + amount.substring(separatorIndex + 1);
+        return new BigDecimal(amount);
+    }
+
+    private static LocaleFormat getFormat() {
+        Locale locale = Locale.getDefault();
+        LocaleFormat format = sFormat.get();
+        if (format == null || !format.mLocale.equals(locale)) {
+            format = new LocaleFormat(locale);
+            sFormat.set(format);
+        }
+        return format;
+    }
+
+    /**
+     * Number format for parsing amounts in a locale
+     */
+    private static class LocaleFormat {
+        final Locale mLocale;
+        final DecimalFormat mFormatter;
+        final char mDecimalSeparator;
+
+        LocaleFormat(Locale locale) {
+            mLocale = locale;
+            mFormatter = (DecimalFormat) NumberFormat.getNumberInstance(locale);
+            mFormatter.setParseBigDecimal(true);
+            mDecimalSeparator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+        }
+    }
+}
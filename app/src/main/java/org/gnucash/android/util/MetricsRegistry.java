@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.util;
+
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.BuildConfig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of performance metrics for database, import, export and scheduler operations.
+ * <p>Each metric is identified by a group (e.g. the name of the database adapter) and an operation name,
+ * and records the number of calls, the total and maximum duration, and a latency histogram.</p>
+ * <p>Metrics are collected only when enabled. By default they are enabled in debug builds and disabled
+ * in release builds (see {@code BuildConfig.METRICS_ENABLED}). When disabled, {@link #start()} and
+ * {@link #stop(String, String, long)} return immediately without allocating.</p>
+ * Usage:
+ * <pre>
+ *     long start = MetricsRegistry.start();
+ *     try {
+ *         //operation to be measured
+ *     } finally {
+ *         MetricsRegistry.stop(LOG_TAG, "operation", start);
+ *     }
+ * </pre>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public final class MetricsRegistry {
+
+    /**
+     * Upper bounds (in microseconds) of the latency histogram buckets.
+     * The last bucket holds all measurements above the highest bound
+     */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+            100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000
+    };
+
+    private static volatile boolean sEnabled = BuildConfig.METRICS_ENABLED;
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, Timer>> sMetrics = new ConcurrentHashMap<>();
+
+    //no instances
+    private MetricsRegistry(){}
+
+    /**
+     * Returns {@code true} if metrics are currently being collected
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Enable or disable collection of metrics
+     * @param enabled {@code true} to collect metrics, {@code false} otherwise
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Marks the start of an operation to be measured
+     * @return Start time in nanoseconds, or 0 if metrics are disabled
+     */
+    public static long start() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the completion of an operation started with {@link #start()}
+     * @param group Group of the metric, e.g. the class performing the operation
+     * @param operation Name of the operation
+     * @param startNanos Value returned by {@link #start()}
+     */
+    public static void stop(@NonNull String group, @NonNull String operation, long startNanos) {
+        if (startNanos == 0 || !sEnabled)
+            return;
+        getTimer(group, operation).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the timer for the operation, creating it if necessary
+     */
+    private static Timer getTimer(String group, String operation) {
+        ConcurrentMap<String, Timer> groupMetrics = sMetrics.get(group);
+        if (groupMetrics == null) {
+            groupMetrics = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Timer> existing = sMetrics.putIfAbsent(group, groupMetrics);
+            if (existing != null)
+                groupMetrics = existing;
+        }
+
+        Timer timer = groupMetrics.get(operation);
+        if (timer == null) {
+            timer = new Timer();
+            Timer existing = groupMetrics.putIfAbsent(operation, timer);
+            if (existing != null)
+                timer = existing;
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the timer for an operation, or {@code null} if the operation was never recorded
+     * @param group Group of the metric
+     * @param operation Name of the operation
+     * @return Timer for the operation
+     */
+    public static Timer getMetric(@NonNull String group, @NonNull String operation) {
+        Map<String, Timer> groupMetrics = sMetrics.get(group);
+        return groupMetrics == null ? null : groupMetrics.get(operation);
+    }
+
+    /**
+     * Discards all recorded metrics
+     */
+    public static void reset() {
+        sMetrics.clear();
+    }
+
+    /**
+     * Writes a human readable report of all metrics, sorted by group and operation
+     * @param writer Writer to which the report is written
+     * @throws IOException if the report could not be written
+     */
+    public static void dump(@NonNull Writer writer) throws IOException {
+        List<String> groups = new ArrayList<>(sMetrics.keySet());
+        Collections.sort(groups);
+        for (String group : groups) {
+            Map<String, Timer> groupMetrics = sMetrics.get(group);
+            List<String> operations = new ArrayList<>(groupMetrics.keySet());
+            Collections.sort(operations);
+            writer.write(group + "\n");
+            for (String operation : operations) {
+                writer.write("  " + operation + ": " + groupMetrics.get(operation) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Returns a human readable report of all metrics
+     * @return Metrics report
+     * @see #dump(Writer)
+     */
+    public static String dump() {
+        StringWriter writer = new StringWriter();
+        try {
+            dump(writer);
+        } catch (IOException e) {
+            //StringWriter does not throw
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes a report of all metrics to {@code file}, creating parent directories if necessary
+     * @param file Destination file
+     * @throws IOException if the file could not be written
+     */
+    public static void dump(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists())
+            parent.mkdirs();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            dump(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Aggregated latency measurements of a single operation.
+     * <p>All updates are lock-free</p>
+     */
+    public static final class Timer {
+        private final AtomicLong mCount      = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos   = new AtomicLong();
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+
+        void record(long durationNanos) {
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(durationNanos);
+
+            long max = mMaxNanos.get();
+            while (durationNanos > max && !mMaxNanos.compareAndSet(max, durationNanos)) {
+                max = mMaxNanos.get();
+            }
+
+            long micros = durationNanos / 1000;
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            mBuckets.incrementAndGet(bucket);
+        }
+
+        /**
+         * Returns the number of recorded calls
+         */
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /**
+         * Returns the total time spent in the operation, in nanoseconds
+         */
+        public long getTotalNanos() {
+            return mTotalNanos.get();
+        }
+
+        /**
+         * Returns the longest recorded duration, in nanoseconds
+         */
+        public long getMaxNanos() {
+            return mMaxNanos.get();
+        }
+
+        /**
+         * Returns an estimate of the latency percentile from the histogram
+         * @param percentile Percentile between 0 and 100
+         * @return Upper bound of the histogram bucket containing the percentile, in microseconds.
+         * For the last (unbounded) bucket, the maximum recorded duration is returned
+         */
+        public long getPercentileMicros(double percentile) {
+            long count = mCount.get();
+            if (count == 0)
+                return 0;
+
+            long threshold = (long) Math.ceil(count * percentile / 100d);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+                cumulative += mBuckets.get(i);
+                if (cumulative >= threshold)
+                    return BUCKET_BOUNDS_MICROS[i];
+            }
+            return mMaxNanos.get() / 1000;
+        }
+
+        @Override
+        public String toString() {
+            long count = getCount();
+            double totalMillis = getTotalNanos() / 1e6;
+            return String.format(Locale.US, "count=%d total=%.1fms avg=%.3fms max=%.3fms p50<=%.3fms p95<=%.3fms",
+                    count, totalMillis, count == 0 ? 0 : totalMillis / count, getMaxNanos() / 1e6,
+                    getPercentileMicros(50) / 1e3, getPercentileMicros(95) / 1e3);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.util;
+
+import android.content.Context;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import org.gnucash.android.R;
+import org.gnucash.android.db.AccountIndex;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapter which displays the fully qualified names of accounts from the shared {@link AccountIndex}.
+ * <p>Unlike {@link QualifiedAccountNameCursorAdapter}, no database cursor is opened and the position of an
+ * account is found by binary search. The adapter is {@link Filterable}: the list can be narrowed down with
+ * a search query, and each refinement of the query only filters the results of the previous one.</p>
+ *
+ * @author Ngewi Fet <ngewif@gmail.com>
+ */
+public class QualifiedAccountNameAdapter extends BaseAdapter implements Filterable {
+
+    private final LayoutInflater mInflater;
+
+    private final AccountIndex mAccountIndex;
+
+    private final AccountIndex.Condition mCondition;
+
+    /**
+     * All accounts of the adapter, sorted by full name
+     */
+    private final List<AccountIndex.Entry> mAllAccounts;
+
+    /**
+     * Accounts currently displayed. Sorted by full name unless a search query is applied
+     */
+    private List<AccountIndex.Entry> mAccounts;
+
+    /**
+     * Positions of the displayed accounts by GUID, built on demand when a search query is applied
+     */
+    private Map<String, Integer> mFilteredPositions;
+
+    private final Object mLock = new Object();
+    private String mLastQuery;
+    private List<AccountIndex.Entry> mLastResults;
+
+    @LayoutRes private final int mResource;
+    @LayoutRes private int mDropDownResource = R.layout.account_spinner_dropdown_item;
+
+    private AccountNameFilter mFilter;
+
+    /**
+     * Initialize the adapter for the accounts of the active book which fulfill {@code condition},
+     * using default spinner views
+     * @param context Application context
+     * @param condition Condition for the accounts to be displayed
+     */
+    public QualifiedAccountNameAdapter(Context context, @NonNull AccountIndex.Condition condition) {
+        this(context, condition, android.R.layout.simple_spinner_item);
+    }
+
+    /**
+     * Overloaded constructor. Specifies the view to use for displaying selected spinner text
+     * @param context Application context
+     * @param condition Condition for the accounts to be displayed
+     * @param selectedSpinnerItem Layout resource for selected item text
+     */
+    public QualifiedAccountNameAdapter(Context context, @NonNull AccountIndex.Condition condition,
+                                       @LayoutRes int selectedSpinnerItem) {
+        mInflater = LayoutInflater.from(context);
+        mAccountIndex = AccountsDbAdapter.getInstance().getAccountIndex();
+        mCondition = condition;
+        mAllAccounts = mAccountIndex.getAccounts(condition);
+        mAccounts = mAllAccounts;
+        mResource = selectedSpinnerItem;
+    }
+
+    /**
+     * Returns the condition for the accounts displayed by the adapter
+     */
+    public AccountIndex.Condition getCondition() {
+        return mCondition;
+    }
+
+    /**
+     * Sets the layout resource used for the drop down views
+     * @param resource Layout resource containing a {@link TextView} with ID {@code android.R.id.text1}
+     */
+    public void setDropDownViewResource(@LayoutRes int resource) {
+        mDropDownResource = resource;
+    }
+
+    @Override
+    public int getCount() {
+        return mAccounts.size();
+    }
+
+    @Override
+    public AccountIndex.Entry getItem(int position) {
+        return mAccounts.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mAccounts.get(position).getId();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        return bindView(position, convertView, parent, mResource);
+    }
+
+    @Override
+    public View getDropDownView(int position, View convertView, ViewGroup parent) {
+        return bindView(position, convertView, parent, mDropDownResource);
+    }
+
+    private View bindView(int position, View convertView, ViewGroup parent, @LayoutRes int resource) {
+        View view = convertView != null ? convertView : mInflater.inflate(resource, parent, false);
+        TextView textView = (TextView) view.findViewById(android.R.id.text1);
+        textView.setText(getItem(position).getFullName());
+        textView.setEllipsize(TextUtils.TruncateAt.MIDDLE);
+        return view;
+    }
+
+    /**
+     * Returns the position of a given account in the adapter
+     * @param accountUID GUID of the account
+     * @return Position of the account or -1 if the account is not found
+     */
+    public int getPosition(@NonNull String accountUID) {
+        if (mAccounts == mAllAccounts)
+            return mAccountIndex.indexOf(mAccounts, accountUID);
+
+        if (mFilteredPositions == null) {
+            mFilteredPositions = new HashMap<>(mAccounts.size() * 2);
+            for (int i = 0; i < mAccounts.size(); i++) {
+                mFilteredPositions.put(mAccounts.get(i).getUID(), i);
+            }
+        }
+        Integer position = mFilteredPositions.get(accountUID);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Returns the position of a given account in the adapter
+     * @param accountId Database record ID of the account
+     * @return Position of the account or -1 if the account is not found
+     */
+    public int getPosition(long accountId) {
+        AccountIndex.Entry entry = mAccountIndex.get(accountId);
+        return entry == null ? -1 : getPosition(entry.getUID());
+    }
+
+    @Override
+    public Filter getFilter() {
+        if (mFilter == null)
+            mFilter = new AccountNameFilter();
+        return mFilter;
+    }
+
+    /**
+     * Filters the accounts by full name. See {@link AccountIndex#search(List, String)}
+     */
+    private class AccountNameFilter extends Filter {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            String query = constraint == null ? "" : constraint.toString();
+            List<AccountIndex.Entry> candidates;
+            synchronized (mLock) {
+                candidates = mLastQuery != null && query.startsWith(mLastQuery) ? mLastResults : mAllAccounts;
+            }
+
+            List<AccountIndex.Entry> results = query.trim().isEmpty()
+                    ? mAllAccounts : AccountIndex.search(candidates, query);
+
+            synchronized (mLock) {
+                mLastQuery = query;
+                mLastResults = results;
+            }
+            FilterResults filterResults = new FilterResults();
+            filterResults.values = results;
+            filterResults.count = results.size();
+            return filterResults;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            mAccounts = (List<AccountIndex.Entry>) results.values;
+            mFilteredPositions = null;
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    }
+}
@@ -17,13 +17,17 @@ package org.gnucash.android.test.unit.db;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
 import android.support.v7.preference.PreferenceManager;
 
 import org.assertj.core.data.Index;
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.AccountIndex;
+import org.gnucash.android.db.BalanceHistory;
 import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
 import org.gnucash.android.db.adapter.BudgetAmountsDbAdapter;
@@ -42,6 +46,7 @@ import org.gnucash.android.model.BudgetAmount;
 import org.gnucash.android.model.Commodity;
 import org.gnucash.android.model.Money;
 import org.gnucash.android.model.PeriodType;
+import org.gnucash.android.model.Price;
 import org.gnucash.android.model.Recurrence;
 import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.model.Split;
@@ -50,6 +55,7 @@ import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
 import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -59,9 +65,11 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Currency;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -351,6 +359,217 @@ public class AccountsDbAdapterTest{
         assertThat(balance).isEqualTo(expectedBalance);
     }
 
+    /**
+     * Opening balances at a cut-off only include earlier transactions, and replacing those transactions
+     * with the opening balances preserves the account balances
+     */
+    @Test
+    public void openingBalancesAtCutoff_shouldPreserveAccountBalances(){
+        Account account = new Account("Checking", Commodity.USD);
+        account.setAccountType(AccountType.ASSET);
+        Account expenseAccount = new Account("Groceries", Commodity.USD);
+        expenseAccount.setAccountType(AccountType.EXPENSE);
+        mAccountsDbAdapter.addRecord(account);
+        mAccountsDbAdapter.addRecord(expenseAccount);
+
+        long[] times = {1000L, 2000L, 5000L};
+        String[] amounts = {"10", "2.50", "7"};
+        for (int i = 0; i < times.length; i++) {
+            Transaction transaction = new Transaction("Purchase " + i);
+            transaction.setTime(times[i]);
+            Split split = new Split(new Money(amounts[i], "USD"), expenseAccount.getUID());
+            split.setType(TransactionType.DEBIT);
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(account.getUID()));
+            mTransactionsDbAdapter.addRecord(transaction);
+        }
+
+        Money accountBalance = mAccountsDbAdapter.getAccountBalance(account.getUID());
+        Money expenseBalance = mAccountsDbAdapter.getAccountBalance(expenseAccount.getUID());
+
+        long cutoff = 3000L;
+        List<Transaction> openingBalances = mAccountsDbAdapter.getOpeningBalanceTransactions(cutoff);
+        assertThat(openingBalances).hasSize(2);
+        for (Transaction transaction : openingBalances) {
+            assertThat(transaction.getTimeMillis()).isEqualTo(cutoff);
+            for (Split split : transaction.getSplits()) {
+                if (split.getAccountUID().equals(expenseAccount.getUID()))
+                    assertThat(split.getValue()).isEqualTo(new Money("12.50", "USD"));
+            }
+        }
+
+        mTransactionsDbAdapter.deleteAllRecords();
+        Transaction transaction = new Transaction("Purchase 2");
+        transaction.setTime(5000L);
+        Split split = new Split(new Money("7", "USD"), expenseAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(account.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+        mTransactionsDbAdapter.bulkAddRecords(openingBalances, DatabaseAdapter.UpdateMethod.insert);
+
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(3);
+        assertThat(mAccountsDbAdapter.getAccountBalance(account.getUID())).isEqualTo(accountBalance);
+        assertThat(mAccountsDbAdapter.getAccountBalance(expenseAccount.getUID())).isEqualTo(expenseBalance);
+    }
+
+    @Test
+    public void accountIndex_shouldBeSortedSearchableAndInvalidatedByWrites(){
+        mAccountsDbAdapter.createAccountHierarchy("Expenses:Food:Groceries", AccountType.EXPENSE);
+        String cashUID = mAccountsDbAdapter.createAccountHierarchy("Assets:Cash", AccountType.ASSET);
+
+        AccountIndex index = mAccountsDbAdapter.getAccountIndex();
+        assertThat(mAccountsDbAdapter.getAccountIndex()).isSameAs(index);
+        List<AccountIndex.Entry> accounts = index.getAccounts(new AccountIndex.Condition() {
+            @Override
+            public boolean accept(@NonNull AccountIndex.Entry entry) {
+                return entry.getAccountType() != AccountType.ROOT;
+            }
+        });
+        assertThat(accounts).extracting("mFullName")
+                .containsExactly("Assets", "Assets:Cash", "Expenses", "Expenses:Food", "Expenses:Food:Groceries");
+        assertThat(index.indexOf(accounts, cashUID)).isEqualTo(1);
+        assertThat(index.get(mAccountsDbAdapter.getID(cashUID)).getUID()).isEqualTo(cashUID);
+
+        assertThat(AccountIndex.search(accounts, "food")).extracting("mFullName")
+                .containsExactly("Expenses:Food", "Expenses:Food:Groceries");
+        assertThat(AccountIndex.search(accounts, "exp grc")).extracting("mFullName")
+                .containsExactly("Expenses:Food:Groceries");
+        //substring matches come before subsequence matches
+        assertThat(AccountIndex.search(accounts, "es")).extracting("mFullName")
+                .containsExactly("Expenses", "Expenses:Food", "Expenses:Food:Groceries", "Assets", "Assets:Cash");
+
+        mAccountsDbAdapter.updateRecord(cashUID, DatabaseSchema.AccountEntry.COLUMN_FULL_NAME, "Assets:Wallet");
+        AccountIndex updatedIndex = mAccountsDbAdapter.getAccountIndex();
+        assertThat(updatedIndex).isNotSameAs(index);
+        assertThat(updatedIndex.get(cashUID).getFullName()).isEqualTo("Assets:Wallet");
+    }
+
+    @Test
+    public void accountBalances_shouldMatchBalancesOfSingleAccounts(){
+        String foodUID = mAccountsDbAdapter.createAccountHierarchy("Expenses:Food", AccountType.EXPENSE);
+        String groceriesUID = mAccountsDbAdapter.createAccountHierarchy("Expenses:Food:Groceries", AccountType.EXPENSE);
+        String expensesUID = mAccountsDbAdapter.findAccountUidByFullName("Expenses");
+        String cashUID = mAccountsDbAdapter.createAccountHierarchy("Assets:Cash", AccountType.ASSET);
+
+        long now = System.currentTimeMillis();
+        String[] expenseUIDs = {foodUID, groceriesUID, groceriesUID};
+        for (int i = 0; i < expenseUIDs.length; i++) {
+            Transaction transaction = new Transaction("Purchase " + i);
+            transaction.setTime(now - i * 1000L * 60 * 60 * 24);
+            Split split = new Split(new Money(new BigDecimal(10 + i), Commodity.DEFAULT_COMMODITY), expenseUIDs[i]);
+            split.setType(TransactionType.DEBIT);
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(cashUID));
+            mTransactionsDbAdapter.addRecord(transaction);
+        }
+
+        List<String> accountUIDs = new ArrayList<>();
+        accountUIDs.add(expensesUID);
+        accountUIDs.add(foodUID);
+        accountUIDs.add(groceriesUID);
+        accountUIDs.add(cashUID);
+        long start = now - 1000L * 60 * 60 * 36;
+        Map<String, Money> balances = mAccountsDbAdapter.getAccountBalances(accountUIDs, -1, -1);
+        Map<String, Money> periodBalances = mAccountsDbAdapter.getAccountBalances(accountUIDs, start, now);
+        for (String accountUID : accountUIDs) {
+            assertThat(balances.get(accountUID).asBigDecimal())
+                    .isEqualByComparingTo(mAccountsDbAdapter.getAccountBalance(accountUID).asBigDecimal());
+            assertThat(periodBalances.get(accountUID).asBigDecimal())
+                    .isEqualByComparingTo(mAccountsDbAdapter.getAccountBalance(accountUID, start, now).asBigDecimal());
+        }
+        assertThat(balances.get(expensesUID).asBigDecimal()).isEqualByComparingTo("33");
+        assertThat(periodBalances.get(groceriesUID).asBigDecimal()).isEqualByComparingTo("11");
+
+        Map<String, Integer> subAccountCounts = mAccountsDbAdapter.getSubAccountCounts();
+        assertThat(subAccountCounts.get(expensesUID)).isEqualTo(1);
+        assertThat(subAccountCounts.get(foodUID)).isEqualTo(mAccountsDbAdapter.getSubAccountCount(foodUID));
+        assertThat(subAccountCounts).doesNotContainKey(groceriesUID);
+    }
+
+    @Test
+    public void balanceHistory_shouldMatchBalancesAsOfEachDay(){
+        String groceriesUID = mAccountsDbAdapter.createAccountHierarchy("Expenses:Groceries", AccountType.EXPENSE);
+        String expensesUID = mAccountsDbAdapter.findAccountUidByFullName("Expenses");
+        String cashUID = mAccountsDbAdapter.createAccountHierarchy("Assets:Cash", AccountType.ASSET);
+
+        long day = 1000L * 60 * 60 * 24;
+        long today = new LocalDate().toDateTimeAtStartOfDay().getMillis() + day / 2;
+        long[] times = {today - 10 * day, today - 3 * day, today - 3 * day + 1000, today};
+        String[] expenseUIDs = {expensesUID, groceriesUID, groceriesUID, groceriesUID};
+        for (int i = 0; i < times.length; i++) {
+            Transaction transaction = new Transaction("Purchase " + i);
+            transaction.setTime(times[i]);
+            Split split = new Split(new Money(new BigDecimal(10 + i), Commodity.DEFAULT_COMMODITY), expenseUIDs[i]);
+            split.setType(TransactionType.DEBIT);
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(cashUID));
+            mTransactionsDbAdapter.addRecord(transaction);
+        }
+
+        BalanceHistory history = mAccountsDbAdapter.getBalanceHistory(expensesUID);
+        assertThat(history.size()).isEqualTo(3); //two transactions on the same day
+        for (int i = 0; i < history.size(); i++) {
+            assertThat(history.getBalance(i).asBigDecimal()).isEqualByComparingTo(
+                    mAccountsDbAdapter.getAccountBalance(expensesUID, -1, history.getTime(i)).asBigDecimal());
+        }
+        assertThat(history.getBalance(2).asBigDecimal()).isEqualByComparingTo("46");
+        assertThat(history.getBalanceAt(times[0] - day).isAmountZero()).isTrue();
+        assertThat(history.getBalanceAt(today - 5 * day).asBigDecimal()).isEqualByComparingTo("10");
+        assertThat(history.getBalanceAt(today - 2 * day).asBigDecimal()).isEqualByComparingTo("33");
+
+        BalanceHistory cashHistory = mAccountsDbAdapter.getBalanceHistory(cashUID);
+        assertThat(cashHistory.getBalance(cashHistory.size() - 1).asBigDecimal()).isEqualByComparingTo("-46");
+
+        long[] sampleTimes = {times[0] - day, times[0] + day, times[3] - day, times[3] + day};
+        assertThat(history.sample(sampleTimes)).containsExactly(0f, 10f, 33f, 46f);
+
+        //downsampling to at most one sample per day
+        assertThat(BalanceHistory.getSampleTimes(today - 20 * day, today, 5)).hasSize(5)
+                .startsWith(today - 20 * day).endsWith(today);
+        assertThat(BalanceHistory.getSampleTimes(today - 2 * day, today, 100)).hasSize(3);
+    }
+
+    @Test
+    public void balanceHistory_shouldConvertOtherCommoditiesAtPricesOfEachDay(){
+        String expensesUID = mAccountsDbAdapter.createAccountHierarchy("Expenses", AccountType.EXPENSE);
+        Account travelAccount = new Account("Travel", Commodity.EUR);
+        travelAccount.setAccountType(AccountType.EXPENSE);
+        travelAccount.setParentUID(expensesUID);
+        Account walletAccount = new Account("Wallet", Commodity.EUR);
+        walletAccount.setAccountType(AccountType.CASH);
+        mAccountsDbAdapter.addRecord(travelAccount);
+        mAccountsDbAdapter.addRecord(walletAccount);
+
+        long day = 1000L * 60 * 60 * 24;
+        long today = new LocalDate().toDateTimeAtStartOfDay().getMillis() + day / 2;
+        long[] times = {today - 10 * day, today - 3 * day};
+        String[] rates = {"1.5", "2"};
+        for (int i = 0; i < times.length; i++) {
+            Transaction transaction = new Transaction("Trip " + i);
+            transaction.setTime(times[i]);
+            transaction.setCommodity(Commodity.EUR);
+            Split split = new Split(new Money(BigDecimal.TEN, Commodity.EUR), travelAccount.getUID());
+            split.setType(TransactionType.DEBIT);
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(walletAccount.getUID()));
+            mTransactionsDbAdapter.addRecord(transaction);
+
+            Price price = new Price(Commodity.EUR.getUID(), Commodity.DEFAULT_COMMODITY.getUID(), new BigDecimal(rates[i]));
+            price.setDate(new Timestamp(times[i] - day));
+            PricesDbAdapter.getInstance().addRecord(price);
+        }
+
+        BalanceHistory history = mAccountsDbAdapter.getBalanceHistory(expensesUID);
+        assertThat(history.size()).isEqualTo(2);
+        for (int i = 0; i < history.size(); i++) {
+            assertThat(history.getBalance(i).asBigDecimal()).isEqualByComparingTo(
+                    mAccountsDbAdapter.getAccountBalance(expensesUID, -1, history.getTime(i)).asBigDecimal());
+        }
+        assertThat(history.getBalance(0).asBigDecimal()).isEqualByComparingTo("15"); //10 EUR at 1.5
+        assertThat(history.getBalance(1).asBigDecimal()).isEqualByComparingTo("40"); //20 EUR at 2
+    }
+
     /**
      * Test creating an account hierarchy by specifying fully qualified name
      */
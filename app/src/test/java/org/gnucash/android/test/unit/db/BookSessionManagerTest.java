@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.BookSession;
+import org.gnucash.android.db.BookSessionManager;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.model.BaseModel;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the caching of open book databases
+ */
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class BookSessionManagerTest {
+
+    private BookSessionManager mSessionManager;
+    private String mActiveBookUID;
+    private List<String> mBookUIDs = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mSessionManager = BookSessionManager.getInstance();
+        mActiveBookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        for (int i = 0; i < BookSessionManager.MAX_OPEN_BOOKS; i++) {
+            mBookUIDs.add(BaseModel.generateUID());
+        }
+    }
+
+    /**
+     * Switches to a book and back to the active book, so that the book is the most recently used one
+     * after the active book
+     */
+    private BookSession use(String bookUID) {
+        BookSession session = mSessionManager.activate(bookUID);
+        mSessionManager.activate(mActiveBookUID);
+        return session;
+    }
+
+    @Test
+    public void activeBook_shouldShareDatabaseWithApplication() {
+        BookSession session = mSessionManager.acquire(mActiveBookUID);
+        assertThat(session.getDatabase()).isSameAs(GnuCashApplication.getActiveDb());
+        assertThat(session.getAccountsDbAdapter()).isSameAs(GnuCashApplication.getAccountsDbAdapter());
+        mSessionManager.release(session);
+
+        assertThat(GnuCashApplication.getActiveDb().isOpen()).isTrue();
+    }
+
+    @Test
+    public void recentlyUsedBook_shouldStayOpen() {
+        BookSession session = use(mBookUIDs.get(0));
+
+        assertThat(session.getDatabase().isOpen()).isTrue();
+        assertThat(use(mBookUIDs.get(0))).isSameAs(session);
+    }
+
+    @Test
+    public void leastRecentlyUsedBook_shouldBeClosed() {
+        BookSession firstSession = use(mBookUIDs.get(0));
+        BookSession secondSession = use(mBookUIDs.get(1));
+        use(mBookUIDs.get(0)); //the second book is now the least recently used one
+        use(mBookUIDs.get(2));
+
+        List<String> openBookUIDs = mSessionManager.getOpenBookUIDs();
+        assertThat(openBookUIDs).hasSize(BookSessionManager.MAX_OPEN_BOOKS);
+        assertThat(openBookUIDs).contains(mActiveBookUID); //the active book is never closed
+        assertThat(openBookUIDs).doesNotContain(mBookUIDs.get(1));
+        assertThat(secondSession.getDatabase().isOpen()).isFalse();
+        assertThat(firstSession.getDatabase().isOpen()).isTrue();
+        assertThat(GnuCashApplication.getActiveDb().isOpen()).isTrue();
+    }
+
+    @Test
+    public void acquiredBook_shouldBeClosedOnlyAfterRelease() {
+        BookSession session = mSessionManager.acquire(mBookUIDs.get(0));
+        String otherBookUID = BaseModel.generateUID();
+        mBookUIDs.add(otherBookUID);
+        for (String bookUID : mBookUIDs.subList(1, mBookUIDs.size())) {
+            use(bookUID);
+        }
+        assertThat(session.getDatabase().isOpen()).isTrue();
+
+        mSessionManager.close(mBookUIDs.get(0));
+        assertThat(session.getDatabase().isOpen()).isTrue();
+
+        mSessionManager.release(session);
+        assertThat(session.getDatabase().isOpen()).isFalse();
+        assertThat(mSessionManager.getOpenBookUIDs()).doesNotContain(mBookUIDs.get(0));
+    }
+
+    @Test
+    public void acquiredBook_shouldNotEvictOpenBooks() {
+        for (String bookUID : mBookUIDs.subList(0, BookSessionManager.MAX_OPEN_BOOKS - 1)) {
+            use(bookUID);
+        }
+        List<String> openBookUIDs = mSessionManager.getOpenBookUIDs();
+
+        String otherBookUID = BaseModel.generateUID();
+        mBookUIDs.add(otherBookUID);
+        BookSession session = mSessionManager.acquire(otherBookUID);
+        assertThat(mSessionManager.acquire(otherBookUID)).isSameAs(session);
+        mSessionManager.release(session);
+        mSessionManager.release(session);
+
+        assertThat(session.getDatabase().isOpen()).isFalse();
+        assertThat(mSessionManager.getOpenBookUIDs()).isEqualTo(openBookUIDs);
+    }
+
+    @Test
+    public void countRecords_shouldNotOpenSession() {
+        BookSession session = mSessionManager.acquire(mBookUIDs.get(0));
+        long accountCount = session.getAccountsDbAdapter().getRecordsCount();
+        mSessionManager.release(session);
+
+        long[] counts = mSessionManager.countRecords(mBookUIDs.get(0),
+                DatabaseSchema.AccountEntry.TABLE_NAME, DatabaseSchema.TransactionEntry.TABLE_NAME);
+        assertThat(counts).containsExactly(accountCount, 0L);
+        assertThat(mSessionManager.getOpenBookUIDs()).doesNotContain(mBookUIDs.get(0));
+
+        assertThat(mSessionManager.countRecords(mActiveBookUID, DatabaseSchema.AccountEntry.TABLE_NAME))
+                .containsExactly(GnuCashApplication.getAccountsDbAdapter().getRecordsCount());
+    }
+
+    @After
+    public void tearDown() {
+        for (String bookUID : mBookUIDs) {
+            mSessionManager.close(bookUID);
+            GnuCashApplication.getAppContext().deleteDatabase(bookUID);
+        }
+    }
+}
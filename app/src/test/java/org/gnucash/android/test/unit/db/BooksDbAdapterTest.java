@@ -15,13 +15,24 @@
  */
 package org.gnucash.android.test.unit.db;
 
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
 import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.DatabaseTemplate;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
 import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
 import org.gnucash.android.importer.GncXmlImporter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
 import org.gnucash.android.model.BaseModel;
 import org.gnucash.android.model.Book;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
@@ -35,6 +46,8 @@ import org.xml.sax.SAXException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -160,6 +173,67 @@ public class BooksDbAdapterTest {
         assertThat(generatedName).isEqualTo("Book 4");
     }
 
+    /**
+     * New book databases are copied from the template, with commodities but unique commodity GUIDs
+     */
+    @Test
+    public void newBookDatabases_shouldBeCreatedFromTemplate(){
+        Context context = GnuCashApplication.getAppContext();
+        DatabaseTemplate.prepare(context);
+        String bookUID1 = BaseModel.generateUID();
+        String bookUID2 = BaseModel.generateUID();
+        SQLiteDatabase db1 = DatabaseHelper.create(context, bookUID1).getWritableDatabase();
+        SQLiteDatabase db2 = DatabaseHelper.create(context, bookUID2).getWritableDatabase();
+
+        CommoditiesDbAdapter commoditiesDbAdapter1 = new CommoditiesDbAdapter(db1);
+        CommoditiesDbAdapter commoditiesDbAdapter2 = new CommoditiesDbAdapter(db2);
+        assertThat(db1.getVersion()).isEqualTo(DatabaseSchema.DATABASE_VERSION);
+        assertThat(commoditiesDbAdapter1.getRecordsCount()).isGreaterThan(0);
+        assertThat(commoditiesDbAdapter2.getRecordsCount()).isEqualTo(commoditiesDbAdapter1.getRecordsCount());
+        assertThat(commoditiesDbAdapter1.getCommodityUID("USD"))
+                .isNotEqualTo(commoditiesDbAdapter2.getCommodityUID("USD"));
+    }
+
+    /**
+     * Books with the default accounts are copied from the template, with unique GUIDs and the same account tree
+     */
+    @Test
+    public void booksWithDefaultAccounts_shouldBeCreatedFromTemplate(){
+        Context context = GnuCashApplication.getAppContext();
+        DatabaseTemplate.prepare(context);
+        String importedBookUID = createNewBookWithDefaultAccounts();
+        String bookUID1 = DatabaseTemplate.createBookWithDefaultAccounts(context);
+        String bookUID2 = DatabaseTemplate.createBookWithDefaultAccounts(context);
+        assertThat(bookUID1).isNotNull();
+        assertThat(bookUID2).isNotNull();
+        assertThat(mBooksDbAdapter.getRecordsCount()).isEqualTo(3);
+
+        AccountsDbAdapter importedAccounts = openAccountsDbAdapter(importedBookUID);
+        AccountsDbAdapter accounts1 = openAccountsDbAdapter(bookUID1);
+        AccountsDbAdapter accounts2 = openAccountsDbAdapter(bookUID2);
+        assertThat(accounts1.getRecordsCount()).isEqualTo(importedAccounts.getRecordsCount());
+        assertThat(accounts1.getRecord(mBooksDbAdapter.getRecord(bookUID1).getRootAccountUID()).getAccountType())
+                .isEqualTo(AccountType.ROOT);
+
+        Set<String> accountUIDs1 = new HashSet<>();
+        for (Account account : accounts1.getAllRecords()) {
+            accountUIDs1.add(account.getUID());
+        }
+        for (Account account : accounts1.getAllRecords()) {
+            if (account.getParentUID() != null)
+                assertThat(accountUIDs1).contains(account.getParentUID());
+            assertThat(account.getCommodity()).isNotNull();
+        }
+        for (Account account : accounts2.getAllRecords()) {
+            assertThat(accountUIDs1).doesNotContain(account.getUID());
+        }
+    }
+
+    private static AccountsDbAdapter openAccountsDbAdapter(String bookUID) {
+        SQLiteDatabase db = new DatabaseHelper(GnuCashApplication.getAppContext(), bookUID).getReadableDatabase();
+        return new AccountsDbAdapter(db, new TransactionsDbAdapter(db, new SplitsDbAdapter(db)));
+    }
+
     /**
      * Creates a new database with default accounts
      * @return The book UID for the new database
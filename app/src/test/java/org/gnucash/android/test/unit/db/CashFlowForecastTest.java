@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.CashFlowForecast;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.PeriodType;
+import org.gnucash.android.model.Recurrence;
+import org.gnucash.android.model.ScheduledAction;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class CashFlowForecastTest {
+
+    private static final int DAYS = 30;
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private Account mAssetAccount;
+    private Account mCheckingAccount;
+    private Account mExpenseAccount;
+    private Account mIncomeAccount;
+    private LocalDate mToday;
+    private long[] mSampleTimes;
+
+    @Before
+    public void setUp() {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        mAssetAccount = new Account("Assets");
+        mAssetAccount.setAccountType(AccountType.ASSET);
+        mCheckingAccount = new Account("Checking");
+        mCheckingAccount.setAccountType(AccountType.BANK);
+        mCheckingAccount.setParentUID(mAssetAccount.getUID());
+        mExpenseAccount = new Account("Expenses");
+        mExpenseAccount.setAccountType(AccountType.EXPENSE);
+        mIncomeAccount = new Account("Income");
+        mIncomeAccount.setAccountType(AccountType.INCOME);
+        mAccountsDbAdapter.bulkAddRecords(Arrays.asList(mAssetAccount, mCheckingAccount, mExpenseAccount, mIncomeAccount));
+
+        mToday = new LocalDate();
+        mSampleTimes = new long[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            mSampleTimes[day] = mToday.plusDays(day + 1).toDateTimeAtStartOfDay().getMillis() - 1;
+        }
+    }
+
+    private Transaction createTransaction(Account debitAccount, Account creditAccount, String amount, long time) {
+        Transaction transaction = new Transaction("Transfer");
+        Split split = new Split(new Money(amount, Commodity.DEFAULT_COMMODITY.getCurrencyCode()), debitAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(creditAccount.getUID()));
+        transaction.setTime(time);
+        return transaction;
+    }
+
+    private long getTimeOfDay(int day) {
+        return mToday.plusDays(day).toDateTimeAtStartOfDay().plusHours(12).getMillis();
+    }
+
+    @Test
+    public void forecast_shouldMergeScheduledAndFutureTransactions() {
+        mTransactionsDbAdapter.addRecord(createTransaction(mCheckingAccount, mIncomeAccount, "100",
+                System.currentTimeMillis() - 86400000L));
+        mTransactionsDbAdapter.addRecord(createTransaction(mCheckingAccount, mIncomeAccount, "50", getTimeOfDay(10)));
+
+        Transaction template = createTransaction(mExpenseAccount, mCheckingAccount, "10", getTimeOfDay(1));
+        template.setTemplate(true);
+        mTransactionsDbAdapter.addRecord(template);
+        ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        scheduledAction.setActionUID(template.getUID());
+        scheduledAction.setStartTime(getTimeOfDay(1));
+        scheduledAction.setRecurrence(new Recurrence(PeriodType.WEEK));
+        scheduledAction.setTotalPlannedExecutionCount(3);
+        ScheduledActionDbAdapter.getInstance().addRecord(scheduledAction);
+
+        long transactionCount = mTransactionsDbAdapter.getRecordsCount();
+        CashFlowForecast forecast = CashFlowForecast.compute(
+                Arrays.asList(mAssetAccount.getUID(), mCheckingAccount.getUID(), mExpenseAccount.getUID()),
+                mSampleTimes);
+
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(transactionCount);
+        float[] assets = forecast.getBalanceSeries(mAssetAccount.getUID());
+        assertThat(assets[0]).isEqualTo(100f);
+        assertThat(assets[1]).isEqualTo(90f);
+        assertThat(assets[8]).isEqualTo(80f);
+        assertThat(assets[10]).isEqualTo(130f);
+        assertThat(assets[15]).isEqualTo(120f);
+        assertThat(assets[DAYS - 1]).isEqualTo(120f); //only 3 executions planned
+        assertThat(forecast.getBalanceSeries(mCheckingAccount.getUID())).containsExactly(assets);
+        assertThat(forecast.getBalance(mExpenseAccount.getUID(), DAYS - 1))
+                .isEqualTo(new Money("30", Commodity.DEFAULT_COMMODITY.getCurrencyCode()));
+    }
+
+    @Test
+    public void executedOccurrences_shouldNotBeForecastAgain() {
+        Transaction template = createTransaction(mExpenseAccount, mCheckingAccount, "10", getTimeOfDay(-7));
+        template.setTemplate(true);
+        mTransactionsDbAdapter.addRecord(template);
+        ScheduledAction scheduledAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        scheduledAction.setActionUID(template.getUID());
+        scheduledAction.setStartTime(getTimeOfDay(-7));
+        scheduledAction.setRecurrence(new Recurrence(PeriodType.WEEK));
+        scheduledAction.setExecutionCount(2); //the occurrences of last week and today were executed
+        ScheduledActionDbAdapter.getInstance().addRecord(scheduledAction);
+
+        CashFlowForecast forecast = CashFlowForecast.compute(Arrays.asList(mExpenseAccount.getUID()), mSampleTimes);
+
+        float[] expenses = forecast.getBalanceSeries(mExpenseAccount.getUID());
+        assertThat(expenses[6]).isEqualTo(0f);
+        assertThat(expenses[7]).isEqualTo(10f);
+        assertThat(expenses[DAYS - 1]).isEqualTo(40f);
+    }
+
+    @After
+    public void tearDown() {
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DataChangeBus;
+import org.gnucash.android.db.DataChangeEvent;
+import org.gnucash.android.db.DatabaseSchema;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class DataChangeBusTest {
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private Account mCashAccount;
+    private Account mExpenseAccount;
+    private Account mOtherAccount;
+
+    private final List<DataChangeEvent> mEvents = new ArrayList<>();
+    private final DataChangeBus.Listener mListener = new DataChangeBus.Listener() {
+        @Override
+        public void onDataChanged(@NonNull DataChangeEvent event) {
+            mEvents.add(event);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        mCashAccount = new Account("Cash");
+        mExpenseAccount = new Account("Expenses");
+        mOtherAccount = new Account("Other");
+        mAccountsDbAdapter.bulkAddRecords(Arrays.asList(mCashAccount, mExpenseAccount, mOtherAccount));
+
+        DataChangeBus.getInstance().register(mListener);
+    }
+
+    private Transaction createTransaction(Account from, Account to) {
+        Transaction transaction = new Transaction("Groceries");
+        Split split = new Split(new Money("10", from.getCommodity().getCurrencyCode()), to.getUID());
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(from.getUID()));
+        return transaction;
+    }
+
+    @Test
+    public void writesInTransaction_shouldBePublishedAsOneEvent() {
+        Transaction first = createTransaction(mCashAccount, mExpenseAccount);
+        Transaction second = createTransaction(mCashAccount, mExpenseAccount);
+
+        mTransactionsDbAdapter.beginTransaction();
+        try {
+            mTransactionsDbAdapter.addRecord(first);
+            mTransactionsDbAdapter.addRecord(second);
+            assertThat(mEvents).isEmpty();
+            mTransactionsDbAdapter.setTransactionSuccessful();
+        } finally {
+            mTransactionsDbAdapter.endTransaction();
+        }
+
+        assertThat(mEvents).hasSize(1);
+        DataChangeEvent event = mEvents.get(0);
+        assertThat(event.affectsTable(DatabaseSchema.TransactionEntry.TABLE_NAME)).isTrue();
+        assertThat(event.affectsTable(DatabaseSchema.SplitEntry.TABLE_NAME)).isTrue();
+        assertThat(event.affectsTable(DatabaseSchema.AccountEntry.TABLE_NAME)).isFalse();
+        assertThat(event.affectsRecord(first.getUID())).isTrue();
+        assertThat(event.affectsRecord(second.getUID())).isTrue();
+        assertThat(event.isAllAccounts()).isFalse();
+        assertThat(event.getAccountUIDs()).containsOnly(mCashAccount.getUID(), mExpenseAccount.getUID());
+    }
+
+    @Test
+    public void changedTransaction_shouldAffectOldAndNewAccounts() {
+        Transaction transaction = createTransaction(mCashAccount, mExpenseAccount);
+        mTransactionsDbAdapter.addRecord(transaction);
+        mEvents.clear();
+
+        for (Split split : transaction.getSplits()) {
+            if (split.getAccountUID().equals(mExpenseAccount.getUID()))
+                split.setAccountUID(mOtherAccount.getUID());
+        }
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        assertThat(mEvents).hasSize(1);
+        assertThat(mEvents.get(0).getAccountUIDs())
+                .containsOnly(mCashAccount.getUID(), mExpenseAccount.getUID(), mOtherAccount.getUID());
+
+        mEvents.clear();
+        mTransactionsDbAdapter.deleteRecord(transaction.getUID());
+        assertThat(mEvents).hasSize(1);
+        assertThat(mEvents.get(0).affectsRecord(transaction.getUID())).isTrue();
+        assertThat(mEvents.get(0).getAccountUIDs()).containsOnly(mCashAccount.getUID(), mOtherAccount.getUID());
+    }
+
+    @Test
+    public void writesInDirectTransaction_shouldBePublishedOrDiscardedWhenItEnds() {
+        SQLiteDatabase db = GnuCashApplication.getActiveDb();
+        db.beginTransaction();
+        try {
+            mTransactionsDbAdapter.addRecord(createTransaction(mCashAccount, mExpenseAccount));
+            db.setTransactionSuccessful();
+        } finally {
+            DataChangeBus.getInstance().endTransaction(db);
+        }
+        assertThat(mEvents).hasSize(1);
+
+        mEvents.clear();
+        db.beginTransaction();
+        try {
+            mTransactionsDbAdapter.addRecord(createTransaction(mCashAccount, mExpenseAccount));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            DataChangeBus.getInstance().discard();
+        }
+        mAccountsDbAdapter.addRecord(new Account("Savings"));
+        assertThat(mEvents).hasSize(1);
+        assertThat(mEvents.get(0).affectsTable(DatabaseSchema.TransactionEntry.TABLE_NAME)).isFalse();
+    }
+
+    @Test
+    public void unregisteredListener_shouldNotBeNotified() {
+        DataChangeBus.getInstance().unregister(mListener);
+        mTransactionsDbAdapter.addRecord(createTransaction(mCashAccount, mExpenseAccount));
+        assertThat(mEvents).isEmpty();
+    }
+
+    @After
+    public void tearDown() {
+        DataChangeBus.getInstance().unregister(mListener);
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.export.ExportFormat;
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.qif.QifExporter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test for concurrent use of the shared database adapters.
+ * <p>Writers insert transactions while readers compute balances and an exporter runs QIF exports,
+ * all on the same database. Checks that no operation fails, that readers never observe partially
+ * written transactions, that all writes are persisted and that the writers keep a minimum throughput
+ * while the readers and the exporter are running</p>
+ */
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class DatabaseAdapterConcurrencyTest {
+    private static final int WRITER_COUNT = 4;
+    private static final int READER_COUNT = 2;
+    private static final int TRANSACTIONS_PER_WRITER = 40;
+    private static final int BATCH_SIZE = 5;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    /**
+     * Minimum number of transactions per second written by all writers together.
+     * This is far below the throughput without contention, so that the test is not flaky on slow machines,
+     * but fails if writers are serialized behind long reads or exports
+     */
+    private static final int MIN_WRITES_PER_SECOND = 10;
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private SplitsDbAdapter mSplitsDbAdapter;
+
+    private Account mCashAccount;
+    private Account mExpenseAccount;
+
+    @Before
+    public void setUp() {
+        mSplitsDbAdapter = SplitsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+
+        mCashAccount = new Account("Cash");
+        mCashAccount.setAccountType(AccountType.ASSET);
+        mExpenseAccount = new Account("Groceries");
+        mExpenseAccount.setAccountType(AccountType.EXPENSE);
+        mAccountsDbAdapter.addRecord(mCashAccount);
+        mAccountsDbAdapter.addRecord(mExpenseAccount);
+    }
+
+    private Transaction createTransaction(String description) {
+        Transaction transaction = new Transaction(description);
+        Split split = new Split(new Money(BigDecimal.ONE, mExpenseAccount.getCommodity()), mExpenseAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(mCashAccount.getUID()));
+        return transaction;
+    }
+
+    @Test
+    public void concurrentWritesReadsAndExports_shouldBeConsistent() throws InterruptedException {
+        final int totalTransactions = WRITER_COUNT * TRANSACTIONS_PER_WRITER;
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITER_COUNT);
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final AtomicLong writeCount = new AtomicLong();
+        final AtomicLong readCount = new AtomicLong();
+        final AtomicLong exportCount = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITER_COUNT + READER_COUNT + 1);
+        for (int w = 0; w < WRITER_COUNT; w++) {
+            final boolean bulk = w % 2 == 1;
+            final int writer = w;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startGate.await();
+                        List<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+                        for (int i = 0; i < TRANSACTIONS_PER_WRITER; i++) {
+                            Transaction transaction = createTransaction("Writer " + writer + " #" + i);
+                            if (bulk) {
+                                batch.add(transaction);
+                                if (batch.size() == BATCH_SIZE) {
+                                    mTransactionsDbAdapter.bulkAddRecords(batch);
+                                    batch = new ArrayList<>(BATCH_SIZE);
+                                }
+                            } else {
+                                mTransactionsDbAdapter.addRecord(transaction);
+                            }
+                            writeCount.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            });
+        }
+
+        for (int r = 0; r < READER_COUNT; r++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startGate.await();
+                        List<String> accountUIDs = Arrays.asList(mExpenseAccount.getUID(), mCashAccount.getUID());
+                        String currencyCode = mExpenseAccount.getCommodity().getCurrencyCode();
+                        BigDecimal lastBalance = BigDecimal.ZERO;
+                        do {
+                            //splits of a transaction are saved atomically, so the balances of both accounts,
+                            //read in a single query, are exact negatives of each other
+                            assertThat(mSplitsDbAdapter.computeSplitBalance(accountUIDs, currencyCode, true)
+                                    .isAmountZero()).isTrue();
+                            BigDecimal balance = mAccountsDbAdapter.getAccountBalance(mExpenseAccount.getUID()).asBigDecimal();
+                            assertThat(balance).isGreaterThanOrEqualTo(lastBalance);
+                            assertThat(balance).isLessThanOrEqualTo(BigDecimal.valueOf(totalTransactions));
+                            lastBalance = balance;
+                            readCount.incrementAndGet();
+                        } while (!stopped.get());
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    startGate.await();
+                    do {
+                        ExportParams params = new ExportParams(ExportFormat.QIF);
+                        params.setExportStartTime(new Timestamp(0));
+                        new QifExporter(params).generateExport();
+                        exportCount.incrementAndGet();
+                    } while (!stopped.get());
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        startGate.countDown();
+        boolean writesCompleted = writersDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long writeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        stopped.set(true);
+        executor.shutdown();
+        boolean terminated = executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertThat(errors).isEmpty();
+        assertThat(writesCompleted).isTrue();
+        assertThat(terminated).isTrue();
+        assertThat(writeCount.get()).isEqualTo(totalTransactions);
+        assertThat(readCount.get()).isPositive();
+        assertThat(exportCount.get()).isPositive();
+        assertThat(writeMillis).isLessThanOrEqualTo(1000L * totalTransactions / MIN_WRITES_PER_SECOND);
+
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(totalTransactions);
+        assertThat(mSplitsDbAdapter.getRecordsCount()).isEqualTo(2 * totalTransactions);
+        Money expenseBalance = mAccountsDbAdapter.getAccountBalance(mExpenseAccount.getUID());
+        assertThat(expenseBalance.asBigDecimal()).isEqualByComparingTo(BigDecimal.valueOf(totalTransactions));
+        assertThat(mAccountsDbAdapter.getAccountBalance(mCashAccount.getUID())).isEqualTo(expenseBalance.negate());
+    }
+
+    @After
+    public void tearDown() {
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
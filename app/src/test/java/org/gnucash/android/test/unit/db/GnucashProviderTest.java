@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentValues;
+import android.support.annotation.NonNull;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.DataChangeBus;
+import org.gnucash.android.db.DataChangeEvent;
+import org.gnucash.android.db.DatabaseSchema.AccountEntry;
+import org.gnucash.android.db.DatabaseSchema.SplitEntry;
+import org.gnucash.android.db.DatabaseSchema.TransactionEntry;
+import org.gnucash.android.db.GnucashProvider;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class GnucashProviderTest {
+
+    private GnucashProvider mProvider;
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private SplitsDbAdapter mSplitsDbAdapter;
+    private Account mCashAccount;
+    private Account mExpenseAccount;
+
+    private final List<DataChangeEvent> mEvents = new ArrayList<>();
+    private final DataChangeBus.Listener mListener = new DataChangeBus.Listener() {
+        @Override
+        public void onDataChanged(@NonNull DataChangeEvent event) {
+            mEvents.add(event);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        ShadowApplication.getInstance().grantPermissions("org.gnucash.android.permission.CREATE_ACCOUNT",
+                "org.gnucash.android.permission.RECORD_TRANSACTION");
+        mProvider = Robolectric.setupContentProvider(GnucashProvider.class);
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        mSplitsDbAdapter = SplitsDbAdapter.getInstance();
+
+        mCashAccount = new Account("Cash");
+        mExpenseAccount = new Account("Expenses");
+        mAccountsDbAdapter.addRecord(mCashAccount);
+        mAccountsDbAdapter.addRecord(mExpenseAccount);
+        DataChangeBus.getInstance().register(mListener);
+    }
+
+    private static ContentValues createTransactionValues(String description) {
+        ContentValues values = new ContentValues();
+        values.put(TransactionEntry.COLUMN_DESCRIPTION, description);
+        values.put(TransactionEntry.COLUMN_CURRENCY, Commodity.DEFAULT_COMMODITY.getCurrencyCode());
+        return values;
+    }
+
+    private static ContentProviderOperation createSplitOperation(int transactionIndex, String accountUID, long valueNum) {
+        return ContentProviderOperation.newInsert(GnucashProvider.SPLITS_URI)
+                .withValueBackReference(GnucashProvider.COLUMN_TRANSACTION_ID, transactionIndex)
+                .withValue(SplitEntry.COLUMN_ACCOUNT_UID, accountUID)
+                .withValue(SplitEntry.COLUMN_VALUE_NUM, valueNum)
+                .withValue(SplitEntry.COLUMN_VALUE_DENOM, 100L)
+                .build();
+    }
+
+    @Test
+    public void applyBatch_shouldInsertTransactionsWithSplitsInOneTransaction() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(GnucashProvider.TRANSACTIONS_URI)
+                .withValues(createTransactionValues("Groceries")).build());
+        operations.add(createSplitOperation(0, mExpenseAccount.getUID(), 2500));
+        operations.add(createSplitOperation(0, mCashAccount.getUID(), -2500));
+        //an unbalanced transaction gets an imbalance split
+        operations.add(ContentProviderOperation.newInsert(GnucashProvider.TRANSACTIONS_URI)
+                .withValues(createTransactionValues("Rent")).build());
+        operations.add(createSplitOperation(3, mExpenseAccount.getUID(), 90000));
+
+        ContentProviderResult[] results = mProvider.applyBatch(operations);
+
+        assertThat(results).hasSize(5);
+        assertThat(mEvents).hasSize(1);
+        assertThat(mEvents.get(0).getAccountUIDs()).contains(mCashAccount.getUID(), mExpenseAccount.getUID());
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(2);
+        assertThat(mSplitsDbAdapter.getRecordsCount()).isEqualTo(5);
+
+        String rentUID = mTransactionsDbAdapter.getUID(Long.parseLong(results[3].uri.getLastPathSegment()));
+        Transaction rent = mTransactionsDbAdapter.getRecord(rentUID);
+        assertThat(rent.getSplits()).hasSize(2);
+        assertThat(rent.getImbalance().isAmountZero()).isTrue();
+    }
+
+    @Test
+    public void bulkInsert_shouldInsertAllOrNothing() {
+        ContentValues account = new ContentValues();
+        account.put(AccountEntry.COLUMN_NAME, "Savings");
+        account.put(AccountEntry.COLUMN_CURRENCY, "EUR");
+        assertThat(mProvider.bulkInsert(GnucashProvider.ACCOUNTS_URI, new ContentValues[]{account})).isEqualTo(1);
+        assertThat(mAccountsDbAdapter.findAccountUidByFullName("Savings")).isNotNull();
+
+        ContentValues invalid = new ContentValues(); //without description
+        try {
+            mProvider.bulkInsert(GnucashProvider.TRANSACTIONS_URI,
+                    new ContentValues[]{createTransactionValues("Groceries"), invalid});
+            fail("Transactions without description should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(mTransactionsDbAdapter.getRecordsCount()).isZero();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        DataChangeBus.getInstance().unregister(mListener);
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
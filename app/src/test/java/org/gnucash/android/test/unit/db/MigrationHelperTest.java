@@ -15,8 +15,22 @@
  */
 package org.gnucash.android.test.unit.db;
 
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
 import org.gnucash.android.BuildConfig;
+import org.gnucash.android.app.GnuCashApplication;
+import org.gnucash.android.db.DatabaseHelper;
+import org.gnucash.android.db.DatabaseMigrator;
+import org.gnucash.android.db.DatabaseSchema;
 import org.gnucash.android.db.MigrationHelper;
+import org.gnucash.android.db.adapter.RecurrenceDbAdapter;
+import org.gnucash.android.db.adapter.ScheduledActionDbAdapter;
+import org.gnucash.android.model.BaseModel;
+import org.gnucash.android.model.PeriodType;
+import org.gnucash.android.model.Recurrence;
+import org.gnucash.android.model.ScheduledAction;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
 import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
@@ -26,6 +40,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TimeZone;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -61,4 +77,70 @@ public class MigrationHelperTest {
         assertThat(TimestampHelper.getUtcStringFromTimestamp(result))
                 .isEqualTo(unixBillenniumUtcString);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void migrator_shouldResumeFromCommittedVersion() {
+        Context context = GnuCashApplication.getAppContext();
+        String databaseName = BaseModel.generateUID();
+        DatabaseHelper databaseHelper = new DatabaseHelper(context, databaseName);
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        //roll the schema back to version 13, as if the upgrade was interrupted before the last step
+        db.execSQL("DROP TABLE " + DatabaseSchema.TransactionSummaryEntry.TABLE_NAME);
+        db.setVersion(13);
+        databaseHelper.close();
+
+        assertThat(DatabaseMigrator.isMigrationRequired(context, databaseName)).isTrue();
+        final List<Integer> versions = new ArrayList<>();
+        int steps = DatabaseMigrator.migrate(context, databaseName, new DatabaseMigrator.ProgressListener() {
+            @Override
+            public void onProgress(int completedSteps, int totalSteps, int version) {
+                versions.add(version);
+            }
+        });
+
+        assertThat(steps).isEqualTo(DatabaseSchema.DATABASE_VERSION - 13);
+        assertThat(versions).endsWith(DatabaseSchema.DATABASE_VERSION);
+        assertThat(DatabaseMigrator.isMigrationRequired(context, databaseName)).isFalse();
+
+        db = new DatabaseHelper(context, databaseName).getReadableDatabase();
+        assertThat(DatabaseUtils.queryNumEntries(db, DatabaseSchema.TransactionSummaryEntry.TABLE_NAME)).isZero();
+        db.close();
+        context.deleteDatabase(databaseName);
+    }
+
+    @Test
+    public void upgradeToVersion18_shouldCountOccurrencesOfWeeklyActions() {
+        Context context = GnuCashApplication.getAppContext();
+        String databaseName = BaseModel.generateUID();
+        SQLiteDatabase db = new DatabaseHelper(context, databaseName).getWritableDatabase();
+        ScheduledActionDbAdapter scheduledActionDbAdapter = new ScheduledActionDbAdapter(db, new RecurrenceDbAdapter(db));
+
+        Recurrence weekly = new Recurrence(PeriodType.WEEK);
+        weekly.setByDay("MO,WE,FR");
+        ScheduledAction weeklyAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        weeklyAction.setActionUID(BaseModel.generateUID());
+        weeklyAction.setRecurrence(weekly);
+        weeklyAction.setExecutionCount(2);
+        weeklyAction.setTotalPlannedExecutionCount(4);
+        scheduledActionDbAdapter.addRecord(weeklyAction);
+
+        ScheduledAction monthlyAction = new ScheduledAction(ScheduledAction.ActionType.TRANSACTION);
+        monthlyAction.setActionUID(BaseModel.generateUID());
+        monthlyAction.setRecurrence(new Recurrence(PeriodType.MONTH));
+        monthlyAction.setExecutionCount(2);
+        scheduledActionDbAdapter.addRecord(monthlyAction);
+
+        db.setVersion(17);
+        db.close();
+        assertThat(DatabaseMigrator.migrate(context, databaseName, null)).isEqualTo(1);
+
+        db = new DatabaseHelper(context, databaseName).getWritableDatabase();
+        scheduledActionDbAdapter = new ScheduledActionDbAdapter(db, new RecurrenceDbAdapter(db));
+        ScheduledAction migratedWeeklyAction = scheduledActionDbAdapter.getRecord(weeklyAction.getUID());
+        assertThat(migratedWeeklyAction.getExecutionCount()).isEqualTo(6);
+        assertThat(migratedWeeklyAction.getTotalPlannedExecutionCount()).isEqualTo(12);
+        assertThat(scheduledActionDbAdapter.getRecord(monthlyAction.getUID()).getExecutionCount()).isEqualTo(2);
+        db.close();
+        context.deleteDatabase(databaseName);
+    }
+}
@@ -1,6 +1,9 @@
 package org.gnucash.android.test.unit.db;
 
+import android.util.Pair;
+
 import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.PriceIndex;
 import org.gnucash.android.db.adapter.CommoditiesDbAdapter;
 import org.gnucash.android.db.adapter.PricesDbAdapter;
 import org.gnucash.android.model.Price;
@@ -12,6 +15,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
 import static org.assertj.core.api.Assertions.assertThat;
 /**
  * Test price functions
@@ -21,14 +27,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 public class PriceDbAdapterTest {
 
     /**
-     * The price table should override price for any commodity/currency pair
+     * The price table should override price for any commodity/currency pair and date
      * todo: maybe move this to UI testing. Not sure how Robolectric handles this
      */
     @Test
-    public void shouldOnlySaveOnePricePerCommodityPair(){
+    public void shouldOnlySaveOnePricePerCommodityPairAndDate(){
         String commodityUID = CommoditiesDbAdapter.getInstance().getCommodityUID("EUR");
         String currencyUID = CommoditiesDbAdapter.getInstance().getCommodityUID("USD");
+        Timestamp date = new Timestamp(1467331200000L);
         Price price = new Price(commodityUID, currencyUID);
+        price.setDate(date);
         price.setValueNum(134);
         price.setValueDenom(100);
 
@@ -40,6 +48,7 @@ public class PriceDbAdapterTest {
         assertThat(price.getValueNum()).isEqualTo(67); //the price is reduced to 57/100 before saving
 
         Price price1 = new Price(commodityUID, currencyUID);
+        price1.setDate(date);
         price1.setValueNum(187);
         price1.setValueDenom(100);
         pricesDbAdapter.addRecord(price1);
@@ -52,10 +61,90 @@ public class PriceDbAdapterTest {
 
 
         Price price2 = new Price(currencyUID, commodityUID);
+        price2.setDate(date);
         price2.setValueNum(190);
         price2.setValueDenom(100);
         pricesDbAdapter.addRecord(price2);
 
         assertThat(pricesDbAdapter.getRecordsCount()).isEqualTo(2);
+
+        Price price3 = new Price(commodityUID, currencyUID);
+        price3.setDate(new Timestamp(date.getTime() + 86400000L));
+        price3.setValueNum(150);
+        price3.setValueDenom(100);
+        pricesDbAdapter.addRecord(price3);
+
+        assertThat(pricesDbAdapter.getRecordsCount()).isEqualTo(3); //the history of the pair is kept
+    }
+
+    @Test
+    public void shouldReturnPriceValidAtDate(){
+        String commodityUID = CommoditiesDbAdapter.getInstance().getCommodityUID("EUR");
+        String currencyUID = CommoditiesDbAdapter.getInstance().getCommodityUID("USD");
+        PricesDbAdapter pricesDbAdapter = PricesDbAdapter.getInstance();
+        long january = 1451606400000L;
+        long february = 1454284800000L;
+        pricesDbAdapter.addRecord(createPrice(commodityUID, currencyUID, january, 110, 100));
+        pricesDbAdapter.addRecord(createPrice(commodityUID, currencyUID, february, 120, 100));
+
+        long midJanuary = january + 14 * 86400000L;
+        Pair<Long, Long> price = pricesDbAdapter.getPrice(commodityUID, currencyUID, midJanuary);
+        assertThat(price.first).isEqualTo(11);
+        assertThat(price.second).isEqualTo(10);
+        price = pricesDbAdapter.getPrice(currencyUID, commodityUID, february);
+        assertThat(price.first).isEqualTo(5);
+        assertThat(price.second).isEqualTo(6);
+        price = pricesDbAdapter.getPrice(commodityUID, currencyUID, january - 1);
+        assertThat(price.first).isEqualTo(0);
+
+        PriceIndex priceIndex = pricesDbAdapter.getPriceIndex();
+        price = priceIndex.getPrice(commodityUID, currencyUID, midJanuary);
+        assertThat(price.first).isEqualTo(11);
+        assertThat(price.second).isEqualTo(10);
+        price = priceIndex.getPrice(currencyUID, commodityUID, february + 1);
+        assertThat(price.first).isEqualTo(5);
+        assertThat(price.second).isEqualTo(6);
+        //before the first price, the earliest price is used
+        price = priceIndex.getPrice(commodityUID, currencyUID, january - 1);
+        assertThat(price.first).isEqualTo(11);
+
+        //the index is rebuilt after the prices change
+        pricesDbAdapter.addRecord(createPrice(commodityUID, currencyUID, midJanuary, 2, 1));
+        assertThat(pricesDbAdapter.getPriceIndex()).isNotSameAs(priceIndex);
+        price = pricesDbAdapter.getPriceIndex().getPrice(commodityUID, currencyUID, midJanuary + 1);
+        assertThat(price.first).isEqualTo(2);
+        assertThat(price.second).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldConvertThroughOtherCommodities(){
+        CommoditiesDbAdapter commoditiesDbAdapter = CommoditiesDbAdapter.getInstance();
+        String gbpUID = commoditiesDbAdapter.getCommodityUID("GBP");
+        String usdUID = commoditiesDbAdapter.getCommodityUID("USD");
+        String eurUID = commoditiesDbAdapter.getCommodityUID("EUR");
+        String jpyUID = commoditiesDbAdapter.getCommodityUID("JPY");
+        long time = 1451606400000L;
+        PricesDbAdapter pricesDbAdapter = PricesDbAdapter.getInstance();
+        pricesDbAdapter.addRecord(createPrice(gbpUID, usdUID, time, 130, 100));
+        pricesDbAdapter.addRecord(createPrice(eurUID, usdUID, time, 110, 100));
+
+        PriceIndex priceIndex = pricesDbAdapter.getPriceIndex();
+        assertThat(priceIndex.getPrice(gbpUID, eurUID, time)).isNull();
+        assertThat(priceIndex.canConvert(gbpUID, eurUID)).isTrue();
+        assertThat(priceIndex.convert(new BigDecimal("110.00"), gbpUID, eurUID, time, 2))
+                .isEqualTo(new BigDecimal("130.00"));
+        assertThat(priceIndex.convert(new BigDecimal("130.00"), eurUID, gbpUID, time, 2))
+                .isEqualTo(new BigDecimal("110.00"));
+
+        assertThat(priceIndex.canConvert(gbpUID, jpyUID)).isFalse();
+        assertThat(priceIndex.convert(BigDecimal.ONE, gbpUID, jpyUID, time, 0)).isNull();
+    }
+
+    private static Price createPrice(String commodityUID, String currencyUID, long time, long num, long denom){
+        Price price = new Price(commodityUID, currencyUID);
+        price.setDate(new Timestamp(time));
+        price.setValueNum(num);
+        price.setValueDenom(denom);
+        return price;
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.db;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.Reconciliation;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.SplitsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the reconciliation of an account with a statement
+ */
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class ReconciliationTest {
+
+    private static final long DAY_MILLIS = 86400000L;
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private Account mCardAccount;
+    private Account mBankAccount;
+    private Account mExpenseAccount;
+    private long mStatementTime;
+
+    private Split mFirstCharge;
+    private Split mSecondCharge;
+    private Split mPayment;
+
+    @Before
+    public void setUp() {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        mCardAccount = new Account("Credit card");
+        mCardAccount.setAccountType(AccountType.CREDIT);
+        mBankAccount = new Account("Bank");
+        mBankAccount.setAccountType(AccountType.BANK);
+        mExpenseAccount = new Account("Expenses");
+        mExpenseAccount.setAccountType(AccountType.EXPENSE);
+        mAccountsDbAdapter.bulkAddRecords(Arrays.asList(mCardAccount, mBankAccount, mExpenseAccount));
+
+        mStatementTime = System.currentTimeMillis();
+        mFirstCharge = addTransaction(mExpenseAccount, mCardAccount, "100", mStatementTime - 10 * DAY_MILLIS);
+        mSecondCharge = addTransaction(mExpenseAccount, mCardAccount, "50", mStatementTime - 5 * DAY_MILLIS);
+        mPayment = addTransaction(mCardAccount, mBankAccount, "30", mStatementTime - 3 * DAY_MILLIS);
+        addTransaction(mExpenseAccount, mCardAccount, "20", mStatementTime + DAY_MILLIS); //after the statement
+    }
+
+    /**
+     * Adds a transaction and returns its split in the credit account
+     */
+    private Split addTransaction(Account debitAccount, Account creditAccount, String amount, long time) {
+        Transaction transaction = new Transaction("Transfer");
+        Split split = new Split(createMoney(amount), debitAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        Split pair = split.createPair(creditAccount.getUID());
+        transaction.addSplit(split);
+        transaction.addSplit(pair);
+        transaction.setTime(time);
+        mTransactionsDbAdapter.addRecord(transaction);
+        return debitAccount == mCardAccount ? split : pair;
+    }
+
+    private static Money createMoney(String amount) {
+        return new Money(amount, Commodity.DEFAULT_COMMODITY.getCurrencyCode());
+    }
+
+    @Test
+    public void clearingSplits_shouldUpdateDifference() {
+        Reconciliation reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime, createMoney("120"));
+
+        assertThat(reconciliation.getUnreconciledSplitUIDs())
+                .containsExactly(mFirstCharge.getUID(), mSecondCharge.getUID(), mPayment.getUID());
+        assertThat(reconciliation.getAmount(mPayment.getUID())).isEqualTo(createMoney("-30"));
+        assertThat(reconciliation.getDifference()).isEqualTo(createMoney("120"));
+
+        reconciliation.setCleared(mFirstCharge.getUID(), true);
+        assertThat(reconciliation.getClearedBalance()).isEqualTo(createMoney("100"));
+        assertThat(reconciliation.getDifference()).isEqualTo(createMoney("20"));
+
+        reconciliation.setAllCleared(true);
+        assertThat(reconciliation.getDifference()).isEqualTo(createMoney("0"));
+
+        reconciliation.setCleared(mSecondCharge.getUID(), false);
+        assertThat(reconciliation.getDifference()).isEqualTo(createMoney("50"));
+        assertThat(reconciliation.hasUnsavedChanges()).isTrue();
+
+        reconciliation.setAllCleared(false);
+        assertThat(reconciliation.getClearedBalance()).isEqualTo(createMoney("0"));
+        assertThat(reconciliation.hasUnsavedChanges()).isFalse();
+    }
+
+    @Test
+    public void savedClearedStates_shouldBeRestored() {
+        Reconciliation reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime, createMoney("120"));
+        reconciliation.setCleared(mFirstCharge.getUID(), true);
+        reconciliation.setCleared(mPayment.getUID(), true);
+        reconciliation.save();
+
+        Split split = SplitsDbAdapter.getInstance().getRecord(mPayment.getUID());
+        assertThat(split.getReconcileState()).isEqualTo(Split.FLAG_CLEARED);
+
+        reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime, createMoney("120"));
+        assertThat(reconciliation.isCleared(mFirstCharge.getUID())).isTrue();
+        assertThat(reconciliation.isCleared(mSecondCharge.getUID())).isFalse();
+        assertThat(reconciliation.getClearedBalance()).isEqualTo(createMoney("70"));
+    }
+
+    @Test
+    public void finish_shouldReconcileClearedSplits() {
+        Reconciliation reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime, createMoney("120"));
+        reconciliation.setAllCleared(true);
+        reconciliation.finish();
+
+        Map<Character, Money> sums = SplitsDbAdapter.getInstance()
+                .computeSplitSumsByReconcileState(mCardAccount.getUID(), -1);
+        assertThat(sums.get(Split.FLAG_RECONCILED)).isEqualTo(createMoney("-120"));
+        assertThat(sums.get(Split.FLAG_NOT_RECONCILED)).isEqualTo(createMoney("-20"));
+        assertThat(sums).doesNotContainKey(Split.FLAG_CLEARED);
+
+        reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime + 2 * DAY_MILLIS, createMoney("140"));
+        assertThat(reconciliation.getReconciledBalance()).isEqualTo(createMoney("120"));
+        assertThat(reconciliation.getUnreconciledSplitUIDs()).hasSize(1);
+        assertThat(reconciliation.getDifference()).isEqualTo(createMoney("20"));
+    }
+
+    @Test
+    public void finish_shouldNotReconcileTemplateSplits() {
+        Transaction template = new Transaction("Scheduled payment");
+        Split split = new Split(createMoney("40"), mCardAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        split.setReconcileState(Split.FLAG_CLEARED);
+        template.addSplit(split);
+        template.addSplit(split.createPair(mBankAccount.getUID()));
+        template.setTime(mStatementTime - DAY_MILLIS);
+        template.setTemplate(true);
+        mTransactionsDbAdapter.addRecord(template);
+
+        Reconciliation reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime, createMoney("120"));
+        reconciliation.setAllCleared(true);
+        reconciliation.finish();
+
+        assertThat(SplitsDbAdapter.getInstance().getRecord(split.getUID()).getReconcileState())
+                .isEqualTo(Split.FLAG_CLEARED);
+        assertThat(SplitsDbAdapter.getInstance().getRecord(mPayment.getUID()).getReconcileState())
+                .isEqualTo(Split.FLAG_RECONCILED);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finish_shouldRequireMatchingBalance() {
+        Reconciliation reconciliation = Reconciliation.start(mCardAccount.getUID(), mStatementTime, createMoney("120"));
+        reconciliation.setCleared(mFirstCharge.getUID(), true);
+        reconciliation.finish();
+    }
+
+    @After
+    public void tearDown() {
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
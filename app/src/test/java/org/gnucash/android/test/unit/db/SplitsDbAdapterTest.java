@@ -120,6 +120,27 @@ public class SplitsDbAdapterTest {
         assertThat(Boolean.parseBoolean(isExported)).isFalse();
     }
 
+    @Test
+    public void deletingLastSplit_shouldDeleteOnlyItsTransaction(){
+        Transaction transaction = new Transaction("");
+        Split split = new Split(Money.getZeroInstance(), mAccount.getUID());
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(mAccount.getUID()));
+        mTransactionsDbAdapter.addRecord(transaction);
+
+        Transaction otherTransaction = new Transaction("");
+        otherTransaction.addSplit(new Split(Money.getZeroInstance(), mAccount.getUID()));
+        mTransactionsDbAdapter.addRecord(otherTransaction);
+
+        List<Split> splits = mSplitsDbAdapter.getSplitsForTransaction(transaction.getUID());
+        assertThat(mSplitsDbAdapter.deleteRecord(splits.get(0).getUID())).isTrue();
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(2);
+
+        assertThat(mSplitsDbAdapter.deleteRecord(splits.get(1).getUID())).isTrue();
+        assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(1);
+        assertThat(mTransactionsDbAdapter.getRecord(otherTransaction.getUID())).isNotNull();
+    }
+
     @After
     public void tearDown(){
         mAccountsDbAdapter.deleteAllRecords();
@@ -35,8 +35,10 @@ import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Currency;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -145,6 +147,96 @@ public class TransactionsDbAdapterTest {
 		assertThat(savedBalance.getCurrency()).isEqualTo(secondSplitAmount.getCurrency());
 	}
 
+	@Test
+	public void transactionSummaries_shouldFollowSplitChanges(){
+		Transaction transaction = new Transaction("Summary");
+		Split split = new Split(new Money("10", DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID());
+		transaction.addSplit(split);
+		transaction.addSplit(split.createPair(bravoAccount.getUID()));
+		mTransactionsDbAdapter.addRecord(transaction);
+
+		assertThat(mAccountsDbAdapter.getTransactionMaxSplitNum(alphaAccount.getUID())).isEqualTo(2);
+		assertThat(mTransactionsDbAdapter.getNumCurrencies(transaction.getUID())).isEqualTo(1);
+
+		Split thirdSplit = new Split(new Money("5", DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID());
+		thirdSplit.setTransactionUID(transaction.getUID());
+		mSplitsDbAdapter.addRecord(thirdSplit);
+		assertThat(mAccountsDbAdapter.getTransactionMaxSplitNum(bravoAccount.getUID())).isEqualTo(3);
+
+		mTransactionsDbAdapter.deleteRecord(transaction.getUID());
+		assertThat(mAccountsDbAdapter.getTransactionMaxSplitNum(alphaAccount.getUID())).isEqualTo(0);
+		assertThat(mTransactionsDbAdapter.getNumCurrencies(transaction.getUID())).isEqualTo(0);
+	}
+
+	@Test
+	public void batchOperations_shouldAffectOnlySelectedTransactions(){
+		Account charlieAccount = new Account("Charlie");
+		mAccountsDbAdapter.addRecord(charlieAccount);
+
+		long[] transactionIds = new long[3];
+		for (int i = 0; i < transactionIds.length; i++) {
+			Transaction transaction = new Transaction("Batch " + i);
+			Split split = new Split(new Money("10", DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID());
+			transaction.addSplit(split);
+			transaction.addSplit(split.createPair(bravoAccount.getUID()));
+			mTransactionsDbAdapter.addRecord(transaction);
+			transactionIds[i] = mTransactionsDbAdapter.getID(transaction.getUID());
+		}
+		long[] selectedIds = new long[]{transactionIds[0], transactionIds[1]};
+
+		assertThat(mTransactionsDbAdapter.getAccountUIDs(selectedIds))
+				.containsOnly(alphaAccount.getUID(), bravoAccount.getUID());
+
+		assertThat(mTransactionsDbAdapter.moveTransactions(selectedIds, alphaAccount.getUID(), charlieAccount.getUID()))
+				.isEqualTo(2);
+		assertThat(mTransactionsDbAdapter.getTransactionsCount(charlieAccount.getUID())).isEqualTo(2);
+		assertThat(mTransactionsDbAdapter.getTransactionsCount(alphaAccount.getUID())).isEqualTo(1);
+
+		assertThat(mTransactionsDbAdapter.setTransactionsTime(selectedIds, 1000L)).isEqualTo(2);
+		assertThat(mTransactionsDbAdapter.getRecord(transactionIds[0]).getTimeMillis()).isEqualTo(1000L);
+		assertThat(mTransactionsDbAdapter.markTransactionsAsExported(selectedIds)).isEqualTo(2);
+		assertThat(mTransactionsDbAdapter.getRecord(transactionIds[1]).isExported()).isTrue();
+		assertThat(mTransactionsDbAdapter.getRecord(transactionIds[2]).isExported()).isFalse();
+
+		assertThat(mTransactionsDbAdapter.deleteTransactions(selectedIds)).isEqualTo(2);
+		assertThat(mTransactionsDbAdapter.getRecordsCount()).isEqualTo(1);
+		assertThat(mTransactionsDbAdapter.getTransactionsCount(bravoAccount.getUID())).isEqualTo(1);
+		assertThat(mTransactionsDbAdapter.deleteTransactions(new long[0])).isZero();
+	}
+
+	@Test
+	public void listedTransactions_shouldHavePrefetchedAndLazilyLoadedSplits(){
+		Transaction withSplits = new Transaction("With splits");
+		Split split = new Split(new Money("12.50", DEFAULT_CURRENCY.getCurrencyCode()), alphaAccount.getUID());
+		withSplits.addSplit(split);
+		withSplits.addSplit(split.createPair(bravoAccount.getUID()));
+		mTransactionsDbAdapter.addRecord(withSplits);
+
+		Transaction other = new Transaction("Other");
+		Split otherSplit = new Split(new Money("3", DEFAULT_CURRENCY.getCurrencyCode()), bravoAccount.getUID());
+		other.addSplit(otherSplit);
+		other.addSplit(otherSplit.createPair(alphaAccount.getUID()));
+		mTransactionsDbAdapter.addRecord(other);
+
+		Map<String, List<Split>> splitsByTransaction = mSplitsDbAdapter.getSplitsForTransactions(
+				Arrays.asList(withSplits.getUID(), other.getUID(), "unknown"));
+		assertThat(splitsByTransaction).hasSize(2).doesNotContainKey("unknown");
+		assertThat(splitsByTransaction.get(withSplits.getUID())).containsOnlyElementsOf(withSplits.getSplits());
+
+		List<Transaction> transactions = mTransactionsDbAdapter.getAllTransactions();
+		assertThat(transactions).hasSize(2);
+		for (Transaction transaction : transactions) {
+			assertThat(transaction.getSplits()).hasSize(2);
+			assertThat(transaction.getImbalance().isAmountZero()).isTrue();
+		}
+
+		Transaction loaded = mTransactionsDbAdapter.getRecord(withSplits.getUID());
+		assertThat(loaded.getSplits()).containsOnlyElementsOf(withSplits.getSplits());
+		assertThat(loaded.getBalance(alphaAccount.getUID()).asBigDecimal()).isEqualByComparingTo("12.50");
+		assertThat(loaded.getSplits().get(0).getValue().getCommodity())
+				.isSameAs(loaded.getSplits().get(1).getValue().getCommodity());
+	}
+
 	@After
 	public void tearDown() throws Exception {
 		mAccountsDbAdapter.deleteAllRecords();
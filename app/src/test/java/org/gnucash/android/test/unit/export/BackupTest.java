@@ -19,12 +19,21 @@ import org.gnucash.android.BuildConfig;
 import org.gnucash.android.R;
 import org.gnucash.android.app.GnuCashApplication;
 import org.gnucash.android.db.BookDbHelper;
+import org.gnucash.android.db.PeriodCloser;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
 import org.gnucash.android.db.adapter.BooksDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.export.BackupManager;
 import org.gnucash.android.export.ExportFormat;
 import org.gnucash.android.export.ExportParams;
 import org.gnucash.android.export.Exporter;
 import org.gnucash.android.export.xml.GncXmlExporter;
 import org.gnucash.android.importer.GncXmlImporter;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
 import org.gnucash.android.test.unit.db.AccountsDbAdapterTest;
 import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
 import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
@@ -35,9 +44,14 @@ import org.junit.runner.RunWith;
 import org.robolectric.annotation.Config;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -73,6 +87,84 @@ public class BackupTest {
 
     }
 
+    @Test
+    public void shouldCreateAndRestoreDatabaseSnapshot() throws IOException {
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        long accountCount = AccountsDbAdapter.getInstance().getRecordsCount();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BackupManager.writeDatabaseSnapshot(GnuCashApplication.getActiveDb(), outputStream);
+        byte[] snapshot = outputStream.toByteArray();
+        assertThat(BackupManager.isDatabaseSnapshot(new ByteArrayInputStream(snapshot))).isTrue();
+
+        String restoredBookUID = BackupManager.restoreDatabaseSnapshot(new ByteArrayInputStream(snapshot));
+        assertThat(restoredBookUID).isNotEqualTo(bookUID);
+        assertThat(BooksDbAdapter.getInstance().getRecord(restoredBookUID).getRootAccountUID())
+                .isEqualTo(AccountsDbAdapter.getInstance().getOrCreateGnuCashRootAccountUID());
+
+        GnuCashApplication.loadBook(restoredBookUID);
+        assertThat(AccountsDbAdapter.getInstance().getRecordsCount()).isEqualTo(accountCount);
+    }
+
+    /**
+     * Closing a period archives its transactions and replaces them with opening balances in the book
+     */
+    @Test
+    public void closePeriod_shouldArchiveTransactionsAndKeepBalances() throws IOException {
+        String bookUID = BooksDbAdapter.getInstance().getActiveBookUID();
+        GnuCashApplication.loadBook(bookUID);
+        AccountsDbAdapter accountsDbAdapter = AccountsDbAdapter.getInstance();
+        TransactionsDbAdapter transactionsDbAdapter = TransactionsDbAdapter.getInstance();
+        String expenseUID = accountsDbAdapter.createAccountHierarchy("Expenses:Period", AccountType.EXPENSE);
+        String cashUID = accountsDbAdapter.createAccountHierarchy("Assets:Period Cash", AccountType.ASSET);
+        String currencyCode = accountsDbAdapter.getCurrencyCode(expenseUID);
+
+        long[] times = {1000L, 2000L, 5000L};
+        String[] amounts = {"10", "2.50", "7"};
+        for (int i = 0; i < times.length; i++) {
+            Transaction transaction = new Transaction("Purchase " + i);
+            transaction.setTime(times[i]);
+            Split split = new Split(new Money(amounts[i], currencyCode), expenseUID);
+            split.setType(TransactionType.DEBIT);
+            transaction.addSplit(split);
+            transaction.addSplit(split.createPair(cashUID));
+            transactionsDbAdapter.addRecord(transaction);
+        }
+        Money expenseBalance = accountsDbAdapter.getAccountBalance(expenseUID);
+        Money cashBalance = accountsDbAdapter.getAccountBalance(cashUID);
+
+        assertThat(PeriodCloser.closePeriod(3000L)).isEqualTo(2);
+        assertThat(transactionsDbAdapter.getRecordsCount()).isEqualTo(3); //one opening balance per account
+        assertThat(accountsDbAdapter.getAccountBalance(expenseUID)).isEqualTo(expenseBalance);
+        assertThat(accountsDbAdapter.getAccountBalance(cashUID)).isEqualTo(cashBalance);
+
+        File[] archives = new File(Exporter.getBackupFolderPath(bookUID)).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return BackupManager.isPeriodArchive(file);
+            }
+        });
+        assertThat(archives).hasSize(1);
+
+        String archiveBookUID = BackupManager.restoreDatabaseSnapshot(new FileInputStream(archives[0]));
+        GnuCashApplication.loadBook(archiveBookUID);
+        assertThat(TransactionsDbAdapter.getInstance().getRecordsCount()).isEqualTo(2);
+        assertThat(AccountsDbAdapter.getInstance().getAccountBalance(expenseUID))
+                .isEqualTo(new Money("12.50", currencyCode));
+    }
+
+    @Test
+    public void xmlBackup_shouldNotBeDetectedAsDatabaseSnapshot() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>";
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+        gzipOutputStream.write(xml.getBytes("UTF-8"));
+        gzipOutputStream.close();
+
+        assertThat(BackupManager.isDatabaseSnapshot(new ByteArrayInputStream(outputStream.toByteArray()))).isFalse();
+        assertThat(BackupManager.isDatabaseSnapshot(new ByteArrayInputStream(xml.getBytes("UTF-8")))).isFalse();
+    }
+
     /**
      * Loads the default accounts from file resource
      */
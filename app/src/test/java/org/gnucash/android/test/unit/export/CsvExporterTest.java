@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.export;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.export.ExportFormat;
+import org.gnucash.android.export.ExportParams;
+import org.gnucash.android.export.csv.CsvExporter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Split;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.gnucash.android.util.TimestampHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the export of splits as comma-separated values
+ */
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class CsvExporterTest {
+
+    private Account mBankAccount;
+    private Account mExpenseAccount;
+
+    @Before
+    public void setUp() {
+        mBankAccount = new Account("Bank");
+        mBankAccount.setAccountType(AccountType.BANK);
+        mExpenseAccount = new Account("Expenses");
+        mExpenseAccount.setAccountType(AccountType.EXPENSE);
+        AccountsDbAdapter.getInstance().bulkAddRecords(Arrays.asList(mBankAccount, mExpenseAccount));
+    }
+
+    private Transaction createTransaction(String description, String amount) {
+        Money money = new Money(amount, Commodity.DEFAULT_COMMODITY.getCurrencyCode());
+        Transaction transaction = new Transaction(description);
+        Split split = new Split(money, mExpenseAccount.getUID());
+        split.setType(TransactionType.DEBIT);
+        transaction.addSplit(split);
+        transaction.addSplit(split.createPair(mBankAccount.getUID()));
+        return transaction;
+    }
+
+    private static List<String> readLines(String path, boolean compressed) throws IOException {
+        InputStream inputStream = new FileInputStream(path);
+        if (compressed)
+            inputStream = new GZIPInputStream(inputStream);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        List<String> lines = new ArrayList<>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    @Test
+    public void shouldExportSelectedColumnsOfEverySplit() throws IOException {
+        Transaction transaction = createTransaction("Books, \"used\"", "12.50");
+        TransactionsDbAdapter.getInstance().addRecord(transaction);
+
+        ExportParams params = new ExportParams(ExportFormat.CSV);
+        params.setCsvColumns(Arrays.asList(CsvExporter.Column.DESCRIPTION, CsvExporter.Column.ACCOUNT,
+                CsvExporter.Column.VALUE));
+        List<String> files = new CsvExporter(params).generateExport();
+
+        assertThat(files).hasSize(1);
+        assertThat(files.get(0)).endsWith(ExportFormat.CSV.getExtension());
+        assertThat(readLines(files.get(0), false)).containsExactly(
+                "Description,Account,Value",
+                "\"Books, \"\"used\"\"\",Expenses,12.50",
+                "\"Books, \"\"used\"\"\",Bank,-12.50");
+        assertThat(TransactionsDbAdapter.getInstance().getRecord(transaction.getUID()).isExported()).isTrue();
+    }
+
+    @Test
+    public void shouldExportAllPagesOfSplits() throws IOException {
+        List<Transaction> transactions = new ArrayList<>();
+        int transactionCount = CsvExporter.PAGE_SIZE / 2 + 7;
+        for (int i = 0; i < transactionCount; i++) {
+            transactions.add(createTransaction("Transaction " + i, "1.00"));
+        }
+        TransactionsDbAdapter.getInstance().bulkAddRecords(transactions);
+
+        ExportParams params = new ExportParams(ExportFormat.CSV);
+        params.setCsvColumns(Arrays.asList(CsvExporter.Column.SPLIT_UID));
+        CsvExporter exporter = new CsvExporter(params);
+        List<String> lines = readLines(exporter.generateExport().get(0), false);
+
+        assertThat(exporter.getExportedSplitCount()).isEqualTo(transactionCount * 2);
+        assertThat(lines).hasSize(transactionCount * 2 + 1);
+        assertThat(lines).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void shouldCompressOutput() throws IOException {
+        TransactionsDbAdapter.getInstance().addRecord(createTransaction("Rent", "800.00"));
+
+        ExportParams params = new ExportParams(ExportFormat.CSV);
+        params.setCompressOutput(true);
+        CsvExporter exporter = new CsvExporter(params);
+        List<String> files = exporter.generateExport();
+
+        assertThat(files.get(0)).endsWith(".csv.gz");
+        assertThat(exporter.getExportMimeType()).isEqualTo("application/gzip");
+        List<String> lines = readLines(files.get(0), true);
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).startsWith("Date,Transaction ID,Description");
+    }
+
+    @Test
+    public void shouldOnlyExportTransactionsModifiedAfterStartTime() throws IOException {
+        TransactionsDbAdapter.getInstance().addRecord(createTransaction("Rent", "800.00"));
+
+        ExportParams params = new ExportParams(ExportFormat.CSV);
+        params.setExportStartTime(new Timestamp(TimestampHelper.getTimestampFromNow().getTime() + 60 * 60 * 1000));
+        CsvExporter exporter = new CsvExporter(params);
+
+        assertThat(readLines(exporter.generateExport().get(0), false)).hasSize(1);
+        assertThat(exporter.getExportedSplitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void csvOptions_shouldBeRestoredFromScheduledExportParams() {
+        ExportParams params = new ExportParams(ExportFormat.CSV);
+        params.setCsvColumns(Arrays.asList(CsvExporter.Column.DATE, CsvExporter.Column.VALUE));
+        params.setCompressOutput(true);
+
+        ExportParams parsedParams = ExportParams.parseCsv(params.toCsv());
+        assertThat(parsedParams.getCsvColumns()).containsExactly(CsvExporter.Column.DATE, CsvExporter.Column.VALUE);
+        assertThat(parsedParams.shouldCompressOutput()).isTrue();
+
+        assertThat(ExportParams.parseCsv("CSV;SHARING;1970-01-01 00:00:00.000;false;;true").getCsvColumns())
+                .containsExactly(CsvExporter.Column.values());
+        assertThat(ExportParams.parseCsv("CSV;SHARING;1970-01-01 00:00:00.000;false;DATE,UNKNOWN;false").getCsvColumns())
+                .containsExactly(CsvExporter.Column.DATE);
+
+        ExportParams qifParams = ExportParams.parseCsv(new ExportParams(ExportFormat.QIF).toCsv());
+        assertThat(qifParams.getCsvColumns()).containsExactly(CsvExporter.Column.values());
+        assertThat(qifParams.shouldCompressOutput()).isFalse();
+    }
+}
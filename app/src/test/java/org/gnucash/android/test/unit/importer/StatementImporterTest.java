@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.importer;
+
+import org.gnucash.android.BuildConfig;
+import org.gnucash.android.db.adapter.AccountsDbAdapter;
+import org.gnucash.android.db.adapter.DatabaseAdapter;
+import org.gnucash.android.db.adapter.TransactionsDbAdapter;
+import org.gnucash.android.importer.OfxImporter;
+import org.gnucash.android.importer.QifImporter;
+import org.gnucash.android.importer.StatementImporter;
+import org.gnucash.android.model.Account;
+import org.gnucash.android.model.AccountType;
+import org.gnucash.android.model.Commodity;
+import org.gnucash.android.model.Money;
+import org.gnucash.android.model.Transaction;
+import org.gnucash.android.model.TransactionType;
+import org.gnucash.android.test.unit.testutil.GnucashTestRunner;
+import org.gnucash.android.test.unit.testutil.ShadowCrashlytics;
+import org.gnucash.android.test.unit.testutil.ShadowUserVoice;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the import of QIF and OFX bank statements
+ */
+@RunWith(GnucashTestRunner.class) //package is required so that resources can be found in dev mode
+@Config(constants = BuildConfig.class, sdk = 21, packageName = "org.gnucash.android", shadows = {ShadowCrashlytics.class, ShadowUserVoice.class})
+public class StatementImporterTest {
+
+    private static final String QIF_STATEMENT = "!Type:Bank\n"
+            + "D1/15'16\nT-1,250.00\nPRent\nLGroceries\n^\n"
+            + "D2016/1/20\nT-4.50\nPCoffee Shop\nC*\n^\n"
+            + "D2016/1/20\nT-4.50\nPCoffee Shop\n^\n"
+            + "D2016/1/31\nT3000.00\nPSalary\n"
+            + "S[Imbalance-USD]\n$2500.00\nSGroceries\nEBonus\n$400.00\n^\n";
+
+    private static final String OFX_STATEMENT = "OFXHEADER:100\nDATA:OFXSGML\nVERSION:102\n\n"
+            + "<OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>\n"
+            + "<STMTTRN><TRNTYPE>DEBIT<DTPOSTED>20160120120000[-5:EST]<TRNAMT>-4.50<FITID>1<NAME>COFFEE SHOP </STMTTRN>\n"
+            + "<STMTTRN><TRNTYPE>DEBIT<DTPOSTED>20160120<TRNAMT>-4.50<FITID>2<NAME>Coffee Shop</STMTTRN>\n"
+            + "<STMTTRN><TRNTYPE>DEBIT<DTPOSTED>20160120<TRNAMT>-4.50<FITID>3<NAME>Coffee Shop</STMTTRN>\n"
+            + "<STMTTRN><TRNTYPE>DEBIT<DTPOSTED>20160202<TRNAMT>-20.00<FITID>4<NAME>Books &amp; more<MEMO>Novel</STMTTRN>\n"
+            + "</BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>\n";
+
+    private AccountsDbAdapter mAccountsDbAdapter;
+    private TransactionsDbAdapter mTransactionsDbAdapter;
+    private Account mBankAccount;
+    private Account mGroceriesAccount;
+
+    @Before
+    public void setUp() {
+        mAccountsDbAdapter = AccountsDbAdapter.getInstance();
+        mTransactionsDbAdapter = TransactionsDbAdapter.getInstance();
+
+        mBankAccount = new Account("Bank");
+        mBankAccount.setAccountType(AccountType.BANK);
+        mGroceriesAccount = new Account("Groceries");
+        mGroceriesAccount.setAccountType(AccountType.EXPENSE);
+        mAccountsDbAdapter.bulkAddRecords(Arrays.asList(mBankAccount, mGroceriesAccount));
+    }
+
+    private static void importStatement(StatementImporter importer, String statement) throws IOException {
+        importer.importStatement(new ByteArrayInputStream(statement.getBytes("UTF-8")));
+    }
+
+    private static Money createMoney(String amount) {
+        return new Money(amount, Commodity.DEFAULT_COMMODITY.getCurrencyCode());
+    }
+
+    private static long toMillis(int year, int month, int day) {
+        return new LocalDate(year, month, day).toDateTimeAtStartOfDay().getMillis();
+    }
+
+    @Test
+    public void importQif_shouldAddTransactionsToAccount() throws IOException {
+        QifImporter importer = new QifImporter(mBankAccount.getUID());
+        importStatement(importer, QIF_STATEMENT);
+
+        assertThat(importer.getImportedCount()).isEqualTo(4);
+        assertThat(importer.getDuplicateCount()).isEqualTo(0);
+        assertThat(mAccountsDbAdapter.getAccountBalance(mBankAccount.getUID())).isEqualTo(createMoney("1741.00"));
+        assertThat(mAccountsDbAdapter.getAccountBalance(mGroceriesAccount.getUID())).isEqualTo(createMoney("850.00"));
+
+        List<String> rentUIDs = mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 1, 15), createMoney("-1250"), " RENT");
+        assertThat(rentUIDs).hasSize(1);
+        Transaction rent = mTransactionsDbAdapter.getRecord(rentUIDs.get(0));
+        assertThat(rent.getDescription()).isEqualTo("Rent");
+        assertThat(rent.getSplits(mBankAccount.getUID()).get(0).getType()).isEqualTo(TransactionType.CREDIT);
+
+        List<String> salaryUIDs = mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 1, 31), createMoney("3000"), "Salary");
+        assertThat(mTransactionsDbAdapter.getRecord(salaryUIDs.get(0)).getSplits()).hasSize(4); //with the imbalance
+    }
+
+    @Test
+    public void importQif_shouldDetectDecimalSeparatorAndCountInvalidEntries() throws IOException {
+        String statement = "!Type:Bank\n"
+                + "D2016/1/20\nT-4,50\nPCoffee Shop\n^\n"
+                + "D2016/1/21\nT1.234,56\nPRefund\n^\n"
+                + "D2016/1/22\nT1,234\nPBonus\n^\n"
+                + "D2016/1/23\nT1'000.5\nPTransfer\n^\n"
+                + "Dyesterday\nT-10.00\nPInvalid date\n^\n"
+                + "D2016/1/24\nTten\nPInvalid amount\n^\n^\n";
+        QifImporter importer = new QifImporter(mBankAccount.getUID());
+        importStatement(importer, statement);
+
+        assertThat(importer.getImportedCount()).isEqualTo(4);
+        assertThat(importer.getInvalidCount()).isEqualTo(2);
+        assertThat(mAccountsDbAdapter.getAccountBalance(mBankAccount.getUID())).isEqualTo(createMoney("3464.56"));
+        assertThat(mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 1, 20), createMoney("-4.50"), "Coffee Shop")).hasSize(1);
+    }
+
+    @Test
+    public void reimport_shouldSkipExistingTransactions() throws IOException {
+        importStatement(new QifImporter(mBankAccount.getUID()), QIF_STATEMENT);
+
+        QifImporter importer = new QifImporter(mBankAccount.getUID());
+        importStatement(importer, QIF_STATEMENT);
+
+        assertThat(importer.getImportedCount()).isEqualTo(0);
+        assertThat(importer.getDuplicateCount()).isEqualTo(4);
+        assertThat(mAccountsDbAdapter.getAccountBalance(mBankAccount.getUID())).isEqualTo(createMoney("1741.00"));
+    }
+
+    @Test
+    public void importOfx_shouldOnlyAddNewTransactions() throws IOException {
+        importStatement(new QifImporter(mBankAccount.getUID()), QIF_STATEMENT);
+
+        OfxImporter importer = new OfxImporter(mBankAccount.getUID());
+        importStatement(importer, OFX_STATEMENT);
+
+        //two of the three coffees were already imported from the QIF statement
+        assertThat(importer.getDuplicateCount()).isEqualTo(2);
+        assertThat(importer.getImportedCount()).isEqualTo(2);
+        assertThat(mAccountsDbAdapter.getAccountBalance(mBankAccount.getUID())).isEqualTo(createMoney("1716.50"));
+
+        List<String> bookUIDs = mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 2, 2), createMoney("-20"), "books & more");
+        assertThat(bookUIDs).hasSize(1);
+        assertThat(mTransactionsDbAdapter.getRecord(bookUIDs.get(0)).getNote()).isEqualTo("Novel");
+    }
+
+    @Test
+    public void editedTransaction_shouldUpdateFingerprint() throws IOException {
+        importStatement(new QifImporter(mBankAccount.getUID()), QIF_STATEMENT);
+        List<String> rentUIDs = mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 1, 15), createMoney("-1250"), "Rent");
+
+        Transaction rent = mTransactionsDbAdapter.getRecord(rentUIDs.get(0));
+        rent.setDescription("Rent February");
+        rent.setTime(toMillis(2016, 2, 15));
+        mTransactionsDbAdapter.addRecord(rent, DatabaseAdapter.UpdateMethod.update);
+
+        assertThat(mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 1, 15), createMoney("-1250"), "Rent")).isEmpty();
+        assertThat(mTransactionsDbAdapter.findTransactionsByFingerprint(mBankAccount.getUID(),
+                toMillis(2016, 2, 15), createMoney("-1250"), "rent february")).containsExactly(rent.getUID());
+    }
+
+    @After
+    public void tearDown() {
+        mAccountsDbAdapter.deleteAllRecords();
+    }
+}
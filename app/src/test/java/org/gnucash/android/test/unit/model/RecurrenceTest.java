@@ -18,10 +18,15 @@ package org.gnucash.android.test.unit.model;
 
 import org.gnucash.android.model.PeriodType;
 import org.gnucash.android.model.Recurrence;
+import org.gnucash.android.model.RecurrenceIterator;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDateTime;
 import org.junit.Test;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -72,4 +77,100 @@ public class RecurrenceTest {
 
         assertThat(recurrence.getCount()).isEqualTo(-1);
     }
+
+    private static List<Long> toList(RecurrenceIterator iterator){
+        List<Long> times = new ArrayList<>();
+        while (iterator.hasNext())
+            times.add(iterator.next());
+        return times;
+    }
+
+    /**
+     * The occurrences should be the same as when adding the period to the previous occurrence,
+     * as long as the day of month is not clamped
+     */
+    @Test
+    public void iterator_shouldMatchStepwiseComputation(){
+        LocalDateTime start = new LocalDateTime(2015, 10, 5, 9, 30);
+        try {
+            for (PeriodType periodType : PeriodType.values()) {
+                for (int multiplier = 1; multiplier <= 3; multiplier++) {
+                    periodType.setMultiplier(multiplier);
+                    List<Long> expected = new ArrayList<>();
+                    LocalDateTime time = start;
+                    for (int i = 0; i < 30; i++) {
+                        expected.add(time.toDate().getTime());
+                        switch (periodType) {
+                            case DAY:
+                                time = time.plusDays(multiplier);
+                                break;
+                            case WEEK:
+                                time = time.plusWeeks(multiplier);
+                                break;
+                            case MONTH:
+                                time = time.plusMonths(multiplier);
+                                break;
+                            case YEAR:
+                                time = time.plusYears(multiplier);
+                                break;
+                        }
+                    }
+
+                    Recurrence recurrence = new Recurrence(periodType);
+                    recurrence.setPeriodStart(new Timestamp(start.toDate().getTime()));
+                    long last = expected.get(expected.size() - 1);
+                    assertThat(toList(recurrence.iterator(expected.get(0), last))).isEqualTo(expected);
+                    //starting in the middle of the window
+                    assertThat(toList(recurrence.iterator(expected.get(10) - 1, last)))
+                            .isEqualTo(expected.subList(10, expected.size()));
+                    assertThat(recurrence.getPeriodIndex(expected.get(20) + 1)).isEqualTo(20);
+                }
+            }
+        } finally {
+            for (PeriodType periodType : PeriodType.values())
+                periodType.setMultiplier(1);
+        }
+    }
+
+    @Test
+    public void monthlyOccurrences_shouldNotDriftAfterMonthEnd(){
+        Recurrence recurrence = new Recurrence(PeriodType.MONTH);
+        recurrence.setPeriodStart(new Timestamp(new DateTime(2016, 1, 31, 12, 0).getMillis()));
+
+        List<Long> occurrences = toList(recurrence.iterator(0, new DateTime(2016, 4, 30, 12, 0).getMillis()));
+        assertThat(occurrences).containsExactly(
+                new DateTime(2016, 1, 31, 12, 0).getMillis(),
+                new DateTime(2016, 2, 29, 12, 0).getMillis(),
+                new DateTime(2016, 3, 31, 12, 0).getMillis(),
+                new DateTime(2016, 4, 30, 12, 0).getMillis());
+        assertThat(recurrence.getPeriodIndex(new DateTime(2016, 3, 30, 0, 0).getMillis())).isEqualTo(1);
+    }
+
+    @Test
+    public void weeklyOccurrences_shouldHonorByDay(){
+        Recurrence recurrence = new Recurrence(PeriodType.WEEK);
+        recurrence.setPeriodStart(new Timestamp(new DateTime(2016, 6, 1, 10, 0).getMillis())); //a wednesday
+        recurrence.setByDay("MO,WE,FR");
+
+        RecurrenceIterator iterator = recurrence.iterator(new DateTime(2016, 6, 6, 0, 0).getMillis(),
+                new DateTime(2016, 6, 12, 0, 0).getMillis());
+        assertThat(toList(iterator)).isEqualTo(Arrays.asList(
+                new DateTime(2016, 6, 6, 10, 0).getMillis(),
+                new DateTime(2016, 6, 8, 10, 0).getMillis(),
+                new DateTime(2016, 6, 10, 10, 0).getMillis()));
+        assertThat(iterator.getIndex()).isEqualTo(4);
+    }
+
+    @Test
+    public void iterator_shouldStopAtEndOfRecurrence(){
+        Recurrence recurrence = new Recurrence(PeriodType.MONTH);
+        recurrence.setPeriodStart(new Timestamp(new DateTime(2015, 10, 5, 0, 0).getMillis()));
+        recurrence.setPeriodEnd(new Timestamp(new DateTime(2015, 12, 5, 0, 0).getMillis()));
+
+        //an occurrence at the end of the recurrence is included
+        assertThat(toList(recurrence.iterator(0, Long.MAX_VALUE))).hasSize(3);
+        RecurrenceIterator iterator = recurrence.iterator(2, Long.MAX_VALUE);
+        assertThat(iterator.next()).isEqualTo(new DateTime(2015, 12, 5, 0, 0).getMillis());
+        assertThat(iterator.hasNext()).isFalse();
+    }
 }
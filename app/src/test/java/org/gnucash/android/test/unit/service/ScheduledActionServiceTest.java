@@ -102,7 +102,7 @@ public class ScheduledActionServiceTest {
     @Before
     public void setUp(){
         mDb = GnuCashApplication.getActiveDb();
-        new CommoditiesDbAdapter(mDb); //initializes commodity static values
+        new CommoditiesDbAdapter(mDb).initCommonCommodities(); //initializes commodity static values
         mBaseAccount.setCommodity(Commodity.DEFAULT_COMMODITY);
         mTransferAccount.setCommodity(Commodity.DEFAULT_COMMODITY);
         mTemplateTransaction.setCommodity(Commodity.DEFAULT_COMMODITY);
@@ -0,0 +1,61 @@
+package org.gnucash.android.test.unit.util;
+
+import org.gnucash.android.util.AmountExpression;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AmountExpressionTest {
+
+    @Test
+    public void shouldEvaluateWithOperatorPrecedence() throws ParseException {
+        assertThat(AmountExpression.evaluate("12.50*3+(4-1.5)/2")).isEqualTo(new BigDecimal("38.75"));
+        assertThat(AmountExpression.evaluate("-(2+3)*-2")).isEqualTo(new BigDecimal("10"));
+    }
+
+    @Test
+    public void shouldEvaluateExactly() throws ParseException {
+        //0.1 + 0.2 is not exact in double arithmetic
+        assertThat(AmountExpression.evaluate("0.1+0.2")).isEqualTo(new BigDecimal("0.3"));
+        assertThat(AmountExpression.evaluate("1250/100")).isEqualByComparingTo(new BigDecimal("12.5"));
+    }
+
+    @Test
+    public void shouldAcceptCommaAsDecimalSeparator() throws ParseException {
+        assertThat(AmountExpression.evaluate("2,5+1")).isEqualTo(new BigDecimal("3.5"));
+    }
+
+    @Test
+    public void compiledExpression_shouldBeCachedAndReusable() throws ParseException {
+        AmountExpression expression = AmountExpression.compile("rate * quantity");
+        assertThat(AmountExpression.compile("rate * quantity")).isSameAs(expression);
+        assertThat(expression.getVariables()).containsExactly("quantity", "rate");
+
+        Map<String, BigDecimal> variables = new HashMap<>();
+        variables.put("rate", new BigDecimal("1.5"));
+        for (int quantity = 1; quantity <= 3; quantity++) {
+            variables.put("quantity", new BigDecimal(quantity));
+            assertThat(expression.evaluate(variables)).isEqualTo(new BigDecimal("1.5").multiply(new BigDecimal(quantity)));
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void incompleteExpression_shouldThrowParseException() throws ParseException {
+        AmountExpression.evaluate("5+");
+    }
+
+    @Test(expected = ParseException.class)
+    public void unbalancedParentheses_shouldThrowParseException() throws ParseException {
+        AmountExpression.evaluate("(1+2");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divisionByZero_shouldThrowArithmeticException() throws ParseException {
+        AmountExpression.evaluate("5/0");
+    }
+}
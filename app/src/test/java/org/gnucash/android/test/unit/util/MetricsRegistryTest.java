@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Ngewi Fet <ngewif@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gnucash.android.test.unit.util;
+
+import org.gnucash.android.util.MetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetricsRegistryTest {
+    private boolean mPreviouslyEnabled;
+
+    @Before
+    public void setUp() {
+        mPreviouslyEnabled = MetricsRegistry.isEnabled();
+        MetricsRegistry.setEnabled(true);
+        MetricsRegistry.reset();
+    }
+
+    @After
+    public void tearDown() {
+        MetricsRegistry.reset();
+        MetricsRegistry.setEnabled(mPreviouslyEnabled);
+    }
+
+    @Test
+    public void shouldRecordCountAndDuration() {
+        for (int i = 0; i < 3; i++) {
+            long start = MetricsRegistry.start();
+            MetricsRegistry.stop("TestAdapter", "addRecord", start);
+        }
+
+        MetricsRegistry.Timer timer = MetricsRegistry.getMetric("TestAdapter", "addRecord");
+        assertThat(timer).isNotNull();
+        assertThat(timer.getCount()).isEqualTo(3);
+        assertThat(timer.getMaxNanos()).isLessThanOrEqualTo(timer.getTotalNanos());
+        assertThat(MetricsRegistry.dump()).contains("TestAdapter").contains("addRecord: count=3");
+    }
+
+    @Test
+    public void disabledRegistry_shouldNotRecord() {
+        MetricsRegistry.setEnabled(false);
+        long start = MetricsRegistry.start();
+        assertThat(start).isEqualTo(0);
+        MetricsRegistry.stop("TestAdapter", "getRecord", start);
+
+        assertThat(MetricsRegistry.getMetric("TestAdapter", "getRecord")).isNull();
+        assertThat(MetricsRegistry.dump()).isEmpty();
+    }
+
+    @Test
+    public void percentiles_shouldUseHistogramBuckets() {
+        //start times in the past produce known durations of at least the given amount
+        for (int i = 0; i < 100; i++) {
+            long start = System.nanoTime() - (i < 90 ? 50000L : 200000000L); //50us and 200ms
+            MetricsRegistry.stop("TestAdapter", "query", start);
+        }
+        MetricsRegistry.Timer timer = MetricsRegistry.getMetric("TestAdapter", "query");
+
+        assertThat(timer.getCount()).isEqualTo(100);
+        assertThat(timer.getPercentileMicros(50)).isLessThanOrEqualTo(1000);
+        assertThat(timer.getPercentileMicros(95)).isGreaterThanOrEqualTo(200000);
+    }
+}